@@ -11,6 +11,13 @@ public class Aggregate extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    private DbIterator child;
+    private int afield;
+    private int gfield;
+    private Aggregator.Op aop;
+    private TupleDesc td;
+    private DbIterator results;
+
     /**
      * Constructor.
      * <p/>
@@ -25,7 +32,11 @@ public class Aggregate extends Operator {
      * @param aop    The aggregation operator to use
      */
     public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
-        // some code goes here
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        td = makeTupleDesc();
     }
 
     /**
@@ -34,8 +45,7 @@ public class Aggregate extends Operator {
      * {@link simpledb.Aggregator#NO_GROUPING}
      */
     public int groupField() {
-        // some code goes here
-        return -1;
+        return gfield;
     }
 
     /**
@@ -44,16 +54,17 @@ public class Aggregate extends Operator {
      * null;
      */
     public String groupFieldName() {
-        // some code goes here
-        return null;
+        if (gfield == Aggregator.NO_GROUPING) {
+            return null;
+        }
+        return td.getFieldName(0);
     }
 
     /**
      * @return the aggregate field
      */
     public int aggregateField() {
-        // some code goes here
-        return -1;
+        return afield;
     }
 
     /**
@@ -61,16 +72,14 @@ public class Aggregate extends Operator {
      * tuples
      */
     public String aggregateFieldName() {
-        // some code goes here
-        return null;
+        return td.getFieldName(td.numFields() - 1);
     }
 
     /**
      * @return return the aggregate operator
      */
     public Aggregator.Op aggregateOp() {
-        // some code goes here
-        return null;
+        return aop;
     }
 
     public static String nameOfAggregatorOp(Aggregator.Op aop) {
@@ -79,7 +88,27 @@ public class Aggregate extends Operator {
 
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
-        // some code goes here
+        child.open();
+        TupleDesc childTd = child.getTupleDesc();
+        Type gtype = (gfield == Aggregator.NO_GROUPING) ? null : childTd.getFieldType(gfield);
+        Aggregator agg;
+        if (childTd.getFieldType(afield) == Type.INT_TYPE) {
+            agg = new IntegerAggregator(gfield, gtype, afield, aop);
+        } else {
+            agg = new StringAggregator(gfield, gtype, afield, aop);
+        }
+
+        // the whole input is consumed up front, a batch at a time
+        BatchIterator in = BatchAdapter.of(child);
+        TupleBatch batch;
+        while ((batch = in.nextBatch()) != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                agg.mergeTupleIntoGroup(batch.get(i));
+            }
+        }
+        results = agg.iterator();
+        results.open();
+        super.open();
     }
 
     /**
@@ -90,12 +119,27 @@ public class Aggregate extends Operator {
      * aggregate. Should return null if there are no more tuples.
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        // some code goes here
+        if (results != null && results.hasNext()) {
+            return results.next();
+        }
         return null;
     }
 
+    protected TupleBatch fetchNextBatch() throws TransactionAbortedException,
+            DbException {
+        TupleBatch batch = getBatchBuffer();
+        batch.clear();
+        while (!batch.isFull() && results != null && results.hasNext()) {
+            batch.add(results.next());
+        }
+        return batch.size() > 0 ? batch : null;
+    }
+
     public void rewind() throws DbException, TransactionAbortedException {
-        // some code goes here
+        // the aggregate was computed by open(), so only the results rewind
+        if (results != null) {
+            results.rewind();
+        }
     }
 
     /**
@@ -110,23 +154,37 @@ public class Aggregate extends Operator {
      * iterator.
      */
     public TupleDesc getTupleDesc() {
-        // some code goes here
-        return null;
+        return td;
+    }
+
+    private TupleDesc makeTupleDesc() {
+        TupleDesc childTd = child.getTupleDesc();
+        String aggName = nameOfAggregatorOp(aop) + " (" + childTd.getFieldName(afield) + ")";
+        if (gfield == Aggregator.NO_GROUPING) {
+            return new TupleDesc(new Type[]{Type.INT_TYPE}, new String[]{aggName});
+        }
+        return new TupleDesc(new Type[]{childTd.getFieldType(gfield), Type.INT_TYPE},
+                new String[]{childTd.getFieldName(gfield), aggName});
     }
 
     public void close() {
-        // some code goes here
+        super.close();
+        child.close();
+        if (results != null) {
+            results.close();
+            results = null;
+        }
     }
 
     @Override
     public DbIterator[] getChildren() {
-        // some code goes here
-        return null;
+        return new DbIterator[]{child};
     }
 
     @Override
     public void setChildren(DbIterator[] children) {
-        // some code goes here
+        child = children[0];
+        td = makeTupleDesc();
     }
 
 }
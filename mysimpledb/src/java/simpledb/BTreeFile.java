@@ -0,0 +1,847 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeFile is a DbFile that keeps its tuples in a B+tree ordered on one
+ * field, the key. Whole tuples live in the leaves, which are linked so that
+ * range scans walk them in key order; internal pages hold keys and child
+ * page numbers. Page 0 of the file is a {@link BTreeRootPtrPage} saying
+ * where the root is. Pages are read and updated through the BufferPool, so
+ * finding the tuples with a given key reads one page per level of the tree.
+ * <p/>
+ * Keys need not be unique. A leaf that fills is split in two and the
+ * first key of the right half is copied into the parent; a leaf that falls
+ * below half full borrows tuples from a sibling or is merged into it, and
+ * internal pages are split and merged in the same way.
+ *
+ * @see BTreeLeafPage
+ * @see BTreeInternalPage
+ * @see IndexScan
+ */
+public class BTreeFile implements DbFile {
+
+    private final File file;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int id;
+
+    /**
+     * Constructs a B+tree file backed by the specified file, and adds it to
+     * the Catalog.
+     *
+     * @param f        the file that stores the pages of the tree
+     * @param td       the schema of the table
+     * @param keyField the field the tree is ordered on
+     */
+    public BTreeFile(File f, TupleDesc td, int keyField) {
+        this.file = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.id = f.getAbsoluteFile().hashCode();
+        Database.getCatalog().addTable(this);
+    }
+
+    /**
+     * @return the File backing this BTreeFile on disk
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the index of the field the tree is ordered on
+     */
+    public int keyField() {
+        return keyField;
+    }
+
+    /**
+     * @return the number of pages in the file, including the root pointer
+     * page and freed pages
+     */
+    public int numPages() {
+        return (int) (file.length() / BufferPool.getPageSize());
+    }
+
+    private BTreePageId rootPtrId() {
+        return new BTreePageId(id, 0, BTreePageId.ROOT_PTR);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        BTreePageId bpid = (BTreePageId) pid;
+        int pageSize = BufferPool.getPageSize();
+        byte[] data = new byte[pageSize];
+        try {
+            if (bpid.pageNumber() < numPages()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    raf.seek((long) pageSize * bpid.pageNumber());
+                    raf.readFully(data);
+                } finally {
+                    raf.close();
+                }
+            } else if (bpid.pageNumber() != 0) {
+                // a new file has an implicit empty root pointer page
+                throw new IllegalArgumentException("no such page: " + pid);
+            }
+            switch (bpid.getCategory()) {
+                case BTreePageId.ROOT_PTR:
+                    return new BTreeRootPtrPage(bpid, data);
+                case BTreePageId.INTERNAL:
+                    return new BTreeInternalPage(bpid, data);
+                case BTreePageId.LEAF:
+                    return new BTreeLeafPage(bpid, data);
+                default:
+                    throw new IllegalArgumentException("bad page category: " + pid);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("could not read " + pid + ": " + e.getMessage());
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        writePage(page.getId().pageNumber(), page.getPageData());
+    }
+
+    private void writePage(int pgNo, byte[] data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek((long) BufferPool.getPageSize() * pgNo);
+            raf.write(data);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Fetches a page through the BufferPool, or from the pages already
+     * changed by the current operation. Pages fetched for writing are added
+     * to those.
+     */
+    private Page getPage(TransactionId tid, Map<PageId, Page> dirty, BTreePageId pid,
+                         Permissions perm) throws DbException, TransactionAbortedException {
+        Page p = dirty.get(pid);
+        if (p != null) {
+            return p;
+        }
+        p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirty.put(pid, p);
+        }
+        return p;
+    }
+
+    private BTreeRootPtrPage getRootPtr(TransactionId tid, Map<PageId, Page> dirty, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (BTreeRootPtrPage) getPage(tid, dirty, rootPtrId(), perm);
+    }
+
+    /**
+     * Returns an empty page to write to, reusing a freed page if there is
+     * one and otherwise adding an empty page to the end of the file. A
+     * freed page was emptied by {@link #freePage}; if that change is still
+     * only in memory, it is logged and written now, so that the page reads
+     * as empty in its new category.
+     *
+     * @param category INTERNAL or LEAF
+     */
+    private BTreePage newPage(TransactionId tid, Map<PageId, Page> dirty, int category)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeRootPtrPage ptr = getRootPtr(tid, dirty, Permissions.READ_WRITE);
+        BufferPool pool = Database.getBufferPool();
+        int pgNo;
+        if (!ptr.free.isEmpty()) {
+            pgNo = ptr.free.remove(ptr.free.size() - 1);
+            for (int c = BTreePageId.INTERNAL; c <= BTreePageId.LEAF; c++) {
+                BTreePageId old = new BTreePageId(id, pgNo, c);
+                Page freed = dirty.remove(old);
+                if (freed == null) {
+                    freed = pool.peekPage(old);
+                } else {
+                    freed.markDirty(true, tid);
+                }
+                if (freed != null && freed.isDirty() != null) {
+                    writeLogged(tid, Collections.singletonList(freed));
+                }
+                pool.discardPage(old);
+            }
+        } else {
+            if (numPages() == 0) {
+                writePage(0, new byte[BufferPool.getPageSize()]);
+            }
+            pgNo = numPages();
+            writePage(pgNo, new byte[BufferPool.getPageSize()]);
+        }
+        return (BTreePage) getPage(tid, dirty, new BTreePageId(id, pgNo, category), Permissions.READ_WRITE);
+    }
+
+    /**
+     * Drops a page that is no longer part of the tree, remembering it for
+     * reuse if the root pointer page has room. The page is emptied, and
+     * stays among the changed pages so that emptying it is logged like any
+     * other change.
+     */
+    private void freePage(TransactionId tid, Map<PageId, Page> dirty, BTreePage page)
+            throws DbException, TransactionAbortedException {
+        BTreeRootPtrPage ptr = getRootPtr(tid, dirty, Permissions.READ_WRITE);
+        if (ptr.free.size() < BTreeRootPtrPage.maxFree()) {
+            ptr.free.add(page.getId().pageNumber());
+        }
+        page.setParent(0);
+        if (page instanceof BTreeLeafPage) {
+            BTreeLeafPage leaf = (BTreeLeafPage) page;
+            leaf.tuples.clear();
+            leaf.left = 0;
+            leaf.right = 0;
+        } else {
+            BTreeInternalPage internal = (BTreeInternalPage) page;
+            internal.keys.clear();
+            internal.children.clear();
+            internal.childCategory = 0;
+        }
+        dirty.put(page.getId(), page);
+    }
+
+    /**
+     * Writes pages straight to the file, after logging each as an UPDATE
+     * from its before image and forcing the log, so that rolling back tid
+     * or recovering from a crash undoes the writes.
+     */
+    private void writeLogged(TransactionId tid, List<? extends Page> pages) throws IOException {
+        LogFile log = Database.getLogFile();
+        for (Page page : pages) {
+            log.logWrite(tid, page.getBeforeImage(), page);
+        }
+        log.force();
+        for (Page page : pages) {
+            writePage(page);
+            log.pageWritten(page.getId());
+            page.markDirty(false, null);
+            page.setBeforeImage();
+        }
+    }
+
+    /**
+     * Descends from a page to the leftmost leaf that can hold key.
+     *
+     * @param key the key to look for, or null for the first leaf
+     */
+    private BTreeLeafPage findLeaf(TransactionId tid, Map<PageId, Page> dirty, BTreePageId pid,
+                                   Permissions perm, Field key)
+            throws DbException, TransactionAbortedException {
+        while (pid.getCategory() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirty, pid, Permissions.READ_ONLY);
+            pid = page.getChildId(page.childFor(key));
+        }
+        return (BTreeLeafPage) getPage(tid, dirty, pid, perm);
+    }
+
+    /**
+     * Sets the parent of children from through to - 1 of an internal page.
+     */
+    private void adopt(TransactionId tid, Map<PageId, Page> dirty, BTreeInternalPage parent,
+                       int from, int to) throws DbException, TransactionAbortedException {
+        for (int i = from; i < to; i++) {
+            BTreePage child = (BTreePage) getPage(tid, dirty, parent.getChildId(i), Permissions.READ_WRITE);
+            child.setParent(parent.getId().pageNumber());
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("tuple does not match the table's schema");
+        }
+        Map<PageId, Page> dirty = new LinkedHashMap<PageId, Page>();
+        BTreeRootPtrPage ptr = getRootPtr(tid, dirty, Permissions.READ_ONLY);
+        if (ptr.getRootId() == null) {
+            BTreePage root = newPage(tid, dirty, BTreePageId.LEAF);
+            getRootPtr(tid, dirty, Permissions.READ_WRITE).setRootId(root.getId());
+        }
+        Field key = t.getField(keyField);
+        BTreeLeafPage leaf = findLeaf(tid, dirty, ptr.getRootId(), Permissions.READ_WRITE, key);
+        if (leaf.getNumTuples() >= leaf.getMaxTuples()) {
+            leaf = splitLeaf(tid, dirty, leaf, key);
+        }
+        leaf.insertTuple(t);
+        return new ArrayList<Page>(dirty.values());
+    }
+
+    /**
+     * Moves the upper half of a full leaf to a new right sibling.
+     *
+     * @return the half that key belongs in
+     */
+    private BTreeLeafPage splitLeaf(TransactionId tid, Map<PageId, Page> dirty, BTreeLeafPage leaf,
+                                    Field key) throws DbException, IOException, TransactionAbortedException {
+        BTreeLeafPage right = (BTreeLeafPage) newPage(tid, dirty, BTreePageId.LEAF);
+        List<Tuple> moved = leaf.tuples.subList(leaf.tuples.size() / 2, leaf.tuples.size());
+        right.tuples.addAll(moved);
+        moved.clear();
+
+        int leafNo = leaf.getId().pageNumber();
+        int rightNo = right.getId().pageNumber();
+        right.left = leafNo;
+        right.right = leaf.right;
+        if (leaf.right != 0) {
+            BTreeLeafPage next = (BTreeLeafPage) getPage(tid, dirty, leaf.getRightSiblingId(),
+                    Permissions.READ_WRITE);
+            next.left = rightNo;
+        }
+        leaf.right = rightNo;
+
+        Field separator = right.key(0);
+        BTreeInternalPage parent = getParentWithRoom(tid, dirty, leaf);
+        parent.insertAfter(leafNo, separator, rightNo);
+        right.setParent(parent.getId().pageNumber());
+        return key.compare(Predicate.Op.LESS_THAN, separator) ? leaf : right;
+    }
+
+    /**
+     * Returns the parent of a page, with room for one more key. A root gets
+     * a new parent, which becomes the root, and a full parent is split.
+     */
+    private BTreeInternalPage getParentWithRoom(TransactionId tid, Map<PageId, Page> dirty, BTreePage child)
+            throws DbException, IOException, TransactionAbortedException {
+        if (child.getParentId() == null) {
+            BTreeInternalPage root = (BTreeInternalPage) newPage(tid, dirty, BTreePageId.INTERNAL);
+            root.childCategory = child.getId().getCategory();
+            root.children.add(child.getId().pageNumber());
+            getRootPtr(tid, dirty, Permissions.READ_WRITE).setRootId(root.getId());
+            child.setParent(root.getId().pageNumber());
+            return root;
+        }
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirty, child.getParentId(),
+                Permissions.READ_WRITE);
+        if (parent.getNumKeys() >= parent.getMaxKeys()) {
+            parent = splitInternal(tid, dirty, parent, child.getId().pageNumber());
+        }
+        return parent;
+    }
+
+    /**
+     * Moves the upper half of a full internal page to a new right sibling,
+     * pushing the middle key up to the parent.
+     *
+     * @return the half that now holds the child childNo
+     */
+    private BTreeInternalPage splitInternal(TransactionId tid, Map<PageId, Page> dirty,
+                                            BTreeInternalPage page, int childNo)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage right = (BTreeInternalPage) newPage(tid, dirty, BTreePageId.INTERNAL);
+        right.childCategory = page.childCategory;
+        int mid = page.keys.size() / 2;
+        Field up = page.keys.get(mid);
+        right.keys.addAll(page.keys.subList(mid + 1, page.keys.size()));
+        right.children.addAll(page.children.subList(mid + 1, page.children.size()));
+        page.keys.subList(mid, page.keys.size()).clear();
+        page.children.subList(mid + 1, page.children.size()).clear();
+        adopt(tid, dirty, right, 0, right.children.size());
+
+        BTreeInternalPage parent = getParentWithRoom(tid, dirty, page);
+        parent.insertAfter(page.getId().pageNumber(), up, right.getId().pageNumber());
+        right.setParent(parent.getId().pageNumber());
+        return right.children.contains(childNo) ? right : page;
+    }
+
+    /**
+     * Deletes the tuple with the same field values as t. Its record id is
+     * not used, since tuples move between pages as the tree changes.
+     *
+     * @throws DbException if the table holds no such tuple
+     */
+    public synchronized ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        Map<PageId, Page> dirty = new LinkedHashMap<PageId, Page>();
+        BTreeRootPtrPage ptr = getRootPtr(tid, dirty, Permissions.READ_ONLY);
+        if (ptr.getRootId() == null) {
+            throw new DbException("tuple is not in the table");
+        }
+        Field key = t.getField(keyField);
+        BTreeLeafPage leaf = findLeaf(tid, dirty, ptr.getRootId(), Permissions.READ_ONLY, key);
+        int i = leaf.lowerBound(key);
+        while (true) {
+            if (i >= leaf.getNumTuples()) {
+                if (leaf.getRightSiblingId() == null) {
+                    throw new DbException("tuple is not in the table");
+                }
+                leaf = (BTreeLeafPage) getPage(tid, dirty, leaf.getRightSiblingId(), Permissions.READ_ONLY);
+                i = 0;
+                continue;
+            }
+            if (leaf.key(i).compare(Predicate.Op.GREATER_THAN, key)) {
+                throw new DbException("tuple is not in the table");
+            }
+            if (sameFields(leaf.tuples.get(i), t)) {
+                break;
+            }
+            i++;
+        }
+        leaf = (BTreeLeafPage) getPage(tid, dirty, leaf.getId(), Permissions.READ_WRITE);
+        leaf.tuples.remove(i);
+        if (leaf.getParentId() != null && leaf.getNumTuples() < leaf.getMaxTuples() / 2) {
+            fixLeaf(tid, dirty, leaf);
+        }
+        return new ArrayList<Page>(dirty.values());
+    }
+
+    private static boolean sameFields(Tuple a, Tuple b) {
+        for (int i = 0; i < a.getTupleDesc().numFields(); i++) {
+            if (!a.getField(i).equals(b.getField(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Refills a leaf that is less than half full from a sibling with the
+     * same parent, or merges the two if the sibling has none to spare.
+     */
+    private void fixLeaf(TransactionId tid, Map<PageId, Page> dirty, BTreeLeafPage leaf)
+            throws DbException, TransactionAbortedException {
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirty, leaf.getParentId(),
+                Permissions.READ_WRITE);
+        int i = parent.children.indexOf(leaf.getId().pageNumber());
+        int min = leaf.getMaxTuples() / 2;
+        if (i > 0) {
+            BTreeLeafPage left = (BTreeLeafPage) getPage(tid, dirty, parent.getChildId(i - 1),
+                    Permissions.READ_WRITE);
+            if (left.getNumTuples() <= min) {
+                mergeLeaves(tid, dirty, parent, left, leaf, i - 1);
+                return;
+            }
+            while (left.getNumTuples() > leaf.getNumTuples() + 1) {
+                leaf.tuples.add(0, left.tuples.remove(left.tuples.size() - 1));
+            }
+            parent.keys.set(i - 1, leaf.key(0));
+        } else {
+            BTreeLeafPage right = (BTreeLeafPage) getPage(tid, dirty, parent.getChildId(i + 1),
+                    Permissions.READ_WRITE);
+            if (right.getNumTuples() <= min) {
+                mergeLeaves(tid, dirty, parent, leaf, right, i);
+                return;
+            }
+            while (right.getNumTuples() > leaf.getNumTuples() + 1) {
+                leaf.tuples.add(right.tuples.remove(0));
+            }
+            parent.keys.set(i, right.key(0));
+        }
+    }
+
+    /**
+     * Moves every tuple of right into left, its left sibling, and removes
+     * right and the key between them from their parent.
+     */
+    private void mergeLeaves(TransactionId tid, Map<PageId, Page> dirty, BTreeInternalPage parent,
+                             BTreeLeafPage left, BTreeLeafPage right, int separator)
+            throws DbException, TransactionAbortedException {
+        left.tuples.addAll(right.tuples);
+        left.right = right.right;
+        if (right.right != 0) {
+            BTreeLeafPage next = (BTreeLeafPage) getPage(tid, dirty, right.getRightSiblingId(),
+                    Permissions.READ_WRITE);
+            next.left = left.getId().pageNumber();
+        }
+        parent.keys.remove(separator);
+        parent.children.remove(separator + 1);
+        freePage(tid, dirty, right);
+        fixInternal(tid, dirty, parent);
+    }
+
+    /**
+     * Refills an internal page that is less than half full by rotating keys
+     * through its parent from a sibling, or merges the two. A root left with
+     * a single child is dropped and the child becomes the root.
+     */
+    private void fixInternal(TransactionId tid, Map<PageId, Page> dirty, BTreeInternalPage page)
+            throws DbException, TransactionAbortedException {
+        if (page.getParentId() == null) {
+            if (page.getNumKeys() == 0) {
+                BTreePage child = (BTreePage) getPage(tid, dirty, page.getChildId(0), Permissions.READ_WRITE);
+                child.setParent(0);
+                getRootPtr(tid, dirty, Permissions.READ_WRITE).setRootId(child.getId());
+                freePage(tid, dirty, page);
+            }
+            return;
+        }
+        int min = page.getMaxKeys() / 2;
+        if (page.getNumKeys() >= min) {
+            return;
+        }
+        BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, dirty, page.getParentId(),
+                Permissions.READ_WRITE);
+        int i = parent.children.indexOf(page.getId().pageNumber());
+        if (i > 0) {
+            BTreeInternalPage left = (BTreeInternalPage) getPage(tid, dirty, parent.getChildId(i - 1),
+                    Permissions.READ_WRITE);
+            if (left.getNumKeys() <= min) {
+                mergeInternal(tid, dirty, parent, left, page, i - 1);
+                return;
+            }
+            while (left.getNumKeys() > page.getNumKeys() + 1) {
+                page.keys.add(0, parent.keys.get(i - 1));
+                page.children.add(0, left.children.remove(left.children.size() - 1));
+                parent.keys.set(i - 1, left.keys.remove(left.keys.size() - 1));
+                adopt(tid, dirty, page, 0, 1);
+            }
+        } else {
+            BTreeInternalPage right = (BTreeInternalPage) getPage(tid, dirty, parent.getChildId(i + 1),
+                    Permissions.READ_WRITE);
+            if (right.getNumKeys() <= min) {
+                mergeInternal(tid, dirty, parent, page, right, i);
+                return;
+            }
+            while (right.getNumKeys() > page.getNumKeys() + 1) {
+                page.keys.add(parent.keys.get(i));
+                page.children.add(right.children.remove(0));
+                parent.keys.set(i, right.keys.remove(0));
+                adopt(tid, dirty, page, page.children.size() - 1, page.children.size());
+            }
+        }
+    }
+
+    /**
+     * Moves the key between left and right down from their parent, and
+     * every key and child of right into left.
+     */
+    private void mergeInternal(TransactionId tid, Map<PageId, Page> dirty, BTreeInternalPage parent,
+                               BTreeInternalPage left, BTreeInternalPage right, int separator)
+            throws DbException, TransactionAbortedException {
+        int first = left.children.size();
+        left.keys.add(parent.keys.remove(separator));
+        left.keys.addAll(right.keys);
+        left.children.addAll(right.children);
+        parent.children.remove(separator + 1);
+        adopt(tid, dirty, left, first, left.children.size());
+        freePage(tid, dirty, right);
+        fixInternal(tid, dirty, parent);
+    }
+
+    /**
+     * Loads tuples sorted on the key field into this file, which must hold
+     * no tuples. Leaves are filled and written straight to the file in
+     * order, followed by each level of internal pages, so every page is
+     * written once; the BufferPool's copies of the file's pages are
+     * discarded. The last two leaves are evened out so that neither is
+     * less than half full.
+     * <p/>
+     * Each page is logged as an UPDATE from an empty page, and each child's
+     * parent page number as an UPDATE of those bytes, and the log is
+     * forced before the pages are written, so that aborting tid or
+     * recovering from a crash empties the tree again.
+     *
+     * @param tid    the transaction doing the load
+     * @param tuples an open iterator over the tuples, in key order
+     * @return the number of tuples loaded
+     * @throws DbException if the tree is not empty or the tuples are out of
+     *                     order
+     */
+    public synchronized int bulkLoad(TransactionId tid, DbIterator tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeRootPtrPage ptr = getRootPtr(tid, new HashMap<PageId, Page>(), Permissions.READ_ONLY);
+        // pages past the root pointer, left by a load that was rolled back,
+        // are not part of the tree
+        if (ptr.getRootId() != null) {
+            throw new DbException("bulk load needs an empty tree");
+        }
+        int leafCap = BTreeLeafPage.maxTuples(td);
+        List<Integer> level = new ArrayList<Integer>();
+        List<Field> firstKeys = new ArrayList<Field>();
+        List<Tuple> pending = null;
+        List<Tuple> current = new ArrayList<Tuple>();
+        List<BTreeLeafPage> leaves = new ArrayList<BTreeLeafPage>();
+        Field last = null;
+        int count = 0;
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            Field key = t.getField(keyField);
+            if (last != null && key.compare(Predicate.Op.LESS_THAN, last)) {
+                throw new DbException("bulk load input is not sorted on field " + keyField);
+            }
+            last = key;
+            if (current.size() == leafCap) {
+                // keep one full leaf back, so the last two can be evened out
+                if (pending != null) {
+                    writeLeaf(tid, level, firstKeys, pending, true, leaves);
+                }
+                pending = current;
+                current = new ArrayList<Tuple>();
+            }
+            current.add(t);
+            count++;
+        }
+        if (pending != null) {
+            while (current.size() < pending.size() - 1) {
+                current.add(0, pending.remove(pending.size() - 1));
+            }
+            writeLeaf(tid, level, firstKeys, pending, true, leaves);
+        }
+        if (!current.isEmpty()) {
+            writeLeaf(tid, level, firstKeys, current, false, leaves);
+        }
+        writeLogged(tid, leaves);
+        if (level.isEmpty()) {
+            return 0;
+        }
+
+        int category = BTreePageId.LEAF;
+        int fanout = BTreeInternalPage.maxKeys(td.getFieldType(keyField)) + 1;
+        LogFile log = Database.getLogFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            while (level.size() > 1) {
+                List<BTreeInternalPage> parents = new ArrayList<BTreeInternalPage>();
+                List<Field> parentKeys = new ArrayList<Field>();
+                int groups = (level.size() + fanout - 1) / fanout;
+                int start = 0;
+                for (int g = 0; g < groups; g++) {
+                    int size = level.size() / groups + (g < level.size() % groups ? 1 : 0);
+                    int pgNo = level.get(level.size() - 1) + 1 + g;
+                    BTreeInternalPage page = new BTreeInternalPage(new BTreePageId(id, pgNo, BTreePageId.INTERNAL),
+                            new byte[BufferPool.getPageSize()]);
+                    page.childCategory = category;
+                    page.children.addAll(level.subList(start, start + size));
+                    page.keys.addAll(firstKeys.subList(start + 1, start + size));
+                    for (int child : page.children) {
+                        // only the parent page number changes; the rest of
+                        // the empty image stands for the bytes left alone
+                        BTreePage patch = emptyPage(new BTreePageId(id, child, category));
+                        patch.setParent(pgNo);
+                        log.logWrite(tid, patch.getBeforeImage(), patch);
+                    }
+                    log.logWrite(tid, page.getBeforeImage(), page);
+                    parents.add(page);
+                    parentKeys.add(firstKeys.get(start));
+                    start += size;
+                }
+                log.force();
+                level = new ArrayList<Integer>();
+                for (BTreeInternalPage page : parents) {
+                    int pgNo = page.getId().pageNumber();
+                    for (int child : page.children) {
+                        // every page begins with its parent's page number
+                        raf.seek((long) BufferPool.getPageSize() * child);
+                        raf.writeInt(pgNo);
+                        log.pageWritten(new BTreePageId(id, child, category));
+                    }
+                    raf.seek((long) BufferPool.getPageSize() * pgNo);
+                    raf.write(page.getPageData());
+                    log.pageWritten(page.getId());
+                    level.add(pgNo);
+                }
+                firstKeys = parentKeys;
+                category = BTreePageId.INTERNAL;
+            }
+        } finally {
+            raf.close();
+        }
+
+        BTreeRootPtrPage root = new BTreeRootPtrPage(rootPtrId(), ptr.getPageData());
+        root.setRootId(new BTreePageId(id, level.get(0), category));
+        writeLogged(tid, Collections.singletonList(root));
+        BufferPool pool = Database.getBufferPool();
+        for (int pgNo = 0; pgNo < numPages(); pgNo++) {
+            for (int c = BTreePageId.ROOT_PTR; c <= BTreePageId.LEAF; c++) {
+                pool.discardPage(new BTreePageId(id, pgNo, c));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the next leaf of a bulk load, after any already added. Leaves
+     * are written HeapFile.BULK_WRITE_PAGES at a time.
+     *
+     * @param leaves    the page numbers of the leaves added so far
+     * @param firstKeys the first key of each of those leaves
+     * @param more      whether another leaf follows this one
+     * @param unwritten the leaves not yet written
+     */
+    private void writeLeaf(TransactionId tid, List<Integer> leaves, List<Field> firstKeys, List<Tuple> tuples,
+                           boolean more, List<BTreeLeafPage> unwritten) throws IOException {
+        int pgNo = leaves.size() + 1;
+        BTreeLeafPage leaf = (BTreeLeafPage) emptyPage(new BTreePageId(id, pgNo, BTreePageId.LEAF));
+        leaf.tuples.addAll(tuples);
+        leaf.left = pgNo - 1;
+        leaf.right = more ? pgNo + 1 : 0;
+        leaves.add(pgNo);
+        firstKeys.add(leaf.key(0));
+        unwritten.add(leaf);
+        if (unwritten.size() == HeapFile.BULK_WRITE_PAGES) {
+            writeLogged(tid, unwritten);
+            unwritten.clear();
+        }
+    }
+
+    /**
+     * @return an empty internal or leaf page
+     */
+    private static BTreePage emptyPage(BTreePageId pid) throws IOException {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        if (pid.getCategory() == BTreePageId.LEAF) {
+            return new BTreeLeafPage(pid, data);
+        }
+        return new BTreeInternalPage(pid, data);
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new LeafIterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples passing a predicate, in key order.
+     * A predicate comparing the key field with a constant sets where the
+     * scan starts and stops, so only the leaves holding matching keys and
+     * the pages on the path to the first of them are read. Other predicates
+     * are checked against every tuple.
+     *
+     * @param tid  the transaction doing the scan
+     * @param pred the predicate, whose field numbers index the table's
+     *             fields, or null to return every tuple
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate pred) {
+        return new LeafIterator(tid, pred);
+    }
+
+    class LeafIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final Predicate pred;
+        private boolean open;
+        // whether the scan has found its first leaf
+        private boolean started;
+        private BTreeLeafPage leaf;
+        private int index;
+        private Tuple next;
+
+        LeafIterator(TransactionId tid, Predicate pred) {
+            this.tid = tid;
+            this.pred = pred;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            open = true;
+            rewind();
+        }
+
+        /**
+         * @return the operand of the predicate if it compares the key field
+         * with a constant of the key's type, otherwise null
+         */
+        private Field keyOperand() {
+            if (pred == null || pred.getClass() != Predicate.class || pred.getField() != keyField) {
+                return null;
+            }
+            Field operand = pred.getOperand();
+            if (operand == null || operand.getType() != td.getFieldType(keyField)) {
+                return null;
+            }
+            if (pred.getOp() == Predicate.Op.LIKE && operand.getType() != Type.INT_TYPE) {
+                return null;
+            }
+            return operand;
+        }
+
+        private Field startKey() {
+            Field operand = keyOperand();
+            switch (pred == null || operand == null ? Predicate.Op.NOT_EQUALS : pred.getOp()) {
+                case EQUALS:
+                case LIKE:
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQ:
+                    return operand;
+                default:
+                    return null;
+            }
+        }
+
+        private boolean pastEnd(Tuple t) {
+            Field operand = keyOperand();
+            switch (operand == null ? Predicate.Op.NOT_EQUALS : pred.getOp()) {
+                case EQUALS:
+                case LIKE:
+                case LESS_THAN_OR_EQ:
+                    return t.getField(keyField).compare(Predicate.Op.GREATER_THAN, operand);
+                case LESS_THAN:
+                    return t.getField(keyField).compare(Predicate.Op.GREATER_THAN_OR_EQ, operand);
+                default:
+                    return false;
+            }
+        }
+
+        private Tuple readNext() throws DbException, TransactionAbortedException {
+            BufferPool pool = Database.getBufferPool();
+            while (true) {
+                if (leaf == null) {
+                    if (started) {
+                        return null;
+                    }
+                    started = true;
+                    BTreeRootPtrPage ptr = (BTreeRootPtrPage) pool.getPage(tid, rootPtrId(), Permissions.READ_ONLY);
+                    if (ptr.getRootId() == null) {
+                        return null;
+                    }
+                    Field start = startKey();
+                    leaf = findLeaf(tid, new HashMap<PageId, Page>(), ptr.getRootId(), Permissions.READ_ONLY, start);
+                    index = start == null ? 0 : leaf.lowerBound(start);
+                }
+                if (index >= leaf.getNumTuples()) {
+                    BTreePageId right = leaf.getRightSiblingId();
+                    leaf = right == null ? null : (BTreeLeafPage) pool.getPage(tid, right, Permissions.READ_ONLY);
+                    index = 0;
+                    continue;
+                }
+                Tuple t = leaf.getTuple(index++);
+                if (pastEnd(t)) {
+                    leaf = null;
+                    return null;
+                }
+                if (pred == null || pred.filter(t)) {
+                    return t;
+                }
+            }
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (open && next == null) {
+                next = readNext();
+            }
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            started = false;
+            leaf = null;
+            next = null;
+        }
+
+        public void close() {
+            open = false;
+            leaf = null;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * An internal page of a BTreeFile. It holds n keys and the page numbers of
+ * n + 1 children; every key in child i is no greater than key i, and every
+ * key in child i + 1 is no less. All children of a page are of the same
+ * kind, internal or leaf.
+ * <p/>
+ * Layout: the parent page number, the category of the children, the number
+ * of keys, the child page numbers, then the keys.
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    int childCategory;
+    final List<Field> keys = new ArrayList<Field>();
+    final List<Integer> children = new ArrayList<Integer>();
+
+    /**
+     * Reads an internal page.
+     *
+     * @param id   the id of the page
+     * @param data the bytes of the page, as returned by getPageData
+     */
+    public BTreeInternalPage(BTreePageId id, byte[] data) throws IOException {
+        super(id);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        parent = dis.readInt();
+        childCategory = dis.readByte();
+        int numKeys = dis.readInt();
+        if (childCategory != 0) {
+            for (int i = 0; i <= numKeys; i++) {
+                children.add(dis.readInt());
+            }
+        }
+        Type keyType = td.getFieldType(keyField);
+        for (int i = 0; i < numKeys; i++) {
+            keys.add(readField(dis, keyType));
+        }
+        setBeforeImage();
+    }
+
+    void writeBody(DataOutputStream dos) throws IOException {
+        dos.writeByte(childCategory);
+        dos.writeInt(keys.size());
+        for (int child : children) {
+            dos.writeInt(child);
+        }
+        for (Field key : keys) {
+            key.serialize(dos);
+        }
+    }
+
+    public BTreeInternalPage getBeforeImage() {
+        try {
+            return new BTreeInternalPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the most keys an internal page over the given key type holds
+     */
+    static int maxKeys(Type keyType) {
+        // n keys and n + 1 children
+        return (bodySize(5) - 4) / (keyType.getLen() + 4);
+    }
+
+    public int getNumKeys() {
+        return keys.size();
+    }
+
+    public int getMaxKeys() {
+        return maxKeys(td.getFieldType(keyField));
+    }
+
+    public Field getKey(int i) {
+        return keys.get(i);
+    }
+
+    /**
+     * @return the id of child i, counting from 0
+     */
+    public BTreePageId getChildId(int i) {
+        return new BTreePageId(pid.getTableId(), children.get(i), childCategory);
+    }
+
+    /**
+     * @return the child a search for key goes to: the first whose range
+     * can hold key, or the first child if key is null
+     */
+    int childFor(Field key) {
+        if (key == null) {
+            return 0;
+        }
+        int lo = 0, hi = keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys.get(mid).compare(Predicate.Op.LESS_THAN, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Adds a key and the child to its right, next to an existing child.
+     *
+     * @param leftChild  the page number of a child of this page
+     * @param key        the key separating leftChild and rightChild
+     * @param rightChild the page number of the new child
+     */
+    void insertAfter(int leftChild, Field key, int rightChild) {
+        int i = children.indexOf(leftChild);
+        keys.add(i, key);
+        children.add(i + 1, rightChild);
+    }
+}
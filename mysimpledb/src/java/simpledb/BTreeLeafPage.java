@@ -0,0 +1,150 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A leaf page of a BTreeFile. It holds whole tuples sorted by the key
+ * field, and the page numbers of its left and right siblings, so that range
+ * scans can walk along the leaves.
+ * <p/>
+ * Layout: the parent page number, the left and right sibling page numbers
+ * (0 for none), the number of tuples, then the tuples, packed.
+ * <p/>
+ * The record id of a tuple is its position in the page, which changes as
+ * tuples are added and removed, so record ids only locate the page.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    int left;
+    int right;
+    final List<Tuple> tuples = new ArrayList<Tuple>();
+
+    /**
+     * Reads a leaf page.
+     *
+     * @param id   the id of the page
+     * @param data the bytes of the page, as returned by getPageData
+     */
+    public BTreeLeafPage(BTreePageId id, byte[] data) throws IOException {
+        super(id);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        parent = dis.readInt();
+        left = dis.readInt();
+        right = dis.readInt();
+        int count = dis.readInt();
+        for (int i = 0; i < count; i++) {
+            Tuple t = new Tuple(td);
+            for (int j = 0; j < td.numFields(); j++) {
+                t.setField(j, readField(dis, td.getFieldType(j)));
+            }
+            t.setRecordId(new RecordId(pid, i));
+            tuples.add(t);
+        }
+        setBeforeImage();
+    }
+
+    void writeBody(DataOutputStream dos) throws IOException {
+        dos.writeInt(left);
+        dos.writeInt(right);
+        dos.writeInt(tuples.size());
+        for (Tuple t : tuples) {
+            for (int j = 0; j < td.numFields(); j++) {
+                t.getField(j).serialize(dos);
+            }
+        }
+    }
+
+    public BTreeLeafPage getBeforeImage() {
+        try {
+            return new BTreeLeafPage(pid, getBeforeImageData());
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the most tuples a leaf page of the given schema holds
+     */
+    static int maxTuples(TupleDesc td) {
+        return bodySize(12) / td.getSize();
+    }
+
+    public int getNumTuples() {
+        return tuples.size();
+    }
+
+    public int getMaxTuples() {
+        return maxTuples(td);
+    }
+
+    /**
+     * @return the tuple at a position, with its record id set
+     */
+    public Tuple getTuple(int i) {
+        Tuple t = tuples.get(i);
+        t.setRecordId(new RecordId(pid, i));
+        return t;
+    }
+
+    Field key(int i) {
+        return tuples.get(i).getField(keyField);
+    }
+
+    /**
+     * @return the position of the first tuple whose key is not less than
+     * key, or the number of tuples if there is none
+     */
+    int lowerBound(Field key) {
+        int lo = 0, hi = tuples.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid).compare(Predicate.Op.LESS_THAN, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Adds a tuple after any with the same key.
+     *
+     * @throws DbException if the page is full
+     */
+    void insertTuple(Tuple t) throws DbException {
+        if (tuples.size() >= getMaxTuples()) {
+            throw new DbException("page full");
+        }
+        Field key = t.getField(keyField);
+        int lo = 0, hi = tuples.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid).compare(Predicate.Op.LESS_THAN_OR_EQ, key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        tuples.add(lo, t);
+        t.setRecordId(new RecordId(pid, lo));
+    }
+
+    /**
+     * @return the id of the right sibling, or null if this is the last leaf
+     */
+    public BTreePageId getRightSiblingId() {
+        return right == 0 ? null : new BTreePageId(pid.getTableId(), right, BTreePageId.LEAF);
+    }
+
+    /**
+     * @return the id of the left sibling, or null if this is the first leaf
+     */
+    public BTreePageId getLeftSiblingId() {
+        return left == 0 ? null : new BTreePageId(pid.getTableId(), left, BTreePageId.LEAF);
+    }
+}
@@ -0,0 +1,101 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * The parts common to the internal and leaf pages of a BTreeFile: the page
+ * id, dirty state, before image, and the number of the parent page. Both
+ * kinds of page begin with the parent's page number; 0 (the root pointer
+ * page) means the page is the root.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage implements Page {
+
+    final BTreePageId pid;
+    final TupleDesc td;
+    final int keyField;
+    int parent;
+
+    private volatile TransactionId dirtier;
+    private byte[] oldData;
+    private final Byte oldDataLock = new Byte((byte) 0);
+
+    BTreePage(BTreePageId pid) {
+        this.pid = pid;
+        BTreeFile file = (BTreeFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
+        this.td = file.getTupleDesc();
+        this.keyField = file.keyField();
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the id of the parent page, or null if this page is the root
+     */
+    public BTreePageId getParentId() {
+        return parent == 0 ? null : new BTreePageId(pid.getTableId(), parent, BTreePageId.INTERNAL);
+    }
+
+    void setParent(int pgNo) {
+        parent = pgNo;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /**
+     * Writes the body of this page, after the parent page number.
+     */
+    abstract void writeBody(DataOutputStream dos) throws IOException;
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.getPageSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(parent);
+            writeBody(dos);
+            dos.write(new byte[BufferPool.getPageSize() - dos.size()]);
+            dos.flush();
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * @return the number of bytes a page can hold after the parent page
+     * number and the given number of header bytes
+     */
+    static int bodySize(int headerBytes) {
+        return BufferPool.getPageSize() - 4 - headerBytes;
+    }
+
+    byte[] getBeforeImageData() {
+        synchronized (oldDataLock) {
+            return oldData;
+        }
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+
+    static Field readField(DataInputStream dis, Type type) throws IOException {
+        try {
+            return type.parse(dis);
+        } catch (java.text.ParseException e) {
+            throw new IOException("parsing error: " + e.getMessage());
+        }
+    }
+}
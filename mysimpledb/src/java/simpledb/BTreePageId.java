@@ -0,0 +1,72 @@
+package simpledb;
+
+/**
+ * Unique identifier for the pages of a BTreeFile. Besides the table and
+ * page number it records what kind of page it names, so that the file knows
+ * how to read it.
+ */
+public class BTreePageId implements PageId {
+
+    /**
+     * Page 0 of every B+tree file, which records where the root is
+     */
+    public static final int ROOT_PTR = 0;
+    public static final int INTERNAL = 1;
+    public static final int LEAF = 2;
+
+    private final int tableId;
+    private final int pgNo;
+    private final int category;
+
+    /**
+     * Constructor.
+     *
+     * @param tableId  the table that is being referenced
+     * @param pgNo     the page number in that table
+     * @param category ROOT_PTR, INTERNAL or LEAF
+     */
+    public BTreePageId(int tableId, int pgNo, int category) {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+        this.category = category;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int pageNumber() {
+        return pgNo;
+    }
+
+    /**
+     * @return ROOT_PTR, INTERNAL or LEAF
+     */
+    public int getCategory() {
+        return category;
+    }
+
+    public int hashCode() {
+        return 31 * (31 * tableId + pgNo) + category;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof BTreePageId)) {
+            return false;
+        }
+        BTreePageId other = (BTreePageId) o;
+        return other.tableId == tableId && other.pgNo == pgNo && other.category == category;
+    }
+
+    /**
+     * @return the table id, page number and category, matching the
+     * constructor's arguments
+     */
+    public int[] serialize() {
+        return new int[]{tableId, pgNo, category};
+    }
+
+    public String toString() {
+        return "BTreePageId(" + tableId + ", " + pgNo + ", " + category + ")";
+    }
+}
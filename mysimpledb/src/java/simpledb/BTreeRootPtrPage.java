@@ -0,0 +1,111 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Page 0 of a BTreeFile. It records the page number and kind of the root
+ * page (0 while the tree is empty) and the page numbers of pages freed by
+ * merges, which are reused before the file grows.
+ * <p/>
+ * Layout: the root page number, the root category, the number of free
+ * pages, then the free page numbers.
+ *
+ * @see BTreeFile
+ */
+public class BTreeRootPtrPage implements Page {
+
+    private final BTreePageId pid;
+    int root;
+    int rootCategory;
+    final List<Integer> free = new ArrayList<Integer>();
+    private volatile TransactionId dirtier;
+    private byte[] oldData;
+    private final Byte oldDataLock = new Byte((byte) 0);
+
+    /**
+     * Reads a root pointer page.
+     *
+     * @param id   the id of the page
+     * @param data the bytes of the page, as returned by getPageData
+     */
+    public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+        this.pid = id;
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        root = dis.readInt();
+        rootCategory = dis.readByte();
+        int numFree = dis.readInt();
+        for (int i = 0; i < numFree; i++) {
+            free.add(dis.readInt());
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return the most free page numbers the page can hold; pages freed
+     * beyond that are not reused
+     */
+    static int maxFree() {
+        return (BufferPool.getPageSize() - 9) / 4;
+    }
+
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the id of the root page, or null if the tree is empty
+     */
+    public BTreePageId getRootId() {
+        return root == 0 ? null : new BTreePageId(pid.getTableId(), root, rootCategory);
+    }
+
+    void setRootId(BTreePageId id) {
+        root = id.pageNumber();
+        rootCategory = id.getCategory();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.getPageSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(root);
+            dos.writeByte(rootCategory);
+            dos.writeInt(free.size());
+            for (int pgNo : free) {
+                dos.writeInt(pgNo);
+            }
+            dos.write(new byte[BufferPool.getPageSize() - dos.size()]);
+            dos.flush();
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    public BTreeRootPtrPage getBeforeImage() {
+        try {
+            synchronized (oldDataLock) {
+                return new BTreeRootPtrPage(pid, oldData);
+            }
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Adapts a tuple-at-a-time DbIterator to the BatchIterator interface. Every
+ * BatchIterator is also a DbIterator, so no adapter is needed in the other
+ * direction.
+ */
+public class BatchAdapter implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DbIterator child;
+    private transient TupleBatch batch;
+
+    /**
+     * @param child the iterator to read tuples from
+     */
+    public BatchAdapter(DbIterator child) {
+        this.child = child;
+    }
+
+    /**
+     * @return it if it already produces batches, otherwise a BatchAdapter
+     * wrapping it.
+     */
+    public static BatchIterator of(DbIterator it) {
+        if (it instanceof BatchIterator) {
+            return (BatchIterator) it;
+        }
+        return new BatchAdapter(it);
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null) {
+            batch = new TupleBatch();
+        }
+        batch.clear();
+        while (!batch.isFull() && child.hasNext()) {
+            batch.add(child.next());
+        }
+        return batch.size() > 0 ? batch : null;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return child.hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        return child.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+    }
+}
@@ -0,0 +1,24 @@
+package simpledb;
+
+/**
+ * BatchIterator is a DbIterator that can also hand out its tuples a block at
+ * a time, so that a plan pays for one virtual call per batch instead of one
+ * hasNext()/next() pair per tuple at every level. Callers should use either
+ * the tuple interface or the batch interface for one pass over the iterator,
+ * not both.
+ *
+ * @see TupleBatch
+ * @see BatchAdapter
+ */
+public interface BatchIterator extends DbIterator {
+
+    /**
+     * Returns the next non-empty batch of tuples, or null if the iteration
+     * is finished. The returned batch is only valid until the next call to
+     * nextBatch(), rewind() or close().
+     *
+     * @return the next batch of tuples, or null if there are no more tuples.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+}
@@ -41,6 +41,9 @@ public class BufferPool {
     ConcurrentHashMap<PageId, Page> buffer;
     ConcurrentHashMap<PageId, Long> accessTime;
     int maxPages;
+    // pages logged by writeDirtyPages and not yet written, each with the
+    // LSN of its latest UPDATE record; protected by this
+    private final Map<PageId, Long> unwritten = new HashMap<PageId, Long>();
     
     public BufferPool(int numPages) {
     	buffer = new ConcurrentHashMap<PageId, Page>();
@@ -83,7 +86,11 @@ public class BufferPool {
         }
         Catalog cat = Database.getCatalog();
         Page newPage = cat.getDatabaseFile(pid.getTableId()).readPage(pid);
-        buffer.put(pid, newPage);
+        // another thread may have read the page meanwhile; keep one copy
+        Page cached = buffer.putIfAbsent(pid, newPage);
+        if (cached != null) {
+            newPage = cached;
+        }
         accessTime.put(pid, System.currentTimeMillis());
         return newPage;
         /*
@@ -92,6 +99,17 @@ public class BufferPool {
         }*/
     }
 
+    /**
+     * Returns the cached copy of a page without reading it from disk,
+     * acquiring locks or affecting eviction order.
+     *
+     * @param pid the ID of the page
+     * @return the cached page, or null if the page is not in the buffer pool
+     */
+    Page peekPage(PageId pid) {
+        return buffer.get(pid);
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -146,7 +164,8 @@ public class BufferPool {
      * <p/>
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have
-     * been dirtied so that future requests see up-to-date pages.
+     * been dirtied so that future requests see up-to-date pages. The tuple
+     * is added to the table's hash indexes, if any.
      *
      * @param tid     the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -157,11 +176,63 @@ public class BufferPool {
         DbFile file = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> dirtyPages = file.insertTuple(tid, t);
 
+        cacheDirtyPages(tid, dirtyPages);
+        for (HashIndex index : Database.getCatalog().getIndexes(tableId)) {
+            cacheDirtyPages(tid, index.insert(tid, t, t.getRecordId()));
+        }
+        TableStats stats = Database.getCatalog().getTableStats(tableId);
+        if (stats != null) {
+            stats.addTuple(t);
+        }
+    }
+
+    /**
+     * Marks pages changed by an insert or delete dirty, and puts back any
+     * that are no longer cached, as files that change several pages may
+     * have had some of them evicted along the way.
+     */
+    private synchronized void cacheDirtyPages(TransactionId tid, List<Page> dirtyPages)
+            throws DbException {
         for (Page p : dirtyPages) {
             p.markDirty(true, tid);
+            if (buffer.get(p.getId()) != p) {
+                if (!buffer.containsKey(p.getId()) && buffer.size() >= maxPages) {
+                    evictPage();
+                }
+                buffer.put(p.getId(), p);
+            }
+            accessTime.put(p.getId(), System.currentTimeMillis());
         }
     }
 
+    /**
+     * Add every tuple produced by tuples to the specified table on behalf of
+     * transaction tid. Heap files load the tuples with
+     * {@link HeapFile#bulkInsert}, which writes new pages straight to the
+     * file, logging each one so that aborting tid removes the tuples as it
+     * would tuples added one at a time; other files, and heap files with
+     * hash indexes to keep up to date, fall back to inserting one tuple at
+     * a time.
+     *
+     * @param tid     the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples  an open iterator over the tuples to add
+     * @return the number of tuples added
+     */
+    public int bulkInsertTuples(TransactionId tid, int tableId, DbIterator tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (file instanceof HeapFile && Database.getCatalog().getIndexes(tableId).isEmpty()) {
+            return ((HeapFile) file).bulkInsert(tid, tuples);
+        }
+        int count = 0;
+        while (tuples.hasNext()) {
+            insertTuple(tid, tableId, tuples.next());
+            count++;
+        }
+        return count;
+    }
+
     /**
      * Remove the specified tuple from the buffer pool.
      * Will acquire a write lock on the page the tuple is removed from and any
@@ -169,19 +240,78 @@ public class BufferPool {
      * <p/>
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have
-     * been dirtied so that future requests see up-to-date pages.
+     * been dirtied so that future requests see up-to-date pages. The tuple
+     * is removed from the table's hash indexes, if any.
      *
      * @param tid the transaction deleting the tuple.
      * @param t   the tuple to delete
      */
     public void deleteTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-        int tableId = t.getRecordId().getPageId().getTableId();
+        RecordId rid = t.getRecordId();
+        int tableId = rid.getPageId().getTableId();
         DbFile file = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> dirtyPages = file.deleteTuple(tid, t);
 
-        for (Page p : dirtyPages) {
-            p.markDirty(true, tid);
+        cacheDirtyPages(tid, dirtyPages);
+        unindex(tid, tableId, t, rid);
+        TableStats stats = Database.getCatalog().getTableStats(tableId);
+        if (stats != null) {
+            stats.removeTuple(t);
+        }
+    }
+
+    /**
+     * Remove a set of tuples on behalf of transaction tid. Tuples in heap
+     * files are grouped by page (see {@link HeapFile#deleteTuples}), so each
+     * page touched is fetched and marked dirty once; tuples in other files
+     * are deleted one at a time. Table statistics and hash indexes are
+     * updated for every tuple deleted.
+     *
+     * @param tid    the transaction deleting the tuples
+     * @param tuples the tuples to delete
+     */
+    public void deleteTuples(TransactionId tid, List<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        Map<Integer, List<RecordId>> byTable = new LinkedHashMap<Integer, List<RecordId>>();
+        List<Tuple> heapTuples = new ArrayList<Tuple>();
+        for (Tuple t : tuples) {
+            int tableId = t.getRecordId().getPageId().getTableId();
+            DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+            if (!(file instanceof HeapFile)) {
+                deleteTuple(tid, t);
+                continue;
+            }
+            List<RecordId> rids = byTable.get(tableId);
+            if (rids == null) {
+                rids = new ArrayList<RecordId>();
+                byTable.put(tableId, rids);
+            }
+            rids.add(t.getRecordId());
+            heapTuples.add(t);
+        }
+
+        for (Map.Entry<Integer, List<RecordId>> e : byTable.entrySet()) {
+            HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(e.getKey());
+            cacheDirtyPages(tid, file.deleteTuples(tid, e.getValue()));
+        }
+        for (Tuple t : heapTuples) {
+            int tableId = t.getRecordId().getPageId().getTableId();
+            unindex(tid, tableId, t, t.getRecordId());
+            TableStats stats = Database.getCatalog().getTableStats(tableId);
+            if (stats != null) {
+                stats.removeTuple(t);
+            }
+        }
+    }
+
+    /**
+     * Removes the entries for a deleted tuple from the table's hash indexes.
+     */
+    private void unindex(TransactionId tid, int tableId, Tuple t, RecordId rid)
+            throws DbException, IOException, TransactionAbortedException {
+        for (HashIndex index : Database.getCatalog().getIndexes(tableId)) {
+            cacheDirtyPages(tid, index.delete(tid, t.getField(index.keyField()), rid));
         }
     }
 
@@ -190,23 +320,62 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      * break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
-        Catalog cat = Database.getCatalog();
-        BufferPool buf = Database.getBufferPool();
-        for (PageId pid : buf.buffer.keySet()) {
-            Page page = null;
-            try {
-                page = buf.getPage(null, pid, null);
-            } catch (TransactionAbortedException e) {
-                System.out.println("Transaction aborted");
-                e.printStackTrace();
-            } catch (DbException e) {
-                System.out.println("Database error");
-                e.printStackTrace();
+    public void flushAllPages() throws IOException {
+        writeDirtyPages(new ArrayList<Page>(buffer.values()));
+    }
+
+    /**
+     * Writes the dirty pages among pages to disk. Following write-ahead
+     * logging, each page's update is logged as the change from its before
+     * image, whose contents then become the before image, so that the next
+     * update logged for the page starts there. The log is forced once,
+     * before any of the pages is written, through
+     * {@link LogFile#forceAppended}, so that transactions flushing their
+     * pages at the same time share the force. The force is done without
+     * holding the BufferPool unless the caller holds it (as eviction does).
+     * <p/>
+     * Each page is written as it was logged. A page that was logged again
+     * meanwhile, by a later call, is left for that call to write, and a
+     * page that was discarded is not written at all. Pages changed since
+     * they were logged stay dirty.
+     */
+    private void writeDirtyPages(List<Page> pages) throws IOException {
+        List<Page> dirty = new ArrayList<Page>();
+        List<Page> images = new ArrayList<Page>();
+        List<Long> lsns = new ArrayList<Long>();
+        LogFile log = Database.getLogFile();
+        synchronized (this) {
+            for (Page page : pages) {
+                TransactionId dirtier = page.isDirty();
+                if (dirtier != null) {
+                    long lsn = log.logWrite(dirtier, page.getBeforeImage(), page);
+                    page.setBeforeImage();
+                    dirty.add(page);
+                    images.add(page.getBeforeImage());
+                    lsns.add(lsn);
+                    unwritten.put(page.getId(), lsn);
+                }
             }
-            if (page.isDirty() != null) {
-                cat.getDatabaseFile(pid.getTableId()).writePage(page);
-                page.markDirty(false, null);
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        log.forceAppended();
+        Catalog cat = Database.getCatalog();
+        synchronized (this) {
+            for (int i = 0; i < dirty.size(); i++) {
+                Page page = dirty.get(i), image = images.get(i);
+                PageId pid = page.getId();
+                if (!lsns.get(i).equals(unwritten.get(pid))) {
+                    continue;
+                }
+                cat.getDatabaseFile(pid.getTableId()).writePage(image);
+                unwritten.remove(pid);
+                log.pageWritten(pid);
+                if (buffer.get(pid) == page
+                        && Arrays.equals(image.getPageData(), page.getPageData())) {
+                    page.markDirty(false, null);
+                }
             }
         }
     }
@@ -218,8 +387,9 @@ public class BufferPool {
      * cache.
      */
     public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // only necessary for lab6                                                                            // cosc460
+        buffer.remove(pid);
+        accessTime.remove(pid);
+        unwritten.remove(pid);
     }
 
     /**
@@ -228,30 +398,37 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized void flushPage(PageId pid) throws IOException {
-        Catalog cat = Database.getCatalog();
-        BufferPool buf = Database.getBufferPool();
-        Page page = null;
-        try {
-            page = buf.getPage(null, pid, null);
-        } catch (TransactionAbortedException e) {
-            System.out.println("Transaction aborted");
-            e.printStackTrace();
-        } catch (DbException e) {
-            System.out.println("Database error");
-            e.printStackTrace();
-        }
-        if (page.isDirty() != null) {
-            cat.getDatabaseFile(pid.getTableId()).writePage(page);
-            page.markDirty(false, null);
+        Page page = buffer.get(pid);
+        if (page != null) {
+            writeDirtyPages(Collections.singletonList(page));
         }
     }
 
     /**
      * Write all pages of the specified transaction to disk.
      */
-    public synchronized void flushPages(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2|lab3|lab4                                                         // cosc460
+    public void flushPages(TransactionId tid) throws IOException {
+        List<Page> pages = new ArrayList<Page>();
+        for (Page page : buffer.values()) {
+            // read once: the page may be written and cleaned meanwhile
+            TransactionId dirtier = page.isDirty();
+            if (dirtier != null && dirtier.equals(tid)) {
+                pages.add(page);
+            }
+        }
+        writeDirtyPages(pages);
+    }
+
+    /**
+     * Removes the pages a transaction dirtied from the buffer pool without
+     * writing them, when it rolls back.
+     */
+    synchronized void discardPages(TransactionId tid) {
+        for (Page page : new ArrayList<Page>(buffer.values())) {
+            if (page.isDirty() != null && page.isDirty().equals(tid)) {
+                discardPage(page.getId());
+            }
+        }
     }
 
     /**
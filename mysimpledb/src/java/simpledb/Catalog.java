@@ -13,24 +13,55 @@ import java.util.concurrent.ConcurrentHashMap;
  * For now, this is a stub catalog that must be populated with tables by a
  * user program before it can be used -- eventually, this should be converted
  * to a catalog that reads a catalog table from disk.
+ * <p/>
+ * The tables are held in an immutable snapshot behind a volatile reference.
+ * Lookups read the current snapshot without locking; addTable and clear
+ * build a new snapshot under the Catalog's lock and publish it, so readers
+ * always see a consistent set of tables. Hash indexes on the tables are
+ * kept in the same snapshot.
  *
  * @Threadsafe
  */
 public class Catalog {
 
-	HashMap<String, DbFile> catalogueByName;
-	HashMap<Integer, DbFile> catalogueById;
-	HashMap<Integer, String> nameById;
-	HashMap<Integer, String> pKeyById;
+    /**
+     * An immutable view of every table in the catalog.
+     */
+    private static final class Tables {
+        final Map<String, DbFile> byName;
+        final Map<Integer, DbFile> byId;
+        final Map<Integer, String> nameById;
+        final Map<Integer, String> pKeyById;
+        final Map<Integer, HashIndex> indexById;
+        final Map<Integer, List<HashIndex>> indexesByTable;
+
+        Tables(Map<String, DbFile> byName, Map<Integer, DbFile> byId,
+               Map<Integer, String> nameById, Map<Integer, String> pKeyById,
+               Map<Integer, HashIndex> indexById, Map<Integer, List<HashIndex>> indexesByTable) {
+            this.byName = byName;
+            this.byId = byId;
+            this.nameById = nameById;
+            this.pKeyById = pKeyById;
+            this.indexById = indexById;
+            this.indexesByTable = indexesByTable;
+        }
+    }
+
+    private static final Tables EMPTY = new Tables(new HashMap<String, DbFile>(),
+            new HashMap<Integer, DbFile>(), new HashMap<Integer, String>(),
+            new HashMap<Integer, String>(), new HashMap<Integer, HashIndex>(),
+            new HashMap<Integer, List<HashIndex>>());
+
+    private volatile Tables tables;
+    private volatile SystemCatalog systemCatalog;
+    private final ConcurrentHashMap<Integer, TableStats> stats = new ConcurrentHashMap<Integer, TableStats>();
+
      /**
      * Constructor.
      * Creates a new, empty catalog.
      */
     public Catalog() {
-    	catalogueByName = new HashMap<String, DbFile>();
-    	catalogueById = new HashMap<Integer, DbFile>();
-    	nameById = new HashMap<Integer, String>();
-    	pKeyById = new HashMap<Integer, String>();
+    	tables = EMPTY;
     }
 
     /**
@@ -43,11 +74,25 @@ public class Catalog {
      * @param pkeyField the name of the primary key field
      *                  conflict exists, use the last table to be added as the table for a given name.
      */
-    public void addTable(DbFile file, String name, String pkeyField) {
-    	catalogueByName.put(name, file);
-    	catalogueById.put(file.getId(), file);
-    	nameById.put(file.getId(), name);
-    	pKeyById.put(file.getId(), pkeyField);
+    public synchronized void addTable(DbFile file, String name, String pkeyField) {
+        Tables old = tables;
+        int id = file.getId();
+        Map<String, DbFile> byName = new HashMap<String, DbFile>(old.byName);
+        Map<Integer, DbFile> byId = new HashMap<Integer, DbFile>(old.byId);
+        Map<Integer, String> nameById = new HashMap<Integer, String>(old.nameById);
+        Map<Integer, String> pKeyById = new HashMap<Integer, String>(old.pKeyById);
+
+        // a table added again under a new name gives up its old one
+        String oldName = nameById.get(id);
+        if (oldName != null && byName.get(oldName) != null && byName.get(oldName).getId() == id) {
+            byName.remove(oldName);
+        }
+        byName.put(name, file);
+        byId.put(id, file);
+        nameById.put(id, name);
+        pKeyById.put(id, pkeyField);
+        tables = new Tables(byName, byId, nameById, pKeyById, old.indexById, old.indexesByTable);
+        stats.remove(id);
     }
 
     public void addTable(DbFile file, String name) {
@@ -66,18 +111,60 @@ public class Catalog {
         addTable(file, (UUID.randomUUID()).toString());
     }
 
+    /**
+     * Adds a hash index on a field of a heap file table. From then on the
+     * BufferPool keeps the index up to date as the table changes; entries
+     * for tuples already in the table are added with {@link HashIndex#build}.
+     *
+     * @param index the index to add
+     * @throws IllegalArgumentException if the indexed table is not a
+     *                                  HeapFile
+     */
+    public synchronized void addIndex(HashIndex index) {
+        Tables old = tables;
+        if (!(old.byId.get(index.getTableId()) instanceof HeapFile)) {
+            throw new IllegalArgumentException("only heap file tables can be indexed");
+        }
+        Map<Integer, HashIndex> indexById = new HashMap<Integer, HashIndex>(old.indexById);
+        Map<Integer, List<HashIndex>> indexesByTable = new HashMap<Integer, List<HashIndex>>(old.indexesByTable);
+        List<HashIndex> indexes = new ArrayList<HashIndex>(getIndexes(index.getTableId()));
+        indexes.add(index);
+        indexById.put(index.getId(), index);
+        indexesByTable.put(index.getTableId(), Collections.unmodifiableList(indexes));
+        tables = new Tables(old.byName, old.byId, old.nameById, old.pKeyById, indexById, indexesByTable);
+    }
+
+    /**
+     * @return the hash indexes on a table, which may be none
+     */
+    public List<HashIndex> getIndexes(int tableid) {
+        List<HashIndex> indexes = tables.indexesByTable.get(tableid);
+        return indexes == null ? Collections.<HashIndex>emptyList() : indexes;
+    }
+
+    /**
+     * @return a hash index on a field of a table, or null if there is none
+     */
+    public HashIndex getIndex(int tableid, int field) {
+        for (HashIndex index : getIndexes(tableid)) {
+            if (index.keyField() == field) {
+                return index;
+            }
+        }
+        return null;
+    }
+
     /**
      * Return the id of the table with a specified name,
      *
      * @throws NoSuchElementException if the table doesn't exist
      */
     public int getTableId(String name) throws NoSuchElementException {
-        if (catalogueByName.containsKey(name)) {
-        	return catalogueByName.get(name).getId();
-        }
-        else {
+        DbFile file = tables.byName.get(name);
+        if (file == null) {
         	throw new NoSuchElementException();
         }
+        return file.getId();
     }
 
     /**
@@ -88,53 +175,122 @@ public class Catalog {
      * @throws NoSuchElementException if the table doesn't exist
      */
     public TupleDesc getTupleDesc(int tableid) throws NoSuchElementException {
-        if (catalogueById.containsKey(tableid)) {
-        	return catalogueById.get(tableid).getTupleDesc();
-        }
-        else {
-        	throw new NoSuchElementException();
-        }
+        return getDatabaseFile(tableid).getTupleDesc();
     }
 
     /**
      * Returns the DbFile that can be used to read the contents of the
-     * specified table.
+     * specified table, or the HashIndex with the given id.
      *
      * @param tableid The id of the table, as specified by the DbFile.getId()
      *                function passed to addTable
      */
     public DbFile getDatabaseFile(int tableid) throws NoSuchElementException {
-        if (catalogueById.containsKey(tableid)) {
-        	return catalogueById.get(tableid);
+        Tables current = tables;
+        DbFile file = current.byId.get(tableid);
+        if (file == null) {
+            file = current.indexById.get(tableid);
         }
-        else {
+        if (file == null) {
         	throw new NoSuchElementException();
         }
+        return file;
     }
 
     public String getPrimaryKey(int tableid) {
-        return pKeyById.get(tableid);
+        return tables.pKeyById.get(tableid);
     }
 
     public Iterator<Integer> tableIdIterator() {
-        return catalogueById.keySet().iterator();
+        return Collections.unmodifiableSet(tables.byId.keySet()).iterator();
     }
 
     public String getTableName(int id) {
-    	return nameById.get(id);
+    	return tables.nameById.get(id);
+    }
+
+    /**
+     * @return an object that is replaced whenever tables are added or
+     * removed, so callers can tell whether something they derived from the
+     * catalog (a query plan, say) may be stale
+     */
+    Object getVersion() {
+        return tables;
     }
 
     /**
      * Delete all tables from the catalog
      */
-    public void clear() {
-        // some code goes here
+    public synchronized void clear() {
+        tables = EMPTY;
+        systemCatalog = null;
+        stats.clear();
+    }
+
+    /**
+     * @return the statistics of a table, or null if none have been computed
+     */
+    public TableStats getTableStats(int tableid) {
+        return stats.get(tableid);
+    }
+
+    /**
+     * Sets the statistics of a table.
+     */
+    public void setTableStats(int tableid, TableStats tableStats) {
+        stats.put(tableid, tableStats);
+    }
+
+    /**
+     * Computes statistics for every table in the catalog. If a system
+     * catalog is open, the tuple and page counts are recorded in it too.
+     */
+    public void computeStatistics() throws DbException {
+        SystemCatalog sc = systemCatalog;
+        Iterator<Integer> it = tableIdIterator();
+        while (it.hasNext()) {
+            int tableid = it.next();
+            TableStats s = TableStats.compute(tableid);
+            setTableStats(tableid, s);
+            if (sc != null) {
+                try {
+                    sc.setStats(tableid, (int) s.totalTuples(), s.numPages());
+                } catch (IOException e) {
+                    throw new DbException("could not record statistics: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the persistent system catalog in a database directory, creating
+     * it if needed, and adds every table it lists to this catalog. Tables
+     * created through the returned SystemCatalog are recorded on disk.
+     *
+     * @param dir the database directory
+     * @return the system catalog
+     * @see SystemCatalog
+     */
+    public SystemCatalog openSystemCatalog(File dir) throws IOException, DbException {
+        SystemCatalog sc = new SystemCatalog(this, dir);
+        systemCatalog = sc;
+        return sc;
+    }
+
+    /**
+     * @return the system catalog opened by openSystemCatalog, or null if
+     * none is open
+     */
+    public SystemCatalog getSystemCatalog() {
+        return systemCatalog;
     }
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
      *
      * @param catalogFile
+     * @throws IllegalArgumentException if the file cannot be read or has an
+     *                                  invalid entry
      */
     public void loadSchema(String catalogFile) {
         String line = "";
@@ -159,15 +315,13 @@ public class Catalog {
                     else if (els2[1].trim().toLowerCase().equals("string"))
                         types.add(Type.STRING_TYPE);
                     else {
-                        System.out.println("Unknown type " + els2[1]);
-                        System.exit(0);
+                        throw new IllegalArgumentException("Unknown type " + els2[1]);
                     }
                     if (els2.length == 3) {
                         if (els2[2].trim().equals("pk"))
                             primaryKey = els2[0].trim();
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
-                            System.exit(0);
+                            throw new IllegalArgumentException("Unknown annotation " + els2[2]);
                         }
                     }
                 }
@@ -179,11 +333,9 @@ public class Catalog {
                 System.out.println("Added table : " + name + " with schema " + t + (primaryKey.equals("")? "":(" key is " + primaryKey)));
             }
         } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(0);
+            throw new IllegalArgumentException("Could not read catalog file " + catalogFile, e);
         } catch (IndexOutOfBoundsException e) {
-            System.out.println("Invalid catalog entry : " + line);
-            System.exit(0);
+            throw new IllegalArgumentException("Invalid catalog entry : " + line, e);
         }
     }
 }
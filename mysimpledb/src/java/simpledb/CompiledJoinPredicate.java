@@ -0,0 +1,17 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * A JoinPredicate turned into an evaluator specialized for the field type
+ * and operator it tests. Instances are made by {@link PredicateCompiler}.
+ */
+public abstract class CompiledJoinPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return true if the tuples satisfy the compiled join predicate.
+     */
+    public abstract boolean filter(Tuple t1, Tuple t2);
+}
@@ -0,0 +1,28 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * A Predicate, or a combination of Predicates, turned into an evaluator
+ * specialized for the field type and operator it tests. Instances are made
+ * by {@link PredicateCompiler}.
+ */
+public abstract class CompiledPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param t The tuple to test
+     * @return true if t satisfies the compiled predicate, false otherwise.
+     */
+    public abstract boolean filter(Tuple t);
+
+    /**
+     * @return a rough relative cost of one call to filter(), used to order
+     * the terms of a conjunction or disjunction. A single int comparison
+     * costs 1.
+     */
+    int cost() {
+        return 1;
+    }
+}
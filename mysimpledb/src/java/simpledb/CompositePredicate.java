@@ -0,0 +1,134 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * CompositePredicate combines Predicates with AND, OR and NOT so that a
+ * whole WHERE clause can be evaluated by a single Filter. Children may be
+ * plain Predicates or other CompositePredicates.
+ * <p/>
+ * filter() evaluates children in the order given, with short-circuiting.
+ * When a Filter compiles a CompositePredicate (see {@link PredicateCompiler})
+ * the AND and OR nodes also reorder their children at runtime by observed
+ * selectivity and estimated cost, so the cheapest, most decisive test runs
+ * first.
+ */
+public class CompositePredicate extends Predicate {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The ways children can be combined
+     */
+    public enum Kind {
+        AND, OR, NOT
+    }
+
+    private final Kind kind;
+    private final List<Predicate> children;
+
+    /**
+     * Constructor.
+     *
+     * @param kind     how children are combined
+     * @param children the predicates to combine. NOT takes exactly one child;
+     *                 AND and OR take at least one.
+     */
+    public CompositePredicate(Kind kind, List<Predicate> children) {
+        if (kind == Kind.NOT ? children.size() != 1 : children.isEmpty()) {
+            throw new IllegalArgumentException("wrong number of children for " + kind);
+        }
+        this.kind = kind;
+        this.children = Collections.unmodifiableList(new ArrayList<Predicate>(children));
+    }
+
+    /**
+     * @return a predicate that holds when all of preds hold
+     */
+    public static CompositePredicate and(Predicate... preds) {
+        return new CompositePredicate(Kind.AND, Arrays.asList(preds));
+    }
+
+    /**
+     * @return a predicate that holds when any of preds holds
+     */
+    public static CompositePredicate or(Predicate... preds) {
+        return new CompositePredicate(Kind.OR, Arrays.asList(preds));
+    }
+
+    /**
+     * @return a predicate that holds when pred does not
+     */
+    public static CompositePredicate not(Predicate pred) {
+        return new CompositePredicate(Kind.NOT, Arrays.asList(pred));
+    }
+
+    /**
+     * @return how the children of this predicate are combined
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the (unmodifiable) children of this predicate
+     */
+    public List<Predicate> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return a number that changes whenever the operand of any predicate
+     * under this one changes
+     */
+    int getVersion() {
+        int v = 0;
+        for (Predicate p : children) {
+            v += p.getVersion();
+        }
+        return v;
+    }
+
+    /**
+     * Evaluates the children in order, stopping as soon as the result is
+     * known.
+     *
+     * @param t The tuple to compare against
+     * @return true if t satisfies the combination of the children
+     */
+    public boolean filter(Tuple t) {
+        switch (kind) {
+            case NOT:
+                return !children.get(0).filter(t);
+            case AND:
+                for (Predicate p : children) {
+                    if (!p.filter(t)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (Predicate p : children) {
+                    if (p.filter(t)) {
+                        return true;
+                    }
+                }
+                return false;
+        }
+        throw new IllegalStateException("impossible to reach here");
+    }
+
+    public String toString() {
+        if (kind == Kind.NOT) {
+            return "NOT (" + children.get(0) + ")";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Predicate p : children) {
+            if (sb.length() > 0) {
+                sb.append(" ").append(kind).append(" ");
+            }
+            sb.append("(").append(p).append(")");
+        }
+        return sb.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 /**
  * The delete operator. Delete reads tuples from its child operator and removes
@@ -61,13 +62,15 @@ public class Delete extends Operator {
     }
 
     /**
-     * Deletes tuples as they are read from the child operator. Deletes are
-     * processed via the buffer pool (which can be accessed via the
-     * Database.getBufferPool() method.
+     * Deletes the tuples read from the child operator. Each batch the child
+     * produces is deleted as it arrives through the buffer pool (which can
+     * be accessed via the Database.getBufferPool() method), which fetches
+     * each page the batch touches only once, so only one batch of tuples is
+     * held at a time.
      *
      * @return A 1-field tuple containing the number of deleted records.
      * @see Database#getBufferPool
-     * @see BufferPool#deleteTuple
+     * @see BufferPool#deleteTuples
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         if (deleted) {
@@ -75,14 +78,20 @@ public class Delete extends Operator {
         }
         Tuple tup = new Tuple(td);
         int num = 0;
-        while (childIt.hasNext()) {
+        ArrayList<Tuple> doomed = new ArrayList<Tuple>();
+        BatchIterator batches = BatchAdapter.of(childIt);
+        TupleBatch batch;
+        while ((batch = batches.nextBatch()) != null) {
+            doomed.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                doomed.add(batch.get(i));
+            }
             try {
-                Tuple tpl = childIt.next();
-                Database.getBufferPool().deleteTuple(tid, tpl);
-                num++;
+                Database.getBufferPool().deleteTuples(tid, doomed);
             } catch (IOException e) {
                 throw new DbException("could not delete tuples");
             }
+            num += doomed.size();
         }
         tup.setField(0, new IntField(num));
         deleted = true;
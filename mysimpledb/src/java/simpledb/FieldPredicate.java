@@ -0,0 +1,44 @@
+package simpledb;
+
+/**
+ * FieldPredicate compares two fields of the same tuple, as in
+ * <tt>a.x = a.y</tt>. It is also how a join condition is applied once both
+ * of its tables have already been joined on some other condition.
+ */
+public class FieldPredicate extends Predicate {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+
+    /**
+     * Constructor.
+     *
+     * @param field1 the field on the left of the comparison
+     * @param op     the operation to apply
+     * @param field2 the field on the right of the comparison
+     */
+    public FieldPredicate(int field1, Op op, int field2) {
+        pred = new JoinPredicate(field1, op, field2);
+    }
+
+    /**
+     * @return the comparison, as a JoinPredicate whose two tuples are the
+     * same tuple
+     */
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    /**
+     * @param t The tuple to test
+     * @return true if field1 op field2 holds for t
+     */
+    public boolean filter(Tuple t) {
+        return t != null && pred.filter(t, t);
+    }
+
+    public String toString() {
+        return "f" + pred.getField1() + " " + pred.getOperator() + " f" + pred.getField2();
+    }
+}
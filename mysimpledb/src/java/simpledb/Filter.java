@@ -4,6 +4,11 @@ import java.util.*;
 
 /**
  * Filter is an operator that implements a relational select.
+ * <p/>
+ * When its child is a {@link SeqScan} with no predicate of its own that
+ * returns all of the table's fields, the Filter pushes its predicate down
+ * into the scan on open and passes the scan's tuples through, so rejected
+ * tuples are dropped inside the heap file pages.
  */
 public class Filter extends Operator {
 
@@ -20,6 +25,13 @@ public class Filter extends Operator {
     Predicate pred;
     DbIterator childit;
     boolean isOpen;
+    private transient CompiledPredicate compiled;
+    // pred.getVersion() when compiled was built
+    private transient int compiledVersion;
+    // true if pred is applied by the child SeqScan
+    private transient boolean pushed;
+    private transient BatchIterator childBatches;
+    private transient int[] positions;
     public Filter(Predicate p, DbIterator child) {
         pred = p;
         childit = child;
@@ -37,14 +49,28 @@ public class Filter extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         super.open();
+        if (childit instanceof SeqScan) {
+            SeqScan scan = (SeqScan) childit;
+            if (pushed || (scan.getFilter() == null && scan.getFields() == null)) {
+                scan.setFilter(pred);
+                pushed = true;
+            }
+        }
         try {
             childit.open();
         } catch (DbException e) {
             throw new DbException("could not open");
         }
+        compile();
+        childBatches = BatchAdapter.of(childit);
         isOpen = true;
     }
 
+    private void compile() {
+        compiledVersion = pred.getVersion();
+        compiled = PredicateCompiler.compile(pred);
+    }
+
     public void close() {
         childit.close();
         super.close();
@@ -54,6 +80,10 @@ public class Filter extends Operator {
     public void rewind() throws DbException, TransactionAbortedException {
         if (isOpen) {
             childit.rewind();
+            if (pred.getVersion() != compiledVersion) {
+                // an operand was bound since the predicate was compiled
+                compile();
+            }
         }
         else {
             throw new DbException("open the iterator first");
@@ -72,9 +102,12 @@ public class Filter extends Operator {
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
         if (isOpen) {
+            if (pushed) {
+                return childit.hasNext() ? childit.next() : null;
+            }
             while (childit.hasNext()) {
                 Tuple t = childit.next();
-                if (pred.filter(t)) {
+                if (compiled.filter(t)) {
                     return t;
                 }
             }
@@ -85,6 +118,41 @@ public class Filter extends Operator {
         }
     }
 
+    /**
+     * Reads a batch from the child and narrows its selection to the tuples
+     * that pass the predicate, skipping batches in which nothing passes.
+     *
+     * @return The next batch of tuples that pass the filter, or null if there
+     * are no more tuples
+     */
+    protected TupleBatch fetchNextBatch() throws TransactionAbortedException,
+            DbException {
+        if (!isOpen) {
+            throw new DbException("open iterator first");
+        }
+        if (pushed) {
+            return childBatches.nextBatch();
+        }
+        TupleBatch batch;
+        while ((batch = childBatches.nextBatch()) != null) {
+            if (positions == null || positions.length < batch.size()) {
+                positions = new int[batch.capacity()];
+            }
+            CompiledPredicate test = compiled;
+            int kept = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (test.filter(batch.get(i))) {
+                    positions[kept++] = i;
+                }
+            }
+            if (kept > 0) {
+                batch.select(positions, kept);
+                return batch;
+            }
+        }
+        return null;
+    }
+
     @Override
     public DbIterator[] getChildren() {
         DbIterator[] rv = { childit };
@@ -94,6 +162,7 @@ public class Filter extends Operator {
     @Override
     public void setChildren(DbIterator[] children) {
         childit = children[0];
+        pushed = false;
     }
 
 }
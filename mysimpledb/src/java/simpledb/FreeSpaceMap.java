@@ -0,0 +1,91 @@
+package simpledb;
+
+import java.io.*;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records which pages of a HeapFile have at least one empty
+ * slot, so inserts can reuse space freed by deletes instead of always
+ * appending. It is kept in memory and rebuilt from the page headers when a
+ * HeapFile first needs it; see {@link #build}.
+ * <p/>
+ * The map is a hint: a page it lists may have filled up since (callers
+ * should check and call setHasSpace(pageNo, false)), but every page with
+ * space that inserts and deletes have reported is listed.
+ */
+public class FreeSpaceMap {
+
+    // bit i is set if page i has an empty slot
+    private final BitSet hasSpace = new BitSet();
+    // no page before this one has space
+    private int hint = 0;
+
+    /**
+     * @return the number of a page with an empty slot, or -1 if every page
+     * is full
+     */
+    public synchronized int findPage() {
+        int pageNo = hasSpace.nextSetBit(hint);
+        hint = pageNo < 0 ? hasSpace.length() : pageNo;
+        return pageNo;
+    }
+
+    /**
+     * Records whether a page has an empty slot.
+     *
+     * @param pageNo the page number
+     * @param space  true if the page has at least one empty slot
+     */
+    public synchronized void setHasSpace(int pageNo, boolean space) {
+        hasSpace.set(pageNo, space);
+        if (space && pageNo < hint) {
+            hint = pageNo;
+        }
+    }
+
+    /**
+     * @return true if the map lists pageNo as having an empty slot
+     */
+    public synchronized boolean hasSpace(int pageNo) {
+        return hasSpace.get(pageNo);
+    }
+
+    /**
+     * Builds the map for a heap file by reading the header of each page. Pages
+     * held by the BufferPool are checked there instead, since their cached
+     * copy may differ from the one on disk.
+     *
+     * @param f the file to build the map for
+     * @return the free space map of f
+     */
+    public static FreeSpaceMap build(HeapFile f) throws IOException {
+        FreeSpaceMap map = new FreeSpaceMap();
+        int numPages = f.numPages();
+        if (numPages == 0) {
+            return map;
+        }
+        int pageSize = BufferPool.getPageSize();
+        int numSlots = HeapPage.getNumTuples(f.getTupleDesc());
+        byte[] header = new byte[HeapPage.getHeaderSize(numSlots)];
+        RandomAccessFile raf = new RandomAccessFile(f.getFile(), "r");
+        try {
+            for (int pageNo = 0; pageNo < numPages; pageNo++) {
+                Page cached = Database.getBufferPool().peekPage(new HeapPageId(f.getId(), pageNo));
+                boolean space;
+                if (cached != null) {
+                    space = ((HeapPage) cached).getNumEmptySlots() > 0;
+                } else {
+                    raf.seek((long) pageNo * pageSize);
+                    raf.readFully(header);
+                    space = HeapPage.countUsedSlots(header) < numSlots;
+                }
+                if (space) {
+                    map.hasSpace.set(pageNo);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        return map;
+    }
+}
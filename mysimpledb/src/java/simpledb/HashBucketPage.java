@@ -0,0 +1,157 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A page of a HashIndex bucket. It holds entries mapping a key to the
+ * record id of a tuple of the indexed table, and the page number of the
+ * next page of the bucket (0 for none). Free pages are linked the same way.
+ * Each entry also holds the values of the fields the index covers.
+ * <p/>
+ * Layout: the next page number, the number of entries, then each entry's
+ * key, covered field values, page number and slot.
+ *
+ * @see HashIndex
+ */
+public class HashBucketPage implements Page {
+
+    private final HashPageId pid;
+    private final TupleDesc entryTd;
+    private final int tableId;
+    int next;
+    // the key and covered field values of each entry
+    final List<Field[]> values = new ArrayList<Field[]>();
+    final List<RecordId> rids = new ArrayList<RecordId>();
+    private volatile TransactionId dirtier;
+    private byte[] oldData;
+    private final Byte oldDataLock = new Byte((byte) 0);
+
+    /**
+     * Reads a bucket page.
+     *
+     * @param id   the id of the page
+     * @param data the bytes of the page, as returned by getPageData
+     */
+    public HashBucketPage(HashPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        HashIndex index = (HashIndex) Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.entryTd = index.getTupleDesc();
+        this.tableId = index.getTableId();
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        next = dis.readInt();
+        int count = dis.readInt();
+        for (int i = 0; i < count; i++) {
+            Field[] entry = new Field[entryTd.numFields() - 2];
+            try {
+                for (int j = 0; j < entry.length; j++) {
+                    entry[j] = entryTd.getFieldType(j).parse(dis);
+                }
+            } catch (java.text.ParseException e) {
+                throw new IOException("parsing error: " + e.getMessage());
+            }
+            values.add(entry);
+            int pgNo = dis.readInt();
+            rids.add(new RecordId(new HeapPageId(tableId, pgNo), dis.readInt()));
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return the most entries a bucket page holds, given the schema of the
+     * entries as a tuple
+     * @see HashIndex#getTupleDesc
+     */
+    static int maxEntries(TupleDesc entryTd) {
+        return (BufferPool.getPageSize() - 8) / entryTd.getSize();
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    public int getNumEntries() {
+        return values.size();
+    }
+
+    Field key(int i) {
+        return values.get(i)[0];
+    }
+
+    boolean isFull() {
+        return values.size() >= maxEntries(entryTd);
+    }
+
+    void add(Field[] entry, RecordId rid) {
+        values.add(entry);
+        rids.add(rid);
+    }
+
+    /**
+     * Removes the entry for a key and record id.
+     *
+     * @return false if the page has no such entry
+     */
+    boolean remove(Field key, RecordId rid) {
+        for (int i = 0; i < values.size(); i++) {
+            if (rids.get(i).equals(rid) && key(i).equals(key)) {
+                values.remove(i);
+                rids.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void clear() {
+        values.clear();
+        rids.clear();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.getPageSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(next);
+            dos.writeInt(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                for (Field f : values.get(i)) {
+                    f.serialize(dos);
+                }
+                dos.writeInt(rids.get(i).getPageId().pageNumber());
+                dos.writeInt(rids.get(i).tupleno());
+            }
+            dos.write(new byte[BufferPool.getPageSize() - dos.size()]);
+            dos.flush();
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    public HashBucketPage getBeforeImage() {
+        try {
+            synchronized (oldDataLock) {
+                return new HashBucketPage(pid, oldData);
+            }
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The HashEquiJoin operator implements an equality join by building a hash
+ * table over the right (inner) child and probing it with each tuple of the
+ * left (outer) child. Each child is read once, so it is much cheaper than
+ * {@link Join} for equality predicates when the inner child fits in memory.
+ * <p/>
+ * Output tuples are the concatenation of the left and right tuples, as for
+ * Join.
+ */
+public class HashEquiJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    JoinPredicate pred;
+    DbIterator childit1, childit2;
+    TupleDesc td;
+    boolean isOpen;
+
+    private transient Map<Field, List<Tuple>> table;
+    private transient Tuple left;
+    private transient List<Tuple> matches;
+    private transient int matchPos;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on
+     *
+     * @param p      The predicate to use to join the children; its operator
+     *               must be EQUALS
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Iterator for the right(inner) relation, which is hashed
+     */
+    public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        if (p.getOperator() != Predicate.Op.EQUALS) {
+            throw new IllegalArgumentException("hash join needs an equality predicate");
+        }
+        pred = p;
+        childit1 = child1;
+        childit2 = child2;
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    /**
+     * @return the field name of join field1. Should be quantified by
+     * alias or table name.
+     */
+    public String getJoinField1Name() {
+        return childit1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    /**
+     * @return the field name of join field2. Should be quantified by
+     * alias or table name.
+     */
+    public String getJoinField2Name() {
+        return childit2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        super.open();
+        childit1.open();
+        childit2.open();
+        table = null;
+        left = null;
+        matches = null;
+        isOpen = true;
+    }
+
+    public void close() {
+        childit1.close();
+        childit2.close();
+        super.close();
+        table = null;
+        isOpen = false;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (!isOpen) {
+            throw new DbException("open the iterator first");
+        }
+        // the hash table is kept; only the outer child is read again
+        childit1.rewind();
+        left = null;
+        matches = null;
+    }
+
+    /**
+     * Reads the whole inner child into a hash table keyed on its join field.
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        table = new HashMap<Field, List<Tuple>>();
+        BatchIterator batches = BatchAdapter.of(childit2);
+        TupleBatch batch;
+        while ((batch = batches.nextBatch()) != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                Tuple t = batch.get(i);
+                Field key = t.getField(pred.getField2());
+                List<Tuple> bucket = table.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<Tuple>(1);
+                    table.put(key, bucket);
+                }
+                bucket.add(t);
+            }
+        }
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (!isOpen) {
+            throw new DbException("open iterator first");
+        }
+        if (table == null) {
+            build();
+        }
+        while (matches == null || matchPos >= matches.size()) {
+            if (!childit1.hasNext()) {
+                return null;
+            }
+            left = childit1.next();
+            matches = table.get(left.getField(pred.getField1()));
+            matchPos = 0;
+        }
+        return mergeTuples(left, matches.get(matchPos++));
+    }
+
+    private Tuple mergeTuples(Tuple l, Tuple r) {
+        int n1 = l.getTupleDesc().numFields();
+        int n2 = r.getTupleDesc().numFields();
+        Tuple rv = new Tuple(td);
+        for (int i = 0; i < n1; i++) {
+            rv.setField(i, l.getField(i));
+        }
+        for (int i = 0; i < n2; i++) {
+            rv.setField(i + n1, r.getField(i));
+        }
+        return rv;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        DbIterator[] rv = { childit1, childit2 };
+        return rv;
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        childit1 = children[0];
+        childit2 = children[1];
+        td = TupleDesc.merge(childit1.getTupleDesc(), childit2.getTupleDesc());
+        table = null;
+    }
+}
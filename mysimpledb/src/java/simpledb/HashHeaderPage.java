@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Page 0 of a HashIndex. It holds the state of the linear hashing scheme:
+ * the level, the next bucket to split, the number of entries, the head of
+ * the list of free pages, and the page number of the first page of each
+ * bucket.
+ *
+ * @see HashIndex
+ */
+public class HashHeaderPage implements Page {
+
+    private final HashPageId pid;
+    int level;
+    int next;
+    int entries;
+    // the first free page, 0 for none; each free page links to the next
+    int freeHead;
+    final List<Integer> buckets = new ArrayList<Integer>();
+    private volatile TransactionId dirtier;
+    private byte[] oldData;
+    private final Byte oldDataLock = new Byte((byte) 0);
+
+    /**
+     * Reads a header page.
+     *
+     * @param id   the id of the page
+     * @param data the bytes of the page, as returned by getPageData
+     */
+    public HashHeaderPage(HashPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        level = dis.readInt();
+        next = dis.readInt();
+        entries = dis.readInt();
+        freeHead = dis.readInt();
+        int numBuckets = dis.readInt();
+        for (int i = 0; i < numBuckets; i++) {
+            buckets.add(dis.readInt());
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return the most buckets an index can have; once it has that many,
+     * buckets are no longer split and grow chains of overflow pages instead
+     */
+    static int maxBuckets() {
+        return (BufferPool.getPageSize() - 20) / 4;
+    }
+
+    public HashPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the bucket a key with the given hash belongs in
+     */
+    int bucketFor(int hash) {
+        int b = hash & ((1 << level) - 1);
+        if (b < next) {
+            b = hash & ((1 << (level + 1)) - 1);
+        }
+        return b;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.getPageSize());
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(level);
+            dos.writeInt(next);
+            dos.writeInt(entries);
+            dos.writeInt(freeHead);
+            dos.writeInt(buckets.size());
+            for (int pgNo : buckets) {
+                dos.writeInt(pgNo);
+            }
+            dos.write(new byte[BufferPool.getPageSize() - dos.size()]);
+            dos.flush();
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    public HashHeaderPage getBeforeImage() {
+        try {
+            synchronized (oldDataLock) {
+                return new HashHeaderPage(pid, oldData);
+            }
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+}
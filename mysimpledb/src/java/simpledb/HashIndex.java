@@ -0,0 +1,601 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * HashIndex is a secondary index on one field of a heap file table, mapping
+ * each key to the record ids of the tuples holding it. It is kept in its
+ * own file with linear hashing: buckets are split one at a time, in order,
+ * whenever the index grows past {@link #LOAD_FACTOR} of its capacity, so a
+ * lookup reads the header page and, unless the bucket has overflowed, one
+ * bucket page. Pages are read and changed through the BufferPool.
+ * <p/>
+ * An index is added with {@link Catalog#addIndex}, after which the
+ * BufferPool updates it as tuples are inserted into and deleted from the
+ * table. Buckets are never merged; deletes only free emptied overflow
+ * pages.
+ * <p/>
+ * An index can also cover other fields of the table, whose values are kept
+ * in its entries beside the key. A query that only needs covered fields is
+ * answered from the index alone by an {@link IndexOnlyScan}, without
+ * reading the table.
+ * <p/>
+ * As a DbFile, the index's tuples are its entries: the key, the covered
+ * field values, and the page number and slot of the indexed tuple.
+ *
+ * @see IndexNestedLoopJoin
+ */
+public class HashIndex implements DbFile {
+
+    /**
+     * Fraction of the capacity of the buckets' first pages the index fills
+     * before it splits a bucket
+     */
+    static final double LOAD_FACTOR = 0.75;
+
+    private final File file;
+    private final int tableId;
+    private final int keyField;
+    private final int[] included;
+    private final TupleDesc td;
+    private final int id;
+
+    /**
+     * Constructs an index backed by the specified file. The index must be
+     * added to the Catalog before it is used.
+     *
+     * @param f        the file that stores the pages of the index
+     * @param tableId  the id of the indexed table, which must be a HeapFile
+     * @param keyField the indexed field
+     */
+    public HashIndex(File f, int tableId, int keyField) {
+        this(f, tableId, keyField, new int[0]);
+    }
+
+    /**
+     * Constructs an index that also covers other fields of the table.
+     *
+     * @param f        the file that stores the pages of the index
+     * @param tableId  the id of the indexed table, which must be a HeapFile
+     * @param keyField the indexed field
+     * @param included the fields whose values are kept in the entries
+     *                 beside the key
+     */
+    public HashIndex(File f, int tableId, int keyField, int[] included) {
+        this.file = f;
+        this.tableId = tableId;
+        this.keyField = keyField;
+        this.included = included.clone();
+        TupleDesc tableTd = Database.getCatalog().getTupleDesc(tableId);
+        int n = included.length;
+        Type[] types = new Type[n + 3];
+        String[] names = new String[n + 3];
+        types[0] = tableTd.getFieldType(keyField);
+        names[0] = "key";
+        for (int i = 0; i < n; i++) {
+            types[i + 1] = tableTd.getFieldType(included[i]);
+            names[i + 1] = tableTd.getFieldName(included[i]);
+        }
+        types[n + 1] = Type.INT_TYPE;
+        names[n + 1] = "page";
+        types[n + 2] = Type.INT_TYPE;
+        names[n + 2] = "slot";
+        this.td = new TupleDesc(types, names);
+        this.id = f.getAbsoluteFile().hashCode();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the id of the indexed table
+     */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /**
+     * @return the index of the indexed field in the table
+     */
+    public int keyField() {
+        return keyField;
+    }
+
+    Type keyType() {
+        return td.getFieldType(0);
+    }
+
+    /**
+     * @return the fields of the table, other than the key, that the index
+     * entries hold
+     */
+    public int[] getIncludedFields() {
+        return included.clone();
+    }
+
+    /**
+     * @return true if the index entries hold the values of the given field
+     * of the table
+     */
+    public boolean covers(int field) {
+        if (field == keyField) {
+            return true;
+        }
+        for (int f : included) {
+            if (f == field) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the key and covered field values of a tuple of the table
+     */
+    private Field[] entry(Tuple t) {
+        Field[] entry = new Field[included.length + 1];
+        entry[0] = t.getField(keyField);
+        for (int i = 0; i < included.length; i++) {
+            entry[i + 1] = t.getField(included[i]);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the schema of the index entries: key, covered fields, page and
+     * slot
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public int numPages() {
+        return (int) (file.length() / BufferPool.getPageSize());
+    }
+
+    static int hash(Field key) {
+        int h = key.hashCode() * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        HashPageId hpid = (HashPageId) pid;
+        int pageSize = BufferPool.getPageSize();
+        byte[] data = new byte[pageSize];
+        try {
+            if (hpid.pageNumber() < numPages()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    raf.seek((long) pageSize * hpid.pageNumber());
+                    raf.readFully(data);
+                } finally {
+                    raf.close();
+                }
+            } else if (hpid.pageNumber() != 0) {
+                // a new file has an implicit empty header page
+                throw new IllegalArgumentException("no such page: " + pid);
+            }
+            if (hpid.pageNumber() == 0) {
+                return new HashHeaderPage(hpid, data);
+            }
+            return new HashBucketPage(hpid, data);
+        } catch (IOException e) {
+            throw new RuntimeException("could not read " + pid + ": " + e.getMessage());
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        writePage(page.getId().pageNumber(), page.getPageData());
+    }
+
+    private void writePage(int pgNo, byte[] data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek((long) BufferPool.getPageSize() * pgNo);
+            raf.write(data);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Fetches a page through the BufferPool, or from the pages already
+     * changed by the current operation. Pages fetched for writing are added
+     * to those.
+     */
+    private Page getPage(TransactionId tid, Map<PageId, Page> dirty, int pgNo, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        HashPageId pid = new HashPageId(id, pgNo);
+        Page p = dirty.get(pid);
+        if (p != null) {
+            return p;
+        }
+        p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirty.put(pid, p);
+        }
+        return p;
+    }
+
+    private HashBucketPage bucketPage(TransactionId tid, Map<PageId, Page> dirty, int pgNo, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (HashBucketPage) getPage(tid, dirty, pgNo, perm);
+    }
+
+    /**
+     * Returns an empty bucket page, reusing a free page if there is one and
+     * otherwise adding a page to the end of the file.
+     */
+    private HashBucketPage newPage(TransactionId tid, Map<PageId, Page> dirty, HashHeaderPage header)
+            throws DbException, IOException, TransactionAbortedException {
+        if (header.freeHead != 0) {
+            HashBucketPage page = bucketPage(tid, dirty, header.freeHead, Permissions.READ_WRITE);
+            header.freeHead = page.next;
+            page.next = 0;
+            return page;
+        }
+        if (numPages() == 0) {
+            writePage(0, new byte[BufferPool.getPageSize()]);
+        }
+        int pgNo = numPages();
+        writePage(pgNo, new byte[BufferPool.getPageSize()]);
+        return bucketPage(tid, dirty, pgNo, Permissions.READ_WRITE);
+    }
+
+    private void freePage(HashHeaderPage header, HashBucketPage page) {
+        page.clear();
+        page.next = header.freeHead;
+        header.freeHead = page.getId().pageNumber();
+    }
+
+    /**
+     * Adds an entry to the first page of a bucket with room, adding an
+     * overflow page to the bucket if they are all full.
+     */
+    private void append(TransactionId tid, Map<PageId, Page> dirty, HashHeaderPage header, int bucket,
+                        Field[] entry, RecordId rid) throws DbException, IOException, TransactionAbortedException {
+        HashBucketPage page = bucketPage(tid, dirty, header.buckets.get(bucket), Permissions.READ_WRITE);
+        while (page.isFull()) {
+            if (page.next == 0) {
+                HashBucketPage overflow = newPage(tid, dirty, header);
+                page.next = overflow.getId().pageNumber();
+                page = overflow;
+            } else {
+                page = bucketPage(tid, dirty, page.next, Permissions.READ_WRITE);
+            }
+        }
+        page.add(entry, rid);
+    }
+
+    /**
+     * Adds an entry for a tuple of the indexed table.
+     *
+     * @param t   the tuple, whose key and covered fields are indexed
+     * @param rid where the tuple is stored
+     * @return the pages changed
+     */
+    public synchronized ArrayList<Page> insert(TransactionId tid, Tuple t, RecordId rid)
+            throws DbException, IOException, TransactionAbortedException {
+        Field[] entry = entry(t);
+        Map<PageId, Page> dirty = new LinkedHashMap<PageId, Page>();
+        HashHeaderPage header = (HashHeaderPage) getPage(tid, dirty, 0, Permissions.READ_WRITE);
+        if (header.buckets.isEmpty()) {
+            header.buckets.add(newPage(tid, dirty, header).getId().pageNumber());
+        }
+        append(tid, dirty, header, header.bucketFor(hash(entry[0])), entry, rid);
+        header.entries++;
+        int capacity = HashBucketPage.maxEntries(td);
+        if (header.entries > LOAD_FACTOR * capacity * header.buckets.size()
+                && header.buckets.size() < HashHeaderPage.maxBuckets()) {
+            split(tid, dirty, header);
+        }
+        return new ArrayList<Page>(dirty.values());
+    }
+
+    /**
+     * Splits the next bucket in order, moving the entries whose hash has
+     * the next bit set to a new bucket at the end.
+     */
+    private void split(TransactionId tid, Map<PageId, Page> dirty, HashHeaderPage header)
+            throws DbException, IOException, TransactionAbortedException {
+        int old = header.next;
+        header.buckets.add(newPage(tid, dirty, header).getId().pageNumber());
+        if (++header.next == 1 << header.level) {
+            header.level++;
+            header.next = 0;
+        }
+
+        List<Field[]> entries = new ArrayList<Field[]>();
+        List<RecordId> rids = new ArrayList<RecordId>();
+        List<HashBucketPage> chain = new ArrayList<HashBucketPage>();
+        for (int pgNo = header.buckets.get(old); pgNo != 0; ) {
+            HashBucketPage page = bucketPage(tid, dirty, pgNo, Permissions.READ_WRITE);
+            entries.addAll(page.values);
+            rids.addAll(page.rids);
+            page.clear();
+            chain.add(page);
+            pgNo = page.next;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            Field[] entry = entries.get(i);
+            append(tid, dirty, header, header.bucketFor(hash(entry[0])), entry, rids.get(i));
+        }
+        // the old bucket's pages were refilled in order; free those left empty
+        for (int i = 1; i < chain.size(); i++) {
+            if (chain.get(i).getNumEntries() == 0) {
+                chain.get(i - 1).next = 0;
+                for (int j = i; j < chain.size(); j++) {
+                    freePage(header, chain.get(j));
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes the entry for a tuple of the indexed table.
+     *
+     * @return the pages changed
+     * @throws DbException if the index has no such entry
+     */
+    public synchronized ArrayList<Page> delete(TransactionId tid, Field key, RecordId rid)
+            throws DbException, IOException, TransactionAbortedException {
+        Map<PageId, Page> dirty = new LinkedHashMap<PageId, Page>();
+        HashHeaderPage header = (HashHeaderPage) getPage(tid, dirty, 0, Permissions.READ_WRITE);
+        if (!header.buckets.isEmpty()) {
+            HashBucketPage prev = null;
+            int pgNo = header.buckets.get(header.bucketFor(hash(key)));
+            while (pgNo != 0) {
+                HashBucketPage page = bucketPage(tid, dirty, pgNo, Permissions.READ_WRITE);
+                if (page.remove(key, rid)) {
+                    header.entries--;
+                    if (prev != null && page.getNumEntries() == 0) {
+                        prev.next = page.next;
+                        freePage(header, page);
+                    }
+                    return new ArrayList<Page>(dirty.values());
+                }
+                prev = page;
+                pgNo = page.next;
+            }
+        }
+        throw new DbException("no index entry for " + key + " at " + rid);
+    }
+
+    /**
+     * Returns the record ids of the tuples of the indexed table holding a
+     * key, reading only the bucket the key belongs in.
+     *
+     * @param tid the transaction doing the lookup
+     * @param key the key to look up
+     */
+    public List<RecordId> lookup(TransactionId tid, Field key) throws DbException, TransactionAbortedException {
+        List<RecordId> found = new ArrayList<RecordId>();
+        Map<PageId, Page> none = Collections.emptyMap();
+        HashHeaderPage header = (HashHeaderPage) getPage(tid, none, 0, Permissions.READ_ONLY);
+        if (header.buckets.isEmpty()) {
+            return found;
+        }
+        int pgNo = header.buckets.get(header.bucketFor(hash(key)));
+        while (pgNo != 0) {
+            HashBucketPage page = bucketPage(tid, none, pgNo, Permissions.READ_ONLY);
+            for (int i = 0; i < page.getNumEntries(); i++) {
+                if (page.key(i).equals(key)) {
+                    found.add(page.rids.get(i));
+                }
+            }
+            pgNo = page.next;
+        }
+        return found;
+    }
+
+    /**
+     * Adds an entry for every tuple already in the indexed table. This is
+     * done once, when a new index is added to the Catalog for a table that
+     * already has tuples. The entries are grouped by bucket in memory, with
+     * as many buckets as the load factor calls for, and every page is
+     * written straight to the file once.
+     *
+     * @param tid the transaction doing the build
+     * @return the number of entries added
+     * @throws DbException if the index is not empty
+     */
+    public synchronized int build(TransactionId tid) throws DbException, IOException, TransactionAbortedException {
+        if (numPages() > 0) {
+            throw new DbException("only an empty index can be built");
+        }
+        List<Field[]> entries = new ArrayList<Field[]>();
+        List<RecordId> rids = new ArrayList<RecordId>();
+        DbFileIterator it = Database.getCatalog().getDatabaseFile(tableId).iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            entries.add(entry(t));
+            rids.add(t.getRecordId());
+        }
+        it.close();
+
+        int pageSize = BufferPool.getPageSize();
+        int capacity = HashBucketPage.maxEntries(td);
+        int n = (int) Math.ceil(entries.size() / (LOAD_FACTOR * capacity));
+        n = Math.max(1, Math.min(n, HashHeaderPage.maxBuckets()));
+        HashHeaderPage header = new HashHeaderPage(new HashPageId(id, 0), new byte[pageSize]);
+        while (1 << (header.level + 1) <= n) {
+            header.level++;
+        }
+        header.next = n - (1 << header.level);
+        header.entries = entries.size();
+        List<List<Integer>> byBucket = new ArrayList<List<Integer>>();
+        for (int b = 0; b < n; b++) {
+            byBucket.add(new ArrayList<Integer>());
+            // the first page of bucket b is page b + 1
+            header.buckets.add(b + 1);
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            byBucket.get(header.bucketFor(hash(entries.get(i)[0]))).add(i);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(header.getPageData());
+            int overflow = n + 1;
+            for (int b = 0; b < n; b++) {
+                List<Integer> bucket = byBucket.get(b);
+                int pgNo = b + 1;
+                int from = 0;
+                do {
+                    HashBucketPage page = new HashBucketPage(new HashPageId(id, pgNo), new byte[pageSize]);
+                    int to = Math.min(from + capacity, bucket.size());
+                    for (int i : bucket.subList(from, to)) {
+                        page.add(entries.get(i), rids.get(i));
+                    }
+                    from = to;
+                    page.next = from < bucket.size() ? overflow++ : 0;
+                    raf.seek((long) pageSize * pgNo);
+                    raf.write(page.getPageData());
+                    pgNo = page.next;
+                } while (pgNo != 0);
+            }
+        } finally {
+            raf.close();
+        }
+        Database.getBufferPool().discardPage(new HashPageId(id, 0));
+        return entries.size();
+    }
+
+    /**
+     * Index entries are changed through the indexed table.
+     *
+     * @throws DbException always
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("index entries are added by inserting into the indexed table");
+    }
+
+    /**
+     * Index entries are changed through the indexed table.
+     *
+     * @throws DbException always
+     */
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("index entries are removed by deleting from the indexed table");
+    }
+
+    /**
+     * @return an iterator over the entries of the index, bucket by bucket
+     */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new EntryIterator(tid, null, false);
+    }
+
+    /**
+     * Returns the covered part of the tuples of the indexed table, read
+     * from the index entries alone. The tuples have the table's TupleDesc
+     * and their record ids set, but only the key and covered fields are
+     * set; the others are null.
+     *
+     * @param tid the transaction doing the scan
+     * @param key if not null, only the tuples holding this key are
+     *            returned, reading only the bucket it belongs in
+     */
+    public DbFileIterator coveringIterator(TransactionId tid, Field key) {
+        return new EntryIterator(tid, key, true);
+    }
+
+    class EntryIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final Field key;
+        private final boolean covering;
+        private boolean open;
+        private HashHeaderPage header;
+        private int bucket;
+        private HashBucketPage page;
+        private int index;
+
+        EntryIterator(TransactionId tid, Field key, boolean covering) {
+            this.tid = tid;
+            this.key = key;
+            this.covering = covering;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            open = true;
+            rewind();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (!open) {
+                return false;
+            }
+            Map<PageId, Page> none = Collections.emptyMap();
+            if (header == null) {
+                header = (HashHeaderPage) getPage(tid, none, 0, Permissions.READ_ONLY);
+                bucket = -1;
+            }
+            while (true) {
+                while (page == null || index >= page.getNumEntries()) {
+                    int pgNo;
+                    if (page != null && page.next != 0) {
+                        pgNo = page.next;
+                    } else if (key == null && bucket + 1 < header.buckets.size()) {
+                        pgNo = header.buckets.get(++bucket);
+                    } else if (key != null && page == null && !header.buckets.isEmpty()) {
+                        pgNo = header.buckets.get(header.bucketFor(hash(key)));
+                    } else {
+                        return false;
+                    }
+                    page = bucketPage(tid, none, pgNo, Permissions.READ_ONLY);
+                    index = 0;
+                }
+                if (key == null || page.key(index).equals(key)) {
+                    return true;
+                }
+                index++;
+            }
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Field[] entry = page.values.get(index);
+            RecordId rid = page.rids.get(index);
+            index++;
+            if (covering) {
+                Tuple t = new Tuple(Database.getCatalog().getTupleDesc(tableId));
+                t.setField(keyField, entry[0]);
+                for (int i = 0; i < included.length; i++) {
+                    t.setField(included[i], entry[i + 1]);
+                }
+                t.setRecordId(rid);
+                return t;
+            }
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < entry.length; i++) {
+                t.setField(i, entry[i]);
+            }
+            t.setField(entry.length, new IntField(rid.getPageId().pageNumber()));
+            t.setField(entry.length + 1, new IntField(rid.tupleno()));
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            header = null;
+            page = null;
+        }
+
+        public void close() {
+            open = false;
+            header = null;
+            page = null;
+        }
+    }
+}
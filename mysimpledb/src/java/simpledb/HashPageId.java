@@ -0,0 +1,54 @@
+package simpledb;
+
+/**
+ * Unique identifier for the pages of a HashIndex. Page 0 of an index is its
+ * {@link HashHeaderPage}; every other page is a {@link HashBucketPage}.
+ */
+public class HashPageId implements PageId {
+
+    private final int tableId;
+    private final int pgNo;
+
+    /**
+     * Constructor.
+     *
+     * @param tableId the id of the index
+     * @param pgNo    the page number in the index
+     */
+    public HashPageId(int tableId, int pgNo) {
+        this.tableId = tableId;
+        this.pgNo = pgNo;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public int pageNumber() {
+        return pgNo;
+    }
+
+    public int hashCode() {
+        return 31 * tableId + pgNo;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof HashPageId)) {
+            return false;
+        }
+        HashPageId other = (HashPageId) o;
+        return other.tableId == tableId && other.pgNo == pgNo;
+    }
+
+    /**
+     * @return the index id and page number, matching the constructor's
+     * arguments
+     */
+    public int[] serialize() {
+        return new int[]{tableId, pgNo};
+    }
+
+    public String toString() {
+        return "HashPageId(" + tableId + ", " + pgNo + ")";
+    }
+}
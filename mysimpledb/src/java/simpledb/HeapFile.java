@@ -1,7 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HeapFile is an implementation of a DbFile that stores a collection of tuples
@@ -16,6 +19,20 @@ import java.util.*;
 public class HeapFile implements DbFile {
 	TupleDesc tDesc;
 	File file;
+	// built on first use by getFreeSpaceMap
+	private volatile FreeSpaceMap freeSpace;
+	// loaded on first use by getZoneMap
+	private volatile ZoneMap zones;
+	// number of pages in file, read from its length on first use (-1 until
+	// then) and then kept up to date by writes that extend the file
+	private final AtomicInteger pageCount = new AtomicInteger(-1);
+	private final int id;
+
+    /**
+     * Number of pages bulkInsert fills in memory before appending them to
+     * the file with a single write.
+     */
+    static final int BULK_WRITE_PAGES = 64;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -26,9 +43,27 @@ public class HeapFile implements DbFile {
     public HeapFile(File f, TupleDesc td) {
     	tDesc = td;
     	file = f;
+    	id = f.getAbsoluteFile().hashCode();
     	Database.getCatalog().addTable(this);
     }
 
+    /**
+     * Constructs a heap file with a given table id, as assigned by the
+     * {@link SystemCatalog}. Unlike the two-argument constructor this does
+     * not add the file to the Catalog, and it does not touch the file
+     * system; the file is only looked at when it is first read or written.
+     *
+     * @param f  the file that stores the on-disk backing store for this heap
+     *           file.
+     * @param td the schema of the table
+     * @param id the id of the table
+     */
+    public HeapFile(File f, TupleDesc td, int id) {
+    	tDesc = td;
+    	file = f;
+    	this.id = id;
+    }
+
     /**
      * Returns the File backing this HeapFile on disk.
      *
@@ -48,7 +83,7 @@ public class HeapFile implements DbFile {
      * @return an ID uniquely identifying this HeapFile.
      */
     public int getId() {
-    	return file.getAbsoluteFile().hashCode();
+    	return id;
     }
 
     /**
@@ -66,13 +101,18 @@ public class HeapFile implements DbFile {
     	int pagesize = BufferPool.getPageSize();
     	byte[] page = new byte[pagesize];
     	try {
+    	    if (!file.exists()) {
+    	        // a page appended to a new file is read before anything is written
+    	        return new HeapPage((HeapPageId) pid, page);
+    	    }
     	    InputStream inputstream = new FileInputStream(file);
     	    inputstream.skip(pagesize * pageNo);
     	
-            byte data = (byte) inputstream.read();
-    	    for (int i = 0; i < pagesize; i++) {
-       		    page[i] = data;
-    	        data = (byte)inputstream.read();
+            // past the end of the file the page reads as zeroes, an empty page
+            int data = inputstream.read();
+    	    for (int i = 0; i < pagesize && data >= 0; i++) {
+       		    page[i] = (byte) data;
+    	        data = inputstream.read();
     	    }
     	    inputstream.close();
     	    return new HeapPage((HeapPageId) pid, page);
@@ -86,43 +126,343 @@ public class HeapFile implements DbFile {
     public void writePage(Page page) throws IOException {
     	int pageNo = page.getId().pageNumber();
     	int pagesize = BufferPool.getPageSize();
-        RandomAccessFile dbfile = new RandomAccessFile(file, "rw");
-        //System.out.println(pageNo);
-        dbfile.seek(pagesize * pageNo);
-        dbfile.write(page.getPageData());
-        dbfile.close();
+        // the zone map must cover the page on disk before the page is
+        ZoneMap map = zones;
+        RandomAccessFile zoneFile = null;
+        if (map != null) {
+            map.addPage((HeapPage) page);
+            zoneFile = map.writeRecords(pageNo, 1);
+        }
+        try {
+            RandomAccessFile dbfile = new RandomAccessFile(file, "rw");
+            //System.out.println(pageNo);
+            dbfile.seek(pagesize * pageNo);
+            dbfile.write(page.getPageData());
+            dbfile.close();
+            extendTo(pageNo + 1);
+            if (map != null) {
+                map.writeHeader(zoneFile);
+            }
+        } finally {
+            if (zoneFile != null) {
+                zoneFile.close();
+            }
+        }
+    }
+
+    /**
+     * Records that the file now holds at least numPages pages.
+     */
+    private void extendTo(int numPages) {
+        int current = numPages();
+        while (current < numPages && !pageCount.compareAndSet(current, numPages)) {
+            current = pageCount.get();
+        }
+    }
+
+    /**
+     * Reserves the page after the last one for an append, so that concurrent
+     * appends get different pages. The page counts towards numPages() and
+     * reads as empty until it is written.
+     *
+     * @return the number of the reserved page
+     */
+    private int reservePage() {
+        numPages();
+        return pageCount.getAndIncrement();
     }
 
     /**
-     * Returns the number of pages in this HeapFile.
+     * Returns the number of pages in this HeapFile. The count is kept in
+     * memory, so this does not touch the file system.
      */
     public int numPages() {
-        return (int) file.length() / BufferPool.getPageSize();
+        int count = pageCount.get();
+        if (count < 0) {
+            pageCount.compareAndSet(-1, (int) (file.length() / BufferPool.getPageSize()));
+            count = pageCount.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return the map of pages in this file that have an empty slot, built
+     * from the page headers the first time it is needed
+     */
+    FreeSpaceMap getFreeSpaceMap() throws IOException {
+        FreeSpaceMap map = freeSpace;
+        if (map == null) {
+            synchronized (this) {
+                if (freeSpace == null) {
+                    freeSpace = FreeSpaceMap.build(this);
+                }
+                map = freeSpace;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return the zone map of this file, loaded or built the first time it
+     * is needed. Until then inserts do not maintain it; it is rebuilt if
+     * the file has changed since it was saved.
+     */
+    ZoneMap getZoneMap() throws IOException {
+        ZoneMap map = zones;
+        if (map == null) {
+            synchronized (this) {
+                if (zones == null) {
+                    zones = ZoneMap.load(this);
+                }
+                map = zones;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Widens the zone map, if it has been loaded, to cover a tuple just
+     * inserted into a page. While the map is not loaded the monitor is taken
+     * to read it, since a load holds the monitor and either finishes first
+     * or finds the tuple on the page.
+     */
+    private void addToZoneMap(int pageNo, Tuple t) {
+        ZoneMap map = zones;
+        if (map == null) {
+            synchronized (this) {
+                map = zones;
+            }
+        }
+        if (map != null) {
+            map.add(pageNo, t);
+        }
+    }
+
+    /**
+     * Inserts a tuple into a page shared through the BufferPool, holding the
+     * page's monitor so that concurrent inserts do not take the same slot.
+     *
+     * @return false if the page was full
+     */
+    private boolean insertInto(HeapPage page, Tuple t) throws DbException {
+        synchronized (page) {
+            if (page.getNumEmptySlots() == 0) {
+                return false;
+            }
+            page.insertTuple(t);
+        }
+        addToZoneMap(page.getId().pageNumber(), t);
+        return true;
     }
 
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-    	HeapPage page;
-    	try {
-    		//int pageno = t.getRecordId().getPageId().pageNumber();
-    		//if (pageno >= numPages()) {
-    		int pageno = numPages() - 1;
-    		//}
-            page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageno), null);
-    	} catch (NoSuchElementException e) {
-    		page = new HeapPage(new HeapPageId(getId(), numPages()), HeapPage.createEmptyPageData());
-    	}
-    	if (page.getNumEmptySlots() == 0) {
-    		page = new HeapPage(new HeapPageId(getId(), numPages()), HeapPage.createEmptyPageData());
-    	}
-    	page.insertTuple(t);
-    	writePage(page);
+        FreeSpaceMap map = getFreeSpaceMap();
+        HeapPage page = null;
+        while (page == null) {
+            int pageno = map.findPage();
+            if (pageno < 0) {
+                // no page has room; append an empty one, and fill it through
+                // the BufferPool so that the insert is logged like any other.
+                // It reads as empty until the BufferPool writes it.
+                pageno = reservePage();
+            }
+            HeapPage candidate = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(getId(), pageno), Permissions.READ_WRITE);
+            if (insertInto(candidate, t)) {
+                page = candidate;
+            } else {
+                // filled since it was listed, or by a bulk load if just appended
+                map.setHasSpace(pageno, false);
+            }
+        }
+        map.setHasSpace(page.getId().pageNumber(), page.getNumEmptySlots() > 0);
     	ArrayList<Page> listOfPage = new ArrayList<Page>();
     	listOfPage.add(page);
         return listOfPage;
     }
 
+    /**
+     * Appends every tuple produced by tuples to this file. The free slots of
+     * the current last page are filled through the BufferPool; after that,
+     * new pages are filled in memory and appended to the file
+     * BULK_WRITE_PAGES at a time, without going through the BufferPool per
+     * tuple. Each appended page is logged as one UPDATE from an empty page,
+     * and the log is forced before the pages are written, so aborting tid
+     * or recovering from a crash empties the pages again. Any stale copy of
+     * an appended page the BufferPool holds is discarded, so later reads
+     * see the new pages. The table's statistics, if any, are updated as
+     * tuples are added.
+     * <p/>
+     * Each new page's number is reserved when the page is started, so other
+     * inserts may append pages in between; the pages are written in runs of
+     * consecutive numbers.
+     *
+     * @param tid    the transaction doing the load
+     * @param tuples an open iterator over the tuples to insert
+     * @return the number of tuples inserted
+     */
+    public int bulkInsert(TransactionId tid, DbIterator tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        BatchIterator batches = BatchAdapter.of(tuples);
+        TableStats stats = Database.getCatalog().getTableStats(getId());
+        LogFile log = Database.getLogFile();
+        int pageSize = BufferPool.getPageSize();
+        int count = 0;
+
+        // the page filled through the BufferPool, or null
+        HeapPage existing = null;
+        int last = numPages() - 1;
+        if (last >= 0) {
+            existing = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(getId(), last), Permissions.READ_WRITE);
+            if (existing.getNumEmptySlots() == 0) {
+                existing = null;
+            } else {
+                existing.markDirty(true, tid);
+            }
+        }
+        HeapPage page = existing;
+
+        byte[] out = new byte[BULK_WRITE_PAGES * pageSize];
+        // the full pages held in out, from page number runStart on
+        List<HeapPage> run = new ArrayList<HeapPage>();
+        int runStart = -1;
+        List<HeapPageId> appended = new ArrayList<HeapPageId>();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            TupleBatch batch;
+            while ((batch = batches.nextBatch()) != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (page != null && page == existing) {
+                        // other inserts may be filling it too
+                        if (insertInto(existing, batch.get(i))) {
+                            if (stats != null) {
+                                stats.addTuple(batch.get(i));
+                            }
+                            count++;
+                            continue;
+                        }
+                        page = null;
+                    }
+                    if (page == null) {
+                        HeapPageId pid = new HeapPageId(getId(), reservePage());
+                        if (!run.isEmpty() && pid.pageNumber() != runStart + run.size()) {
+                            log.force();
+                            writePages(channel, out, runStart, run);
+                        }
+                        page = new HeapPage(pid, HeapPage.createEmptyPageData());
+                        appended.add(pid);
+                    }
+                    page.insertTuple(batch.get(i));
+                    if (stats != null) {
+                        stats.addTuple(batch.get(i));
+                    }
+                    count++;
+                    if (page.getNumEmptySlots() > 0) {
+                        continue;
+                    }
+                    if (run.isEmpty()) {
+                        runStart = page.getId().pageNumber();
+                    }
+                    log.logWrite(tid, page.getBeforeImage(), page);
+                    System.arraycopy(page.getPageData(), 0, out, run.size() * pageSize, pageSize);
+                    run.add(page);
+                    if (run.size() == BULK_WRITE_PAGES) {
+                        log.force();
+                        writePages(channel, out, runStart, run);
+                    }
+                    page = null;
+                }
+            }
+            if (page != null && page != existing) {
+                if (run.isEmpty()) {
+                    runStart = page.getId().pageNumber();
+                }
+                log.logWrite(tid, page.getBeforeImage(), page);
+                System.arraycopy(page.getPageData(), 0, out, run.size() * pageSize, pageSize);
+                run.add(page);
+            }
+            if (!run.isEmpty()) {
+                log.force();
+                writePages(channel, out, runStart, run);
+            }
+        } finally {
+            raf.close();
+        }
+
+        for (HeapPageId pid : appended) {
+            log.pageWritten(pid);
+            Database.getBufferPool().discardPage(pid);
+        }
+        // every page touched is now full except the one left in progress
+        FreeSpaceMap map = getFreeSpaceMap();
+        if (existing != null) {
+            map.setHasSpace(existing.getId().pageNumber(), existing.getNumEmptySlots() > 0);
+        }
+        for (HeapPageId pid : appended) {
+            map.setHasSpace(pid.pageNumber(), page != null && page.getId().equals(pid));
+        }
+        return count;
+    }
+
+    /**
+     * Writes a run of pages held in data, starting at page firstPage of
+     * this file, and empties the run. The pages are in neither the file nor
+     * the BufferPool until then, so while the zone map is not loaded the
+     * monitor is held, and a load waits to find them on disk.
+     */
+    private void writePages(FileChannel channel, byte[] data, int firstPage, List<HeapPage> run)
+            throws IOException {
+        ZoneMap map = zones;
+        if (map == null) {
+            synchronized (this) {
+                map = zones;
+                if (map == null) {
+                    writePages(channel, data, firstPage, run.size(), null);
+                    run.clear();
+                    return;
+                }
+            }
+        }
+        for (HeapPage page : run) {
+            map.addPage(page);
+        }
+        writePages(channel, data, firstPage, run.size(), map);
+        run.clear();
+    }
+
+    /**
+     * Writes count consecutive pages held in data, starting at page
+     * firstPage of this file, saving their zone map records first if map
+     * is not null.
+     */
+    private void writePages(FileChannel channel, byte[] data, int firstPage, int count, ZoneMap map)
+            throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        RandomAccessFile zoneFile = null;
+        if (map != null) {
+            zoneFile = map.writeRecords(firstPage, count);
+        }
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(data, 0, count * pageSize);
+            long pos = (long) firstPage * pageSize;
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+            extendTo(firstPage + count);
+            if (map != null) {
+                map.writeHeader(zoneFile);
+            }
+        } finally {
+            if (zoneFile != null) {
+                zoneFile.close();
+            }
+        }
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
@@ -133,45 +473,199 @@ public class HeapFile implements DbFile {
     		throw new DbException("No such page");
     	}
     	page.deleteTuple(t);
+    	if (freeSpace != null) {
+    		freeSpace.setHasSpace(page.getId().pageNumber(), true);
+    	}
     	ArrayList<Page> listOfPage = new ArrayList<Page>();
     	listOfPage.add(page);
         return listOfPage;
     }
 
+    /**
+     * Deletes a set of records from this file. The records are grouped by
+     * page so that each page is fetched from the BufferPool once, however
+     * many of its tuples are deleted.
+     *
+     * @param tid  the transaction doing the delete
+     * @param rids the records to delete
+     * @return the pages that were modified, once each, already marked dirty
+     */
+    public ArrayList<Page> deleteTuples(TransactionId tid, List<RecordId> rids)
+            throws DbException, TransactionAbortedException {
+        Map<PageId, List<RecordId>> byPage = new LinkedHashMap<PageId, List<RecordId>>();
+        for (RecordId rid : rids) {
+            List<RecordId> onPage = byPage.get(rid.getPageId());
+            if (onPage == null) {
+                onPage = new ArrayList<RecordId>();
+                byPage.put(rid.getPageId(), onPage);
+            }
+            onPage.add(rid);
+        }
+
+        ArrayList<Page> listOfPage = new ArrayList<Page>();
+        for (Map.Entry<PageId, List<RecordId>> e : byPage.entrySet()) {
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, e.getKey(),
+                    Permissions.READ_WRITE);
+            page.deleteTuples(e.getValue());
+            // mark it now, so fetching the next pages cannot evict it unwritten
+            page.markDirty(true, tid);
+            if (freeSpace != null) {
+                freeSpace.setHasSpace(page.getId().pageNumber(), true);
+            }
+            listOfPage.add(page);
+        }
+        return listOfPage;
+    }
+
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
-        return new PageIterator(tid);
+        return new PageIterator(tid, null, null, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that pass a
+     * predicate. Pages whose {@link ZoneMap} ranges show that none of their
+     * tuples pass are skipped without being read. On other pages the
+     * predicate is tested inside the page, on the page bytes where possible
+     * (see {@link ScanFilter}), so tuples that fail it are neither returned
+     * nor, usually, decoded.
+     *
+     * @param tid    the transaction reading the file
+     * @param filter the predicate; its field numbers index this file's
+     *               TupleDesc. Operands bound later are picked up when the
+     *               iterator is opened or rewound.
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate filter) {
+        return new PageIterator(tid, filter, null, null);
+    }
+
+    /**
+     * Returns an iterator over some of the fields of the tuples of this file
+     * that pass a predicate. Only those fields are decoded from the pages
+     * (see {@link HeapPage#getTuple(int, int[], int[], TupleDesc)}); the
+     * returned tuples hold just them, in the order given, but keep the
+     * record ids of the tuples they come from.
+     *
+     * @param tid    the transaction reading the file
+     * @param filter the predicate, or null; its field numbers index this
+     *               file's TupleDesc, not the projected fields
+     * @param fields the fields to return, or null for all of them
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate filter, int[] fields) {
+        return new PageIterator(tid, filter, fields, null);
+    }
+
+    /**
+     * Like iterator(tid, filter, fields), but the returned tuples have the
+     * given TupleDesc, which must have the types of the given fields.
+     *
+     * @param td the TupleDesc of the returned tuples, or null for
+     *           projectedTupleDesc(fields)
+     */
+    DbFileIterator iterator(TransactionId tid, Predicate filter, int[] fields, TupleDesc td) {
+        return new PageIterator(tid, filter, fields, td);
+    }
+
+    /**
+     * @return the TupleDesc of the tuples returned by iterator(tid, filter,
+     * fields): the given fields of this file's TupleDesc, in order
+     */
+    TupleDesc projectedTupleDesc(int[] fields) {
+        TupleDesc td = getTupleDesc();
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = td.getFieldType(fields[i]);
+            names[i] = td.getFieldName(fields[i]);
+        }
+        return new TupleDesc(types, names);
     }
 
     class PageIterator implements DbFileIterator {
     	private boolean openYet;
-    	private int currentPageNo;
-        private TransactionId tid;
-    	private Iterator<Tuple> currentPageIterator;
-    	
-    	public PageIterator(TransactionId tid) {
+    	private int nextPageNo;
+        private final TransactionId tid;
+        private final Predicate filter;
+        // the fields to decode, or null for whole tuples
+        private final int[] fields;
+        private final int[] offsets;
+        private final TupleDesc projected;
+        private ScanFilter scanFilter;
+        private ZoneMap zoneMap;
+        private HeapPage page;
+        // the slot of page to try next, or holding the next tuple if ready
+        private int slot;
+        private boolean ready;
+
+    	public PageIterator(TransactionId tid, Predicate filter, int[] fields, TupleDesc td) {
     		openYet = false;
-    		currentPageNo = 0;
+    		nextPageNo = 0;
             this.tid = tid;
+            this.filter = filter;
+            this.fields = fields;
+            this.offsets = fields == null ? null : HeapPage.fieldOffsets(getTupleDesc());
+            this.projected = fields == null ? null : td != null ? td : projectedTupleDesc(fields);
     	}
+
     /**
      * Opens the iterator
      *
      * @throws DbException when there are problems opening/accessing the database.
      */
 		@Override
-        public void open() throws DbException, TransactionAbortedException{
-			currentPageIterator = ((HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), currentPageNo), null)).iterator();
-			currentPageNo++;
+        public void open() throws DbException, TransactionAbortedException {
+			nextPageNo = 0;
+			page = null;
+			ready = false;
+			scanFilter = filter == null ? null : new ScanFilter(filter, getTupleDesc());
+			if (filter != null) {
+				try {
+					zoneMap = getZoneMap();
+				} catch (IOException e) {
+					throw new DbException("could not load zone map: " + e.getMessage());
+				}
+			}
 			openYet = true;
 		}
 
+    /**
+     * Moves on to the next tuple that passes the filter, reading pages as
+     * needed.
+     *
+     * @return true if there are more tuples available.
+     */
+		private boolean advance() throws DbException, TransactionAbortedException {
+			while (true) {
+				if (page != null) {
+					slot = page.nextSlot(slot, scanFilter);
+					if (slot >= 0) {
+						return true;
+					}
+				}
+				if (nextPageNo >= numPages()) {
+					page = null;
+					return false;
+				}
+				if (zoneMap != null && !zoneMap.mayMatch(nextPageNo, filter)) {
+					page = null;
+					nextPageNo++;
+					continue;
+				}
+				HeapPageId pid = new HeapPageId(getId(), nextPageNo++);
+				page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+				slot = 0;
+			}
+		}
+
     /**
      * @return true if there are more tuples available.
      */
 		@Override
-        public boolean hasNext() {
-			return openYet && (currentPageNo < numPages() || currentPageIterator.hasNext());
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+			if (openYet && !ready) {
+				ready = advance();
+			}
+			return openYet && ready;
 		}
 
     /**
@@ -187,17 +681,11 @@ public class HeapFile implements DbFile {
 			if (!hasNext()) {
 				throw new NoSuchElementException();
 			}
-			else if (currentPageIterator.hasNext()) {
-				return currentPageIterator.next();
-			}
-			else if (currentPageNo < numPages()) {
-                currentPageIterator = ((HeapPage) Database.getBufferPool().getPage(null, new HeapPageId(getId(), currentPageNo), null)).iterator();
-				currentPageNo++;
-				return currentPageIterator.next();
-			}
-			else {
-				throw new NoSuchElementException();
+			ready = false;
+			if (fields != null) {
+				return page.getTuple(slot++, fields, offsets, projected);
 			}
+			return page.getTuple(slot++);
 		}
 
     /**
@@ -207,9 +695,12 @@ public class HeapFile implements DbFile {
      */
 		@Override
         public void rewind() throws DbException, TransactionAbortedException {
-			currentPageNo = 0;
-            currentPageIterator = ((HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), currentPageNo), null)).iterator();
-            currentPageNo++;
+			nextPageNo = 0;
+			page = null;
+			ready = false;
+			if (scanFilter != null && scanFilter.isStale()) {
+				scanFilter = new ScanFilter(filter, getTupleDesc());
+			}
 		}
 
     /**
@@ -218,8 +709,9 @@ public class HeapFile implements DbFile {
 		@Override
         public void close() {
 			openYet = false;
+			page = null;
+			ready = false;
 		}
 
     }
 }
-
@@ -15,8 +15,16 @@ public class HeapPage implements Page {
     final HeapPageId pid;
     final TupleDesc td;
     final byte header[];
+    // null for used slots whose tuple has not been decoded from data yet
     final Tuple tuples[];
     final int numSlots;
+    final int tupleSize;
+    // the bytes this page was read from; callers must not modify them
+    final byte[] data;
+    // number of used slots, kept in step with header by markSlotUsed
+    int numUsed;
+    // no header byte before this one has a free slot
+    int freeHint;
     boolean dirtyFlag;
     TransactionId dirtytid;
 
@@ -44,24 +52,21 @@ public class HeapPage implements Page {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.tupleSize = td.getSize();
+        this.data = data;
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++)
-            header[i] = dis.readByte();
+        System.arraycopy(data, 0, header, 0, header.length);
+        numUsed = countUsedSlots(header);
 
+        // tuples are decoded from data when first asked for
         tuples = new Tuple[numSlots];
-        try {
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++)
-                tuples[i] = readNextTuple(dis, i);
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
-        }
-        dis.close();
 
-        setBeforeImage();
+        // data is never written to, so it doubles as the before image
+        synchronized (oldDataLock) {
+            oldData = data;
+        }
     }
 
     /**
@@ -70,6 +75,14 @@ public class HeapPage implements Page {
      * @return the number of tuples on this page
      */
     private int getNumTuples() {
+    	return getNumTuples(td);
+    }
+
+    /**
+     * @return the number of tuple slots on a page of a table with the given
+     * TupleDesc
+     */
+    static int getNumTuples(TupleDesc td) {
     	int tupsize = td.getSize();
     	return (int) Math.floor((BufferPool.getPageSize()*8) / (tupsize * 8 + 1));
     }
@@ -80,9 +93,39 @@ public class HeapPage implements Page {
      * @return the number of bytes in the header of a page in a HeapFile with each tuple occupying tupleSize bytes
      */
     private int getHeaderSize() {
+        return getHeaderSize(numSlots);
+    }
+
+    /**
+     * @return the number of header bytes on a page with numSlots slots
+     */
+    static int getHeaderSize(int numSlots) {
         return (int) Math.ceil(numSlots / 8.0);
     }
 
+    /**
+     * @return the number of slots marked used in a page header. Bits past the
+     * last slot are always clear, so this is just the population count.
+     */
+    static int countUsedSlots(byte[] header) {
+        int used = 0;
+        for (byte b : header) {
+            used += Integer.bitCount(b & 0xFF);
+        }
+        return used;
+    }
+
+    /**
+     * @return the offset of each field of td within a serialized tuple
+     */
+    static int[] fieldOffsets(TupleDesc td) {
+        int[] offsets = new int[td.numFields()];
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] = offsets[i - 1] + td.getFieldType(i - 1).getLen();
+        }
+        return offsets;
+    }
+
     /**
      * Return a view of this page before it was modified
      * -- used by recovery
@@ -116,39 +159,98 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the tuple in a used slot, decoding it from the page data if
+     * this is the first time it is asked for
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i = 0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
+    Tuple getTuple(int slot) {
+        Tuple t = tuples[slot];
+        return t != null ? t : decode(slot);
+    }
+
+    /**
+     * @return the offset in data of the tuple in a used slot, or -1 if the
+     * tuple has been decoded (and may since have been replaced)
+     */
+    int rawOffset(int slot) {
+        return tuples[slot] == null ? header.length + slot * tupleSize : -1;
+    }
 
-        // read fields in the tuple
+    private synchronized Tuple decode(int slot) throws NoSuchElementException {
+        if (tuples[slot] != null) {
+            return tuples[slot];
+        }
+        DataInputStream dis = new DataInputStream(
+                new ByteArrayInputStream(data, header.length + slot * tupleSize, tupleSize));
         Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
+        t.setRecordId(new RecordId(pid, slot));
         try {
             for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+                t.setField(j, td.getFieldType(j).parse(dis));
             }
         } catch (java.text.ParseException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
         }
+        tuples[slot] = t;
+        return t;
+    }
 
+    /**
+     * Builds a new tuple holding some of the fields of the tuple in a used
+     * slot. Unless the whole tuple has been decoded already, only those
+     * fields are parsed from the page data, and the tuple is not cached.
+     *
+     * @param slot      the slot
+     * @param fields    the fields to keep, in the order wanted
+     * @param offsets   the offsets of this page's fields, as returned by
+     *                  {@link #fieldOffsets}
+     * @param projected the TupleDesc of the new tuple
+     */
+    Tuple getTuple(int slot, int[] fields, int[] offsets, TupleDesc projected) throws NoSuchElementException {
+        Tuple t = new Tuple(projected);
+        t.setRecordId(new RecordId(pid, slot));
+        Tuple whole = tuples[slot];
+        int start = header.length + slot * tupleSize;
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                if (whole != null) {
+                    t.setField(i, whole.getField(fields[i]));
+                    continue;
+                }
+                Type type = td.getFieldType(fields[i]);
+                t.setField(i, type.parse(new DataInputStream(
+                        new ByteArrayInputStream(data, start + offsets[fields[i]], type.getLen()))));
+            }
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
         return t;
     }
 
+    /**
+     * Finds the next used slot whose tuple passes a filter. Tuples that
+     * have not been decoded are tested on the page bytes where the filter
+     * allows it, and are not decoded if they fail.
+     *
+     * @param from   the first slot to consider
+     * @param filter the filter to apply, or null to accept every tuple
+     * @return the slot, or -1 if there is none
+     */
+    int nextSlot(int from, ScanFilter filter) {
+        for (int i = from; i < numSlots; i++) {
+            if ((header[i >> 3] & 0xFF) == 0) {
+                // skip the rest of an empty header byte
+                i |= 7;
+                continue;
+            }
+            if (isSlotUsed(i) && (filter == null || filter.matches(this, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -180,7 +282,7 @@ public class HeapPage implements Page {
 
             // empty slot
             if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) {
+                for (int j = 0; j < tupleSize; j++) {
                     try {
                         dos.writeByte(0);
                     } catch (IOException e) {
@@ -191,6 +293,16 @@ public class HeapPage implements Page {
                 continue;
             }
 
+            // non-empty slot still as it was read
+            if (tuples[i] == null) {
+                try {
+                    dos.write(data, header.length + i * tupleSize, tupleSize);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
             // non-empty slot
             for (int j = 0; j < td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
@@ -244,10 +356,10 @@ public class HeapPage implements Page {
      *                     already empty.
      */
     public void deleteTuple(Tuple t) throws DbException {
-    	if (t.getRecordId().getPageId() != pid) {
+    	if (!t.getRecordId().getPageId().equals(pid)) {
     		throw new DbException("Wrong page");
     	}
-    	if (getFilledSlots() == 0) {
+    	if (numUsed == 0) {
     		throw new DbException("Page empty");
     	}
     	if (!isSlotUsed(t.getRecordId().tupleno())) {
@@ -257,6 +369,29 @@ public class HeapPage implements Page {
     	markSlotUsed(t.getRecordId().tupleno(), false);
     }
 
+    /**
+     * Delete the tuples in the given slots from the page. Every slot is
+     * checked before any is cleared, so on error the page is unchanged.
+     *
+     * @param rids the records to delete; all must be on this page
+     * @throws DbException if a record is not on this page, or its slot is
+     *                     already empty.
+     */
+    public void deleteTuples(List<RecordId> rids) throws DbException {
+    	for (RecordId rid : rids) {
+    		if (!rid.getPageId().equals(pid)) {
+    			throw new DbException("Wrong page");
+    		}
+    		if (!isSlotUsed(rid.tupleno())) {
+    			throw new DbException("Tuple does not exist");
+    		}
+    	}
+    	for (RecordId rid : rids) {
+    		tuples[rid.tupleno()] = null;
+    		markSlotUsed(rid.tupleno(), false);
+    	}
+    }
+
     /**
      * Adds the specified tuple to the page;  the tuple should be updated to reflect
      * that it is now stored on this page.
@@ -269,10 +404,7 @@ public class HeapPage implements Page {
     	if (getNumEmptySlots() <= 0) {
     		throw new DbException("Page full");
     	}
-    	int i = 0;
-    	while (isSlotUsed(i)) {
-    		i++;
-    	}
+    	int i = findFreeSlot();
     	tuples[i] = t;
     	markSlotUsed(i, true);
     	t.setRecordId(new RecordId(getId(), i));
@@ -303,23 +435,26 @@ public class HeapPage implements Page {
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        return getNumTuples() - getFilledSlots();
+        return numSlots - numUsed;
     }
     
     private int getFilledSlots() {
-    	int filledSlots = 0;
-    	for (byte b : header) {
-    		filledSlots += count1bits(b);
-    	}
-    	return filledSlots;
+    	return numUsed;
     }
-    
-    private int count1bits(byte b) {
-    	int temp = b;
-    	temp = (temp & 0x55) + ((temp >> 1) & 0x55);
-    	temp = (temp & 0x33) + ((temp >> 2) & 0x33);
-    	temp = (temp & 0x0F) + ((temp >> 4) & 0x0F);
-    	return temp;
+
+    /**
+     * Finds the lowest free slot, skipping full header bytes and picking the
+     * lowest clear bit of the first byte that is not full. Must only be
+     * called when the page has an empty slot; the padding bits of the last
+     * header byte are never picked because a real free slot precedes them.
+     */
+    private int findFreeSlot() {
+    	int i = freeHint;
+    	while (header[i] == (byte) 0xFF) {
+    		i++;
+    	}
+    	freeHint = i;
+    	return i * 8 + Integer.numberOfTrailingZeros(~header[i] & 0xFF);
     }
 
     /**
@@ -337,11 +472,21 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
     	int headerIndex = i / 8;
     	byte bitMask = (byte) (0x01 << (i - headerIndex * 8));
+    	boolean used = (header[headerIndex] & bitMask) != 0;
     	if (value) {
     		header[headerIndex] |= bitMask;
+    		if (!used) {
+    			numUsed++;
+    		}
     	}
     	else {
     		header[headerIndex] &= ~bitMask;
+    		if (used) {
+    			numUsed--;
+    		}
+    		if (headerIndex < freeHint) {
+    			freeHint = headerIndex;
+    		}
     	}
     }
 
@@ -369,7 +514,7 @@ public class HeapPage implements Page {
                     idx++;
                 }
                 count++;
-                nextTuple = tuples[idx];
+                nextTuple = getTuple(idx);
                 idx++;
             }
     	}
@@ -389,7 +534,7 @@ public class HeapPage implements Page {
                     idx++;
                 }
                 count++;
-                nextTuple = tuples[idx];
+                nextTuple = getTuple(idx);
                 idx++;
             }
 
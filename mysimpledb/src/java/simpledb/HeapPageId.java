@@ -41,8 +41,7 @@ public class HeapPageId implements PageId {
      * @see BufferPool
      */
     public int hashCode() {
-    	String pid = Integer.toString(tid) + " " + Integer.toString(pno);
-    	return pid.hashCode();
+    	return 31 * tid + pno;
     }
 
     /**
@@ -56,7 +55,8 @@ public class HeapPageId implements PageId {
         if (!(o instanceof HeapPageId)) {
         	return false;
         }
-        return ((HeapPageId) o).hashCode() == hashCode();
+        HeapPageId other = (HeapPageId) o;
+        return other.tid == tid && other.pno == pno;
     }
 
     /**
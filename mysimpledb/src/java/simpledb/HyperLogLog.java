@@ -0,0 +1,78 @@
+package simpledb;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values in a column
+ * using a fixed 2^PRECISION bytes of state, with a standard error of about
+ * 1.04 / sqrt(2^PRECISION) (about 3%). Sketches built over parts of a
+ * column can be merged. Values cannot be removed, so after deletes the
+ * estimate is an upper bound.
+ */
+public class HyperLogLog {
+
+    static final int PRECISION = 10;
+    private static final int M = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    private final byte[] registers = new byte[M];
+
+    /**
+     * Adds a field value to the sketch.
+     */
+    public void add(Field f) {
+        addHash(mix(f.hashCode()));
+    }
+
+    void addHash(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // position of the first set bit in the remaining bits, counting from 1
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Folds another sketch into this one, so this one describes the union
+     * of both value sets.
+     */
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < M; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct values added
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * M * M / sum;
+        if (estimate <= 2.5 * M && zeros > 0) {
+            // linear counting is more accurate for small sets
+            estimate = M * Math.log((double) M / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Spreads a 32 bit hash code over 64 bits (the MurmurHash3 finalizer).
+     */
+    private static long mix(int h) {
+        long k = h;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,188 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The IndexNestedLoopJoin operator implements an equality join by probing a
+ * {@link HashIndex} on the inner table's join field once for each tuple of
+ * the outer child, and fetching the matching tuples by record id. The
+ * inner table is never scanned, so it is much cheaper than {@link Join} or
+ * {@link HashEquiJoin} when the outer child is small.
+ * <p/>
+ * The inner side is given as a SeqScan, which is not opened; its table,
+ * alias, pushed down predicate and projection say which tuples to return
+ * and how. Output tuples are the concatenation of the outer and inner
+ * tuples, as for Join.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    JoinPredicate pred;
+    DbIterator outer;
+    SeqScan inner;
+    TupleDesc td;
+    boolean isOpen;
+
+    private transient HashIndex index;
+    private transient CompiledPredicate filter;
+    private transient int[] offsets;
+    private transient TupleDesc projected;
+    private transient Tuple left;
+    private transient List<RecordId> matches;
+    private transient int matchPos;
+
+    /**
+     * Constructor.
+     *
+     * @param p     The predicate to use to join the children; its operator
+     *              must be EQUALS, and field2 indexes the inner scan's tuples
+     * @param outer Iterator for the left(outer) relation to join
+     * @param inner the scan of the right(inner) relation
+     * @throws IllegalArgumentException if the predicate is not an equality,
+     *                                  or the inner table has no hash index
+     *                                  on the join field
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator outer, SeqScan inner) {
+        if (p.getOperator() != Predicate.Op.EQUALS) {
+            throw new IllegalArgumentException("index join needs an equality predicate");
+        }
+        pred = p;
+        this.outer = outer;
+        this.inner = inner;
+        td = TupleDesc.merge(outer.getTupleDesc(), inner.getTupleDesc());
+        index = findIndex();
+    }
+
+    private HashIndex findIndex() {
+        int field = inner.getFields() == null ? pred.getField2() : inner.getFields()[pred.getField2()];
+        HashIndex index = Database.getCatalog().getIndex(inner.tabId, field);
+        if (index == null) {
+            throw new IllegalArgumentException("no hash index on " + getJoinField2Name());
+        }
+        return index;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    /**
+     * @return the field name of join field1. Should be quantified by
+     * alias or table name.
+     */
+    public String getJoinField1Name() {
+        return outer.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    /**
+     * @return the field name of join field2. Should be quantified by
+     * alias or table name.
+     */
+    public String getJoinField2Name() {
+        return inner.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        super.open();
+        outer.open();
+        if (index == null) {
+            index = findIndex();
+        }
+        filter = inner.getFilter() == null ? null : PredicateCompiler.compile(inner.getFilter());
+        TupleDesc tableTd = Database.getCatalog().getTupleDesc(inner.tabId);
+        offsets = inner.getFields() == null ? null : HeapPage.fieldOffsets(tableTd);
+        projected = inner.getFields() == null ? null
+                : ((HeapFile) Database.getCatalog().getDatabaseFile(inner.tabId)).projectedTupleDesc(inner.getFields());
+        left = null;
+        matches = null;
+        isOpen = true;
+    }
+
+    public void close() {
+        outer.close();
+        super.close();
+        isOpen = false;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (!isOpen) {
+            throw new DbException("open the iterator first");
+        }
+        outer.rewind();
+        left = null;
+        matches = null;
+    }
+
+    /**
+     * @return the indexed tuple, projected as the inner scan asks, or null
+     * if it fails the scan's predicate
+     */
+    private Tuple fetch(RecordId rid) throws DbException, TransactionAbortedException {
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(inner.tid, rid.getPageId(),
+                Permissions.READ_ONLY);
+        Tuple t = page.getTuple(rid.tupleno());
+        if (filter != null && !filter.filter(t)) {
+            return null;
+        }
+        return projected == null ? t : page.getTuple(rid.tupleno(), inner.getFields(), offsets, projected);
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (!isOpen) {
+            throw new DbException("open iterator first");
+        }
+        while (true) {
+            while (matches == null || matchPos >= matches.size()) {
+                if (!outer.hasNext()) {
+                    return null;
+                }
+                left = outer.next();
+                matches = index.lookup(inner.tid, left.getField(pred.getField1()));
+                matchPos = 0;
+            }
+            Tuple right = fetch(matches.get(matchPos++));
+            if (right != null) {
+                return mergeTuples(left, right);
+            }
+        }
+    }
+
+    private Tuple mergeTuples(Tuple l, Tuple r) {
+        int n1 = l.getTupleDesc().numFields();
+        int n2 = r.getTupleDesc().numFields();
+        Tuple rv = new Tuple(td);
+        for (int i = 0; i < n1; i++) {
+            rv.setField(i, l.getField(i));
+        }
+        for (int i = 0; i < n2; i++) {
+            rv.setField(i + n1, r.getField(i));
+        }
+        return rv;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        DbIterator[] rv = { outer, inner };
+        return rv;
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        outer = children[0];
+        inner = (SeqScan) children[1];
+        td = TupleDesc.merge(outer.getTupleDesc(), inner.getTupleDesc());
+        index = findIndex();
+    }
+}
@@ -0,0 +1,210 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexOnlyScan answers a scan of a heap file table from a covering
+ * {@link HashIndex} alone, without reading the table. It returns the same
+ * tuples as a SeqScan with the same predicate and projection, in no
+ * particular order, as long as the index covers every field they use.
+ * <p/>
+ * When the predicate requires the key to equal a constant, only the bucket
+ * of that key is read; otherwise every index entry is. Either way the index
+ * entries are much smaller than the table's tuples, so fewer pages are read.
+ *
+ * @see HashIndex#coveringIterator
+ */
+public class IndexOnlyScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    TransactionId tid;
+    private final HashIndex index;
+    private final String alias;
+    // predicate on the table's fields, or null
+    private Predicate filter;
+    // the table fields returned
+    private final int[] fields;
+    private final TupleDesc td;
+
+    private transient DbFileIterator it;
+    private transient CompiledPredicate compiled;
+    private transient Tuple next;
+
+    /**
+     * Constructor.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param index      the covering index to read
+     * @param tableAlias the alias of the indexed table, prefixed to the field
+     *                   names
+     * @param filter     the predicate, whose field numbers index the table's
+     *                   fields, or null to return every tuple
+     * @param fields     the table fields to return, in order
+     * @throws IllegalArgumentException if the index does not cover the
+     *                                  fields or the predicate
+     */
+    public IndexOnlyScan(TransactionId tid, HashIndex index, String tableAlias, Predicate filter, int[] fields) {
+        for (int f : fields) {
+            if (!index.covers(f)) {
+                throw new IllegalArgumentException("the index does not cover field " + f);
+            }
+        }
+        if (filter != null && !covers(index, filter)) {
+            throw new IllegalArgumentException("the index does not cover " + filter);
+        }
+        this.tid = tid;
+        this.index = index;
+        this.alias = tableAlias;
+        this.filter = filter;
+        this.fields = fields.clone();
+        TupleDesc tableTd = Database.getCatalog().getTupleDesc(index.getTableId());
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = tableTd.getFieldType(fields[i]);
+            names[i] = tableAlias + "." + tableTd.getFieldName(fields[i]);
+        }
+        td = new TupleDesc(types, names);
+    }
+
+    /**
+     * @return true if the index holds every field a predicate reads
+     */
+    static boolean covers(HashIndex index, Predicate p) {
+        if (p instanceof CompositePredicate) {
+            for (Predicate child : ((CompositePredicate) p).getChildren()) {
+                if (!covers(index, child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (p instanceof FieldPredicate) {
+            JoinPredicate jp = ((FieldPredicate) p).getJoinPredicate();
+            return index.covers(jp.getField1()) && index.covers(jp.getField2());
+        }
+        return index.covers(p.getField());
+    }
+
+    /**
+     * @return the conjunct of a predicate requiring a field to equal a
+     * constant or a parameter, or null if it has none
+     */
+    static Predicate keyEquality(Predicate p, int field) {
+        if (p instanceof CompositePredicate) {
+            CompositePredicate c = (CompositePredicate) p;
+            if (c.getKind() != CompositePredicate.Kind.AND) {
+                return null;
+            }
+            for (Predicate child : c.getChildren()) {
+                Predicate eq = keyEquality(child, field);
+                if (eq != null) {
+                    return eq;
+                }
+            }
+            return null;
+        }
+        if (p instanceof FieldPredicate || p.getField() != field || p.getOp() != Predicate.Op.EQUALS) {
+            return null;
+        }
+        return p;
+    }
+
+    /**
+     * @return the index this scan reads
+     */
+    public HashIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * @return the predicate the scan returns tuples for, or null
+     */
+    public Predicate getFilter() {
+        return filter;
+    }
+
+    /**
+     * Replaces the predicate of this scan. The scan must be closed.
+     */
+    void setFilter(Predicate filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return the table fields this scan returns
+     */
+    public int[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * Moves the scan to another transaction. The scan must be closed.
+     */
+    void setTransactionId(TransactionId tid) {
+        this.tid = tid;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        Predicate eq = filter == null ? null : keyEquality(filter, index.keyField());
+        it = index.coveringIterator(tid, eq == null ? null : eq.getOperand());
+        compiled = filter == null ? null : PredicateCompiler.compile(filter);
+        next = null;
+        it.open();
+    }
+
+    /**
+     * @return the table fields returned, prefixed with the table alias
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (it == null) {
+            return false;
+        }
+        while (next == null && it.hasNext()) {
+            Tuple t = it.next();
+            if (compiled == null || compiled.filter(t)) {
+                next = t;
+            }
+        }
+        return next != null;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Tuple out = new Tuple(td);
+        out.setRecordId(next.getRecordId());
+        for (int i = 0; i < fields.length; i++) {
+            out.setField(i, next.getField(fields[i]));
+        }
+        next = null;
+        return out;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        compiled = filter == null ? null : PredicateCompiler.compile(filter);
+        next = null;
+        it.rewind();
+    }
+
+    public void close() {
+        if (it != null) {
+            it.close();
+            it = null;
+        }
+        next = null;
+    }
+}
@@ -0,0 +1,90 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan reads the tuples of a table stored in a {@link BTreeFile} that
+ * pass a predicate, in key order. When the predicate compares the key field
+ * with a constant, the scan descends the tree to the first matching key and
+ * stops after the last, rather than reading the whole table.
+ */
+public class IndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int tabId;
+    private final String alias;
+    private final Predicate pred;
+    private final DbFileIterator it;
+
+    /**
+     * Creates an index scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the table to scan, which must be a BTreeFile
+     * @param tableAlias the alias of this table, prefixed to the field names
+     * @param pred       the predicate, whose field numbers index the table's
+     *                   fields, or null to return every tuple
+     * @throws IllegalArgumentException if the table is not a BTreeFile
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, Predicate pred) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(file instanceof BTreeFile)) {
+            throw new IllegalArgumentException("table " + tableid + " is not a B+tree");
+        }
+        this.tabId = tableid;
+        this.alias = tableAlias;
+        this.pred = pred;
+        this.it = ((BTreeFile) file).indexIterator(tid, pred);
+    }
+
+    /**
+     * @return the predicate the scan returns tuples for, or null
+     */
+    public Predicate getPredicate() {
+        return pred;
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        it.open();
+    }
+
+    /**
+     * @return the table's TupleDesc, with field names prefixed with the
+     * table alias
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = Database.getCatalog().getTupleDesc(tabId);
+        Type[] types = new Type[td.numFields()];
+        String[] names = new String[td.numFields()];
+        for (int i = 0; i < td.numFields(); i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = alias + "." + td.getFieldName(i);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return it.hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        return it.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it.rewind();
+    }
+
+    public void close() {
+        it.close();
+    }
+}
@@ -13,6 +13,7 @@ public class Insert extends Operator {
     int tabid;
     boolean isopen;
     boolean inserted;
+    boolean bulk;
     TupleDesc td;
 
     private static final long serialVersionUID = 1L;
@@ -28,6 +29,26 @@ public class Insert extends Operator {
      */
     public Insert(TransactionId t, DbIterator child, int tableid)
             throws DbException {
+        this(t, child, tableid, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param t       The transaction running the insert.
+     * @param child   The child operator from which to read tuples to be inserted.
+     * @param tableid The table in which to insert tuples.
+     * @param bulk    If true, load the tuples with
+     *                {@link BufferPool#bulkInsertTuples}, which fills whole pages
+     *                in memory and appends them to the table file. The
+     *                appended pages are logged, so the load is undone if t
+     *                aborts.
+     * @throws DbException if TupleDesc of child differs from table into which we are to
+     *                     insert.
+     */
+    public Insert(TransactionId t, DbIterator child, int tableid, boolean bulk)
+            throws DbException {
+        this.bulk = bulk;
         tid = t;
         childIt = child;
         tabid = tableid;
@@ -85,14 +106,22 @@ public class Insert extends Operator {
         }
         Tuple tup = new Tuple(td);
         int num = 0;
-        while (childIt.hasNext()) {
+        if (bulk) {
             try {
-                Tuple tpl = childIt.next();
-                Database.getBufferPool().insertTuple(tid, tabid, tpl);
-                num++;
+                num = Database.getBufferPool().bulkInsertTuples(tid, tabid, childIt);
             } catch (IOException e) {
                 throw new DbException("could not insert tuples");
             }
+        } else {
+            while (childIt.hasNext()) {
+                try {
+                    Tuple tpl = childIt.next();
+                    Database.getBufferPool().insertTuple(tid, tabid, tpl);
+                    num++;
+                } catch (IOException e) {
+                    throw new DbException("could not insert tuples");
+                }
+            }
         }
         tup.setField(0, new IntField(num));
         inserted = true;
@@ -0,0 +1,226 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * A class to represent a histogram over a single integer-valued field.
+ * <p/>
+ * Buckets are contiguous ranges of values; bucket i covers
+ * [lows[i], lows[i + 1] - 1] and the last bucket ends at max. Values are
+ * assumed to be spread evenly within a bucket. Histograms are either
+ * equi-width (see the constructor) or equi-depth, built from a sample of the
+ * column (see {@link #fromSample}).
+ * <p/>
+ * Values outside the current range widen the first or last bucket, so a
+ * histogram can be kept up to date as tuples are inserted and deleted.
+ */
+public class IntHistogram {
+
+    private final int[] lows;
+    private final double[] counts;
+    private int max;
+    private double total;
+
+    /**
+     * Create a new equi-width histogram.
+     *
+     * @param buckets The number of buckets to split the input value into.
+     * @param min     The minimum integer value that will ever be passed to this class for histogramming
+     * @param max     The maximum integer value that will ever be passed to this class for histogramming
+     */
+    public IntHistogram(int buckets, int min, int max) {
+        long range = (long) max - min + 1;
+        int n = (int) Math.max(1, Math.min(buckets, range));
+        lows = new int[n];
+        for (int i = 0; i < n; i++) {
+            lows[i] = (int) (min + range * i / n);
+        }
+        counts = new double[n];
+        this.max = max;
+    }
+
+    private IntHistogram(int[] lows, double[] counts, int max) {
+        this.lows = lows;
+        this.counts = counts;
+        this.max = max;
+        for (double c : counts) {
+            total += c;
+        }
+    }
+
+    /**
+     * Builds an equi-depth histogram from a uniform sample of a column.
+     *
+     * @param buckets the maximum number of buckets; fewer are used when
+     *                heavy values share a boundary
+     * @param sample  the sampled values, sorted ascending
+     * @param min     the smallest value in the column
+     * @param max     the largest value in the column
+     * @param total   the number of values in the column
+     */
+    public static IntHistogram fromSample(int buckets, int[] sample, int min, int max, long total) {
+        if (sample.length == 0 || total == 0) {
+            return new IntHistogram(1, min, Math.max(min, max));
+        }
+        int n = Math.max(1, Math.min(buckets, sample.length));
+        int[] lows = new int[n];
+        int used = 0;
+        lows[used++] = min;
+        for (int i = 1; i < n; i++) {
+            int low = sample[(int) ((long) sample.length * i / n)];
+            if (low > lows[used - 1]) {
+                lows[used++] = low;
+            }
+        }
+        lows = Arrays.copyOf(lows, used);
+
+        double[] counts = new double[used];
+        double scale = (double) total / sample.length;
+        for (int v : sample) {
+            counts[bucketOf(lows, v)] += scale;
+        }
+        return new IntHistogram(lows, counts, max);
+    }
+
+    private static int bucketOf(int[] lows, int v) {
+        int i = Arrays.binarySearch(lows, v);
+        if (i >= 0) {
+            return i;
+        }
+        return Math.max(0, -i - 2);
+    }
+
+    private int bucketOf(int v) {
+        return bucketOf(lows, v);
+    }
+
+    private double low(int b) {
+        return lows[b];
+    }
+
+    private double high(int b) {
+        return b + 1 < lows.length ? lows[b + 1] - 1 : max;
+    }
+
+    private double width(int b) {
+        return high(b) - low(b) + 1;
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     *
+     * @param v Value to add to the histogram
+     */
+    public void addValue(int v) {
+        if (v < lows[0]) {
+            lows[0] = v;
+        }
+        if (v > max) {
+            max = v;
+        }
+        counts[bucketOf(v)]++;
+        total++;
+    }
+
+    /**
+     * Remove a value added before from the histogram.
+     *
+     * @param v Value to remove
+     */
+    public void removeValue(int v) {
+        int b = bucketOf(v);
+        if (counts[b] >= 1) {
+            counts[b]--;
+            total--;
+        }
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this table.
+     * <p/>
+     * For example, if "op" is "GREATER_THAN" and "v" is 5,
+     * return your estimate of the fraction of elements that are greater than 5.
+     *
+     * @param op Operator
+     * @param v  Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, int v) {
+        if (total <= 0) {
+            return 0.0;
+        }
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return equalsFraction(v);
+            case NOT_EQUALS:
+                return 1.0 - equalsFraction(v);
+            case GREATER_THAN:
+                return greaterFraction(v);
+            case GREATER_THAN_OR_EQ:
+                return greaterFraction(v) + equalsFraction(v);
+            case LESS_THAN:
+                return lessFraction(v);
+            case LESS_THAN_OR_EQ:
+                return lessFraction(v) + equalsFraction(v);
+        }
+        throw new IllegalArgumentException("unknown operator " + op);
+    }
+
+    private double equalsFraction(int v) {
+        if (v < lows[0] || v > max) {
+            return 0.0;
+        }
+        int b = bucketOf(v);
+        return counts[b] / width(b) / total;
+    }
+
+    private double greaterFraction(int v) {
+        if (v < lows[0]) {
+            return 1.0;
+        }
+        if (v >= max) {
+            return 0.0;
+        }
+        int b = bucketOf(v);
+        double sum = counts[b] * (high(b) - v) / width(b);
+        for (int i = b + 1; i < counts.length; i++) {
+            sum += counts[i];
+        }
+        return sum / total;
+    }
+
+    private double lessFraction(int v) {
+        if (v <= lows[0]) {
+            return 0.0;
+        }
+        if (v > max) {
+            return 1.0;
+        }
+        int b = bucketOf(v);
+        double sum = counts[b] * (v - low(b)) / width(b);
+        for (int i = 0; i < b; i++) {
+            sum += counts[i];
+        }
+        return sum / total;
+    }
+
+    /**
+     * @return the number of values in the histogram
+     */
+    public double count() {
+        return total;
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < lows.length; b++) {
+            sb.append("[").append(lows[b]).append(", ").append((long) high(b)).append("]: ")
+                    .append(counts[b]).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.*;
+
 /**
  * Knows how to compute some aggregate over a set of IntFields.
  */
@@ -7,6 +9,13 @@ public class IntegerAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
 
+    int gbfield;
+    Type gbfieldtype;
+    int afield;
+    Op what;
+    // group value (null when not grouping) -> {sum, count, min, max}
+    LinkedHashMap<Field, long[]> groups;
+
     /**
      * Aggregate constructor
      *
@@ -19,7 +28,14 @@ public class IntegerAggregator implements Aggregator {
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // some code goes here
+        if (what == Op.SUM_COUNT || what == Op.SC_AVG) {
+            throw new IllegalArgumentException("unsupported aggregate " + what);
+        }
+        this.gbfield = gbfield;
+        this.gbfieldtype = gbfieldtype;
+        this.afield = afield;
+        this.what = what;
+        groups = new LinkedHashMap<Field, long[]>();
     }
 
     /**
@@ -29,7 +45,17 @@ public class IntegerAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        // some code goes here
+        Field group = (gbfield == NO_GROUPING) ? null : tup.getField(gbfield);
+        int value = ((IntField) tup.getField(afield)).getValue();
+        long[] agg = groups.get(group);
+        if (agg == null) {
+            agg = new long[]{0, 0, value, value};
+            groups.put(group, agg);
+        }
+        agg[0] += value;
+        agg[1]++;
+        agg[2] = Math.min(agg[2], value);
+        agg[3] = Math.max(agg[3], value);
     }
 
     /**
@@ -41,9 +67,36 @@ public class IntegerAggregator implements Aggregator {
      * the constructor.
      */
     public DbIterator iterator() {
-        // some code goes here
-        throw new
-        UnsupportedOperationException("please implement me for lab3");                                     // cosc460
+        TupleDesc td = (gbfield == NO_GROUPING)
+                ? new TupleDesc(new Type[]{Type.INT_TYPE})
+                : new TupleDesc(new Type[]{gbfieldtype, Type.INT_TYPE});
+        ArrayList<Tuple> results = new ArrayList<Tuple>();
+        for (Map.Entry<Field, long[]> e : groups.entrySet()) {
+            Tuple t = new Tuple(td);
+            int i = 0;
+            if (gbfield != NO_GROUPING) {
+                t.setField(i++, e.getKey());
+            }
+            t.setField(i, new IntField(aggregateValue(e.getValue())));
+            results.add(t);
+        }
+        return new TupleIterator(td, results);
+    }
+
+    private int aggregateValue(long[] agg) {
+        switch (what) {
+            case SUM:
+                return (int) agg[0];
+            case COUNT:
+                return (int) agg[1];
+            case MIN:
+                return (int) agg[2];
+            case MAX:
+                return (int) agg[3];
+            case AVG:
+                return (int) (agg[0] / agg[1]);
+        }
+        throw new IllegalStateException("impossible to reach here");
     }
 
 }
@@ -13,6 +13,13 @@ public class Join extends Operator {
     DbIterator childit1, childit2;
     Tuple t1, t2;
     boolean isOpen;
+    TupleDesc td;
+    private transient CompiledJoinPredicate compiled;
+
+    // state of the block nested loops used by fetchNextBatch
+    private transient BatchIterator outerBatches, innerBatches;
+    private transient TupleBatch outer, inner;
+    private transient int outerPos, innerPos;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
@@ -29,6 +36,7 @@ public class Join extends Operator {
         isOpen = false;
         t1 = null;
         t2 = null;
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -56,7 +64,7 @@ public class Join extends Operator {
      * implementation logic.
      */
     public TupleDesc getTupleDesc() {
-        return TupleDesc.merge(childit1.getTupleDesc(), childit2.getTupleDesc());
+        return td;
     }
 
     public void open() throws DbException, NoSuchElementException,
@@ -68,6 +76,11 @@ public class Join extends Operator {
         } catch (DbException e) {
             throw new DbException("could not open");
         }
+        compiled = compilePredicate();
+        outerBatches = BatchAdapter.of(childit1);
+        innerBatches = BatchAdapter.of(childit2);
+        outer = null;
+        inner = null;
         isOpen = true;
     }
 
@@ -82,6 +95,9 @@ public class Join extends Operator {
         if (isOpen) {
             childit1.rewind();
             childit2.rewind();
+            t1 = null;
+            outer = null;
+            inner = null;
         }
         else {
             throw new DbException("open the iterator first");
@@ -115,17 +131,8 @@ public class Join extends Operator {
                 }
                 while (childit2.hasNext()) {
                     t2 = childit2.next();
-                    if (pred.filter(t1, t2)) {
-                        int n1 = childit1.getTupleDesc().numFields();
-                        int n2 = childit2.getTupleDesc().numFields();
-                        Tuple rv = new Tuple(getTupleDesc());
-                        for (int i = 0; i < n1; i++) {
-                            rv.setField(i, t1.getField(i));
-                        }
-                        for (int i = 0; i < n2; i++) {
-                            rv.setField(i + n1, t2.getField(i));
-                        }
-                        return rv;
+                    if (compiled.filter(t1, t2)) {
+                        return mergeTuples(t1, t2);
                     }
                 }
             }
@@ -136,6 +143,79 @@ public class Join extends Operator {
         }
     }
 
+    /**
+     * Block nested loops join over batches: every batch of the outer child
+     * is joined against one full pass of the inner child, so the inner child
+     * is rewound once per outer batch rather than once per outer tuple.
+     * Within a batch, output order follows the inner batch first, so it may
+     * differ from the order produced by fetchNext().
+     *
+     * @return The next batch of matching tuples, or null if there are no more.
+     */
+    protected TupleBatch fetchNextBatch() throws TransactionAbortedException,
+            DbException {
+        if (!isOpen) {
+            throw new DbException("open iterator first");
+        }
+        TupleBatch out = getBatchBuffer();
+        out.clear();
+        while (true) {
+            if (outer == null) {
+                outer = outerBatches.nextBatch();
+                if (outer == null) {
+                    break;
+                }
+                childit2.rewind();
+                inner = null;
+            }
+            if (inner == null) {
+                inner = innerBatches.nextBatch();
+                outerPos = 0;
+                innerPos = 0;
+                if (inner == null) {
+                    // this outer batch has seen all of the inner relation
+                    outer = null;
+                    continue;
+                }
+            }
+            for (; outerPos < outer.size(); outerPos++) {
+                Tuple left = outer.get(outerPos);
+                for (; innerPos < inner.size(); innerPos++) {
+                    Tuple right = inner.get(innerPos);
+                    if (compiled.filter(left, right)) {
+                        out.add(mergeTuples(left, right));
+                        if (out.isFull()) {
+                            innerPos++;
+                            return out;
+                        }
+                    }
+                }
+                innerPos = 0;
+            }
+            inner = null;
+        }
+        return out.size() > 0 ? out : null;
+    }
+
+    private CompiledJoinPredicate compilePredicate() {
+        Type type1 = childit1.getTupleDesc().getFieldType(pred.getField1());
+        Type type2 = childit2.getTupleDesc().getFieldType(pred.getField2());
+        return PredicateCompiler.compile(pred, type1 == type2 ? type1 : null);
+    }
+
+    private Tuple mergeTuples(Tuple left, Tuple right) {
+        int n1 = left.getTupleDesc().numFields();
+        int n2 = right.getTupleDesc().numFields();
+        Tuple rv = new Tuple(td);
+        for (int i = 0; i < n1; i++) {
+            rv.setField(i, left.getField(i));
+        }
+        for (int i = 0; i < n2; i++) {
+            rv.setField(i + n1, right.getField(i));
+        }
+        return rv;
+    }
+
     @Override
     public DbIterator[] getChildren() {
         DbIterator[] rv = { childit1, childit2 };
@@ -146,6 +226,7 @@ public class Join extends Operator {
     public void setChildren(DbIterator[] children) {
         childit1 = children[0];
         childit2 = children[1];
+        td = TupleDesc.merge(childit1.getTupleDesc(), childit2.getTupleDesc());
     }
 
 }
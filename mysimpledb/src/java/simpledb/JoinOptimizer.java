@@ -0,0 +1,594 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * JoinOptimizer chooses the order in which to join a set of tables, and the
+ * join algorithm for each join, using Selinger-style dynamic programming
+ * over left-deep plans. Costs and cardinalities come from the
+ * {@link TableStats} kept in the Catalog, which are computed on first use
+ * if missing.
+ * <p/>
+ * Typical use:
+ * <pre>
+ * JoinOptimizer jo = new JoinOptimizer(tid);
+ * jo.addTable("s", Database.getCatalog().getTableId("Students"));
+ * jo.addTable("t", Database.getCatalog().getTableId("Takes"));
+ * jo.addFilter("s", new Predicate(1, Predicate.Op.EQUALS, alice));
+ * jo.addJoin("s", "sid", Predicate.Op.EQUALS, "t", "sid");
+ * DbIterator plan = jo.optimize();
+ * </pre>
+ * Fields in the plan's output are named alias.field. Their order follows
+ * the join order chosen, not the order the tables were added in. Tables
+ * whose columns are limited with {@link #setColumns} are scanned with
+ * projection pushed down, so only the fields the query uses are decoded.
+ * An equality join with a table that has a {@link HashIndex} on its join
+ * field may be planned as an {@link IndexNestedLoopJoin}, which probes the
+ * index once per tuple of the rest of the plan instead of scanning the
+ * table. A table whose limited columns and filters are all covered by one
+ * of its hash indexes may be read with an {@link IndexOnlyScan} instead of
+ * being scanned.
+ */
+public class JoinOptimizer {
+
+    /**
+     * Most tables a single plan can join
+     */
+    public static final int MAX_TABLES = 16;
+
+    /**
+     * Fraction of tuple pairs assumed to pass a join condition other than
+     * equality or inequality
+     */
+    static final double RANGE_SELECTIVITY = 0.3;
+
+    /**
+     * Fraction of tuples assumed to pass a filter with no usable statistics
+     */
+    static final double DEFAULT_SELECTIVITY = 0.1;
+
+    /**
+     * A join condition alias1.field1 op alias2.field2
+     */
+    private static final class Edge {
+        final int t1, t2;
+        final String field1, field2;
+        final Predicate.Op op;
+
+        Edge(int t1, String field1, Predicate.Op op, int t2, String field2) {
+            this.t1 = t1;
+            this.field1 = field1;
+            this.op = op;
+            this.t2 = t2;
+            this.field2 = field2;
+        }
+    }
+
+    /**
+     * The best plan found for a set of tables: either a single table, or the
+     * best plan for all but one of them joined with the remaining table.
+     */
+    private static final class Plan {
+        final int mask;
+        final double cost, card;
+        final Plan rest;
+        final int table;
+        final Edge edge;
+        final List<Edge> extra;
+        final boolean hash;
+        // true if the single table is the left child of the join
+        final boolean tableFirst;
+        // true if the single table is the inner child, probed through a hash
+        // index on its join field
+        final boolean probe;
+
+        Plan(int mask, double cost, double card, Plan rest, int table, Edge edge,
+             List<Edge> extra, boolean hash, boolean tableFirst) {
+            this(mask, cost, card, rest, table, edge, extra, hash, tableFirst, false);
+        }
+
+        Plan(int mask, double cost, double card, Plan rest, int table, Edge edge,
+             List<Edge> extra, boolean hash, boolean tableFirst, boolean probe) {
+            this.mask = mask;
+            this.cost = cost;
+            this.card = card;
+            this.rest = rest;
+            this.table = table;
+            this.edge = edge;
+            this.extra = extra;
+            this.hash = hash;
+            this.tableFirst = tableFirst;
+            this.probe = probe;
+        }
+    }
+
+    private final TransactionId tid;
+    private final List<String> aliases = new ArrayList<String>();
+    private final List<Integer> tableIds = new ArrayList<Integer>();
+    private final List<List<Predicate>> filters = new ArrayList<List<Predicate>>();
+    // the fields each table must return, or null for all of them
+    private final List<Set<String>> columns = new ArrayList<Set<String>>();
+    private final List<Edge> edges = new ArrayList<Edge>();
+    private Plan best;
+
+    /**
+     * Constructor.
+     *
+     * @param tid the transaction the plan will run in
+     */
+    public JoinOptimizer(TransactionId tid) {
+        this.tid = tid;
+    }
+
+    /**
+     * Adds a table to the query.
+     *
+     * @param alias   the name the table's fields are qualified with
+     * @param tableId the id of the table
+     * @throws IllegalArgumentException if the alias is already in use
+     */
+    public void addTable(String alias, int tableId) {
+        if (aliases.contains(alias)) {
+            throw new IllegalArgumentException("duplicate table alias " + alias);
+        }
+        if (aliases.size() == MAX_TABLES) {
+            throw new IllegalArgumentException("cannot join more than " + MAX_TABLES + " tables");
+        }
+        aliases.add(alias);
+        tableIds.add(tableId);
+        filters.add(new ArrayList<Predicate>());
+        columns.add(null);
+        best = null;
+    }
+
+    /**
+     * Adds a filter on a single table.
+     *
+     * @param alias the table the filter applies to
+     * @param p     the filter; its field numbers index the table's schema
+     */
+    public void addFilter(String alias, Predicate p) {
+        filters.get(indexOf(alias)).add(p);
+        best = null;
+    }
+
+    /**
+     * Adds a join condition alias1.field1 op alias2.field2 between two
+     * tables. Field names are not qualified by the alias.
+     */
+    public void addJoin(String alias1, String field1, Predicate.Op op, String alias2, String field2) {
+        edges.add(new Edge(indexOf(alias1), field1, op, indexOf(alias2), field2));
+        best = null;
+    }
+
+    /**
+     * Limits the fields of a table that the plan returns to those named,
+     * plus those its join conditions use; the table's filters may still use
+     * any field. By default every field is returned.
+     *
+     * @param alias  the table
+     * @param fields the names of the fields, not qualified by the alias
+     */
+    public void setColumns(String alias, Collection<String> fields) {
+        columns.set(indexOf(alias), new HashSet<String>(fields));
+    }
+
+    private int indexOf(String alias) {
+        int i = aliases.indexOf(alias);
+        if (i < 0) {
+            throw new IllegalArgumentException("unknown table alias " + alias);
+        }
+        return i;
+    }
+
+    /**
+     * Chooses a join order and returns the plan for it. Every operator in
+     * the plan has its estimated cardinality set.
+     *
+     * @return the root of the plan
+     * @throws DbException if there are no tables, or the join conditions do
+     *                     not connect all of them
+     */
+    public DbIterator optimize() throws DbException {
+        int n = aliases.size();
+        if (n == 0) {
+            throw new DbException("no tables to join");
+        }
+        Plan[] plans = new Plan[1 << n];
+        for (int t = 0; t < n; t++) {
+            plans[1 << t] = leafPlan(t);
+        }
+        // every proper subset of a set is numerically smaller than it
+        for (int mask = 1; mask < plans.length; mask++) {
+            if (Integer.bitCount(mask) < 2) {
+                continue;
+            }
+            for (int t = 0; t < n; t++) {
+                int rest = mask & ~(1 << t);
+                if (rest == mask || plans[rest] == null) {
+                    continue;
+                }
+                Plan candidate = joinPlan(plans[rest], plans[1 << t]);
+                if (candidate != null && (plans[mask] == null || candidate.cost < plans[mask].cost)) {
+                    plans[mask] = candidate;
+                }
+            }
+        }
+        best = plans[plans.length - 1];
+        if (best == null) {
+            throw new DbException("join conditions do not connect all tables; cross products are not supported");
+        }
+        return build(best, tid);
+    }
+
+    /**
+     * Builds a fresh copy of the plan chosen by the last call to optimize()
+     * to run in another transaction, without planning again.
+     *
+     * @param tid the transaction the plan will run in
+     * @return the root of the plan
+     */
+    public DbIterator getPlan(TransactionId tid) throws DbException {
+        if (best == null) {
+            throw new IllegalStateException("optimize() has not been called");
+        }
+        return build(best, tid);
+    }
+
+    /**
+     * @return the estimated cost of the plan chosen by the last call to
+     * optimize(), in units of tuple operations
+     */
+    public double getPlanCost() {
+        if (best == null) {
+            throw new IllegalStateException("optimize() has not been called");
+        }
+        return best.cost;
+    }
+
+    /**
+     * @return the estimated number of tuples the last plan returns
+     */
+    public double getPlanCardinality() {
+        if (best == null) {
+            throw new IllegalStateException("optimize() has not been called");
+        }
+        return best.card;
+    }
+
+    private TableStats stats(int t) throws DbException {
+        int tableId = tableIds.get(t);
+        TableStats s = Database.getCatalog().getTableStats(tableId);
+        if (s == null) {
+            s = TableStats.compute(tableId);
+            Database.getCatalog().setTableStats(tableId, s);
+        }
+        return s;
+    }
+
+    private Plan leafPlan(int t) throws DbException {
+        TableStats s = stats(t);
+        double sel = 1.0;
+        for (Predicate p : filters.get(t)) {
+            sel *= selectivity(s, p);
+        }
+        double card = Math.max(s.totalTuples() * sel, s.totalTuples() > 0 ? 1 : 0);
+        double cost = s.estimateScanCost() + s.totalTuples();
+        HashIndex index = coveringIndex(t);
+        if (index != null) {
+            cost = Math.min(cost, indexOnlyCost(t, index));
+        }
+        return new Plan(1 << t, cost, card, null, t, null, null, false, false);
+    }
+
+    /**
+     * @return the hash index of table t that covers every field the query
+     * reads from it and is cheapest to read, or null. Only tables whose
+     * columns are limited can be covered.
+     */
+    private HashIndex coveringIndex(int t) throws DbException {
+        int[] fields = projection(t);
+        if (fields == null) {
+            return null;
+        }
+        Predicate pred = filter(t);
+        HashIndex best = null;
+        for (HashIndex index : Database.getCatalog().getIndexes(tableIds.get(t))) {
+            boolean covered = pred == null || IndexOnlyScan.covers(index, pred);
+            for (int f : fields) {
+                covered &= index.covers(f);
+            }
+            if (covered && (best == null || indexOnlyCost(t, index) < indexOnlyCost(t, best))) {
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Cost of reading table t's tuples from a covering index: one bucket if
+     * a filter fixes the key, and every page of the index otherwise.
+     */
+    private double indexOnlyCost(int t, HashIndex index) throws DbException {
+        TableStats s = stats(t);
+        Predicate pred = filter(t);
+        Predicate eq = pred == null ? null : IndexOnlyScan.keyEquality(pred, index.keyField());
+        if (eq == null) {
+            return index.numPages() * TableStats.IO_COST_PER_PAGE + s.totalTuples();
+        }
+        double entries = s.totalTuples() * selectivity(s, eq);
+        // the header and the bucket's first page, and rarely an overflow page
+        return Math.min(2, index.numPages()) * TableStats.IO_COST_PER_PAGE + entries;
+    }
+
+    private static double selectivity(TableStats s, Predicate p) {
+        if (p instanceof CompositePredicate) {
+            CompositePredicate c = (CompositePredicate) p;
+            List<Predicate> children = c.getChildren();
+            switch (c.getKind()) {
+                case NOT:
+                    return 1.0 - selectivity(s, children.get(0));
+                case AND: {
+                    double sel = 1.0;
+                    for (Predicate child : children) {
+                        sel *= selectivity(s, child);
+                    }
+                    return sel;
+                }
+                case OR: {
+                    double none = 1.0;
+                    for (Predicate child : children) {
+                        none *= 1.0 - selectivity(s, child);
+                    }
+                    return 1.0 - none;
+                }
+            }
+        }
+        if (p.getClass() != Predicate.class) {
+            return DEFAULT_SELECTIVITY;
+        }
+        if (p.getOperand() == null) {
+            // a placeholder: plan for a typical operand
+            return p.getParameter() >= 0 ? s.avgSelectivity(p.getField(), p.getOp()) : 0.0;
+        }
+        return s.estimateSelectivity(p.getField(), p.getOp(), p.getOperand());
+    }
+
+    /**
+     * Number of distinct values of one side of a join condition among card
+     * tuples of that side.
+     */
+    private double distinct(int t, String field, double card) throws DbException {
+        TableStats s = stats(t);
+        int i = Database.getCatalog().getTupleDesc(tableIds.get(t)).fieldNameToIndex(field);
+        return Math.max(1, Math.min(s.numDistinct(i), card));
+    }
+
+    private double edgeSelectivity(Edge e, double card1, double card2) throws DbException {
+        switch (e.op) {
+            case EQUALS:
+            case LIKE:
+                return 1.0 / Math.max(distinct(e.t1, e.field1, card1), distinct(e.t2, e.field2, card2));
+            case NOT_EQUALS:
+                return 1.0 - 1.0 / Math.max(distinct(e.t1, e.field1, card1), distinct(e.t2, e.field2, card2));
+            default:
+                return RANGE_SELECTIVITY;
+        }
+    }
+
+    /**
+     * Considers every way of joining the plan for a set of tables with one
+     * more table, and returns the cheapest, or null if no join condition
+     * connects them.
+     */
+    private Plan joinPlan(Plan rest, Plan table) throws DbException {
+        int t = table.table;
+        Edge primary = null;
+        List<Edge> extra = new ArrayList<Edge>();
+        for (Edge e : edges) {
+            boolean connects = (e.t1 == t && (rest.mask & (1 << e.t2)) != 0)
+                    || (e.t2 == t && (rest.mask & (1 << e.t1)) != 0);
+            if (!connects) {
+                continue;
+            }
+            if (primary == null || (primary.op != Predicate.Op.EQUALS && e.op == Predicate.Op.EQUALS)) {
+                if (primary != null) {
+                    extra.add(primary);
+                }
+                primary = e;
+            } else {
+                extra.add(e);
+            }
+        }
+        if (primary == null) {
+            return null;
+        }
+
+        double pairs = rest.card * table.card;
+        double card = pairs * edgeSelectivity(primary, sideCard(primary.t1, t, rest, table),
+                sideCard(primary.t2, t, rest, table));
+        for (Edge e : extra) {
+            card *= edgeSelectivity(e, sideCard(e.t1, t, rest, table), sideCard(e.t2, t, rest, table));
+        }
+        card = Math.max(card, pairs > 0 ? 1 : 0);
+        int mask = rest.mask | table.mask;
+        int block = TupleBatch.DEFAULT_CAPACITY;
+
+        // block nested loops, with either side as the outer
+        double restOuter = rest.cost + Math.ceil(rest.card / block) * table.cost + pairs;
+        double tableOuter = table.cost + Math.ceil(table.card / block) * rest.cost + pairs;
+        Plan plan = restOuter <= tableOuter
+                ? new Plan(mask, restOuter, card, rest, t, primary, extra, false, false)
+                : new Plan(mask, tableOuter, card, rest, t, primary, extra, false, true);
+
+        if (primary.op == Predicate.Op.EQUALS) {
+            // hash the smaller side, probe with the larger
+            double hashCost = rest.cost + table.cost + rest.card + table.card;
+            if (hashCost < plan.cost) {
+                plan = new Plan(mask, hashCost, card, rest, t, primary, extra, true,
+                        table.card >= rest.card);
+            }
+
+            // probe a hash index on the table once per tuple of the rest,
+            // fetching each match, before the table's filters, from the
+            // heap; neither reads more pages than the file has
+            String field = primary.t1 == t ? primary.field1 : primary.field2;
+            int tableId = tableIds.get(t);
+            int f = Database.getCatalog().getTupleDesc(tableId).fieldNameToIndex(field);
+            HashIndex index = Database.getCatalog().getIndex(tableId, f);
+            if (index != null) {
+                TableStats s = stats(t);
+                double filtered = table.card / Math.max(s.totalTuples(), 1);
+                double fetched = filtered > 0 ? card / filtered : 0;
+                double pages = Math.min(rest.card, index.numPages()) + Math.min(fetched, s.numPages());
+                double probeCost = rest.cost + pages * TableStats.IO_COST_PER_PAGE + fetched;
+                if (probeCost < plan.cost) {
+                    plan = new Plan(mask, probeCost, card, rest, t, primary, extra, false, false, true);
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static double sideCard(int side, int t, Plan rest, Plan table) {
+        return side == t ? table.card : rest.card;
+    }
+
+    private DbIterator build(Plan p, TransactionId tid) throws DbException {
+        if (p.rest == null) {
+            return leaf(p, tid);
+        }
+        DbIterator restOp = build(p.rest, tid);
+        DbIterator tableOp = p.probe ? scan(p.table, tid) : leaf(p, tid);
+        DbIterator left = p.tableFirst ? tableOp : restOp;
+        DbIterator right = p.tableFirst ? restOp : tableOp;
+        int leftMask = p.tableFirst ? 1 << p.table : p.rest.mask;
+
+        Edge e = p.edge;
+        boolean forward = (leftMask & (1 << e.t1)) != 0;
+        int f1 = left.getTupleDesc().fieldNameToIndex(qualified(forward ? e.t1 : e.t2, forward ? e.field1 : e.field2));
+        int f2 = right.getTupleDesc().fieldNameToIndex(qualified(forward ? e.t2 : e.t1, forward ? e.field2 : e.field1));
+        JoinPredicate jp = new JoinPredicate(f1, forward ? e.op : flip(e.op), f2);
+
+        Operator join;
+        if (p.probe) {
+            join = new IndexNestedLoopJoin(jp, left, (SeqScan) right);
+        } else if (p.hash) {
+            join = new HashEquiJoin(jp, left, right);
+        } else {
+            join = new Join(jp, left, right);
+        }
+        join.setEstimatedCardinality((int) Math.min(Integer.MAX_VALUE, p.card));
+        if (p.extra.isEmpty()) {
+            return join;
+        }
+
+        TupleDesc td = join.getTupleDesc();
+        List<Predicate> conds = new ArrayList<Predicate>();
+        for (Edge x : p.extra) {
+            conds.add(new FieldPredicate(td.fieldNameToIndex(qualified(x.t1, x.field1)), x.op,
+                    td.fieldNameToIndex(qualified(x.t2, x.field2))));
+        }
+        Filter f = new Filter(conds.size() == 1 ? conds.get(0) : new CompositePredicate(CompositePredicate.Kind.AND, conds), join);
+        f.setEstimatedCardinality((int) Math.min(Integer.MAX_VALUE, p.card));
+        return f;
+    }
+
+    /**
+     * @return the conjunction of table t's filters, or null if it has none
+     */
+    private Predicate filter(int t) {
+        List<Predicate> preds = filters.get(t);
+        return preds.isEmpty() ? null : preds.size() == 1 ? preds.get(0)
+                : new CompositePredicate(CompositePredicate.Kind.AND, preds);
+    }
+
+    /**
+     * @return a scan of table t with its filters and projection pushed down
+     */
+    private SeqScan scan(int t, TransactionId tid) {
+        return new SeqScan(tid, tableIds.get(t), aliases.get(t), filter(t), projection(t));
+    }
+
+    private DbIterator leaf(Plan p, TransactionId tid) throws DbException {
+        int t = p.table;
+        Predicate pred = filter(t);
+        HashIndex index = coveringIndex(t);
+        if (index != null && indexOnlyCost(t, index) < stats(t).estimateScanCost() + stats(t).totalTuples()) {
+            return new IndexOnlyScan(tid, index, aliases.get(t), pred, projection(t));
+        }
+        if (projection(t) != null) {
+            // the filter indexes the table, so it must go into the scan itself
+            return scan(t, tid);
+        }
+        SeqScan scan = new SeqScan(tid, tableIds.get(t), aliases.get(t));
+        if (pred == null) {
+            return scan;
+        }
+        Filter f = new Filter(pred, scan);
+        // p may be a join plan; the table's leaf plan holds its filtered cardinality
+        f.setEstimatedCardinality((int) Math.min(Integer.MAX_VALUE, leafPlan(t).card));
+        return f;
+    }
+
+    /**
+     * @return the fields table t must return, in table order, or null if it
+     * must return all of them
+     */
+    private int[] projection(int t) {
+        Set<String> names = columns.get(t);
+        if (names == null) {
+            return null;
+        }
+        names = new HashSet<String>(names);
+        for (Edge e : edges) {
+            if (e.t1 == t) {
+                names.add(e.field1);
+            }
+            if (e.t2 == t) {
+                names.add(e.field2);
+            }
+        }
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableIds.get(t));
+        List<Integer> kept = new ArrayList<Integer>();
+        for (int i = 0; i < td.numFields(); i++) {
+            if (names.contains(td.getFieldName(i))) {
+                kept.add(i);
+            }
+        }
+        if (kept.size() == td.numFields()) {
+            return null;
+        }
+        if (kept.isEmpty()) {
+            // a tuple needs a field; keep the first one
+            kept.add(0);
+        }
+        int[] fields = new int[kept.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = kept.get(i);
+        }
+        return fields;
+    }
+
+    private String qualified(int t, String field) {
+        return aliases.get(t) + "." + field;
+    }
+
+    /**
+     * @return the operator op' such that a op b is b op' a
+     */
+    static Predicate.Op flip(Predicate.Op op) {
+        switch (op) {
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * A compiled SQL LIKE pattern. '%' matches any run of characters (including
+ * none) and '_' matches exactly one character; every other character matches
+ * itself. Matching is case sensitive.
+ * <p/>
+ * Patterns are classified when compiled so that common forms avoid general
+ * wildcard matching: a pattern without wildcards is an equality test,
+ * "abc%" a prefix test, "%abc" a suffix test and "%abc%" a substring search
+ * using Boyer-Moore-Horspool. Patterns can also be matched against the raw
+ * bytes of a serialized StringField, so scans can test a string column
+ * without first building a String.
+ */
+public class LikePattern implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The forms a pattern can take
+     */
+    public enum Kind {
+        /** no wildcards */
+        EXACT,
+        /** literal followed by a single trailing % */
+        PREFIX,
+        /** a single leading % followed by a literal */
+        SUFFIX,
+        /** literal between a leading and a trailing % */
+        CONTAINS,
+        /** anything else, including every pattern using _ */
+        GENERAL
+    }
+
+    private final String pattern;
+    private final Kind kind;
+    // the literal for EXACT, PREFIX, SUFFIX and CONTAINS; the pattern for GENERAL
+    private final String literal;
+    private final byte[] literalBytes;
+    // Horspool shift table for CONTAINS, indexed by the low byte of a character
+    private final int[] shift;
+
+    private LikePattern(String pattern) {
+        this.pattern = pattern;
+        int len = pattern.length();
+        boolean leading = len > 0 && pattern.charAt(0) == '%';
+        boolean trailing = len > 1 && pattern.charAt(len - 1) == '%';
+        String middle = pattern.substring(leading ? 1 : 0, trailing ? len - 1 : len);
+
+        if (middle.indexOf('%') >= 0 || middle.indexOf('_') >= 0) {
+            kind = Kind.GENERAL;
+            literal = pattern;
+        } else {
+            literal = middle;
+            if (leading && trailing) {
+                kind = Kind.CONTAINS;
+            } else if (leading) {
+                kind = Kind.SUFFIX;
+            } else if (trailing) {
+                kind = Kind.PREFIX;
+            } else {
+                kind = Kind.EXACT;
+            }
+        }
+
+        literalBytes = new byte[literal.length()];
+        for (int i = 0; i < literalBytes.length; i++) {
+            // StringField.serialize writes the low byte of each character
+            literalBytes[i] = (byte) literal.charAt(i);
+        }
+
+        if (kind == Kind.CONTAINS && literal.length() > 0) {
+            int m = literal.length();
+            shift = new int[256];
+            for (int i = 0; i < shift.length; i++) {
+                shift[i] = m;
+            }
+            // later positions overwrite earlier ones, leaving the smallest
+            // (safe) shift for every byte
+            for (int i = 0; i < m - 1; i++) {
+                shift[literal.charAt(i) & 0xFF] = m - 1 - i;
+            }
+        } else {
+            shift = null;
+        }
+    }
+
+    /**
+     * Compiles a LIKE pattern.
+     *
+     * @param pattern the pattern, using % and _ as wildcards
+     * @return the compiled pattern
+     */
+    public static LikePattern compile(String pattern) {
+        return new LikePattern(pattern);
+    }
+
+    /**
+     * @return the pattern this was compiled from
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the form of this pattern
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @param s the string to test
+     * @return true if s matches this pattern
+     */
+    public boolean matches(String s) {
+        switch (kind) {
+            case EXACT:
+                return s.equals(literal);
+            case PREFIX:
+                return s.startsWith(literal);
+            case SUFFIX:
+                return s.endsWith(literal);
+            case CONTAINS:
+                return indexOf(s) >= 0;
+            default:
+                return matchGeneral(s);
+        }
+    }
+
+    /**
+     * Tests the string stored in len bytes of data starting at offset, with
+     * one byte per character as written by StringField.serialize.
+     *
+     * @param data   buffer holding the string
+     * @param offset position of the first character in data
+     * @param len    number of characters in the string
+     * @return true if the string matches this pattern
+     */
+    public boolean matches(byte[] data, int offset, int len) {
+        int m = literalBytes.length;
+        switch (kind) {
+            case EXACT:
+                return len == m && regionMatches(data, offset);
+            case PREFIX:
+                return len >= m && regionMatches(data, offset);
+            case SUFFIX:
+                return len >= m && regionMatches(data, offset + len - m);
+            case CONTAINS:
+                return indexOf(data, offset, len) >= 0;
+            default:
+                return matchGeneral(data, offset, len);
+        }
+    }
+
+    /**
+     * @return a rough relative cost of one match, on the scale used by
+     * {@link CompiledPredicate}
+     */
+    int cost() {
+        return (kind == Kind.CONTAINS || kind == Kind.GENERAL) ? 8 : 2;
+    }
+
+    public String toString() {
+        return pattern;
+    }
+
+    private boolean regionMatches(byte[] data, int offset) {
+        for (int i = 0; i < literalBytes.length; i++) {
+            if (data[offset + i] != literalBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search for the literal in s.
+     */
+    private int indexOf(String s) {
+        int m = literal.length();
+        int n = s.length();
+        if (m == 0) {
+            return 0;
+        }
+        int pos = 0;
+        while (pos <= n - m) {
+            int i = m - 1;
+            while (s.charAt(pos + i) == literal.charAt(i)) {
+                if (i == 0) {
+                    return pos;
+                }
+                i--;
+            }
+            pos += shift[s.charAt(pos + m - 1) & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search for the literal in a byte range.
+     */
+    private int indexOf(byte[] data, int offset, int n) {
+        int m = literalBytes.length;
+        if (m == 0) {
+            return 0;
+        }
+        int pos = 0;
+        while (pos <= n - m) {
+            int i = m - 1;
+            while (data[offset + pos + i] == literalBytes[i]) {
+                if (i == 0) {
+                    return pos;
+                }
+                i--;
+            }
+            pos += shift[data[offset + pos + m - 1] & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Wildcard matching that remembers the last % seen and backtracks to it
+     * on a mismatch; O(n * m) in the worst case.
+     */
+    private boolean matchGeneral(String s) {
+        int n = s.length(), m = pattern.length();
+        int si = 0, pi = 0, star = -1, mark = 0;
+        while (si < n) {
+            char pc = pi < m ? pattern.charAt(pi) : 0;
+            if (pi < m && pc != '%' && (pc == '_' || pc == s.charAt(si))) {
+                si++;
+                pi++;
+            } else if (pi < m && pc == '%') {
+                star = pi++;
+                mark = si;
+            } else if (star >= 0) {
+                pi = star + 1;
+                si = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (pi < m && pattern.charAt(pi) == '%') {
+            pi++;
+        }
+        return pi == m;
+    }
+
+    private boolean matchGeneral(byte[] data, int offset, int n) {
+        int m = pattern.length();
+        int si = 0, pi = 0, star = -1, mark = 0;
+        while (si < n) {
+            char pc = pi < m ? pattern.charAt(pi) : 0;
+            if (pi < m && pc != '%' && (pc == '_' || (byte) pc == data[offset + si])) {
+                si++;
+                pi++;
+            } else if (pi < m && pc == '%') {
+                star = pi++;
+                mark = si;
+            } else if (star >= 0) {
+                pi = star + 1;
+                si = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (pi < m && pattern.charAt(pi) == '%') {
+            pi++;
+        }
+        return pi == m;
+    }
+}
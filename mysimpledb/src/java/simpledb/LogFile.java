@@ -2,8 +2,16 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import java.lang.reflect.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  LogFile implements the recovery subsystem of SimpleDb.  This class is
@@ -17,8 +25,8 @@ import java.lang.reflect.*;
  Many of the methods here are synchronized (to prevent concurrent log
  writes from happening); many of the methods in BufferPool are also
  synchronized (for similar reasons.)  Problem is that BufferPool writes
- log records (on page flushed) and the log file flushes BufferPool
- pages (on checkpoints and recovery.)  This can lead to deadlock.  For
+ log records (on page flushed) and the log file discards BufferPool
+ pages (on rollback and recovery.)  This can lead to deadlock.  For
  that reason, any LogFile operation that needs to access the BufferPool
  must not be declared synchronized and must begin with a block like:
 
@@ -49,25 +57,91 @@ import java.lang.reflect.*;
  * transaction id.
  * <p/>
  * <li> Each log record ends with a long integer file offset representing
- * the position in the log file where the record began.
+ * the position in the log file where the record began.  This offset is
+ * the record's log sequence number (LSN), which the methods that append
+ * records return.
  * <p/>
- * <li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
- * CHECKPOINT
+ * <li> There are six record types: ABORT, COMMIT, UPDATE, BEGIN,
+ * CHECKPOINT, and CLR
  * <p/>
  * <li> ABORT, COMMIT, and BEGIN records contain no additional data
  * <p/>
- * <li>UPDATE RECORDS consist of two entries, a before image and an
- * after image.  These images are serialized Page objects, and can be
- * accessed with the LogFile.readPageData() and LogFile.writePageData()
- * methods.  See LogFile.print() for an example.
+ * <li>UPDATE RECORDS consist of a {@link PageDelta}: the page and its
+ * id, and the byte ranges of the page that the update changed, each with
+ * its bytes before and after the update.  Logging only the changed bytes
+ * keeps a small update to a small record, rather than two whole page
+ * images.  Whole pages can still be written and read with the
+ * LogFile.writePageData() and LogFile.readPageData() methods.  Pages and
+ * page ids are identified by their {@link PageRegistry} type codes.
+ * <p/>
+ * <li> CLR (compensation log record) records are written as updates are
+ * rolled back. They consist of a PageDelta that reverses the update, and
+ * the long integer LSN of the UPDATE record it compensates. An update that
+ * has a CLR is never undone again, so rolling back restarts where it left
+ * off when recovery follows a crash during a rollback.
  * <p/>
  * <li> CHECKPOINT records consist of active transactions at the time
- * the checkpoint was taken and their first log record on disk.  The format
+ * the checkpoint was taken and their first log record on disk, and of the
+ * dirty page table: the pages whose logged updates might not have been
+ * written yet, each with the LSN of its first such update.  The format
  * of the record is an integer count of the number of transactions, as well
  * as a long integer transaction id and a long integer first record offset
- * for each active transaction.
+ * for each active transaction, then an integer count of dirty pages, and
+ * a page id (see PageRegistry) and a long integer LSN for each.
  * <p/>
  * </ul>
+ * <p/>
+ * <u> Group commit: </u>
+ * <p/>
+ * logCommit() does not force the log itself while holding the lock on the
+ * LogFile. It appends its COMMIT record and then waits until the log has
+ * been forced past it. The first committer to find no force in progress
+ * becomes the leader: it optionally waits up to
+ * {@link #setGroupCommitWait the group commit window} for more commits,
+ * then forces the log once, without the lock, for every record appended so
+ * far. Committers that arrive meanwhile append their records and wait for
+ * that force or lead the next one. So a force is shared by every
+ * transaction that commits while the previous one is under way. The
+ * BufferPool forces the UPDATE records of the pages it is about to write
+ * the same way, with {@link #forceAppended}.
+ * <p/>
+ * <u> Log buffer: </u>
+ * <p/>
+ * Records are not written to the file as they are appended. Each is built
+ * in memory and copied to a log buffer of {@link #BUFFER_SIZE} bytes, which
+ * is written to the end of the file with a single FileChannel write when
+ * it fills, when the log is forced, and before the file is read or
+ * rewritten. The LSN of a record is assigned when it is appended, from the
+ * length of the file plus the bytes already buffered.
+ * <p/>
+ * <u> Checkpoints: </u>
+ * <p/>
+ * Checkpoints are fuzzy: logCheckpoint() writes no pages and does not
+ * hold the BufferPool. It holds the LogFile only to copy the active
+ * transaction and dirty page tables into a CHECKPOINT record, waits for
+ * the record to be forced as a committer would, and then points the start
+ * of the log at it. The log is then truncated before the earliest record
+ * that recovery could need: the checkpoint, or the first record of a live
+ * transaction, or the first update of a dirty page. Most of the log is
+ * copied without holding the LogFile; only the records appended
+ * meanwhile are copied with it held. {@link #startCheckpointer} takes
+ * checkpoints on a background thread.
+ * <p/>
+ * <u> Recovery: </u>
+ * <p/>
+ * The BufferPool logs the update to each dirty page, and forces the log,
+ * before it writes the page. recover() then follows ARIES: one pass from
+ * the last checkpoint (or from the first record of the transactions live
+ * at it, or of the dirty pages' updates) finds the transactions that
+ * neither committed nor aborted, and redoes every update from the
+ * checkpoint's earliest dirty page update on, repeating history; the
+ * losers' updates are then undone, latest first, with a CLR for each, and
+ * an ABORT record is written for each loser. Redo is partitioned by page
+ * across threads: each page's updates are applied in log order by one
+ * thread, which keeps the page in memory until the pass is over. Updates
+ * are byte ranges with their after images, so redoing one again is
+ * harmless and pages need no LSNs. rollback() undoes one transaction the
+ * same way.
  */
 
 public class LogFile {
@@ -81,17 +155,48 @@ public class LogFile {
     static final int UPDATE_RECORD = 3;
     static final int BEGIN_RECORD = 4;
     static final int CHECKPOINT_RECORD = 5;
+    static final int CLR_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
     final static int INT_SIZE = 4;
     final static int LONG_SIZE = 8;
 
+    /**
+     * Bytes of records the log buffers before writing them to the file
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    // records appended but not yet written, which start at bufferStart in
+    // the file; protected by this
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bufferStart;
+    // the record being built
+    private final RecordBytes recordBytes = new RecordBytes();
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
     long currentOffset = -1;//protected by this
     //    int pageSize;
     int totalRecords = 0; // for PatchTest //protected by this
 
     HashMap<Long, Long> tidToFirstLogRecord = new HashMap<Long, Long>();
 
+    // the dirty page table: pages with logged updates that have not been
+    // written, and the LSN of the first; protected by this
+    final Map<PageId, Long> dirtyPages = new HashMap<PageId, Long>();
+
+    // held by logCheckpoint() and logTruncate(), before this
+    private final Object truncateLock = new Object();
+    private Checkpointer checkpointer; // protected by this
+    int checkpointCount = 0; // for tests //protected by this
+
+    // group commit state, protected by this. Records are numbered in the
+    // order they are appended, which unlike offsets survives truncation.
+    private long appended = 0; // number of the last record appended
+    private long durable = 0; // records up to this number are forced
+    private boolean forcing = false; // a leader is forcing the log
+    private long groupCommitWait = 0; // milliseconds a leader waits
+    int forceCount = 0; // for tests //protected by this
+
     /**
      * Constructor.
      * Initialize and back the log file with the specified file.
@@ -125,6 +230,7 @@ public class LogFile {
     // the log.
     void preAppend() throws IOException {
         totalRecords++;
+        appended++;
         if (recoveryUndecided) {
             recoveryUndecided = false;
             raf.seek(0);
@@ -132,20 +238,183 @@ public class LogFile {
             raf.writeLong(NO_CHECKPOINT_ID);
             raf.seek(raf.length());
             currentOffset = raf.getFilePointer();
+            buffer.clear();
+            bufferStart = currentOffset;
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream whose contents can be copied without
+     * allocating
+     */
+    private static final class RecordBytes extends ByteArrayOutputStream {
+        ByteBuffer contents() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * Starts building a log record, after preAppend().
+     *
+     * @return the stream to write the rest of the record's contents to
+     */
+    private DataOutputStream startRecord(int type, long tid) throws IOException {
+        recordBytes.reset();
+        record.writeInt(type);
+        record.writeLong(tid);
+        return record;
+    }
+
+    /**
+     * Ends the record being built with its start offset and appends it to
+     * the log buffer.
+     *
+     * @return the LSN of the record
+     */
+    private long endRecord() throws IOException {
+        long lsn = currentOffset;
+        record.writeLong(lsn);
+        ByteBuffer bytes = recordBytes.contents();
+        if (bytes.remaining() > buffer.remaining()) {
+            flushBuffer();
+        }
+        if (bytes.remaining() > buffer.remaining()) {
+            // too big to buffer
+            writeFully(bytes);
+        } else {
+            buffer.put(bytes);
         }
+        currentOffset = lsn + recordBytes.size();
+        return lsn;
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        FileChannel channel = raf.getChannel();
+        while (bytes.hasRemaining()) {
+            bufferStart += channel.write(bytes, bufferStart);
+        }
+    }
+
+    /**
+     * Writes the buffered records to the end of the file, without forcing
+     * them to disk.
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * A log record read back from the file
+     */
+    private static final class Record {
+        int type;
+        long tid;
+        long lsn;
+        int size; // bytes in the file
+        PageDelta delta; // UPDATE and CLR
+        long undone; // CLR: the LSN of the compensated UPDATE
+        long[] xids; // CHECKPOINT: live transactions
+        long[] firsts; // CHECKPOINT: their first records
+        PageId[] pages; // CHECKPOINT: dirty pages
+        long[] recLsns; // CHECKPOINT: their first updates
+    }
+
+    /**
+     * @return a stream of the log from the given offset, which the caller
+     * must not close
+     */
+    private DataInputStream reader(long offset) throws IOException {
+        flushBuffer();
+        return new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(raf.getChannel().position(offset)), BUFFER_SIZE));
+    }
+
+    /**
+     * Reads the record starting at the given offset.
+     *
+     * @return the record, or null at the end of the log, including at a
+     * record that a crash left partly written
+     */
+    private static Record readRecord(DataInput in, long offset) throws IOException {
+        Record r = new Record();
+        try {
+            r.type = in.readInt();
+            r.tid = in.readLong();
+            r.size = INT_SIZE + LONG_SIZE;
+            switch (r.type) {
+                case UPDATE_RECORD:
+                    r.delta = PageDelta.read(in);
+                    r.size += r.delta.size();
+                    break;
+                case CLR_RECORD:
+                    r.delta = PageDelta.read(in);
+                    r.undone = in.readLong();
+                    r.size += r.delta.size() + LONG_SIZE;
+                    break;
+                case CHECKPOINT_RECORD:
+                    int n = in.readInt();
+                    r.xids = new long[n];
+                    r.firsts = new long[n];
+                    for (int i = 0; i < n; i++) {
+                        r.xids[i] = in.readLong();
+                        r.firsts[i] = in.readLong();
+                    }
+                    r.size += INT_SIZE + 2 * n * LONG_SIZE;
+                    int m = in.readInt();
+                    r.pages = new PageId[m];
+                    r.recLsns = new long[m];
+                    for (int i = 0; i < m; i++) {
+                        r.pages[i] = PageRegistry.readPageId(in);
+                        r.recLsns[i] = in.readLong();
+                        r.size += 2 + r.pages[i].serialize().length * INT_SIZE + LONG_SIZE;
+                    }
+                    r.size += INT_SIZE;
+                    break;
+                case ABORT_RECORD:
+                case COMMIT_RECORD:
+                case BEGIN_RECORD:
+                    break;
+                default:
+                    return null;
+            }
+            r.lsn = in.readLong();
+            r.size += LONG_SIZE;
+        } catch (EOFException e) {
+            return null;
+        }
+        return r.lsn == offset ? r : null;
     }
 
     public synchronized int getTotalRecords() {
         return totalRecords;
     }
 
+    /**
+     * Sets how long the leader of a group commit waits for more
+     * transactions to commit before it forces the log. With no wait, a
+     * group is just the commits that arrive while the previous force is
+     * under way; a short wait gathers larger groups when commits are
+     * frequent, at the cost of that much latency per commit.
+     *
+     * @param millis the most milliseconds to wait, or 0 not to wait
+     */
+    public synchronized void setGroupCommitWait(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("negative wait: " + millis);
+        }
+        groupCommitWait = millis;
+    }
+
     /**
      * Write an abort record to the log for the specified tid, force
      * the log to disk, and perform a rollback
      *
      * @param tid The aborting transaction.
+     * @return the LSN of the ABORT record
      */
-    public void logAbort(TransactionId tid) throws IOException {
+    public long logAbort(TransactionId tid) throws IOException {
         // must have buffer pool lock before proceeding, since this
         // calls rollback
 
@@ -160,151 +429,184 @@ public class LogFile {
                 // live transactions (needs tidToFirstLogRecord)
                 rollback(tid);
 
-                raf.writeInt(ABORT_RECORD);
-                raf.writeLong(tid.getId());
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
+                startRecord(ABORT_RECORD, tid.getId());
+                long lsn = endRecord();
                 force();
                 tidToFirstLogRecord.remove(tid.getId());
+                return lsn;
             }
         }
     }
 
     /**
      * Write a commit record to disk for the specified tid,
-     * and force the log to disk.
+     * and force the log to disk. The force is shared with other
+     * transactions committing at the same time (see the class notes on
+     * group commit); this returns once the commit record is on disk.
      *
      * @param tid The committing transaction.
+     * @return the LSN of the COMMIT record
      */
-    public synchronized void logCommit(TransactionId tid) throws IOException {
-        preAppend();
-        Debug.log("COMMIT " + tid.getId());
-        //should we verify that this is a live transaction?
+    public long logCommit(TransactionId tid) throws IOException {
+        long lsn;
+        long number;
+        synchronized (this) {
+            preAppend();
+            Debug.log("COMMIT " + tid.getId());
+            //should we verify that this is a live transaction?
+
+            startRecord(COMMIT_RECORD, tid.getId());
+            lsn = endRecord();
+            tidToFirstLogRecord.remove(tid.getId());
+            number = appended;
+        }
+        awaitForce(number);
+        return lsn;
+    }
 
-        raf.writeInt(COMMIT_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
-        force();
-        tidToFirstLogRecord.remove(tid.getId());
+    /**
+     * Forces the log up to the last record appended so far. Like
+     * logCommit, this shares the force with other threads forcing the log
+     * at the same time, and should be called without holding the LogFile.
+     */
+    public void forceAppended() throws IOException {
+        long number;
+        synchronized (this) {
+            number = appended;
+        }
+        awaitForce(number);
+    }
+
+    /**
+     * Waits until the log is forced up to the given record, forcing it as
+     * the leader of a group if no other thread is.
+     */
+    private void awaitForce(long record) throws IOException {
+        long target;
+        FileChannel channel;
+        boolean interrupted = false;
+        synchronized (this) {
+            try {
+                while (forcing && durable < record) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted while waiting for the log to be forced");
+            }
+            if (durable >= record) {
+                return;
+            }
+            forcing = true;
+            // let the group grow; those joining it append and wait
+            long deadline = System.currentTimeMillis() + groupCommitWait;
+            try {
+                for (long left = groupCommitWait; left > 0; left = deadline - System.currentTimeMillis()) {
+                    wait(left);
+                }
+            } catch (InterruptedException e) {
+                // force anyway, since the followers are counting on it; an
+                // interrupt would close the channel
+                interrupted = true;
+            }
+            target = appended;
+            flushBuffer();
+            channel = raf.getChannel();
+        }
+        boolean forced = false;
+        try {
+            channel.force(true);
+            forced = true;
+        } finally {
+            synchronized (this) {
+                forcing = false;
+                if (forced) {
+                    forceCount++;
+                    durable = Math.max(durable, target);
+                }
+                // waiters the force did not cover, or that it failed, retry
+                notifyAll();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
      * Write an UPDATE record to disk for the specified tid and page
-     * (with provided         before and after images.)
+     * (with provided         before and after images.) Only the bytes
+     * that differ between the images are logged.
      *
      * @param tid    The transaction performing the write
      * @param before The before image of the page
      * @param after  The after image of the page
+     * @return the LSN of the UPDATE record
      * @see simpledb.Page#getBeforeImage
+     * @see PageDelta
      */
-    public synchronized void logWrite(TransactionId tid, Page before,
+    public synchronized long logWrite(TransactionId tid, Page before,
                                       Page after)
             throws IOException {
-        Debug.log("WRITE, offset = " + raf.getFilePointer());
+        Debug.log("WRITE, offset = " + currentOffset);
         preAppend();
         /* update record conists of
 
            record type
            transaction id
-           before page data (see writePageData)
-           after page data
+           page delta (see PageDelta.write)
            start offset
         */
-        raf.writeInt(UPDATE_RECORD);
-        raf.writeLong(tid.getId());
-
-        writePageData(raf, before);
-        writePageData(raf, after);
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
+        DataOutputStream out = startRecord(UPDATE_RECORD, tid.getId());
+        PageDelta.diff(before, after).write(out);
+        long lsn = endRecord();
+        if (!dirtyPages.containsKey(after.getId())) {
+            dirtyPages.put(after.getId(), lsn);
+        }
 
         Debug.log("WRITE OFFSET = " + currentOffset);
+        return lsn;
     }
 
-    void writePageData(RandomAccessFile raf, Page p) throws IOException {
-        PageId pid = p.getId();
-        int pageInfo[] = pid.serialize();
+    /**
+     * Removes a page from the dirty page table once the BufferPool has
+     * written it, after logging its updates.
+     */
+    synchronized void pageWritten(PageId pid) {
+        dirtyPages.remove(pid);
+    }
 
+    void writePageData(DataOutput out, Page p) throws IOException {
         //page data is:
-        // page class name
-        // id class name
-        // id class bytes
-        // id class data
+        // page type code
+        // page id (see PageRegistry.writePageId)
         // page class bytes
         // page class data
 
-        String pageClassName = p.getClass().getName();
-        String idClassName = pid.getClass().getName();
-
-        raf.writeUTF(pageClassName);
-        raf.writeUTF(idClassName);
-
-        raf.writeInt(pageInfo.length);
-        for (int i = 0; i < pageInfo.length; i++) {
-            raf.writeInt(pageInfo[i]);
-        }
+        out.writeByte(PageRegistry.pageCode(p));
+        PageRegistry.writePageId(out, p.getId());
         byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
-        //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
+        out.writeInt(pageData.length);
+        out.write(pageData);
     }
 
-    Page readPageData(RandomAccessFile raf) throws IOException {
-        PageId pid;
-        Page newPage = null;
-
-        String pageClassName = raf.readUTF();
-        String idClassName = raf.readUTF();
-
-        try {
-            Class<?> idClass = Class.forName(idClassName);
-            Class<?> pageClass = Class.forName(pageClassName);
-
-            Constructor<?>[] idConsts = idClass.getDeclaredConstructors();
-            int numIdArgs = raf.readInt();
-            Object idArgs[] = new Object[numIdArgs];
-            for (int i = 0; i < numIdArgs; i++) {
-                idArgs[i] = new Integer(raf.readInt());
-            }
-            pid = (PageId) idConsts[0].newInstance(idArgs);
+    Page readPageData(DataInput in) throws IOException {
+        int pageCode = in.readUnsignedByte();
+        PageId pid = PageRegistry.readPageId(in);
 
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
-            int pageSize = raf.readInt();
-
-            byte[] pageData = new byte[pageSize];
-            raf.read(pageData); //read before image
-
-            Object[] pageArgs = new Object[2];
-            pageArgs[0] = pid;
-            pageArgs[1] = pageData;
-
-            newPage = (Page) pageConsts[0].newInstance(pageArgs);
-
-            //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-            throw new IOException();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-            throw new IOException();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-            throw new IOException();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-            throw new IOException();
-        }
-        return newPage;
+        int pageSize = in.readInt();
+        byte[] pageData = new byte[pageSize];
+        in.readFully(pageData); //read before image
 
+        return PageRegistry.newPage(pageCode, pid, pageData);
     }
 
     /**
      * Write a BEGIN record for the specified transaction
      *
      * @param tid The transaction that is beginning
+     * @return the LSN of the BEGIN record
      */
-    public synchronized void logXactionBegin(TransactionId tid)
+    public synchronized long logXactionBegin(TransactionId tid)
             throws IOException {
         Debug.log("BEGIN");
         if (tidToFirstLogRecord.get(tid.getId()) != null) {
@@ -312,154 +614,287 @@ public class LogFile {
             throw new IOException("double logXactionBegin()");
         }
         preAppend();
-        raf.writeInt(BEGIN_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        tidToFirstLogRecord.put(tid.getId(), currentOffset);
-        currentOffset = raf.getFilePointer();
+        startRecord(BEGIN_RECORD, tid.getId());
+        long lsn = endRecord();
+        tidToFirstLogRecord.put(tid.getId(), lsn);
 
         Debug.log("BEGIN OFFSET = " + currentOffset);
+        return lsn;
     }
 
     /**
-     * Checkpoint the log and write a checkpoint record.
+     * Checkpoint the log and write a checkpoint record. The checkpoint is
+     * fuzzy (see the class notes), so transactions carry on while it is
+     * taken.
      */
     public void logCheckpoint() throws IOException {
-        //make sure we have buffer pool lock before proceeding
-        synchronized (Database.getBufferPool()) {
+        synchronized (truncateLock) {
+            long startCpOffset;
+            long number;
             synchronized (this) {
-                //Debug.log("CHECKPOINT, offset = " + raf.getFilePointer());
                 preAppend();
-                long startCpOffset, endCpOffset;
-                Set<Long> keys = tidToFirstLogRecord.keySet();
-                Iterator<Long> els = keys.iterator();
-                force();
-                Database.getBufferPool().flushAllPages();
-                startCpOffset = raf.getFilePointer();
-                raf.writeInt(CHECKPOINT_RECORD);
-                raf.writeLong(-1); //no tid , but leave space for convenience
+                //no tid , but leave space for convenience
+                DataOutputStream out = startRecord(CHECKPOINT_RECORD, -1);
 
                 //write list of outstanding transactions
-                raf.writeInt(keys.size());
-                while (els.hasNext()) {
-                    Long key = els.next();
-                    Debug.log("WRITING CHECKPOINT TRANSACTION ID: " + key);
-                    raf.writeLong(key);
-                    //Debug.log("WRITING CHECKPOINT TRANSACTION OFFSET: " + tidToFirstLogRecord.get(key));
-                    raf.writeLong(tidToFirstLogRecord.get(key));
+                out.writeInt(tidToFirstLogRecord.size());
+                for (Map.Entry<Long, Long> e : tidToFirstLogRecord.entrySet()) {
+                    Debug.log("WRITING CHECKPOINT TRANSACTION ID: " + e.getKey());
+                    out.writeLong(e.getKey());
+                    out.writeLong(e.getValue());
+                }
+                //and the dirty page table
+                out.writeInt(dirtyPages.size());
+                for (Map.Entry<PageId, Long> e : dirtyPages.entrySet()) {
+                    PageRegistry.writePageId(out, e.getKey());
+                    out.writeLong(e.getValue());
                 }
+                startCpOffset = endRecord();
+                number = appended;
+                checkpointCount++;
+            }
+            awaitForce(number);
 
-                //once the CP is written, make sure the CP location at the
+            synchronized (this) {
+                //once the CP is on disk, make sure the CP location at the
                 // beginning of the log file is updated
-                endCpOffset = raf.getFilePointer();
                 raf.seek(0);
                 raf.writeLong(startCpOffset);
-                raf.seek(endCpOffset);
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
                 //Debug.log("CP OFFSET = " + currentOffset);
             }
-        }
 
-        logTruncate();
+            logTruncate();
+        }
     }
 
     /**
      * Truncate any unneeded portion of the log to reduce its space
      * consumption
      */
-    public synchronized void logTruncate() throws IOException {
-        preAppend();
-        raf.seek(0);
-        long cpLoc = raf.readLong();
-
-        long minLogRecord = cpLoc;
-
-        if (cpLoc != -1L) {
-            raf.seek(cpLoc);
-            int cpType = raf.readInt();
-            @SuppressWarnings("unused")
-            long cpTid = raf.readLong();
+    public void logTruncate() throws IOException {
+        synchronized (truncateLock) {
+            long minLogRecord;
+            long copied;
+            synchronized (this) {
+                preAppend();
+                flushBuffer();
+                raf.seek(0);
+                long cpLoc = raf.readLong();
+                if (cpLoc == NO_CHECKPOINT_ID) {
+                    return;
+                }
 
-            if (cpType != CHECKPOINT_RECORD) {
-                throw new RuntimeException("Checkpoint pointer does not point to checkpoint record");
+                Record cp = readRecord(reader(cpLoc), cpLoc);
+                if (cp == null || cp.type != CHECKPOINT_RECORD) {
+                    throw new RuntimeException("Checkpoint pointer does not point to checkpoint record");
+                }
+                minLogRecord = cpLoc;
+                for (long first : cp.firsts) {
+                    minLogRecord = Math.min(minLogRecord, first);
+                }
+                for (long recLsn : cp.recLsns) {
+                    minLogRecord = Math.min(minLogRecord, recLsn);
+                }
+                copied = currentOffset;
+            }
+            if (minLogRecord == LONG_SIZE) {
+                return;
             }
 
-            int numOutstanding = raf.readInt();
+            // we can truncate everything before minLogRecord
+            File newFile = new File("logtmp" + System.currentTimeMillis());
+            long shift = minLogRecord - LONG_SIZE;
+            DataOutputStream logNew = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newFile),
+                    BUFFER_SIZE));
+            try {
+                // the checkpoint location, rewritten once the copy is done
+                logNew.writeLong(NO_CHECKPOINT_ID);
+
+                // the records written so far, while others are appended
+                RandomAccessFile old = new RandomAccessFile(logFile, "r");
+                try {
+                    copyRecords(new DataInputStream(new BufferedInputStream(
+                            Channels.newInputStream(old.getChannel().position(minLogRecord)), BUFFER_SIZE)),
+                            minLogRecord, copied, logNew, shift);
+                } finally {
+                    old.close();
+                }
 
-            for (int i = 0; i < numOutstanding; i++) {
-                @SuppressWarnings("unused")
-                long tid = raf.readLong();
-                long firstLogRecord = raf.readLong();
-                if (firstLogRecord < minLogRecord) {
-                    minLogRecord = firstLogRecord;
+                synchronized (this) {
+                    // a group commit leader may be forcing the file about to
+                    // be replaced
+                    while (forcing) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException("interrupted while waiting for the log to be forced");
+                        }
+                    }
+                    copyRecords(reader(copied), copied, currentOffset, logNew, shift);
+                    logNew.close();
+                    raf.seek(0);
+                    long cpLoc = raf.readLong();
+                    RandomAccessFile header = new RandomAccessFile(newFile, "rw");
+                    try {
+                        header.writeLong(cpLoc - shift);
+                    } finally {
+                        header.close();
+                    }
+
+                    Debug.log("TRUNCATING LOG;  WAS " + raf.length() + " BYTES ; NEW START : " + minLogRecord + " NEW LENGTH: " + (raf.length() - minLogRecord));
+
+                    raf.close();
+                    logFile.delete();
+                    newFile.renameTo(logFile);
+                    raf = new RandomAccessFile(logFile, "rw");
+                    raf.seek(raf.length());
+                    currentOffset = raf.getFilePointer();
+                    bufferStart = currentOffset;
+                    for (Map.Entry<Long, Long> e : tidToFirstLogRecord.entrySet()) {
+                        e.setValue(e.getValue() - shift);
+                    }
+                    for (Map.Entry<PageId, Long> e : dirtyPages.entrySet()) {
+                        e.setValue(e.getValue() - shift);
+                    }
+                    // records that were forced must stay on disk in the new file
+                    force();
                 }
+            } finally {
+                logNew.close();
+                newFile.delete();
             }
+
+            //print();
         }
+    }
 
-        // we can truncate everything before minLogRecord
-        File newFile = new File("logtmp" + System.currentTimeMillis());
-        RandomAccessFile logNew = new RandomAccessFile(newFile, "rw");
-        logNew.seek(0);
-        logNew.writeLong((cpLoc - minLogRecord) + LONG_SIZE);
+    /**
+     * Copies the records between two offsets of the log to the start of a
+     * truncated log, moving every offset they hold back by shift.
+     */
+    private static void copyRecords(DataInput in, long from, long to, DataOutputStream logNew, long shift)
+            throws IOException {
+        //have to rewrite log records since offsets are different after truncation
+        long offset = from;
+        while (offset < to) {
+            Record r = readRecord(in, offset);
+            if (r == null) {
+                throw new IOException("log record at " + offset + " is unreadable");
+            }
+            offset += r.size;
+            long newStart = r.lsn - shift;
+
+            Debug.log("NEW START = " + newStart);
+
+            logNew.writeInt(r.type);
+            logNew.writeLong(r.tid);
+
+            switch (r.type) {
+                case UPDATE_RECORD:
+                    r.delta.write(logNew);
+                    break;
+                case CLR_RECORD:
+                    r.delta.write(logNew);
+                    logNew.writeLong(r.undone - shift);
+                    break;
+                case CHECKPOINT_RECORD:
+                    logNew.writeInt(r.xids.length);
+                    for (int i = 0; i < r.xids.length; i++) {
+                        logNew.writeLong(r.xids[i]);
+                        logNew.writeLong(r.firsts[i] - shift);
+                    }
+                    logNew.writeInt(r.pages.length);
+                    for (int i = 0; i < r.pages.length; i++) {
+                        PageRegistry.writePageId(logNew, r.pages[i]);
+                        logNew.writeLong(r.recLsns[i] - shift);
+                    }
+                    break;
+            }
 
-        raf.seek(minLogRecord);
+            //all xactions finish with a pointer
+            logNew.writeLong(newStart);
+        }
+    }
 
-        //have to rewrite log records since offsets are different after truncation
-        while (true) {
-            try {
-                int type = raf.readInt();
-                long record_tid = raf.readLong();
-                long newStart = logNew.getFilePointer();
+    /**
+     * Starts a thread that checkpoints the log, and so truncates it, at
+     * the given interval until {@link #stopCheckpointer} or shutdown().
+     *
+     * @param intervalMillis milliseconds between checkpoints
+     * @throws IllegalStateException if the thread is already running
+     */
+    public synchronized void startCheckpointer(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("interval must be positive: " + intervalMillis);
+        }
+        if (checkpointer != null) {
+            throw new IllegalStateException("checkpointer already running");
+        }
+        checkpointer = new Checkpointer(intervalMillis);
+        checkpointer.start();
+    }
 
-                Debug.log("NEW START = " + newStart);
+    /**
+     * Stops the checkpoint thread, if it is running, waiting for a
+     * checkpoint it is taking to finish.
+     */
+    public void stopCheckpointer() throws InterruptedException {
+        Checkpointer c;
+        synchronized (this) {
+            c = checkpointer;
+            checkpointer = null;
+        }
+        if (c != null) {
+            c.halt();
+            c.join();
+        }
+    }
 
-                logNew.writeInt(type);
-                logNew.writeLong(record_tid);
+    /**
+     * Takes checkpoints on a schedule. It is stopped by a flag rather than
+     * by interrupting it, as an interrupt would close the log's channel.
+     */
+    private class Checkpointer extends Thread {
+        private final long interval;
+        private final Object lock = new Object();
+        private boolean halted = false; // protected by lock
+
+        Checkpointer(long interval) {
+            super("log checkpointer");
+            this.interval = interval;
+            setDaemon(true);
+        }
 
-                switch (type) {
-                    case UPDATE_RECORD:
-                        Page before = readPageData(raf);
-                        Page after = readPageData(raf);
+        void halt() {
+            synchronized (lock) {
+                halted = true;
+                lock.notifyAll();
+            }
+        }
 
-                        writePageData(logNew, before);
-                        writePageData(logNew, after);
-                        break;
-                    case CHECKPOINT_RECORD:
-                        int numXactions = raf.readInt();
-                        logNew.writeInt(numXactions);
-                        while (numXactions-- > 0) {
-                            long xid = raf.readLong();
-                            long xoffset = raf.readLong();
-                            logNew.writeLong(xid);
-                            logNew.writeLong((xoffset - minLogRecord) + LONG_SIZE);
+        public void run() {
+            while (true) {
+                synchronized (lock) {
+                    long deadline = System.currentTimeMillis() + interval;
+                    try {
+                        for (long left = interval; !halted && left > 0; left = deadline - System.currentTimeMillis()) {
+                            lock.wait(left);
                         }
-                        break;
-                    case BEGIN_RECORD:
-                        tidToFirstLogRecord.put(record_tid, newStart);
-                        break;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (halted) {
+                        return;
+                    }
+                }
+                try {
+                    logCheckpoint();
+                } catch (IOException e) {
+                    System.out.println("ERROR TAKING CHECKPOINT -- IGNORING.");
+                    e.printStackTrace();
                 }
-
-                //all xactions finish with a pointer
-                logNew.writeLong(newStart);
-                raf.readLong();
-
-            } catch (EOFException e) {
-                break;
             }
         }
-
-        Debug.log("TRUNCATING LOG;  WAS " + raf.length() + " BYTES ; NEW START : " + minLogRecord + " NEW LENGTH: " + (raf.length() - minLogRecord));
-
-        raf.close();
-        logFile.delete();
-        newFile.renameTo(logFile);
-        raf = new RandomAccessFile(logFile, "rw");
-        raf.seek(raf.length());
-        newFile.delete();
-
-        currentOffset = raf.getFilePointer();
-        //print();
     }
 
     /**
@@ -476,9 +911,103 @@ public class LogFile {
         synchronized (Database.getBufferPool()) {
             synchronized (this) {
                 preAppend();
-                // some code goes here
+                Long first = tidToFirstLogRecord.get(tid.getId());
+                if (first == null) {
+                    throw new NoSuchElementException("transaction " + tid.getId() + " is not live");
+                }
+                // its unlogged changes are only in the buffer pool
+                Database.getBufferPool().discardPages(tid);
+
+                List<Record> updates = new ArrayList<Record>();
+                long offset = first;
+                DataInputStream in = reader(first);
+                Record r;
+                while ((r = readRecord(in, offset)) != null) {
+                    offset += r.size;
+                    if (r.tid == tid.getId() && r.delta != null) {
+                        updates.add(r);
+                    }
+                }
+                for (PageId pid : undo(toUndo(updates))) {
+                    Database.getBufferPool().discardPage(pid);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the UPDATE records among a transaction's updates and CLRs that
+     * no CLR compensates
+     */
+    private static List<Record> toUndo(List<Record> updates) {
+        Set<Long> undone = new HashSet<Long>();
+        for (Record r : updates) {
+            if (r.type == CLR_RECORD) {
+                undone.add(r.undone);
+            }
+        }
+        List<Record> result = new ArrayList<Record>();
+        for (Record r : updates) {
+            if (r.type == UPDATE_RECORD && !undone.contains(r.lsn)) {
+                result.add(r);
             }
         }
+        return result;
+    }
+
+    /**
+     * Undoes updates, latest first, logging a CLR for each. The changed
+     * pages are written once the CLRs are forced.
+     *
+     * @param updates UPDATE records
+     * @return the ids of the changed pages
+     */
+    private Set<PageId> undo(List<Record> updates) throws IOException {
+        Collections.sort(updates, new Comparator<Record>() {
+            public int compare(Record a, Record b) {
+                return a.lsn > b.lsn ? -1 : a.lsn < b.lsn ? 1 : 0;
+            }
+        });
+        Map<PageId, byte[]> pages = new HashMap<PageId, byte[]>();
+        Map<PageId, PageDelta> deltas = new HashMap<PageId, PageDelta>();
+        for (Record r : updates) {
+            PageId pid = r.delta.getPageId();
+            byte[] data = pages.get(pid);
+            if (data == null) {
+                data = pageData(pid);
+                pages.put(pid, data);
+            }
+            r.delta.undo(data);
+            deltas.put(pid, r.delta);
+
+            preAppend();
+            DataOutputStream out = startRecord(CLR_RECORD, r.tid);
+            r.delta.inverse().write(out);
+            out.writeLong(r.lsn);
+            endRecord();
+        }
+        if (!pages.isEmpty()) {
+            force();
+        }
+        for (Map.Entry<PageId, byte[]> e : pages.entrySet()) {
+            Page page = deltas.get(e.getKey()).newPage(e.getValue());
+            Database.getCatalog().getDatabaseFile(e.getKey().getTableId()).writePage(page);
+        }
+        return pages.keySet();
+    }
+
+    /**
+     * @return the data of a page on disk, or zeroes for a page that was
+     * never written
+     */
+    private static byte[] pageData(PageId pid) {
+        Page page;
+        try {
+            page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+        } catch (IllegalArgumentException e) {
+            page = null;
+        }
+        return page == null ? new byte[BufferPool.getPageSize()] : page.getPageData();
     }
 
     /**
@@ -486,10 +1015,17 @@ public class LogFile {
      * is necessary so that start up can happen quickly (without
      * extensive recovery.)
      */
-    public synchronized void shutdown() {
+    public void shutdown() {
+        try {
+            stopCheckpointer();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         try {
             logCheckpoint();  //simple way to shutdown is to write a checkpoint record
-            raf.close();
+            synchronized (this) {
+                raf.close();
+            }
         } catch (IOException e) {
             System.out.println("ERROR SHUTTING DOWN -- IGNORING.");
             e.printStackTrace();
@@ -502,11 +1038,234 @@ public class LogFile {
      * updates of uncommitted transactions are not installed.
      */
     public void recover() throws IOException {
+        recover(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Recover the database system, redoing updates on the given number of
+     * threads.
+     *
+     * @param threads the number of threads to redo updates with
+     * @see #recover()
+     */
+    public void recover(int threads) throws IOException {
         synchronized (Database.getBufferPool()) {
             synchronized (this) {
                 recoveryUndecided = false;
-                // some code goes here
+                buffer.clear();
+                if (raf.length() < LONG_SIZE) {
+                    raf.setLength(0);
+                    raf.seek(0);
+                    raf.writeLong(NO_CHECKPOINT_ID);
+                }
+                raf.seek(0);
+                long cpLoc = raf.readLong();
+
+                // updates before the checkpoint are on disk, except those
+                // to the pages dirty at it, but the transactions live at it
+                // may have to be undone
+                long redoStart = cpLoc == NO_CHECKPOINT_ID ? LONG_SIZE : cpLoc;
+                long scanStart = redoStart;
+                if (cpLoc != NO_CHECKPOINT_ID) {
+                    Record cp = readRecord(reader(cpLoc), cpLoc);
+                    if (cp == null || cp.type != CHECKPOINT_RECORD) {
+                        throw new IOException("Checkpoint pointer does not point to checkpoint record");
+                    }
+                    for (long recLsn : cp.recLsns) {
+                        redoStart = Math.min(redoStart, recLsn);
+                    }
+                    scanStart = redoStart;
+                    for (long first : cp.firsts) {
+                        scanStart = Math.min(scanStart, first);
+                    }
+                }
+
+                // analysis and redo, in one pass
+                Map<Long, List<Record>> live = new HashMap<Long, List<Record>>();
+                tidToFirstLogRecord.clear();
+                // recovery writes every page it redoes
+                dirtyPages.clear();
+                Redo redo = new Redo(threads);
+                long offset = scanStart;
+                try {
+                    DataInputStream in = reader(scanStart);
+                    Record r;
+                    while ((r = readRecord(in, offset)) != null) {
+                        offset += r.size;
+                        switch (r.type) {
+                            case BEGIN_RECORD:
+                                live.put(r.tid, new ArrayList<Record>());
+                                tidToFirstLogRecord.put(r.tid, r.lsn);
+                                break;
+                            case COMMIT_RECORD:
+                            case ABORT_RECORD:
+                                live.remove(r.tid);
+                                tidToFirstLogRecord.remove(r.tid);
+                                break;
+                            case UPDATE_RECORD:
+                            case CLR_RECORD:
+                                if (r.lsn >= redoStart) {
+                                    redo.add(r.delta);
+                                }
+                                List<Record> updates = live.get(r.tid);
+                                if (updates == null) {
+                                    updates = new ArrayList<Record>();
+                                    live.put(r.tid, updates);
+                                }
+                                updates.add(r);
+                                break;
+                        }
+                    }
+                } finally {
+                    redo.finish();
+                }
+                // drop what a crash left of a last record
+                raf.setLength(offset);
+                currentOffset = offset;
+                bufferStart = offset;
+                Set<PageId> changed = new HashSet<PageId>(redo.pages());
+
+                // undo
+                List<Record> losers = new ArrayList<Record>();
+                for (List<Record> updates : live.values()) {
+                    losers.addAll(toUndo(updates));
+                }
+                changed.addAll(undo(losers));
+                for (Long tid : live.keySet()) {
+                    preAppend();
+                    startRecord(ABORT_RECORD, tid);
+                    endRecord();
+                    tidToFirstLogRecord.remove(tid);
+                }
+                force();
+
+                for (PageId pid : changed) {
+                    Database.getBufferPool().discardPage(pid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Redoes updates on worker threads. Updates are partitioned by page, so
+     * that one worker applies all of a page's updates, in the order they
+     * were added. Workers keep the pages they redo in memory until finish()
+     * writes them.
+     */
+    private static class Redo {
+        // updates handed to a worker at a time
+        static final int BATCH = 256;
+
+        private final ExecutorService[] workers;
+        private final List<List<PageDelta>> batches = new ArrayList<List<PageDelta>>();
+        private final List<Map<PageId, byte[]>> pages = new ArrayList<Map<PageId, byte[]>>();
+        // the last update of each page, which gives the page's type
+        private final List<Map<PageId, PageDelta>> last = new ArrayList<Map<PageId, PageDelta>>();
+        private final List<Future<?>> submitted = new ArrayList<Future<?>>();
+        // bounds the batches read ahead of the workers
+        private final Semaphore inFlight;
+
+        Redo(int threads) {
+            workers = new ExecutorService[Math.max(1, threads)];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = Executors.newSingleThreadExecutor();
+                batches.add(new ArrayList<PageDelta>(BATCH));
+                pages.add(new HashMap<PageId, byte[]>());
+                last.add(new HashMap<PageId, PageDelta>());
+            }
+            inFlight = new Semaphore(4 * workers.length);
+        }
+
+        void add(PageDelta delta) throws IOException {
+            int w = (delta.getPageId().hashCode() & Integer.MAX_VALUE) % workers.length;
+            List<PageDelta> batch = batches.get(w);
+            batch.add(delta);
+            if (batch.size() == BATCH) {
+                submit(w);
+            }
+        }
+
+        private void submit(int w) throws IOException {
+            final List<PageDelta> batch = batches.get(w);
+            final Map<PageId, byte[]> mine = pages.get(w);
+            final Map<PageId, PageDelta> types = last.get(w);
+            batches.set(w, new ArrayList<PageDelta>(BATCH));
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted during redo");
+            }
+            submitted.add(workers[w].submit(new Runnable() {
+                public void run() {
+                    try {
+                        for (PageDelta delta : batch) {
+                            byte[] data = mine.get(delta.getPageId());
+                            if (data == null) {
+                                data = pageData(delta.getPageId());
+                                mine.put(delta.getPageId(), data);
+                            }
+                            delta.redo(data);
+                            types.put(delta.getPageId(), delta);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            }));
+        }
+
+        /**
+         * Waits for the workers to apply the updates added, and writes the
+         * pages they changed.
+         */
+        void finish() throws IOException {
+            for (int w = 0; w < workers.length; w++) {
+                if (!batches.get(w).isEmpty()) {
+                    submit(w);
+                }
+            }
+            try {
+                for (Future<?> f : submitted) {
+                    f.get();
+                }
+                submitted.clear();
+                for (int w = 0; w < workers.length; w++) {
+                    final Map<PageId, byte[]> mine = pages.get(w);
+                    final Map<PageId, PageDelta> types = last.get(w);
+                    submitted.add(workers[w].submit(new Callable<Void>() {
+                        public Void call() throws IOException {
+                            for (Map.Entry<PageId, byte[]> e : mine.entrySet()) {
+                                PageId pid = e.getKey();
+                                Page page = types.get(pid).newPage(e.getValue());
+                                Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> f : submitted) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted during redo");
+            } catch (ExecutionException e) {
+                throw new IOException("could not redo: " + e.getCause());
+            } finally {
+                for (ExecutorService worker : workers) {
+                    worker.shutdownNow();
+                }
+            }
+        }
+
+        /**
+         * @return the ids of the pages redone
+         */
+        Set<PageId> pages() {
+            Set<PageId> ids = new HashSet<PageId>();
+            for (Map<PageId, byte[]> mine : pages) {
+                ids.addAll(mine.keySet());
             }
+            return ids;
         }
     }
 
@@ -514,11 +1273,58 @@ public class LogFile {
      * Print out a human readable represenation of the log
      */
     public void print() throws IOException {
-        // some code goes here
+        synchronized (this) {
+            raf.seek(0);
+            long cpLoc = raf.readLong();
+            System.out.println("LAST CHECKPOINT: " + cpLoc);
+            long offset = LONG_SIZE;
+            DataInputStream in = reader(offset);
+            Record r;
+            while ((r = readRecord(in, offset)) != null) {
+                offset += r.size;
+                StringBuilder line = new StringBuilder();
+                line.append(r.lsn).append(' ');
+                switch (r.type) {
+                    case ABORT_RECORD:
+                        line.append("ABORT ").append(r.tid);
+                        break;
+                    case COMMIT_RECORD:
+                        line.append("COMMIT ").append(r.tid);
+                        break;
+                    case BEGIN_RECORD:
+                        line.append("BEGIN ").append(r.tid);
+                        break;
+                    case UPDATE_RECORD:
+                        line.append("UPDATE ").append(r.tid).append(' ').append(r.delta.getPageId())
+                                .append(", ").append(r.delta.changedBytes()).append(" bytes");
+                        break;
+                    case CLR_RECORD:
+                        line.append("CLR ").append(r.tid).append(' ').append(r.delta.getPageId())
+                                .append(", undoes ").append(r.undone);
+                        break;
+                    case CHECKPOINT_RECORD:
+                        line.append("CHECKPOINT");
+                        for (int i = 0; i < r.xids.length; i++) {
+                            line.append(' ').append(r.xids[i]).append('@').append(r.firsts[i]);
+                        }
+                        line.append(", dirty:");
+                        for (int i = 0; i < r.pages.length; i++) {
+                            line.append(' ').append(r.pages[i]).append('@').append(r.recLsns[i]);
+                        }
+                        break;
+                }
+                System.out.println(line);
+            }
+        }
     }
 
     public synchronized void force() throws IOException {
+        flushBuffer();
         raf.getChannel().force(true);
+        forceCount++;
+        // no record can be appended while this holds the lock
+        durable = appended;
+        notifyAll();
     }
 
 }
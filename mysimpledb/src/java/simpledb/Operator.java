@@ -6,8 +6,12 @@ import java.util.NoSuchElementException;
  * Abstract class for implementing operators. It handles <code>close</code>,
  * <code>next</code> and <code>hasNext</code>. Subclasses only need to implement
  * <code>open</code> and <code>readNext</code>.
+ * <p/>
+ * Operators also support {@link BatchIterator#nextBatch}; by default batches
+ * are filled from <code>fetchNext</code>, and subclasses that can do better
+ * override <code>fetchNextBatch</code>.
  */
-public abstract class Operator implements DbIterator {
+public abstract class Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
@@ -44,6 +48,52 @@ public abstract class Operator implements DbIterator {
     protected abstract Tuple fetchNext() throws DbException,
             TransactionAbortedException;
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (!this.open)
+            throw new IllegalStateException("Operator not yet open");
+
+        if (next != null) {
+            // hand back the tuple hasNext() looked ahead at before anything else
+            TupleBatch batch = getBatchBuffer();
+            batch.clear();
+            batch.add(next);
+            next = null;
+            return batch;
+        }
+        return fetchNextBatch();
+    }
+
+    /**
+     * Returns the next non-empty batch of tuples, or null if the iteration is
+     * finished. Operator uses this method to implement <code>nextBatch</code>.
+     * The default implementation fills {@link #getBatchBuffer} by calling
+     * <code>fetchNext</code>.
+     *
+     * @return the next batch of tuples, or null if the iteration is finished.
+     */
+    protected TupleBatch fetchNextBatch() throws DbException,
+            TransactionAbortedException {
+        TupleBatch batch = getBatchBuffer();
+        batch.clear();
+        while (!batch.isFull()) {
+            Tuple t = fetchNext();
+            if (t == null)
+                break;
+            batch.add(t);
+        }
+        return batch.size() > 0 ? batch : null;
+    }
+
+    /**
+     * @return a batch owned by this operator that subclasses may fill and
+     * return from <code>fetchNextBatch</code>.
+     */
+    protected TupleBatch getBatchBuffer() {
+        if (batchBuffer == null)
+            batchBuffer = new TupleBatch();
+        return batchBuffer;
+    }
+
     /**
      * Closes this iterator. If overridden by a subclass, they should call
      * super.close() in order for Operator's internal state to be consistent.
@@ -55,6 +105,7 @@ public abstract class Operator implements DbIterator {
     }
 
     private Tuple next = null;
+    private transient TupleBatch batchBuffer = null;
     private boolean open = false;
     private int estimatedCardinality = 0;
 
@@ -0,0 +1,224 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * PageDelta is the change an update made to a page, as the byte ranges of
+ * the page data that differ between its before and after images. It is
+ * what an UPDATE record of the {@link LogFile} holds, instead of both whole
+ * images: a tuple inserted into or deleted from a heap page changes a
+ * header bit and the tuple's slot, and updating one field changes only its
+ * bytes.
+ * <p/>
+ * Each range keeps its bytes from both images, so a delta can be redone
+ * onto the page as it was before the update, and undone from the page as
+ * it was after. Ranges closer together than {@link #MERGE_GAP} bytes are
+ * logged as one, since each range costs that much to describe.
+ */
+public class PageDelta {
+
+    /**
+     * Unchanged bytes between two changed ranges below which the ranges are
+     * merged
+     */
+    static final int MERGE_GAP = 8;
+
+    private final PageId pid;
+    // the PageRegistry code of the page's type
+    private final int pageCode;
+    private final int pageSize;
+    private final int[] offsets;
+    private final byte[][] before;
+    private final byte[][] after;
+
+    private PageDelta(PageId pid, int pageCode, int pageSize, int[] offsets, byte[][] before, byte[][] after) {
+        this.pid = pid;
+        this.pageCode = pageCode;
+        this.pageSize = pageSize;
+        this.offsets = offsets;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Computes the change between two images of the same page.
+     *
+     * @param before the page before the update
+     * @param after  the page after the update
+     * @throws IllegalArgumentException if the images are of different pages
+     *                                  or sizes, or of an unregistered type
+     * @see PageRegistry
+     */
+    public static PageDelta diff(Page before, Page after) {
+        if (!before.getId().equals(after.getId())) {
+            throw new IllegalArgumentException("images of different pages: " + before.getId() + ", " + after.getId());
+        }
+        byte[] b = before.getPageData();
+        byte[] a = after.getPageData();
+        if (b.length != a.length) {
+            throw new IllegalArgumentException("images of different sizes");
+        }
+        List<int[]> ranges = new ArrayList<int[]>();
+        int i = 0;
+        while (i < a.length) {
+            if (a[i] == b[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end = i + 1;
+            // extend over later changes no more than MERGE_GAP bytes away
+            for (int j = end; j < a.length && j - end < MERGE_GAP; j++) {
+                if (a[j] != b[j]) {
+                    end = j + 1;
+                }
+            }
+            ranges.add(new int[]{start, end});
+            i = end;
+        }
+        int[] offsets = new int[ranges.size()];
+        byte[][] bs = new byte[ranges.size()][];
+        byte[][] as = new byte[ranges.size()][];
+        for (int r = 0; r < offsets.length; r++) {
+            int[] range = ranges.get(r);
+            offsets[r] = range[0];
+            bs[r] = Arrays.copyOfRange(b, range[0], range[1]);
+            as[r] = Arrays.copyOfRange(a, range[0], range[1]);
+        }
+        return new PageDelta(after.getId(), PageRegistry.pageCode(after), a.length, offsets, bs, as);
+    }
+
+    /**
+     * @return the id of the changed page
+     */
+    public PageId getPageId() {
+        return pid;
+    }
+
+    /**
+     * @return the number of changed byte ranges
+     */
+    public int numRanges() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the number of bytes in the changed ranges
+     */
+    public int changedBytes() {
+        int n = 0;
+        for (byte[] range : after) {
+            n += range.length;
+        }
+        return n;
+    }
+
+    /**
+     * @return the delta that reverses this one, which a compensation log
+     * record holds
+     */
+    public PageDelta inverse() {
+        return new PageDelta(pid, pageCode, pageSize, offsets, after, before);
+    }
+
+    /**
+     * @return the number of bytes {@link #write} writes
+     */
+    public int size() {
+        int n = 2 + pid.serialize().length * 4 + 1 + 4 + 4;
+        for (byte[] range : after) {
+            n += 4 + 4 + 2 * range.length;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the delta: the page type code, the page id, the page size, the
+     * number of ranges, and for each range its offset, length, and before
+     * and after bytes.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(pageCode);
+        PageRegistry.writePageId(out, pid);
+        out.writeInt(pageSize);
+        out.writeInt(offsets.length);
+        for (int r = 0; r < offsets.length; r++) {
+            out.writeInt(offsets[r]);
+            out.writeInt(after[r].length);
+            out.write(before[r]);
+            out.write(after[r]);
+        }
+    }
+
+    /**
+     * Reads a delta written by {@link #write}.
+     */
+    public static PageDelta read(DataInput in) throws IOException {
+        int pageCode = in.readUnsignedByte();
+        PageId pid = PageRegistry.readPageId(in);
+        int pageSize = in.readInt();
+        int n = in.readInt();
+        int[] offsets = new int[n];
+        byte[][] before = new byte[n][];
+        byte[][] after = new byte[n][];
+        for (int r = 0; r < n; r++) {
+            offsets[r] = in.readInt();
+            int len = in.readInt();
+            before[r] = new byte[len];
+            in.readFully(before[r]);
+            after[r] = new byte[len];
+            in.readFully(after[r]);
+        }
+        return new PageDelta(pid, pageCode, pageSize, offsets, before, after);
+    }
+
+    /**
+     * Applies the update to the data of the page as it was before it.
+     */
+    public void redo(byte[] data) {
+        apply(data, after);
+    }
+
+    /**
+     * Reverses the update on the data of the page as it was after it.
+     */
+    public void undo(byte[] data) {
+        apply(data, before);
+    }
+
+    private void apply(byte[] data, byte[][] ranges) {
+        if (data.length != pageSize) {
+            throw new IllegalArgumentException("page of " + data.length + " bytes, expected " + pageSize);
+        }
+        for (int r = 0; r < offsets.length; r++) {
+            System.arraycopy(ranges[r], 0, data, offsets[r], ranges[r].length);
+        }
+    }
+
+    /**
+     * @return a new page holding page's data with the update redone
+     */
+    public Page redo(Page page) throws IOException {
+        byte[] data = page.getPageData().clone();
+        redo(data);
+        return newPage(data);
+    }
+
+    /**
+     * @return a new page holding page's data with the update undone
+     */
+    public Page undo(Page page) throws IOException {
+        byte[] data = page.getPageData().clone();
+        undo(data);
+        return newPage(data);
+    }
+
+    /**
+     * @return a page of the changed page's type and id holding the given
+     * data
+     */
+    Page newPage(byte[] data) throws IOException {
+        return PageRegistry.newPage(pageCode, pid, data);
+    }
+}
@@ -0,0 +1,210 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PageRegistry gives each kind of page, and each kind of page id, a small
+ * type code, and constructs pages and page ids from their codes and data.
+ * The {@link LogFile} records pages by these codes rather than by class
+ * name, and reads them back through the registered factories rather than
+ * by reflection.
+ * <p/>
+ * The page types of SimpleDb are registered here; other page types must be
+ * registered with {@link #registerPage} and {@link #registerPageId} before
+ * they are logged.
+ */
+public class PageRegistry {
+
+    /**
+     * Constructs pages of one type
+     */
+    public interface PageFactory {
+        /**
+         * @param pid  the id of the page
+         * @param data the page data, as returned by getPageData()
+         */
+        Page newPage(PageId pid, byte[] data) throws IOException;
+    }
+
+    /**
+     * Constructs page ids of one type
+     */
+    public interface PageIdFactory {
+        /**
+         * @param data the id data, as returned by serialize()
+         */
+        PageId newPageId(int[] data);
+    }
+
+    private static final Map<Integer, PageFactory> pageFactories = new ConcurrentHashMap<Integer, PageFactory>();
+    private static final Map<Class<?>, Integer> pageCodes = new ConcurrentHashMap<Class<?>, Integer>();
+    private static final Map<Integer, PageIdFactory> idFactories = new ConcurrentHashMap<Integer, PageIdFactory>();
+    private static final Map<Class<?>, Integer> idCodes = new ConcurrentHashMap<Class<?>, Integer>();
+
+    static {
+        registerPageId(1, HeapPageId.class, new PageIdFactory() {
+            public PageId newPageId(int[] data) {
+                return new HeapPageId(data[0], data[1]);
+            }
+        });
+        registerPageId(2, BTreePageId.class, new PageIdFactory() {
+            public PageId newPageId(int[] data) {
+                return new BTreePageId(data[0], data[1], data[2]);
+            }
+        });
+        registerPageId(3, HashPageId.class, new PageIdFactory() {
+            public PageId newPageId(int[] data) {
+                return new HashPageId(data[0], data[1]);
+            }
+        });
+
+        registerPage(1, HeapPage.class, new PageFactory() {
+            public Page newPage(PageId pid, byte[] data) throws IOException {
+                return new HeapPage((HeapPageId) pid, data);
+            }
+        });
+        registerPage(2, BTreeRootPtrPage.class, new PageFactory() {
+            public Page newPage(PageId pid, byte[] data) throws IOException {
+                return new BTreeRootPtrPage((BTreePageId) pid, data);
+            }
+        });
+        registerPage(3, BTreeInternalPage.class, new PageFactory() {
+            public Page newPage(PageId pid, byte[] data) throws IOException {
+                return new BTreeInternalPage((BTreePageId) pid, data);
+            }
+        });
+        registerPage(4, BTreeLeafPage.class, new PageFactory() {
+            public Page newPage(PageId pid, byte[] data) throws IOException {
+                return new BTreeLeafPage((BTreePageId) pid, data);
+            }
+        });
+        registerPage(5, HashHeaderPage.class, new PageFactory() {
+            public Page newPage(PageId pid, byte[] data) throws IOException {
+                return new HashHeaderPage((HashPageId) pid, data);
+            }
+        });
+        registerPage(6, HashBucketPage.class, new PageFactory() {
+            public Page newPage(PageId pid, byte[] data) throws IOException {
+                return new HashBucketPage((HashPageId) pid, data);
+            }
+        });
+    }
+
+    /**
+     * Registers a page type.
+     *
+     * @param code    the type code, from 0 to 255, which must be unused
+     * @param c       the page class
+     * @param factory constructs pages of the class
+     * @throws IllegalArgumentException if the code or class is registered
+     */
+    public static synchronized void registerPage(int code, Class<? extends Page> c, PageFactory factory) {
+        checkCode(code);
+        if (pageFactories.containsKey(code) || pageCodes.containsKey(c)) {
+            throw new IllegalArgumentException("page type " + code + " or " + c.getName() + " is registered");
+        }
+        pageFactories.put(code, factory);
+        pageCodes.put(c, code);
+    }
+
+    /**
+     * Registers a page id type.
+     *
+     * @param code    the type code, from 0 to 255, which must be unused
+     * @param c       the page id class
+     * @param factory constructs page ids of the class
+     * @throws IllegalArgumentException if the code or class is registered
+     */
+    public static synchronized void registerPageId(int code, Class<? extends PageId> c, PageIdFactory factory) {
+        checkCode(code);
+        if (idFactories.containsKey(code) || idCodes.containsKey(c)) {
+            throw new IllegalArgumentException("page id type " + code + " or " + c.getName() + " is registered");
+        }
+        idFactories.put(code, factory);
+        idCodes.put(c, code);
+    }
+
+    // codes are logged as one byte
+    private static void checkCode(int code) {
+        if (code < 0 || code > 255) {
+            throw new IllegalArgumentException("type code out of range: " + code);
+        }
+    }
+
+    /**
+     * @return the type code of a page
+     * @throws IllegalArgumentException if its type is not registered
+     */
+    static int pageCode(Page page) {
+        Integer code = pageCodes.get(page.getClass());
+        if (code == null) {
+            throw new IllegalArgumentException("unregistered page type " + page.getClass().getName());
+        }
+        return code;
+    }
+
+    /**
+     * @return the type code of a page id
+     * @throws IllegalArgumentException if its type is not registered
+     */
+    static int pageIdCode(PageId pid) {
+        Integer code = idCodes.get(pid.getClass());
+        if (code == null) {
+            throw new IllegalArgumentException("unregistered page id type " + pid.getClass().getName());
+        }
+        return code;
+    }
+
+    /**
+     * Constructs a page of the type with the given code.
+     *
+     * @throws IOException if no page type has the code
+     */
+    static Page newPage(int code, PageId pid, byte[] data) throws IOException {
+        PageFactory factory = pageFactories.get(code);
+        if (factory == null) {
+            throw new IOException("unknown page type " + code);
+        }
+        return factory.newPage(pid, data);
+    }
+
+    /**
+     * Constructs a page id of the type with the given code.
+     *
+     * @throws IOException if no page id type has the code
+     */
+    static PageId newPageId(int code, int[] data) throws IOException {
+        PageIdFactory factory = idFactories.get(code);
+        if (factory == null) {
+            throw new IOException("unknown page id type " + code);
+        }
+        return factory.newPageId(data);
+    }
+
+    /**
+     * Writes a page id as its type code, the length of its data, and the
+     * data.
+     */
+    static void writePageId(DataOutput out, PageId pid) throws IOException {
+        int[] data = pid.serialize();
+        out.writeByte(pageIdCode(pid));
+        out.writeByte(data.length);
+        for (int x : data) {
+            out.writeInt(x);
+        }
+    }
+
+    /**
+     * Reads a page id written by {@link #writePageId}.
+     */
+    static PageId readPageId(DataInput in) throws IOException {
+        int code = in.readUnsignedByte();
+        int[] data = new int[in.readUnsignedByte()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = in.readInt();
+        }
+        return newPageId(code, data);
+    }
+}
@@ -0,0 +1,756 @@
+package simpledb;
+
+import Zql.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Parser turns SQL statements into plans of SimpleDB operators. Statements
+ * are parsed with Zql; SELECT, INSERT and DELETE are supported.
+ * <p/>
+ * A SELECT is planned as SeqScans and Filters over each table in its FROM
+ * clause, joined in the order chosen by the {@link JoinOptimizer}, followed
+ * by at most one Aggregate (one aggregate, grouped by at most one column),
+ * OrderBy (on one column) and Project. The WHERE clause is split into its
+ * AND-ed conditions; a condition on a single table filters that table, and
+ * a comparison between columns of two tables joins them. Each table is
+ * scanned for just the columns the statement uses.
+ * <p/>
+ * Prepared statements are cached by their normalized text (whitespace
+ * collapsed outside of string literals, trailing semicolons removed), so
+ * running the same statement again skips parsing and planning. Cached plans
+ * are dropped when tables are added to or removed from the catalog; they are
+ * not re-planned when table statistics change.
+ *
+ * @Threadsafe
+ */
+public class Parser {
+
+    /**
+     * Most prepared statements kept in the cache
+     */
+    public static final int MAX_CACHED_QUERIES = 256;
+
+    private final Map<String, Query> cache = new LinkedHashMap<String, Query>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+            return size() > MAX_CACHED_QUERIES;
+        }
+    };
+
+    /**
+     * Parses and plans a statement, or returns the plan prepared earlier for
+     * the same statement.
+     *
+     * @param sql a single SQL statement; the trailing semicolon is optional
+     * @throws ParsingException if the statement is not valid or not
+     *                          supported
+     */
+    public Query prepare(String sql) throws DbException {
+        String key = normalize(sql);
+        Object version = Database.getCatalog().getVersion();
+        synchronized (cache) {
+            Query q = cache.get(key);
+            if (q != null && q.catalogVersion == version) {
+                return q;
+            }
+        }
+        Query q = plan(key, version);
+        synchronized (cache) {
+            cache.put(key, q);
+        }
+        return q;
+    }
+
+    /**
+     * Prepares a statement whose WHERE clause may contain ? placeholders,
+     * numbered from 0 in the order they appear, and builds its plan for
+     * repeated execution.
+     *
+     * @param sql a single SQL statement
+     * @param tid the transaction to build the plan for
+     * @throws ParsingException if the statement is not valid or not
+     *                          supported
+     */
+    public PreparedStatement prepareStatement(String sql, TransactionId tid) throws DbException {
+        return new PreparedStatement(tid, prepare(sql).getPlan(tid));
+    }
+
+    /**
+     * @return the number of statements in the cache
+     */
+    int cacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Collapses runs of whitespace outside of string literals into single
+     * spaces, and removes leading and trailing whitespace and semicolons.
+     */
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        boolean quoted = false;
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (!quoted && Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(c);
+        }
+        int end = sb.length();
+        while (end > 0 && (sb.charAt(end - 1) == ';' || sb.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        return sb.substring(0, end);
+    }
+
+    private Query plan(String sql, Object version) throws DbException {
+        ZStatement s;
+        try {
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream((sql + ";").getBytes()));
+            s = p.readStatement();
+        } catch (Zql.ParseException e) {
+            throw new ParsingException("could not parse statement: " + e.getMessage());
+        } catch (TokenMgrError e) {
+            throw new ParsingException("could not parse statement: " + e.getMessage());
+        }
+        if (s instanceof ZQuery) {
+            return planSelect((ZQuery) s, sql, version);
+        } else if (s instanceof ZInsert) {
+            return planInsert((ZInsert) s, sql, version);
+        } else if (s instanceof ZDelete) {
+            return planDelete((ZDelete) s, sql, version);
+        }
+        throw new ParsingException("unsupported statement: " + sql);
+    }
+
+    /**
+     * The tables a statement reads, by alias
+     */
+    private static final class Scope {
+        final Map<String, Integer> tables = new LinkedHashMap<String, Integer>();
+        // the number of ? placeholders seen so far
+        int parameters;
+
+        void add(String name, String alias) throws ParsingException {
+            int id;
+            try {
+                id = Database.getCatalog().getTableId(name);
+            } catch (NoSuchElementException e) {
+                throw new ParsingException("unknown table " + name);
+            }
+            if (tables.containsKey(alias)) {
+                throw new ParsingException("table alias " + alias + " used twice");
+            }
+            tables.put(alias, id);
+        }
+
+        TupleDesc schema(String alias) {
+            return Database.getCatalog().getTupleDesc(tables.get(alias));
+        }
+
+        /**
+         * Finds the table a column name (qualified by an alias or not)
+         * belongs to.
+         *
+         * @return { alias, field name }
+         */
+        String[] resolve(String column) throws ParsingException {
+            int dot = column.indexOf('.');
+            if (dot >= 0) {
+                String alias = column.substring(0, dot);
+                String field = column.substring(dot + 1);
+                if (!tables.containsKey(alias)) {
+                    throw new ParsingException("unknown table " + alias + " in " + column);
+                }
+                if (indexOf(schema(alias), field) < 0) {
+                    throw new ParsingException("unknown column " + column);
+                }
+                return new String[]{alias, field};
+            }
+            String found = null;
+            for (String alias : tables.keySet()) {
+                if (indexOf(schema(alias), column) >= 0) {
+                    if (found != null) {
+                        throw new ParsingException("column " + column + " is ambiguous");
+                    }
+                    found = alias;
+                }
+            }
+            if (found == null) {
+                throw new ParsingException("unknown column " + column);
+            }
+            return new String[]{found, column};
+        }
+    }
+
+    private static int indexOf(TupleDesc td, String name) {
+        for (int i = 0; i < td.numFields(); i++) {
+            if (name.equals(td.getFieldName(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isParameter(ZExp e) {
+        return e instanceof ZExpression && ((ZExpression) e).getOperator().equals("?");
+    }
+
+    private static boolean isColumn(ZExp e) {
+        return e instanceof ZConstant && ((ZConstant) e).getType() == ZConstant.COLUMNNAME;
+    }
+
+    private static String columnName(ZExp e) throws ParsingException {
+        if (!isColumn(e)) {
+            throw new ParsingException("expected a column name, got " + e);
+        }
+        return ((ZConstant) e).getValue();
+    }
+
+    /**
+     * Builds a JoinOptimizer over the tables in scope with the conditions of
+     * a WHERE clause, and chooses a join order.
+     */
+    private JoinOptimizer planJoins(Scope scope, ZExp where) throws DbException {
+        JoinOptimizer jo = new JoinOptimizer(new TransactionId());
+        for (Map.Entry<String, Integer> t : scope.tables.entrySet()) {
+            jo.addTable(t.getKey(), t.getValue());
+        }
+        List<ZExp> conds = new ArrayList<ZExp>();
+        conjuncts(where, conds);
+        for (ZExp cond : conds) {
+            Set<String> aliases = new HashSet<String>();
+            referencedTables(scope, cond, aliases);
+            if (aliases.size() == 1) {
+                String alias = aliases.iterator().next();
+                jo.addFilter(alias, predicate(scope, alias, cond));
+            } else if (aliases.size() == 2) {
+                ZExpression x = (ZExpression) cond;
+                Predicate.Op op = comparison(x);
+                if (op == null || !isColumn(x.getOperand(0)) || !isColumn(x.getOperand(1))) {
+                    throw new ParsingException("unsupported condition between tables: " + cond);
+                }
+                String[] c1 = scope.resolve(columnName(x.getOperand(0)));
+                String[] c2 = scope.resolve(columnName(x.getOperand(1)));
+                jo.addJoin(c1[0], c1[1], op, c2[0], c2[1]);
+            } else {
+                throw new ParsingException("unsupported condition: " + cond);
+            }
+        }
+        jo.optimize();
+        return jo;
+    }
+
+    private static void conjuncts(ZExp e, List<ZExp> out) {
+        if (e == null) {
+            return;
+        }
+        if (e instanceof ZExpression && ((ZExpression) e).getOperator().equalsIgnoreCase("AND")) {
+            ZExpression x = (ZExpression) e;
+            for (int i = 0; i < x.nbOperands(); i++) {
+                conjuncts(x.getOperand(i), out);
+            }
+        } else {
+            out.add(e);
+        }
+    }
+
+    private static void referencedTables(Scope scope, ZExp e, Set<String> out) throws ParsingException {
+        if (isColumn(e)) {
+            out.add(scope.resolve(columnName(e))[0]);
+        } else if (e instanceof ZExpression) {
+            ZExpression x = (ZExpression) e;
+            for (int i = 0; i < x.nbOperands(); i++) {
+                referencedTables(scope, x.getOperand(i), out);
+            }
+        } else if (e instanceof ZQuery) {
+            throw new ParsingException("nested queries are not supported: " + e);
+        }
+    }
+
+    /**
+     * @return the operator of a comparison, or null if x is not one
+     */
+    private static Predicate.Op comparison(ZExpression x) {
+        if (x.nbOperands() != 2) {
+            return null;
+        }
+        String op = x.getOperator();
+        if (op.equals("=")) {
+            return Predicate.Op.EQUALS;
+        } else if (op.equals("<>") || op.equals("!=") || op.equals("#")) {
+            return Predicate.Op.NOT_EQUALS;
+        } else if (op.equals("<")) {
+            return Predicate.Op.LESS_THAN;
+        } else if (op.equals("<=")) {
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        } else if (op.equals(">")) {
+            return Predicate.Op.GREATER_THAN;
+        } else if (op.equals(">=")) {
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        } else if (op.equalsIgnoreCase("LIKE")) {
+            return Predicate.Op.LIKE;
+        }
+        return null;
+    }
+
+    /**
+     * Translates a condition on one table into a Predicate whose field
+     * numbers index that table's schema.
+     */
+    private static Predicate predicate(Scope scope, String alias, ZExp e) throws ParsingException {
+        if (!(e instanceof ZExpression)) {
+            throw new ParsingException("unsupported condition: " + e);
+        }
+        ZExpression x = (ZExpression) e;
+        String op = x.getOperator();
+        if (op.equalsIgnoreCase("AND") || op.equalsIgnoreCase("OR")) {
+            List<Predicate> children = new ArrayList<Predicate>();
+            for (int i = 0; i < x.nbOperands(); i++) {
+                children.add(predicate(scope, alias, x.getOperand(i)));
+            }
+            return new CompositePredicate(op.equalsIgnoreCase("AND")
+                    ? CompositePredicate.Kind.AND : CompositePredicate.Kind.OR, children);
+        }
+        if (op.equalsIgnoreCase("NOT") && x.nbOperands() == 1) {
+            return CompositePredicate.not(predicate(scope, alias, x.getOperand(0)));
+        }
+
+        Predicate.Op cmp = comparison(x);
+        if (cmp == null) {
+            throw new ParsingException("unsupported condition: " + e);
+        }
+        TupleDesc td = scope.schema(alias);
+        ZExp left = x.getOperand(0), right = x.getOperand(1);
+        if (isColumn(left) && isColumn(right)) {
+            return new FieldPredicate(indexOf(td, scope.resolve(columnName(left))[1]), cmp,
+                    indexOf(td, scope.resolve(columnName(right))[1]));
+        }
+        if (!isColumn(left)) {
+            if (cmp == Predicate.Op.LIKE) {
+                throw new ParsingException("the pattern must follow LIKE: " + e);
+            }
+            ZExp tmp = left;
+            left = right;
+            right = tmp;
+            cmp = JoinOptimizer.flip(cmp);
+        }
+        int field = indexOf(td, scope.resolve(columnName(left))[1]);
+        if (isParameter(right)) {
+            return new Predicate(field, cmp, scope.parameters++);
+        }
+        return new Predicate(field, cmp, constant(right, td.getFieldType(field)));
+    }
+
+    /**
+     * Converts a literal to a field of the given type.
+     */
+    private static Field constant(ZExp e, Type type) throws ParsingException {
+        boolean negate = false;
+        if (e instanceof ZExpression && ((ZExpression) e).getOperator().equals("-")
+                && ((ZExpression) e).nbOperands() == 1) {
+            negate = true;
+            e = ((ZExpression) e).getOperand(0);
+        }
+        if (isParameter(e)) {
+            throw new ParsingException("parameters are only supported in WHERE conditions");
+        }
+        if (!(e instanceof ZConstant)) {
+            throw new ParsingException("expected a constant, got " + e);
+        }
+        ZConstant c = (ZConstant) e;
+        if (type == Type.INT_TYPE && c.getType() == ZConstant.NUMBER) {
+            try {
+                int v = Integer.parseInt(c.getValue());
+                return new IntField(negate ? -v : v);
+            } catch (NumberFormatException ex) {
+                throw new ParsingException("not an integer: " + c.getValue());
+            }
+        }
+        if (type == Type.STRING_TYPE && c.getType() == ZConstant.STRING && !negate) {
+            return new StringField(c.getValue(), Type.STRING_LEN);
+        }
+        throw new ParsingException("constant " + e + " does not match column type " + type);
+    }
+
+    private Query planSelect(ZQuery q, String sql, Object version) throws DbException {
+        if (q.isDistinct()) {
+            throw new ParsingException("DISTINCT is not supported");
+        }
+        Scope scope = new Scope();
+        for (Object o : q.getFrom()) {
+            ZFromItem from = (ZFromItem) o;
+            scope.add(from.getTable(), from.getAlias() != null ? from.getAlias() : from.getTable());
+        }
+
+        Query query = new Query(Query.Kind.SELECT, sql, version);
+        query.joins = planJoins(scope, q.getWhere());
+        for (Map.Entry<String, Set<String>> e : usedColumns(scope, q).entrySet()) {
+            query.joins.setColumns(e.getKey(), e.getValue());
+        }
+        TupleDesc td = query.joins.getPlan(new TransactionId()).getTupleDesc();
+
+        // the single aggregate, and the columns selected besides it
+        ZSelectItem aggregate = null;
+        List<ZSelectItem> items = new ArrayList<ZSelectItem>();
+        for (Object o : q.getSelect()) {
+            ZSelectItem si = (ZSelectItem) o;
+            if (si.getAggregate() != null) {
+                if (aggregate != null) {
+                    throw new ParsingException("only one aggregate is supported");
+                }
+                aggregate = si;
+            } else if (si.isExpression()) {
+                throw new ParsingException("expressions are not supported: " + si);
+            }
+            items.add(si);
+        }
+
+        String group = null;
+        if (q.getGroupBy() != null) {
+            if (q.getGroupBy().getHaving() != null) {
+                throw new ParsingException("HAVING is not supported");
+            }
+            Vector<?> columns = q.getGroupBy().getGroupBy();
+            if (columns.size() != 1) {
+                throw new ParsingException("only one GROUP BY column is supported");
+            }
+            if (aggregate == null) {
+                throw new ParsingException("GROUP BY needs an aggregate");
+            }
+            group = qualified(scope.resolve(columnName((ZExp) columns.get(0))));
+        }
+
+        // fields of the tuples reaching OrderBy and Project
+        TupleDesc out = td;
+        if (aggregate != null) {
+            ZExpression agg = (ZExpression) aggregate.getExpression();
+            query.aggregateOp = aggregateOp(aggregate.getAggregate());
+            ZExp arg = agg.getOperand(0);
+            if (isColumn(arg) && columnName(arg).equals("*")) {
+                if (query.aggregateOp != Aggregator.Op.COUNT) {
+                    throw new ParsingException("only COUNT accepts *");
+                }
+                query.aggregateField = 0;
+            } else {
+                query.aggregateField = td.fieldNameToIndex(qualified(scope.resolve(columnName(arg))));
+            }
+            if (group != null) {
+                query.groupField = td.fieldNameToIndex(group);
+            }
+            out = new Aggregate(new TupleIterator(td, new ArrayList<Tuple>()),
+                    query.aggregateField, query.groupField, query.aggregateOp).getTupleDesc();
+        }
+
+        if (q.getOrderBy() != null) {
+            if (q.getOrderBy().size() != 1) {
+                throw new ParsingException("only one ORDER BY column is supported");
+            }
+            ZOrderBy ob = (ZOrderBy) q.getOrderBy().get(0);
+            query.orderAsc = ob.getAscOrder();
+            if (aggregate != null) {
+                if (ob.getExpression().toString().equalsIgnoreCase(aggregate.getExpression().toString())) {
+                    query.orderField = out.numFields() - 1;
+                } else if (group != null && qualified(scope.resolve(columnName(ob.getExpression()))).equals(group)) {
+                    query.orderField = 0;
+                } else {
+                    throw new ParsingException("ORDER BY must name the group or the aggregate");
+                }
+            } else {
+                query.orderField = td.fieldNameToIndex(qualified(scope.resolve(columnName(ob.getExpression()))));
+            }
+        }
+
+        boolean all = items.size() == 1 && items.get(0).isWildcard() && items.get(0).getTable() == null
+                && aggregate == null;
+        if (!all) {
+            query.projectFields = new ArrayList<Integer>();
+            for (ZSelectItem si : items) {
+                if (si == aggregate) {
+                    query.projectFields.add(out.numFields() - 1);
+                } else if (aggregate != null) {
+                    if (group == null || !qualified(scope.resolve(selected(si))).equals(group)) {
+                        throw new ParsingException(si + " must appear in GROUP BY to be selected with an aggregate");
+                    }
+                    query.projectFields.add(0);
+                } else if (si.isWildcard()) {
+                    for (String alias : scope.tables.keySet()) {
+                        if (si.getTable() != null && !si.getTable().equals(alias)) {
+                            continue;
+                        }
+                        TupleDesc schema = scope.schema(alias);
+                        for (int i = 0; i < schema.numFields(); i++) {
+                            query.projectFields.add(td.fieldNameToIndex(alias + "." + schema.getFieldName(i)));
+                        }
+                    }
+                } else {
+                    query.projectFields.add(td.fieldNameToIndex(qualified(scope.resolve(selected(si)))));
+                }
+            }
+            query.projectTypes = new Type[query.projectFields.size()];
+            for (int i = 0; i < query.projectTypes.length; i++) {
+                query.projectTypes[i] = out.getFieldType(query.projectFields.get(i));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Finds the columns of each table that a SELECT returns, groups, orders
+     * or aggregates by, so that the others are not read. Columns used only
+     * in the WHERE clause are left out; the JoinOptimizer tests filters
+     * inside the scans and adds the columns joins need itself.
+     *
+     * @return the names of the columns used, unqualified, by table alias
+     */
+    private static Map<String, Set<String>> usedColumns(Scope scope, ZQuery q) throws ParsingException {
+        Map<String, Set<String>> used = new HashMap<String, Set<String>>();
+        for (String alias : scope.tables.keySet()) {
+            used.put(alias, new HashSet<String>());
+        }
+        List<ZExp> columns = new ArrayList<ZExp>();
+        for (Object o : q.getSelect()) {
+            ZSelectItem si = (ZSelectItem) o;
+            if (si.getAggregate() != null) {
+                columns.add(((ZExpression) si.getExpression()).getOperand(0));
+            } else if (si.isWildcard()) {
+                for (String alias : scope.tables.keySet()) {
+                    if (si.getTable() == null || si.getTable().equals(alias)) {
+                        TupleDesc schema = scope.schema(alias);
+                        for (int i = 0; i < schema.numFields(); i++) {
+                            used.get(alias).add(schema.getFieldName(i));
+                        }
+                    }
+                }
+            } else if (!si.isExpression()) {
+                String[] c = scope.resolve(selected(si));
+                used.get(c[0]).add(c[1]);
+            }
+        }
+        if (q.getGroupBy() != null) {
+            for (Object o : q.getGroupBy().getGroupBy()) {
+                columns.add((ZExp) o);
+            }
+        }
+        if (q.getOrderBy() != null) {
+            for (Object o : q.getOrderBy()) {
+                columns.add(((ZOrderBy) o).getExpression());
+            }
+        }
+        for (ZExp e : columns) {
+            if (isColumn(e) && !columnName(e).equals("*")) {
+                String[] c = scope.resolve(columnName(e));
+                used.get(c[0]).add(c[1]);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return the column named by a select list item, qualified by a table
+     * name if it was in the statement
+     */
+    private static String selected(ZSelectItem si) {
+        return si.getTable() != null ? si.getTable() + "." + si.getColumn() : si.getColumn();
+    }
+
+    private static String qualified(String[] column) {
+        return column[0] + "." + column[1];
+    }
+
+    private static Aggregator.Op aggregateOp(String name) throws ParsingException {
+        for (Aggregator.Op op : new Aggregator.Op[]{Aggregator.Op.MIN, Aggregator.Op.MAX,
+                Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT}) {
+            if (op.toString().equalsIgnoreCase(name)) {
+                return op;
+            }
+        }
+        throw new ParsingException("unknown aggregate " + name);
+    }
+
+    private Query planInsert(ZInsert ins, String sql, Object version) throws DbException {
+        Scope scope = new Scope();
+        scope.add(ins.getTable(), ins.getTable());
+        Query query = new Query(Query.Kind.INSERT, sql, version);
+        query.tableId = scope.tables.get(ins.getTable());
+        TupleDesc td = scope.schema(ins.getTable());
+
+        // position in the statement of each of the table's columns
+        int[] order = new int[td.numFields()];
+        boolean reordered = false;
+        if (ins.getColumns() == null) {
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        } else {
+            Vector<?> columns = ins.getColumns();
+            if (columns.size() != order.length) {
+                throw new ParsingException("INSERT must give a value for every column");
+            }
+            Arrays.fill(order, -1);
+            for (int j = 0; j < columns.size(); j++) {
+                int i = indexOf(td, columns.get(j).toString());
+                if (i < 0 || order[i] >= 0) {
+                    throw new ParsingException("unknown or repeated column " + columns.get(j));
+                }
+                order[i] = j;
+                reordered |= i != j;
+            }
+        }
+
+        if (ins.getValues() != null) {
+            Vector<?> values = ins.getValues();
+            if (values.size() != order.length) {
+                throw new ParsingException("INSERT must give a value for every column");
+            }
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < order.length; i++) {
+                t.setField(i, constant((ZExp) values.get(order[i]), td.getFieldType(i)));
+            }
+            query.values = Collections.singletonList(t);
+            return query;
+        }
+
+        query.source = planSelect(ins.getQuery(), sql, version);
+        TupleDesc source = query.source.getPlan(new TransactionId()).getTupleDesc();
+        if (source.numFields() != order.length) {
+            throw new ParsingException("INSERT must give a value for every column");
+        }
+        for (int i = 0; i < order.length; i++) {
+            if (source.getFieldType(order[i]) != td.getFieldType(i)) {
+                throw new ParsingException("type of " + source.getFieldName(order[i])
+                        + " does not match column " + td.getFieldName(i));
+            }
+        }
+        if (reordered) {
+            query.sourceFields = new ArrayList<Integer>();
+            query.sourceTypes = new Type[order.length];
+            for (int i = 0; i < order.length; i++) {
+                query.sourceFields.add(order[i]);
+                query.sourceTypes[i] = td.getFieldType(i);
+            }
+        }
+        return query;
+    }
+
+    private Query planDelete(ZDelete del, String sql, Object version) throws DbException {
+        Scope scope = new Scope();
+        scope.add(del.getTable(), del.getTable());
+        Query query = new Query(Query.Kind.DELETE, sql, version);
+        query.tableId = scope.tables.get(del.getTable());
+        query.joins = planJoins(scope, del.getWhere());
+        return query;
+    }
+
+    /**
+     * Runs one statement in its own transaction and prints its results.
+     * Errors are printed and abort the transaction.
+     *
+     * @param sql the statement to run
+     * @param out where to print results
+     */
+    public void processStatement(String sql, PrintStream out) {
+        Transaction t = new Transaction();
+        t.start();
+        boolean committed = false;
+        try {
+            long start = System.currentTimeMillis();
+            DbIterator plan = prepare(sql).getPlan(t.getId());
+            TupleDesc td = plan.getTupleDesc();
+            StringBuilder header = new StringBuilder();
+            for (int i = 0; i < td.numFields(); i++) {
+                header.append(i == 0 ? "" : "\t").append(td.getFieldName(i));
+            }
+            out.println(header);
+            int rows = 0;
+            plan.open();
+            while (plan.hasNext()) {
+                out.println(plan.next());
+                rows++;
+            }
+            plan.close();
+            t.commit();
+            committed = true;
+            out.println("\n " + rows + " rows in " + (System.currentTimeMillis() - start) / 1000.0 + " seconds\n");
+        } catch (DbException e) {
+            out.println("Error: " + e.getMessage());
+        } catch (TransactionAbortedException e) {
+            out.println("Transaction aborted");
+        } catch (IOException e) {
+            out.println("Error: " + e.getMessage());
+        } finally {
+            if (!committed) {
+                try {
+                    t.abort();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs statements against a database given by a schema file, either
+     * from a file or typed at a prompt.
+     * <p/>
+     * Usage: parser &lt;schema file&gt; [-f &lt;statement file&gt;]
+     */
+    public static void main(String[] args) throws IOException, DbException {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals("-f"))) {
+            System.out.println("Usage: parser <schema file> [-f <statement file>]");
+            return;
+        }
+        Database.getCatalog().loadSchema(args[0]);
+        Database.getCatalog().computeStatistics();
+        Parser parser = new Parser();
+
+        if (args.length == 3) {
+            BufferedReader in = new BufferedReader(new FileReader(args[2]));
+            StringBuilder text = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+            in.close();
+            for (String statement : text.toString().split(";")) {
+                if (statement.trim().length() > 0) {
+                    System.out.println(normalize(statement) + ";");
+                    parser.processStatement(statement, System.out);
+                }
+            }
+            return;
+        }
+
+        jline.ConsoleReader reader = new jline.ConsoleReader();
+        StringBuilder buffer = new StringBuilder();
+        String line;
+        while ((line = reader.readLine(buffer.length() == 0 ? "SimpleDB> " : "       -> ")) != null) {
+            buffer.append(line).append('\n');
+            if (!line.trim().endsWith(";")) {
+                continue;
+            }
+            String statement = normalize(buffer.toString());
+            buffer.setLength(0);
+            if (statement.equalsIgnoreCase("quit") || statement.equalsIgnoreCase("exit")) {
+                break;
+            }
+            if (statement.length() > 0) {
+                parser.processStatement(statement, System.out);
+            }
+        }
+    }
+}
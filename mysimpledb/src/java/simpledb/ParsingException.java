@@ -0,0 +1,14 @@
+package simpledb;
+
+/**
+ * Thrown by the {@link Parser} when a statement cannot be parsed, refers to
+ * tables or columns that do not exist, or uses SQL the planner does not
+ * support.
+ */
+public class ParsingException extends DbException {
+    private static final long serialVersionUID = 1L;
+
+    public ParsingException(String s) {
+        super(s);
+    }
+}
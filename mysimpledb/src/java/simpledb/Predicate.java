@@ -4,6 +4,10 @@ import java.io.Serializable;
 
 /**
  * Predicate compares tuples to a specified Field value.
+ * <p/>
+ * The operand of a placeholder predicate is supplied later through
+ * {@link #setOperand}, usually by binding a parameter of a
+ * {@link PreparedStatement}. Until then it passes no tuples.
  */
 public class Predicate implements Serializable {
 
@@ -48,6 +52,13 @@ public class Predicate implements Serializable {
     int fnum;
     Op opr;
     Field opnd;
+    // the statement parameter supplying opnd, or -1
+    int param = -1;
+    // counts changes of opnd, so compiled forms of this predicate can tell
+    // they are stale
+    int version;
+    // compiled form of opnd for LIKE on strings, built on first use
+    private transient LikePattern likePattern;
 
     /**
      * Constructor.
@@ -62,6 +73,27 @@ public class Predicate implements Serializable {
         opnd = operand;
     }
 
+    /**
+     * Constructor for a placeholder whose operand is bound later.
+     *
+     * @param field     field number of passed in tuples to compare against.
+     * @param op        operation to use for comparison
+     * @param parameter the number of the statement parameter that supplies
+     *                  the operand, counting from 0
+     */
+    public Predicate(int field, Op op, int parameter) {
+        this(field, op, (Field) null);
+        param = parameter;
+    }
+
+    /**
+     * Constructor for subclasses that do not compare a single field against
+     * an operand, such as {@link CompositePredicate}.
+     */
+    protected Predicate() {
+        this(-1, null, null);
+    }
+
     /**
      * @return the field number
      */
@@ -86,6 +118,34 @@ public class Predicate implements Serializable {
         return opnd;
     }
 
+    /**
+     * @return the number of the statement parameter that supplies the
+     * operand, or -1 if this is not a placeholder
+     */
+    public int getParameter() {
+        return param;
+    }
+
+    /**
+     * Replaces the operand. Filters pick up the new operand when they are
+     * next opened or rewound.
+     *
+     * @param operand the new field value to compare tuples to
+     */
+    public void setOperand(Field operand) {
+        opnd = operand;
+        likePattern = null;
+        version++;
+    }
+
+    /**
+     * @return a number that changes whenever the operand of this predicate,
+     * or of any predicate it is built from, changes
+     */
+    int getVersion() {
+        return version;
+    }
+
     /**
      * Compares the field number of t specified in the constructor to the
      * operand field specified in the constructor using the operator specific in
@@ -99,7 +159,25 @@ public class Predicate implements Serializable {
         if (opnd == null || t == null || t.getField(fnum) == null) {
             return false;
         }
-        return t.getField(fnum).compare(opr, opnd);
+        Field f = t.getField(fnum);
+        if (opr == Op.LIKE && opnd instanceof StringField && f instanceof StringField) {
+            return getLikePattern().matches(((StringField) f).getValue());
+        }
+        return f.compare(opr, opnd);
+    }
+
+    /**
+     * @return the operand compiled as a LIKE pattern, or null if this is not
+     * a LIKE predicate on a string operand
+     */
+    public LikePattern getLikePattern() {
+        if (opr != Op.LIKE || !(opnd instanceof StringField)) {
+            return null;
+        }
+        if (likePattern == null) {
+            likePattern = LikePattern.compile(((StringField) opnd).getValue());
+        }
+        return likePattern;
     }
 
     /**
@@ -108,6 +186,7 @@ public class Predicate implements Serializable {
      */
     public String toString() {
         // some code goes here
-        return "f = " + Integer.toString(fnum) + ", op = " + opr.toString() + ", operand = "  + opnd.toString();
+        return "f = " + Integer.toString(fnum) + ", op = " + opr.toString() + ", operand = "
+                + (opnd == null && param >= 0 ? "?" + param : String.valueOf(opnd));
     }
 }
@@ -0,0 +1,530 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * PredicateCompiler turns Predicates and JoinPredicates into evaluators
+ * specialized for the type of the compared fields and the operator, so that
+ * testing a tuple is a field read and a primitive comparison instead of
+ * Field.compare's cast and switch on Predicate.Op.
+ * <p/>
+ * Each (type, operator) pair is a predicate "shape" with its own evaluator
+ * class, and compiling a predicate constructs that class with the field
+ * index and operand. Every call site therefore sees a single small final
+ * class, which the JIT can inline into the scan loop.
+ * <p/>
+ * Conjunctions and {@link CompositePredicate} trees compile to AND/OR nodes
+ * that count how often each term is evaluated and passes, and periodically
+ * reorder their terms so that the cheapest, most decisive term runs first.
+ *
+ * @see CompiledPredicate
+ * @see CompiledJoinPredicate
+ */
+public class PredicateCompiler {
+
+    private static final CompiledPredicate NEVER = new CompiledPredicate() {
+        private static final long serialVersionUID = 1L;
+
+        public boolean filter(Tuple t) {
+            return false;
+        }
+    };
+
+    private static final CompiledPredicate ALWAYS = new CompiledPredicate() {
+        private static final long serialVersionUID = 1L;
+
+        public boolean filter(Tuple t) {
+            return true;
+        }
+    };
+
+    /**
+     * Compiles a single predicate. The result accepts exactly the tuples that
+     * p.filter() accepts.
+     *
+     * @param p the predicate to compile
+     * @return an evaluator for p
+     */
+    public static CompiledPredicate compile(Predicate p) {
+        if (p instanceof CompositePredicate) {
+            return compileComposite((CompositePredicate) p);
+        }
+        if (p.getClass() != Predicate.class) {
+            // other subclasses, such as FieldPredicate, define their own test
+            return new Generic(p);
+        }
+        Field operand = p.getOperand();
+        if (operand == null) {
+            // Predicate.filter never passes a tuple without an operand
+            return NEVER;
+        }
+        return bind(operand.getType(), p.getOp(), p.getField(), operand);
+    }
+
+    /**
+     * Compiles the conjunction of a list of predicates into one evaluator.
+     *
+     * @param conjuncts the predicates that must all hold; an empty list
+     *                  accepts every tuple
+     * @return an evaluator that passes tuples satisfying every predicate
+     */
+    public static CompiledPredicate compile(List<Predicate> conjuncts) {
+        if (conjuncts.size() == 1) {
+            return compile(conjuncts.get(0));
+        }
+        if (conjuncts.isEmpty()) {
+            return ALWAYS;
+        }
+        CompiledPredicate[] terms = new CompiledPredicate[conjuncts.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = compile(conjuncts.get(i));
+        }
+        return new Junction(true, terms);
+    }
+
+    private static CompiledPredicate compileComposite(CompositePredicate p) {
+        List<Predicate> children = p.getChildren();
+        switch (p.getKind()) {
+            case NOT:
+                return new Not(compile(children.get(0)));
+            case AND:
+                return compile(children);
+            case OR:
+                if (children.size() == 1) {
+                    return compile(children.get(0));
+                }
+                CompiledPredicate[] terms = new CompiledPredicate[children.size()];
+                for (int i = 0; i < terms.length; i++) {
+                    terms[i] = compile(children.get(i));
+                }
+                return new Junction(false, terms);
+        }
+        throw new IllegalStateException("impossible to reach here");
+    }
+
+    /**
+     * Compiles a join predicate whose fields are both of the given type.
+     *
+     * @param p    the join predicate to compile
+     * @param type the type of field p.getField1() of the left tuples, or
+     *             null if unknown
+     * @return an evaluator that accepts exactly what p.filter() accepts
+     */
+    public static CompiledJoinPredicate compile(final JoinPredicate p, Type type) {
+        if (type == null) {
+            return new CompiledJoinPredicate() {
+                private static final long serialVersionUID = 1L;
+
+                public boolean filter(Tuple t1, Tuple t2) {
+                    return p.filter(t1, t2);
+                }
+            };
+        }
+        return bind(type, p.getOperator(), p.getField1(), p.getField2());
+    }
+
+    private static CompiledPredicate bind(Type type, Predicate.Op op, int field, Field operand) {
+        if (type == Type.INT_TYPE) {
+            int value = ((IntField) operand).getValue();
+            switch (op) {
+                case EQUALS:
+                case LIKE:
+                    return new IntEquals(field, value);
+                case NOT_EQUALS:
+                    return new IntNotEquals(field, value);
+                case LESS_THAN:
+                    return new IntLessThan(field, value);
+                case LESS_THAN_OR_EQ:
+                    return new IntLessThanOrEq(field, value);
+                case GREATER_THAN:
+                    return new IntGreaterThan(field, value);
+                case GREATER_THAN_OR_EQ:
+                    return new IntGreaterThanOrEq(field, value);
+            }
+        } else if (type == Type.STRING_TYPE) {
+            String value = ((StringField) operand).getValue();
+            switch (op) {
+                case EQUALS:
+                    return new StringEquals(field, value);
+                case LIKE:
+                    return new StringLike(field, LikePattern.compile(value));
+                default:
+                    return new StringCompare(field, op, value);
+            }
+        }
+        throw new IllegalArgumentException("cannot compile predicate on " + type + " " + op);
+    }
+
+    private static CompiledJoinPredicate bind(Type type, Predicate.Op op, int field1, int field2) {
+        if (type == Type.INT_TYPE) {
+            switch (op) {
+                case EQUALS:
+                case LIKE:
+                    return new IntJoinEquals(field1, field2);
+                default:
+                    return new IntJoinCompare(field1, op, field2);
+            }
+        }
+        return new FieldJoinCompare(field1, op, field2);
+    }
+
+    /**
+     * Number of evaluations between two reorderings of a Junction's terms.
+     */
+    static final int REORDER_INTERVAL = 1024;
+
+    /**
+     * An AND (conjunction) or OR (disjunction) of terms that reorders itself.
+     * A conjunction stops at the first failing term, so it wants terms that
+     * are cheap and fail often first: terms are ranked by
+     * cost / P(fail). A disjunction stops at the first passing term and ranks
+     * terms by cost / P(pass). Pass rates are estimated from counts that are
+     * halved at every reordering, so the order follows changes in the data.
+     */
+    static final class Junction extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final boolean conjunction;
+        private final CompiledPredicate[] terms;
+        private final int[] evaluated;
+        private final int[] passed;
+        private int untilReorder = REORDER_INTERVAL;
+
+        Junction(boolean conjunction, CompiledPredicate[] terms) {
+            this.conjunction = conjunction;
+            this.terms = terms.clone();
+            evaluated = new int[terms.length];
+            passed = new int[terms.length];
+        }
+
+        public boolean filter(Tuple t) {
+            if (--untilReorder == 0) {
+                reorder();
+            }
+            for (int i = 0; i < terms.length; i++) {
+                evaluated[i]++;
+                if (terms[i].filter(t)) {
+                    passed[i]++;
+                    if (!conjunction) {
+                        return true;
+                    }
+                } else if (conjunction) {
+                    return false;
+                }
+            }
+            return conjunction;
+        }
+
+        int cost() {
+            int cost = 0;
+            for (CompiledPredicate term : terms) {
+                cost += term.cost();
+            }
+            return cost;
+        }
+
+        /**
+         * @return the terms in the order they are currently evaluated
+         */
+        CompiledPredicate[] getTerms() {
+            return terms.clone();
+        }
+
+        private double rank(int i) {
+            // Laplace-smoothed chance that term i ends the evaluation
+            double pass = (passed[i] + 1.0) / (evaluated[i] + 2.0);
+            double decisive = conjunction ? 1.0 - pass : pass;
+            return terms[i].cost() / decisive;
+        }
+
+        private void reorder() {
+            untilReorder = REORDER_INTERVAL;
+            double[] ranks = new double[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                ranks[i] = rank(i);
+            }
+            // insertion sort: there are only a few terms and they are
+            // usually already in order
+            for (int i = 1; i < terms.length; i++) {
+                for (int j = i; j > 0 && ranks[j] < ranks[j - 1]; j--) {
+                    swap(j, j - 1, ranks);
+                }
+            }
+            for (int i = 0; i < terms.length; i++) {
+                evaluated[i] /= 2;
+                passed[i] /= 2;
+            }
+        }
+
+        private void swap(int i, int j, double[] ranks) {
+            CompiledPredicate term = terms[i];
+            terms[i] = terms[j];
+            terms[j] = term;
+            int e = evaluated[i];
+            evaluated[i] = evaluated[j];
+            evaluated[j] = e;
+            int p = passed[i];
+            passed[i] = passed[j];
+            passed[j] = p;
+            double r = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = r;
+        }
+    }
+
+    private static final class Not extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final CompiledPredicate term;
+
+        Not(CompiledPredicate term) {
+            this.term = term;
+        }
+
+        public boolean filter(Tuple t) {
+            return !term.filter(t);
+        }
+
+        int cost() {
+            return term.cost();
+        }
+    }
+
+    private static final class IntEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, value;
+
+        IntEquals(int field, int value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && ((IntField) f).getValue() == value;
+        }
+    }
+
+    private static final class IntNotEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, value;
+
+        IntNotEquals(int field, int value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && ((IntField) f).getValue() != value;
+        }
+    }
+
+    private static final class IntLessThan extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, value;
+
+        IntLessThan(int field, int value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && ((IntField) f).getValue() < value;
+        }
+    }
+
+    private static final class IntLessThanOrEq extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, value;
+
+        IntLessThanOrEq(int field, int value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && ((IntField) f).getValue() <= value;
+        }
+    }
+
+    private static final class IntGreaterThan extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, value;
+
+        IntGreaterThan(int field, int value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && ((IntField) f).getValue() > value;
+        }
+    }
+
+    private static final class IntGreaterThanOrEq extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, value;
+
+        IntGreaterThanOrEq(int field, int value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && ((IntField) f).getValue() >= value;
+        }
+    }
+
+    private static final class Generic extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final Predicate pred;
+
+        Generic(Predicate pred) {
+            this.pred = pred;
+        }
+
+        public boolean filter(Tuple t) {
+            return pred.filter(t);
+        }
+
+        int cost() {
+            return 2;
+        }
+    }
+
+    private static final class StringEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field;
+        private final String value;
+
+        StringEquals(int field, String value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && ((StringField) f).getValue().equals(value);
+        }
+
+        int cost() {
+            return 2;
+        }
+    }
+
+    private static final class StringLike extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field;
+        private final LikePattern pattern;
+
+        StringLike(int field, LikePattern pattern) {
+            this.field = field;
+            this.pattern = pattern;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            return f != null && pattern.matches(((StringField) f).getValue());
+        }
+
+        int cost() {
+            return pattern.cost();
+        }
+    }
+
+    private static final class StringCompare extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field;
+        private final String value;
+        // the comparison passes when compareTo's sign is one of these
+        private final boolean less, equal, greater;
+
+        StringCompare(int field, Predicate.Op op, String value) {
+            this.field = field;
+            this.value = value;
+            less = op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ
+                    || op == Predicate.Op.NOT_EQUALS;
+            equal = op == Predicate.Op.LESS_THAN_OR_EQ || op == Predicate.Op.GREATER_THAN_OR_EQ;
+            greater = op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ
+                    || op == Predicate.Op.NOT_EQUALS;
+        }
+
+        public boolean filter(Tuple t) {
+            Field f = t.getField(field);
+            if (f == null) {
+                return false;
+            }
+            int cmp = ((StringField) f).getValue().compareTo(value);
+            return cmp < 0 ? less : (cmp == 0 ? equal : greater);
+        }
+
+        int cost() {
+            return 2;
+        }
+    }
+
+    private static final class IntJoinEquals extends CompiledJoinPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field1, field2;
+
+        IntJoinEquals(int field1, int field2) {
+            this.field1 = field1;
+            this.field2 = field2;
+        }
+
+        public boolean filter(Tuple t1, Tuple t2) {
+            if (t1 == null || t2 == null) {
+                return false;
+            }
+            return ((IntField) t1.getField(field1)).getValue()
+                    == ((IntField) t2.getField(field2)).getValue();
+        }
+    }
+
+    private static final class IntJoinCompare extends CompiledJoinPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field1, field2;
+        private final boolean less, equal, greater;
+
+        IntJoinCompare(int field1, Predicate.Op op, int field2) {
+            this.field1 = field1;
+            this.field2 = field2;
+            less = op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ
+                    || op == Predicate.Op.NOT_EQUALS;
+            equal = op == Predicate.Op.LESS_THAN_OR_EQ || op == Predicate.Op.GREATER_THAN_OR_EQ;
+            greater = op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ
+                    || op == Predicate.Op.NOT_EQUALS;
+        }
+
+        public boolean filter(Tuple t1, Tuple t2) {
+            if (t1 == null || t2 == null) {
+                return false;
+            }
+            int v1 = ((IntField) t1.getField(field1)).getValue();
+            int v2 = ((IntField) t2.getField(field2)).getValue();
+            return v1 < v2 ? less : (v1 == v2 ? equal : greater);
+        }
+    }
+
+    private static final class FieldJoinCompare extends CompiledJoinPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field1, field2;
+        private final Predicate.Op op;
+
+        FieldJoinCompare(int field1, Predicate.Op op, int field2) {
+            this.field1 = field1;
+            this.field2 = field2;
+            this.op = op;
+        }
+
+        public boolean filter(Tuple t1, Tuple t2) {
+            if (t1 == null || t2 == null) {
+                return false;
+            }
+            return t1.getField(field1).compare(op, t2.getField(field2));
+        }
+    }
+}
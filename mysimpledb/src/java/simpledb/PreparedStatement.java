@@ -0,0 +1,192 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * PreparedStatement runs one operator tree many times with different
+ * operands. The tree is built once with placeholder Predicates (see
+ * {@link Predicate#Predicate(int, Predicate.Op, int)}); before each run the
+ * parameters are bound with {@link #setParameter} and {@link #execute}
+ * reopens the same operators instead of building new ones.
+ * <p/>
+ * Filters and scans in the tree are given their own copies of any
+ * predicates with placeholders, so binding parameters does not affect other
+ * plans built from the same predicates, such as those of a cached
+ * {@link Query}.
+ * <p/>
+ * Join conditions compare two columns and have no operands, so only filters
+ * take parameters. A PreparedStatement is not thread safe.
+ */
+public class PreparedStatement {
+
+    private final DbIterator plan;
+    private TransactionId tid;
+    // the placeholders supplied by each parameter
+    private final List<List<Predicate>> parameters = new ArrayList<List<Predicate>>();
+    private final List<SeqScan> scans = new ArrayList<SeqScan>();
+    private final List<IndexOnlyScan> indexScans = new ArrayList<IndexOnlyScan>();
+    private final List<Operator> writers = new ArrayList<Operator>();
+    private boolean open;
+    // true if a parameter was bound since the plan was last opened
+    private boolean rebound;
+
+    /**
+     * Constructor.
+     *
+     * @param tid  the transaction the plan was built for
+     * @param plan the root of the plan; it must not be open
+     */
+    public PreparedStatement(TransactionId tid, DbIterator plan) {
+        this.tid = tid;
+        this.plan = plan;
+        collect(plan);
+    }
+
+    private void collect(DbIterator it) {
+        if (it instanceof SeqScan) {
+            SeqScan scan = (SeqScan) it;
+            scans.add(scan);
+            if (scan.getFilter() != null) {
+                scan.setFilter(copyPlaceholders(scan.getFilter()));
+            }
+        } else if (it instanceof IndexOnlyScan) {
+            IndexOnlyScan scan = (IndexOnlyScan) it;
+            indexScans.add(scan);
+            if (scan.getFilter() != null) {
+                scan.setFilter(copyPlaceholders(scan.getFilter()));
+            }
+        }
+        if (!(it instanceof Operator)) {
+            return;
+        }
+        if (it instanceof Filter) {
+            Filter f = (Filter) it;
+            f.pred = copyPlaceholders(f.pred);
+        } else if (it instanceof Insert || it instanceof Delete) {
+            writers.add((Operator) it);
+        }
+        for (DbIterator child : ((Operator) it).getChildren()) {
+            collect(child);
+        }
+    }
+
+    /**
+     * @return p, or a copy of it in which each placeholder is a new
+     * Predicate registered as a parameter
+     */
+    private Predicate copyPlaceholders(Predicate p) {
+        if (p instanceof CompositePredicate) {
+            CompositePredicate c = (CompositePredicate) p;
+            List<Predicate> children = new ArrayList<Predicate>();
+            boolean changed = false;
+            for (Predicate child : c.getChildren()) {
+                Predicate copy = copyPlaceholders(child);
+                changed |= copy != child;
+                children.add(copy);
+            }
+            return changed ? new CompositePredicate(c.getKind(), children) : p;
+        }
+        if (p.getParameter() < 0) {
+            return p;
+        }
+        Predicate copy = new Predicate(p.getField(), p.getOp(), p.getParameter());
+        while (parameters.size() <= p.getParameter()) {
+            parameters.add(new ArrayList<Predicate>());
+        }
+        parameters.get(p.getParameter()).add(copy);
+        return copy;
+    }
+
+    /**
+     * @return the number of parameters; parameters are numbered from 0
+     */
+    public int getParameterCount() {
+        return parameters.size();
+    }
+
+    /**
+     * Binds a value to a parameter. It takes effect at the next call to
+     * execute().
+     *
+     * @param index the number of the parameter, counting from 0
+     * @param value the value to bind
+     */
+    public void setParameter(int index, Field value) {
+        if (index < 0 || index >= parameters.size()) {
+            throw new IllegalArgumentException("no parameter " + index);
+        }
+        for (Predicate p : parameters.get(index)) {
+            p.setOperand(value);
+        }
+        rebound = true;
+    }
+
+    public void setInt(int index, int value) {
+        setParameter(index, new IntField(value));
+    }
+
+    public void setString(int index, String value) {
+        setParameter(index, new StringField(value, Type.STRING_LEN));
+    }
+
+    /**
+     * Runs the statement in the transaction it was last run in.
+     *
+     * @return the root of the plan, open and positioned at its first tuple
+     */
+    public DbIterator execute() throws DbException, TransactionAbortedException {
+        return execute(tid);
+    }
+
+    /**
+     * Runs the statement in a transaction. If nothing has changed since the
+     * last run the plan is rewound. Otherwise it is closed and opened again,
+     * since operators such as Aggregate, OrderBy and HashEquiJoin keep what
+     * they read from their children across a rewind.
+     *
+     * @param tid the transaction to run in
+     * @return the root of the plan, open and positioned at its first tuple
+     */
+    public DbIterator execute(TransactionId tid) throws DbException, TransactionAbortedException {
+        for (List<Predicate> placeholders : parameters) {
+            if (!placeholders.isEmpty() && placeholders.get(0).getOperand() == null) {
+                throw new DbException("parameter " + parameters.indexOf(placeholders) + " is not bound");
+            }
+        }
+        if (open && !rebound && tid.equals(this.tid)) {
+            plan.rewind();
+            return plan;
+        }
+        close();
+        if (!tid.equals(this.tid)) {
+            this.tid = tid;
+            for (SeqScan scan : scans) {
+                scan.setTransactionId(tid);
+            }
+            for (IndexOnlyScan scan : indexScans) {
+                scan.setTransactionId(tid);
+            }
+            for (Operator w : writers) {
+                if (w instanceof Insert) {
+                    ((Insert) w).tid = tid;
+                } else {
+                    ((Delete) w).tid = tid;
+                }
+            }
+        }
+        plan.open();
+        open = true;
+        rebound = false;
+        return plan;
+    }
+
+    /**
+     * Closes the plan. The statement can still be executed again.
+     */
+    public void close() {
+        if (open) {
+            plan.close();
+            open = false;
+        }
+    }
+}
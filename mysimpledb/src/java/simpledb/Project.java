@@ -4,6 +4,11 @@ import java.util.*;
 
 /**
  * Project is an operator that implements a relational projection.
+ * <p/>
+ * When its child is a {@link SeqScan}, the Project reads a copy of the scan
+ * projected onto its fields instead, whose tuples it passes through, so only
+ * the projected fields are decoded from the heap file pages. The child itself
+ * is left alone.
  */
 public class Project extends Operator {
 
@@ -11,6 +16,11 @@ public class Project extends Operator {
     private DbIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    // the iterator read while open: the child, or a projected copy of it
+    private transient DbIterator in;
+    private transient BatchIterator childBatches;
+    // true if in returns just the projected fields
+    private transient boolean pushed;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -44,17 +54,29 @@ public class Project extends Operator {
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
-        child.open();
+        pushed = child instanceof SeqScan;
+        if (pushed) {
+            int[] fields = new int[outFieldIds.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = outFieldIds.get(i);
+            }
+            // built on each open, as the child's transaction may have changed
+            in = ((SeqScan) child).project(fields, td);
+        } else {
+            in = child;
+        }
+        in.open();
+        childBatches = BatchAdapter.of(in);
         super.open();
     }
 
     public void close() {
         super.close();
-        child.close();
+        (in == null ? child : in).close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        child.rewind();
+        in.rewind();
     }
 
     /**
@@ -65,18 +87,41 @@ public class Project extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        while (child.hasNext()) {
-            Tuple t = child.next();
-            Tuple newTuple = new Tuple(td);
-            newTuple.setRecordId(t.getRecordId());
-            for (int i = 0; i < td.numFields(); i++) {
-                newTuple.setField(i, t.getField(outFieldIds.get(i)));
-            }
-            return newTuple;
+        while (in.hasNext()) {
+            return pushed ? in.next() : project(in.next());
         }
         return null;
     }
 
+    /**
+     * Projects a whole batch of child tuples at a time.
+     *
+     * @return The next batch of projected tuples, or null if there are no
+     * more tuples
+     */
+    protected TupleBatch fetchNextBatch() throws TransactionAbortedException,
+            DbException {
+        TupleBatch in = childBatches.nextBatch();
+        if (in == null || pushed) {
+            return in;
+        }
+        TupleBatch out = getBatchBuffer();
+        out.clear();
+        for (int i = 0; i < in.size(); i++) {
+            out.add(project(in.get(i)));
+        }
+        return out;
+    }
+
+    private Tuple project(Tuple t) {
+        Tuple newTuple = new Tuple(td);
+        newTuple.setRecordId(t.getRecordId());
+        for (int i = 0; i < td.numFields(); i++) {
+            newTuple.setField(i, t.getField(outFieldIds.get(i)));
+        }
+        return newTuple;
+    }
+
     @Override
     public DbIterator[] getChildren() {
         return new DbIterator[]{this.child};
@@ -0,0 +1,125 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * A Query is a parsed and planned SQL statement, as returned by
+ * {@link Parser#prepare}. It holds the decisions made while planning (the
+ * join order and algorithms, the field numbers each operator works on) so
+ * that running it again only has to build fresh operators, which
+ * {@link #getPlan} does for a given transaction.
+ * <p/>
+ * A Query is not changed once prepared, and may be shared by several
+ * transactions.
+ */
+public class Query {
+
+    /**
+     * The kinds of statement a Query can hold
+     */
+    public enum Kind {
+        SELECT, INSERT, DELETE
+    }
+
+    final Kind kind;
+    final String sql;
+    // the catalog this query was planned against; see Catalog.getVersion()
+    final Object catalogVersion;
+
+    // SELECT and DELETE: the tables read and the WHERE clause
+    JoinOptimizer joins;
+
+    // SELECT: applied in this order to the output of joins
+    int aggregateField = -1;
+    int groupField = Aggregator.NO_GROUPING;
+    Aggregator.Op aggregateOp;
+    int orderField = -1;
+    boolean orderAsc = true;
+    // null to return every field
+    ArrayList<Integer> projectFields;
+    Type[] projectTypes;
+
+    // INSERT: either the tuples in a VALUES clause, or a SELECT whose
+    // output is reordered by sourceFields (if not null) to match the table
+    int tableId;
+    List<Tuple> values;
+    Query source;
+    ArrayList<Integer> sourceFields;
+    Type[] sourceTypes;
+
+    Query(Kind kind, String sql, Object catalogVersion) {
+        this.kind = kind;
+        this.sql = sql;
+        this.catalogVersion = catalogVersion;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the normalized text of the statement
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Builds the operators that run this statement in a transaction. INSERT
+     * and DELETE plans return a single tuple holding the number of tuples
+     * changed.
+     *
+     * @param tid the transaction to run in
+     * @return the root of the plan, not yet opened
+     */
+    public DbIterator getPlan(TransactionId tid) throws DbException {
+        switch (kind) {
+            case INSERT: {
+                DbIterator child;
+                if (values != null) {
+                    child = new TupleIterator(Database.getCatalog().getTupleDesc(tableId), copyValues());
+                } else {
+                    child = source.getPlan(tid);
+                    if (sourceFields != null) {
+                        child = new Project(sourceFields, sourceTypes, child);
+                    }
+                }
+                return new Insert(tid, child, tableId);
+            }
+            case DELETE:
+                return new Delete(tid, joins.getPlan(tid));
+        }
+
+        DbIterator it = joins.getPlan(tid);
+        if (aggregateOp != null) {
+            it = new Aggregate(it, aggregateField, groupField, aggregateOp);
+        }
+        if (orderField >= 0) {
+            it = new OrderBy(orderField, orderAsc, it);
+        }
+        if (projectFields != null) {
+            it = new Project(projectFields, projectTypes, it);
+        }
+        return it;
+    }
+
+    /**
+     * @return new tuples with the fields of the VALUES clause. Inserting a
+     * tuple gives it a RecordId, so each run must insert tuples of its own.
+     */
+    private List<Tuple> copyValues() {
+        List<Tuple> copies = new ArrayList<Tuple>(values.size());
+        for (Tuple t : values) {
+            Tuple copy = new Tuple(t.getTupleDesc());
+            for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+                copy.setField(i, t.getField(i));
+            }
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    public String toString() {
+        return sql;
+    }
+}
@@ -50,7 +50,8 @@ public class RecordId implements Serializable {
     	if (!(o instanceof RecordId)) {
     		return false;
     	}
-    	return ((RecordId) o).hashCode() == hashCode();
+    	RecordId other = (RecordId) o;
+    	return other.tupleno() == tupleno() && other.getPageId().equals(getPageId());
     }
 
     /**
@@ -61,8 +62,7 @@ public class RecordId implements Serializable {
      */
     @Override
     public int hashCode() {
-    	String uniqueId = Integer.toString(getPageId().hashCode()) + " " + Integer.toString(tupleno());
-    	return uniqueId.hashCode();
+    	return 31 * getPageId().hashCode() + tupleno();
     }
 
 }
@@ -0,0 +1,226 @@
+package simpledb;
+
+/**
+ * ScanFilter applies a predicate pushed down into a heap file scan to the
+ * slots of a page. Tuples a page has not decoded yet are tested straight
+ * from the page bytes where the predicate allows it, so only the tuples
+ * that pass are ever built. Integer comparisons, string equality and LIKE
+ * on ASCII operands, and AND/OR/NOT over them, are tested this way; other
+ * predicates fall back to the compiled predicate on the decoded tuple.
+ *
+ * @see HeapPage#nextSlot
+ */
+final class ScanFilter {
+
+    private final Predicate pred;
+    private final int version;
+    private final CompiledPredicate compiled;
+    // null if the predicate cannot be tested on raw bytes
+    private final Raw raw;
+
+    /**
+     * @param pred the predicate; its field numbers index td
+     * @param td   the schema of the scanned table
+     */
+    ScanFilter(Predicate pred, TupleDesc td) {
+        this.pred = pred;
+        this.version = pred.getVersion();
+        this.compiled = PredicateCompiler.compile(pred);
+        this.raw = compileRaw(pred, td, HeapPage.fieldOffsets(td));
+    }
+
+    Predicate getPredicate() {
+        return pred;
+    }
+
+    /**
+     * @return true if an operand of the predicate changed since this filter
+     * was built
+     */
+    boolean isStale() {
+        return pred.getVersion() != version;
+    }
+
+    /**
+     * @return true if the tuple in a used slot of page passes the predicate
+     */
+    boolean matches(HeapPage page, int slot) {
+        if (raw != null) {
+            int offset = page.rawOffset(slot);
+            if (offset >= 0) {
+                return raw.matches(page.data, offset);
+            }
+        }
+        return compiled.filter(page.getTuple(slot));
+    }
+
+    /**
+     * A test of the serialized tuple starting at an offset in a page.
+     */
+    private static abstract class Raw {
+        abstract boolean matches(byte[] data, int offset);
+    }
+
+    private static final Raw NEVER = new Raw() {
+        boolean matches(byte[] data, int offset) {
+            return false;
+        }
+    };
+
+    private static Raw compileRaw(Predicate p, TupleDesc td, int[] offsets) {
+        if (p instanceof CompositePredicate) {
+            CompositePredicate c = (CompositePredicate) p;
+            Raw[] terms = new Raw[c.getChildren().size()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = compileRaw(c.getChildren().get(i), td, offsets);
+                if (terms[i] == null) {
+                    return null;
+                }
+            }
+            if (c.getKind() == CompositePredicate.Kind.NOT) {
+                return new Not(terms[0]);
+            }
+            return new Junction(c.getKind() == CompositePredicate.Kind.AND, terms);
+        }
+        if (p.getClass() != Predicate.class) {
+            return null;
+        }
+        Field operand = p.getOperand();
+        if (operand == null) {
+            // Predicate.filter never passes a tuple without an operand
+            return NEVER;
+        }
+        int field = p.getField();
+        if (field < 0 || field >= offsets.length || td.getFieldType(field) != operand.getType()) {
+            return null;
+        }
+        int offset = offsets[field];
+        if (operand instanceof IntField) {
+            return new IntCompare(offset, p.getOp(), ((IntField) operand).getValue());
+        }
+        String s = ((StringField) operand).getValue();
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                // stored bytes are decoded with the platform charset
+                return null;
+            }
+        }
+        switch (p.getOp()) {
+            case EQUALS:
+                return new StringEquals(offset, s, false);
+            case NOT_EQUALS:
+                return new StringEquals(offset, s, true);
+            case LIKE:
+                return new StringLike(offset, p.getLikePattern());
+            default:
+                return null;
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static final class IntCompare extends Raw {
+        private final int offset;
+        private final Predicate.Op op;
+        private final int value;
+
+        IntCompare(int offset, Predicate.Op op, int value) {
+            this.offset = offset;
+            this.op = op;
+            this.value = value;
+        }
+
+        boolean matches(byte[] data, int tuple) {
+            int v = readInt(data, tuple + offset);
+            switch (op) {
+                case EQUALS:
+                case LIKE:
+                    return v == value;
+                case NOT_EQUALS:
+                    return v != value;
+                case GREATER_THAN:
+                    return v > value;
+                case GREATER_THAN_OR_EQ:
+                    return v >= value;
+                case LESS_THAN:
+                    return v < value;
+                case LESS_THAN_OR_EQ:
+                    return v <= value;
+            }
+            return false;
+        }
+    }
+
+    private static final class StringEquals extends Raw {
+        private final int offset;
+        private final byte[] value;
+        private final boolean negate;
+
+        StringEquals(int offset, String s, boolean negate) {
+            this.offset = offset;
+            this.value = new byte[s.length()];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = (byte) s.charAt(i);
+            }
+            this.negate = negate;
+        }
+
+        boolean matches(byte[] data, int tuple) {
+            int start = tuple + offset;
+            boolean equal = readInt(data, start) == value.length;
+            for (int i = 0; equal && i < value.length; i++) {
+                equal = data[start + 4 + i] == value[i];
+            }
+            return equal != negate;
+        }
+    }
+
+    private static final class StringLike extends Raw {
+        private final int offset;
+        private final LikePattern pattern;
+
+        StringLike(int offset, LikePattern pattern) {
+            this.offset = offset;
+            this.pattern = pattern;
+        }
+
+        boolean matches(byte[] data, int tuple) {
+            int start = tuple + offset;
+            return pattern.matches(data, start + 4, readInt(data, start));
+        }
+    }
+
+    private static final class Junction extends Raw {
+        private final boolean and;
+        private final Raw[] terms;
+
+        Junction(boolean and, Raw[] terms) {
+            this.and = and;
+            this.terms = terms;
+        }
+
+        boolean matches(byte[] data, int tuple) {
+            for (Raw term : terms) {
+                if (term.matches(data, tuple) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+    }
+
+    private static final class Not extends Raw {
+        private final Raw term;
+
+        Not(Raw term) {
+            this.term = term;
+        }
+
+        boolean matches(byte[] data, int tuple) {
+            return !term.matches(data, tuple);
+        }
+    }
+}
@@ -6,14 +6,33 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p/>
+ * A scan may be given a predicate to push down into the file. Heap files
+ * test it inside each page, mostly on the raw page bytes, so tuples that
+ * fail it are never decoded or passed up the plan. A {@link Filter} whose
+ * child is a SeqScan pushes its predicate down this way when opened.
+ * <p/>
+ * A scan may also be projected onto some of the table's fields, so that
+ * heap files decode only those fields and return narrow tuples. The
+ * predicate still indexes all of the table's fields. A {@link Project}
+ * whose child is a SeqScan reads a projected copy of the scan instead.
  */
-public class  SeqScan implements DbIterator {
+public class  SeqScan implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     
     int tabId;
     String alias;
+    TransactionId tid;
+    // pushed down predicate, or null
+    Predicate filter;
+    // the table fields returned, or null for all of them
+    int[] fields;
+    // the TupleDesc of the tuples a projected scan returns, or null for the
+    // table's field names
+    private TupleDesc projectedTd;
     DbFileIterator it;
+    private transient TupleBatch batch;
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -29,9 +48,97 @@ public class  SeqScan implements DbIterator {
      *                   tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan that only returns the tuples passing a
+     * predicate.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the table to scan.
+     * @param tableAlias the alias of this table
+     * @param filter     the predicate, whose field numbers index the table's
+     *                   fields, or null to return every tuple
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate filter) {
+        this(tid, tableid, tableAlias, filter, null);
+    }
+
+    /**
+     * Creates a sequential scan that returns some of the fields of the
+     * tuples passing a predicate.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the table to scan.
+     * @param tableAlias the alias of this table
+     * @param filter     the predicate, whose field numbers index the table's
+     *                   fields, or null to return every tuple
+     * @param fields     the table fields to return, in order, or null to
+     *                   return all of them
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate filter, int[] fields) {
     	tabId = tableid;
     	alias = tableAlias;
-    	it = Database.getCatalog().getDatabaseFile(tabId).iterator(tid);
+    	this.tid = tid;
+    	this.filter = filter;
+    	this.fields = fields;
+    	it = fileIterator();
+    }
+
+    private DbFileIterator fileIterator() {
+        DbFile file = Database.getCatalog().getDatabaseFile(tabId);
+        if (filter == null && fields == null) {
+            return file.iterator(tid);
+        }
+        if (file instanceof HeapFile) {
+            return ((HeapFile) file).iterator(tid, filter, fields, projectedTd);
+        }
+        return new FilteredIterator(file.iterator(tid), filter, fields, file.getTupleDesc(), projectedTd);
+    }
+
+    /**
+     * Returns a new scan of the same table, in the same transaction and with
+     * the same predicate, that returns some of the fields this scan returns.
+     * This scan is not changed.
+     *
+     * @param fields the fields of this scan's TupleDesc to return, in order
+     * @param td     the TupleDesc of the returned scan and of its tuples,
+     *               which must have the types of those fields
+     */
+    SeqScan project(int[] fields, TupleDesc td) {
+        int[] tableFields = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            tableFields[i] = this.fields == null ? fields[i] : this.fields[fields[i]];
+        }
+        SeqScan scan = new SeqScan(tid, tabId, alias, filter, tableFields);
+        scan.projectedTd = td;
+        scan.it = scan.fileIterator();
+        return scan;
+    }
+
+    /**
+     * @return the predicate pushed down into this scan, or null
+     */
+    public Predicate getFilter() {
+        return filter;
+    }
+
+    /**
+     * Pushes a predicate down into this scan, replacing any it had. The scan
+     * must be closed.
+     */
+    void setFilter(Predicate filter) {
+        this.filter = filter;
+        it = fileIterator();
+    }
+
+    /**
+     * @return the table fields this scan returns, or null if it returns all
+     * of them
+     */
+    public int[] getFields() {
+        return fields;
     }
 
     /**
@@ -39,7 +146,7 @@ public class  SeqScan implements DbIterator {
      * be the actual name of the table in the catalog of the database
      */
     public String getTableName() {
-    	return Database.getCatalog().nameById.get(tabId);
+    	return Database.getCatalog().getTableName(tabId);
     }
 
     /**
@@ -49,6 +156,14 @@ public class  SeqScan implements DbIterator {
     	return alias;
     }
 
+    /**
+     * Moves the scan to another transaction. The scan must be closed.
+     */
+    void setTransactionId(TransactionId tid) {
+        this.tid = tid;
+        it = fileIterator();
+    }
+
     public SeqScan(TransactionId tid, int tableid) {
         this(tid, tableid, Database.getCatalog().getTableName(tableid));
     }
@@ -64,21 +179,22 @@ public class  SeqScan implements DbIterator {
      * name.
      *
      * @return the TupleDesc with field names from the underlying HeapFile,
-     * prefixed with the tableAlias string from the constructor.
+     * prefixed with the tableAlias string from the constructor. A projected
+     * scan has only the fields it returns.
      */
     public TupleDesc getTupleDesc() {
+    	if (projectedTd != null) {
+    		return projectedTd;
+    	}
     	TupleDesc td = Database.getCatalog().getTupleDesc(tabId);
-    	int size = td.getSize();
+    	int size = fields == null ? td.numFields() : fields.length;
     	Type[] typeAr = new Type[size];
     	String[] fieldAr = new String[size];
     	
-    	Iterator<TupleDesc.TDItem> tdit = td.iterator();
-    	int i = 0;
-    	while (tdit.hasNext()) {
-    		TupleDesc.TDItem tditem = tdit.next();
-    		typeAr[i] = tditem.fieldType;
-    		fieldAr[i] = getAlias() + "." + tditem.fieldName;
-    		i++;
+    	for (int i = 0; i < size; i++) {
+    		int field = fields == null ? i : fields[i];
+    		typeAr[i] = td.getFieldType(field);
+    		fieldAr[i] = getAlias() + "." + td.getFieldName(field);
     	}
         return new TupleDesc(typeAr, fieldAr);
     }
@@ -92,6 +208,21 @@ public class  SeqScan implements DbIterator {
         return it.next();
     }
 
+    /**
+     * Fills a batch straight from the file iterator, skipping the per-tuple
+     * calls through this operator.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch == null) {
+            batch = new TupleBatch();
+        }
+        batch.clear();
+        while (!batch.isFull() && it.hasNext()) {
+            batch.add(it.next());
+        }
+        return batch.size() > 0 ? batch : null;
+    }
+
     public void close() {
         it.close();
     }
@@ -100,4 +231,80 @@ public class  SeqScan implements DbIterator {
             TransactionAbortedException {
         it.rewind();
     }
+
+    /**
+     * Applies a predicate and a projection to the tuples of a file that
+     * cannot do so itself.
+     */
+    private static final class FilteredIterator implements DbFileIterator {
+        private final DbFileIterator child;
+        // either may be null
+        private final Predicate pred;
+        private final int[] fields;
+        private final TupleDesc projected;
+        private CompiledPredicate compiled;
+        private Tuple next;
+
+        FilteredIterator(DbFileIterator child, Predicate pred, int[] fields, TupleDesc td,
+                         TupleDesc projected) {
+            this.child = child;
+            this.pred = pred;
+            this.fields = fields;
+            if (fields == null || projected != null) {
+                this.projected = projected;
+            } else {
+                Type[] types = new Type[fields.length];
+                String[] names = new String[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    types[i] = td.getFieldType(fields[i]);
+                    names[i] = td.getFieldName(fields[i]);
+                }
+                this.projected = new TupleDesc(types, names);
+            }
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            compiled = pred == null ? null : PredicateCompiler.compile(pred);
+            next = null;
+            child.open();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (next == null && child.hasNext()) {
+                Tuple t = child.next();
+                if (compiled == null || compiled.filter(t)) {
+                    next = t;
+                }
+            }
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = next;
+            next = null;
+            if (fields == null) {
+                return t;
+            }
+            Tuple out = new Tuple(projected);
+            out.setRecordId(t.getRecordId());
+            for (int i = 0; i < fields.length; i++) {
+                out.setField(i, t.getField(fields[i]));
+            }
+            return out;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            compiled = pred == null ? null : PredicateCompiler.compile(pred);
+            next = null;
+            child.rewind();
+        }
+
+        public void close() {
+            next = null;
+            child.close();
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.*;
+
 /**
  * Knows how to compute some aggregate over a set of StringFields.
  */
@@ -7,6 +9,12 @@ public class StringAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
 
+    int gbfield;
+    Type gbfieldtype;
+    int afield;
+    // group value (null when not grouping) -> count
+    LinkedHashMap<Field, Integer> counts;
+
     /**
      * Aggregate constructor
      *
@@ -18,7 +26,13 @@ public class StringAggregator implements Aggregator {
      */
 
     public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // some code goes here
+        if (what != Op.COUNT) {
+            throw new IllegalArgumentException("StringAggregator only supports COUNT");
+        }
+        this.gbfield = gbfield;
+        this.gbfieldtype = gbfieldtype;
+        this.afield = afield;
+        counts = new LinkedHashMap<Field, Integer>();
     }
 
     /**
@@ -27,7 +41,9 @@ public class StringAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        // some code goes here
+        Field group = (gbfield == NO_GROUPING) ? null : tup.getField(gbfield);
+        Integer count = counts.get(group);
+        counts.put(group, count == null ? 1 : count + 1);
     }
 
     /**
@@ -39,8 +55,20 @@ public class StringAggregator implements Aggregator {
      * aggregate specified in the constructor.
      */
     public DbIterator iterator() {
-        // some code goes here
-        throw new UnsupportedOperationException("please implement me for lab3");                           // cosc460
+        TupleDesc td = (gbfield == NO_GROUPING)
+                ? new TupleDesc(new Type[]{Type.INT_TYPE})
+                : new TupleDesc(new Type[]{gbfieldtype, Type.INT_TYPE});
+        ArrayList<Tuple> results = new ArrayList<Tuple>();
+        for (Map.Entry<Field, Integer> e : counts.entrySet()) {
+            Tuple t = new Tuple(td);
+            int i = 0;
+            if (gbfield != NO_GROUPING) {
+                t.setField(i++, e.getKey());
+            }
+            t.setField(i, new IntField(e.getValue()));
+            results.add(t);
+        }
+        return new TupleIterator(td, results);
     }
 
 }
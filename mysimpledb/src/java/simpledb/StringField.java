@@ -65,7 +65,9 @@ public class StringField implements Field {
 
     /**
      * Compare the specified field to the value of this Field. Return semantics
-     * are as specified by Field.compare
+     * are as specified by Field.compare. For LIKE, val is a SQL pattern (see
+     * {@link LikePattern}); it is compiled on every call, so callers testing
+     * many values should compile the pattern once instead, as Predicate does.
      *
      * @throws IllegalCastException if val is not a StringField
      * @see Field#compare
@@ -95,7 +97,7 @@ public class StringField implements Field {
                 return cmpVal <= 0;
 
             case LIKE:
-                return value.indexOf(iVal.value) >= 0;
+                return LikePattern.compile(iVal.value).matches(value);
         }
 
         return false;
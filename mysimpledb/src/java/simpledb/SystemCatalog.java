@@ -0,0 +1,247 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * SystemCatalog keeps the Catalog on disk, in two heap tables stored in a
+ * database directory:
+ * <ul>
+ * <li>simpledb_columns (columns.dat) has one row per column of every table:
+ * table id, table name, file name, column number, column name, column type
+ * (the ordinal of its {@link Type}) and whether the column is the primary
+ * key.</li>
+ * <li>simpledb_stats (stats.dat) has one row per table: table id, number of
+ * tuples and number of pages, as last recorded by {@link #setStats}.</li>
+ * </ul>
+ * Table ids are assigned sequentially when tables are created and never
+ * depend on file paths. Opening a directory reads the two catalog tables
+ * and registers every table in the Catalog without touching the tables'
+ * own files, so startup cost depends only on the size of the catalog.
+ * <p/>
+ * The catalog tables are registered in the Catalog as well, under ids 0
+ * and 1, so they can be scanned like any other table.
+ */
+public class SystemCatalog {
+
+    public static final String COLUMNS_TABLE = "simpledb_columns";
+    public static final String STATS_TABLE = "simpledb_stats";
+    static final int COLUMNS_TABLE_ID = 0;
+    static final int STATS_TABLE_ID = 1;
+
+    public static final TupleDesc COLUMNS_SCHEMA = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE, Type.INT_TYPE,
+                    Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+            new String[]{"table_id", "table_name", "file_name", "column_no",
+                    "column_name", "column_type", "primary_key"});
+
+    public static final TupleDesc STATS_SCHEMA = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+            new String[]{"table_id", "num_tuples", "num_pages"});
+
+    private final Catalog catalog;
+    private final File dir;
+    private final HeapFile columns;
+    private final HeapFile stats;
+    // the current stats row of each table, so it can be replaced
+    private final Map<Integer, Tuple> statsRows = new HashMap<Integer, Tuple>();
+    private int nextId = STATS_TABLE_ID + 1;
+
+    /**
+     * Opens the system catalog stored in dir, creating it if it does not
+     * exist, and adds every table it lists to catalog.
+     *
+     * @param catalog the catalog to populate
+     * @param dir     the database directory
+     */
+    SystemCatalog(Catalog catalog, File dir) throws IOException, DbException {
+        this.catalog = catalog;
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create database directory " + dir);
+        }
+        columns = new HeapFile(new File(dir, "columns.dat"), COLUMNS_SCHEMA, COLUMNS_TABLE_ID);
+        stats = new HeapFile(new File(dir, "stats.dat"), STATS_SCHEMA, STATS_TABLE_ID);
+        catalog.addTable(columns, COLUMNS_TABLE, "");
+        catalog.addTable(stats, STATS_TABLE, "");
+        load();
+    }
+
+    /**
+     * @return the directory holding the catalog and its tables
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Reads the catalog tables and registers the tables they describe.
+     */
+    private void load() throws DbException {
+        Map<Integer, List<Tuple>> byTable = new LinkedHashMap<Integer, List<Tuple>>();
+        for (Tuple t : scan(columns)) {
+            int id = intAt(t, 0);
+            List<Tuple> cols = byTable.get(id);
+            if (cols == null) {
+                cols = new ArrayList<Tuple>();
+                byTable.put(id, cols);
+            }
+            cols.add(t);
+        }
+
+        for (Map.Entry<Integer, List<Tuple>> e : byTable.entrySet()) {
+            List<Tuple> cols = e.getValue();
+            Type[] types = new Type[cols.size()];
+            String[] names = new String[cols.size()];
+            String pkey = "";
+            for (Tuple t : cols) {
+                int colNo = intAt(t, 3);
+                if (colNo < 0 || colNo >= types.length) {
+                    throw new DbException("corrupt system catalog: bad column number for table " + e.getKey());
+                }
+                names[colNo] = stringAt(t, 4);
+                types[colNo] = Type.values()[intAt(t, 5)];
+                if (intAt(t, 6) != 0) {
+                    pkey = names[colNo];
+                }
+            }
+            Tuple first = cols.get(0);
+            HeapFile file = new HeapFile(new File(dir, stringAt(first, 2)),
+                    new TupleDesc(types, names), e.getKey());
+            catalog.addTable(file, stringAt(first, 1), pkey);
+            nextId = Math.max(nextId, e.getKey() + 1);
+        }
+
+        for (Tuple t : scan(stats)) {
+            statsRows.put(intAt(t, 0), t);
+        }
+    }
+
+    /**
+     * Creates a new, empty table, records it in the system catalog and adds it
+     * to the Catalog.
+     *
+     * @param name the name of the table; must not already be in use
+     * @param td   the schema of the table
+     * @param pkey the name of the primary key field, or "" for none
+     * @return the file of the new table
+     * @throws IllegalArgumentException if a table with that name exists
+     */
+    public synchronized HeapFile createTable(String name, TupleDesc td, String pkey)
+            throws IOException, DbException {
+        try {
+            catalog.getTableId(name);
+            throw new IllegalArgumentException("table " + name + " already exists");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        int id = nextId++;
+        String fileName = name + ".dat";
+        File f = new File(dir, fileName);
+        f.createNewFile();
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < td.numFields(); i++) {
+            Tuple t = new Tuple(COLUMNS_SCHEMA);
+            t.setField(0, new IntField(id));
+            t.setField(1, new StringField(name, Type.STRING_LEN));
+            t.setField(2, new StringField(fileName, Type.STRING_LEN));
+            t.setField(3, new IntField(i));
+            t.setField(4, new StringField(td.getFieldName(i) == null ? "" : td.getFieldName(i),
+                    Type.STRING_LEN));
+            t.setField(5, new IntField(td.getFieldType(i).ordinal()));
+            t.setField(6, new IntField(td.getFieldName(i) != null && td.getFieldName(i).equals(pkey) ? 1 : 0));
+            insert(columns, tid, t);
+        }
+
+        HeapFile file = new HeapFile(f, td, id);
+        catalog.addTable(file, name, pkey);
+        return file;
+    }
+
+    /**
+     * Records the size of a table, replacing any size recorded before.
+     *
+     * @param tableId   the id of the table
+     * @param numTuples the number of tuples in the table
+     * @param numPages  the number of pages in the table
+     */
+    public synchronized void setStats(int tableId, int numTuples, int numPages)
+            throws IOException, DbException {
+        TransactionId tid = new TransactionId();
+        Tuple old = statsRows.remove(tableId);
+        if (old != null) {
+            try {
+                for (Page p : stats.deleteTuple(tid, old)) {
+                    stats.writePage(p);
+                }
+            } catch (TransactionAbortedException e) {
+                throw new DbException("could not update statistics: " + e);
+            }
+        }
+        Tuple t = new Tuple(STATS_SCHEMA);
+        t.setField(0, new IntField(tableId));
+        t.setField(1, new IntField(numTuples));
+        t.setField(2, new IntField(numPages));
+        insert(stats, tid, t);
+        statsRows.put(tableId, t);
+    }
+
+    /**
+     * @return the number of tuples last recorded for a table, or -1 if none
+     * has been recorded
+     */
+    public synchronized int getTupleCount(int tableId) {
+        Tuple t = statsRows.get(tableId);
+        return t == null ? -1 : intAt(t, 1);
+    }
+
+    /**
+     * @return the number of pages last recorded for a table, or -1 if none
+     * has been recorded
+     */
+    public synchronized int getPageCount(int tableId) {
+        Tuple t = statsRows.get(tableId);
+        return t == null ? -1 : intAt(t, 2);
+    }
+
+    /**
+     * Inserts a row into a catalog table and writes the pages it changed
+     * straight to disk, so the catalog survives without a flush.
+     */
+    private static void insert(HeapFile file, TransactionId tid, Tuple t)
+            throws IOException, DbException {
+        try {
+            for (Page p : file.insertTuple(tid, t)) {
+                file.writePage(p);
+            }
+        } catch (TransactionAbortedException e) {
+            throw new DbException("could not update system catalog: " + e);
+        }
+    }
+
+    private static List<Tuple> scan(HeapFile file) throws DbException {
+        List<Tuple> rows = new ArrayList<Tuple>();
+        DbFileIterator it = file.iterator(new TransactionId());
+        try {
+            it.open();
+            while (it.hasNext()) {
+                rows.add(it.next());
+            }
+        } catch (TransactionAbortedException e) {
+            throw new DbException("could not read system catalog: " + e);
+        } finally {
+            it.close();
+        }
+        return rows;
+    }
+
+    private static int intAt(Tuple t, int i) {
+        return ((IntField) t.getField(i)).getValue();
+    }
+
+    private static String stringAt(Tuple t, int i) {
+        return ((StringField) t.getField(i)).getValue();
+    }
+}
@@ -0,0 +1,343 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * TableStats represents statistics (e.g., histograms) about base tables in a
+ * query: the number of tuples and pages, an equi-depth histogram for every
+ * integer column and a distinct-value sketch for every column.
+ * <p/>
+ * Statistics are collected by {@link #compute}, which reads every page of a
+ * heap file once, splitting the pages among several threads. Afterwards the
+ * BufferPool keeps them up to date through {@link #addTuple} and
+ * {@link #removeTuple} as tuples are inserted and deleted. Statistics for
+ * each table are kept in the Catalog.
+ *
+ * @Threadsafe
+ */
+public class TableStats {
+
+    /**
+     * Number of histogram buckets per integer column
+     */
+    static final int NUM_HIST_BINS = 100;
+
+    /**
+     * Number of integer values sampled per column to place histogram
+     * bucket boundaries
+     */
+    static final int SAMPLE_SIZE = 20000;
+
+    /**
+     * Cost of reading one page, relative to the cost of processing one tuple
+     */
+    public static final int IO_COST_PER_PAGE = 1000;
+
+    private final DbFile file;
+    private final TupleDesc td;
+    private long numTuples;
+    // one per column; null for columns that are not integers
+    private final IntHistogram[] histograms;
+    private final HyperLogLog[] distinct;
+
+    private TableStats(DbFile file, long numTuples, IntHistogram[] histograms, HyperLogLog[] distinct) {
+        this.file = file;
+        this.td = file.getTupleDesc();
+        this.numTuples = numTuples;
+        this.histograms = histograms;
+        this.distinct = distinct;
+    }
+
+    /**
+     * Computes statistics for a table using one thread per available
+     * processor.
+     *
+     * @param tableId the table to scan
+     * @return statistics describing the table
+     */
+    public static TableStats compute(int tableId) throws DbException {
+        return compute(tableId, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes statistics for a table by reading each page once. Heap file
+     * pages are split into contiguous ranges, one per thread; pages the
+     * BufferPool holds are read there, others straight from the file
+     * without entering the BufferPool.
+     *
+     * @param tableId the table to scan
+     * @param threads the number of threads to scan with
+     * @return statistics describing the table
+     */
+    public static TableStats compute(int tableId, int threads) throws DbException {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        TupleDesc td = file.getTupleDesc();
+        List<Partial> parts = new ArrayList<Partial>();
+
+        if (file instanceof HeapFile) {
+            final HeapFile hf = (HeapFile) file;
+            int numPages = hf.numPages();
+            long maxTuples = (long) numPages * HeapPage.getNumTuples(td);
+            double rate = maxTuples <= SAMPLE_SIZE ? 1.0 : (double) SAMPLE_SIZE / maxTuples;
+            int workers = Math.max(1, Math.min(threads, numPages));
+            int perWorker = (numPages + workers - 1) / Math.max(1, workers);
+
+            ExecutorService pool = Executors.newFixedThreadPool(workers);
+            List<Future<Partial>> futures = new ArrayList<Future<Partial>>();
+            for (int w = 0; w < workers; w++) {
+                final int from = w * perWorker;
+                final int to = Math.min(numPages, from + perWorker);
+                final Partial part = new Partial(td, rate, w);
+                futures.add(pool.submit(new Callable<Partial>() {
+                    public Partial call() {
+                        for (int pageNo = from; pageNo < to; pageNo++) {
+                            HeapPageId pid = new HeapPageId(hf.getId(), pageNo);
+                            Page page = Database.getBufferPool().peekPage(pid);
+                            if (page == null) {
+                                page = hf.readPage(pid);
+                            }
+                            Iterator<Tuple> it = ((HeapPage) page).iterator();
+                            while (it.hasNext()) {
+                                part.add(it.next());
+                            }
+                        }
+                        return part;
+                    }
+                }));
+            }
+            pool.shutdown();
+            try {
+                for (Future<Partial> f : futures) {
+                    parts.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while computing statistics");
+            } catch (ExecutionException e) {
+                throw new DbException("could not compute statistics: " + e.getCause());
+            }
+        } else {
+            Partial part = new Partial(td, 1.0, 0);
+            DbFileIterator it = file.iterator(new TransactionId());
+            try {
+                it.open();
+                while (it.hasNext()) {
+                    part.add(it.next());
+                }
+            } catch (TransactionAbortedException e) {
+                throw new DbException("could not compute statistics: " + e);
+            } finally {
+                it.close();
+            }
+            parts.add(part);
+        }
+
+        return merge(file, parts);
+    }
+
+    private static TableStats merge(DbFile file, List<Partial> parts) {
+        TupleDesc td = file.getTupleDesc();
+        int n = td.numFields();
+        long count = 0;
+        for (Partial p : parts) {
+            count += p.count;
+        }
+
+        IntHistogram[] histograms = new IntHistogram[n];
+        HyperLogLog[] distinct = new HyperLogLog[n];
+        for (int i = 0; i < n; i++) {
+            distinct[i] = new HyperLogLog();
+            for (Partial p : parts) {
+                distinct[i].merge(p.distinct[i]);
+            }
+            if (td.getFieldType(i) != Type.INT_TYPE) {
+                continue;
+            }
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, sampled = 0;
+            for (Partial p : parts) {
+                min = Math.min(min, p.min[i]);
+                max = Math.max(max, p.max[i]);
+                sampled += p.sampleSize[i];
+            }
+            int[] sample = new int[sampled];
+            int pos = 0;
+            for (Partial p : parts) {
+                System.arraycopy(p.samples[i], 0, sample, pos, p.sampleSize[i]);
+                pos += p.sampleSize[i];
+            }
+            Arrays.sort(sample);
+            if (count == 0) {
+                min = max = 0;
+            }
+            histograms[i] = IntHistogram.fromSample(NUM_HIST_BINS, sample, min, max, count);
+        }
+        return new TableStats(file, count, histograms, distinct);
+    }
+
+    /**
+     * What one scanning thread has learned about its share of the pages.
+     */
+    private static final class Partial {
+        final TupleDesc td;
+        final double rate;
+        final Random random;
+        long count;
+        final int[] min, max;
+        final int[][] samples;
+        final int[] sampleSize;
+        final HyperLogLog[] distinct;
+
+        Partial(TupleDesc td, double rate, int seed) {
+            int n = td.numFields();
+            this.td = td;
+            this.rate = rate;
+            this.random = new Random(seed);
+            min = new int[n];
+            max = new int[n];
+            samples = new int[n][];
+            sampleSize = new int[n];
+            distinct = new HyperLogLog[n];
+            for (int i = 0; i < n; i++) {
+                min[i] = Integer.MAX_VALUE;
+                max[i] = Integer.MIN_VALUE;
+                samples[i] = new int[16];
+                distinct[i] = new HyperLogLog();
+            }
+        }
+
+        void add(Tuple t) {
+            count++;
+            boolean sampled = rate >= 1.0 || random.nextDouble() < rate;
+            for (int i = 0; i < td.numFields(); i++) {
+                Field f = t.getField(i);
+                distinct[i].add(f);
+                if (!(f instanceof IntField)) {
+                    continue;
+                }
+                int v = ((IntField) f).getValue();
+                min[i] = Math.min(min[i], v);
+                max[i] = Math.max(max[i], v);
+                if (sampled) {
+                    if (sampleSize[i] == samples[i].length) {
+                        samples[i] = Arrays.copyOf(samples[i], samples[i].length * 2);
+                    }
+                    samples[i][sampleSize[i]++] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a tuple inserted into the table.
+     */
+    public synchronized void addTuple(Tuple t) {
+        numTuples++;
+        for (int i = 0; i < td.numFields(); i++) {
+            distinct[i].add(t.getField(i));
+            if (histograms[i] != null) {
+                histograms[i].addValue(((IntField) t.getField(i)).getValue());
+            }
+        }
+    }
+
+    /**
+     * Records a tuple deleted from the table. Distinct counts are not
+     * lowered.
+     */
+    public synchronized void removeTuple(Tuple t) {
+        if (numTuples > 0) {
+            numTuples--;
+        }
+        for (int i = 0; i < td.numFields(); i++) {
+            if (histograms[i] != null) {
+                histograms[i].removeValue(((IntField) t.getField(i)).getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the number of pages in the table, read from the file itself so
+     * it is always current
+     */
+    public int numPages() {
+        if (file instanceof HeapFile) {
+            return ((HeapFile) file).numPages();
+        }
+        return (int) Math.ceil((double) totalTuples() / HeapPage.getNumTuples(td));
+    }
+
+    /**
+     * Estimates the cost of sequentially scanning the file, given that the
+     * cost to read a page is IO_COST_PER_PAGE. Tuple processing costs are
+     * ignored.
+     *
+     * @return The estimated cost of scanning the table.
+     */
+    public double estimateScanCost() {
+        return (double) numPages() * IO_COST_PER_PAGE;
+    }
+
+    /**
+     * This method returns the number of tuples in the relation, given that a
+     * predicate with selectivity selectivityFactor is applied.
+     *
+     * @param selectivityFactor The selectivity of any predicates over the table
+     * @return The estimated cardinality of the scan with the specified
+     * selectivityFactor
+     */
+    public synchronized int estimateTableCardinality(double selectivityFactor) {
+        return (int) Math.round(numTuples * selectivityFactor);
+    }
+
+    /**
+     * The average selectivity of the field under op, for when the operand is
+     * not known (for example in a join, or a query with parameters).
+     *
+     * @param field the index of the field
+     * @param op    the operator in the predicate
+     */
+    public synchronized double avgSelectivity(int field, Predicate.Op op) {
+        long ndv = Math.max(1, numDistinct(field));
+        switch (op) {
+            case EQUALS:
+                return 1.0 / ndv;
+            case NOT_EQUALS:
+                return 1.0 - 1.0 / ndv;
+            case LIKE:
+                return td.getFieldType(field) == Type.INT_TYPE ? 1.0 / ndv : 0.1;
+            default:
+                return 1.0 / 3;
+        }
+    }
+
+    /**
+     * Estimate the selectivity of predicate <tt>field op constant</tt> on the
+     * table.
+     *
+     * @param field    The field over which the predicate ranges
+     * @param op       The logical operation in the predicate
+     * @param constant The value against which the field is compared
+     * @return The estimated selectivity (fraction of tuples that satisfy) the
+     * predicate
+     */
+    public synchronized double estimateSelectivity(int field, Predicate.Op op, Field constant) {
+        if (histograms[field] != null && constant instanceof IntField) {
+            return histograms[field].estimateSelectivity(op, ((IntField) constant).getValue());
+        }
+        return avgSelectivity(field, op);
+    }
+
+    /**
+     * @return the estimated number of distinct values in a field
+     */
+    public synchronized long numDistinct(int field) {
+        return Math.min(distinct[field].estimate(), numTuples);
+    }
+
+    /**
+     * return the total number of tuples in this table
+     */
+    public synchronized long totalTuples() {
+        return numTuples;
+    }
+}
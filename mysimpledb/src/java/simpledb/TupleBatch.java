@@ -0,0 +1,130 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * TupleBatch is a fixed-capacity block of tuples passed between operators by
+ * {@link BatchIterator#nextBatch}. Rows are stored in an array in the order
+ * they were added; an optional selection vector narrows the batch to a subset
+ * of those rows without copying them, which is how selections (e.g. Filter)
+ * discard tuples.
+ * <p/>
+ * A batch returned by nextBatch() is owned by the iterator that returned it
+ * and is only valid until the next call to nextBatch(), rewind() or close()
+ * on that iterator.
+ */
+public class TupleBatch {
+
+    /**
+     * Number of rows an operator puts in a batch unless told otherwise.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Tuple[] rows;
+    private final int[] selection;
+    private int numRows;
+    private int numSelected;
+    private boolean selecting;
+
+    /**
+     * Creates an empty batch that holds up to capacity rows.
+     *
+     * @param capacity the maximum number of rows in the batch. Must be positive.
+     */
+    public TupleBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("batch capacity must be positive");
+        }
+        rows = new Tuple[capacity];
+        selection = new int[capacity];
+        clear();
+    }
+
+    public TupleBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the maximum number of rows this batch can hold.
+     */
+    public int capacity() {
+        return rows.length;
+    }
+
+    /**
+     * @return the number of selected (live) rows in this batch.
+     */
+    public int size() {
+        return selecting ? numSelected : numRows;
+    }
+
+    /**
+     * @return true if no more rows can be added to this batch.
+     */
+    public boolean isFull() {
+        return numRows == rows.length;
+    }
+
+    /**
+     * Returns the ith selected row of this batch.
+     *
+     * @param i index of the row, between 0 and size() - 1
+     * @throws NoSuchElementException if i is not a valid row index
+     */
+    public Tuple get(int i) {
+        if (i < 0 || i >= size()) {
+            throw new NoSuchElementException();
+        }
+        return rows[selecting ? selection[i] : i];
+    }
+
+    /**
+     * Appends a row to the batch. Rows may only be added while no selection
+     * has been applied.
+     *
+     * @param t the tuple to add
+     * @throws IllegalStateException if the batch is full or has a selection
+     */
+    public void add(Tuple t) {
+        if (isFull()) {
+            throw new IllegalStateException("batch is full");
+        }
+        if (selecting) {
+            throw new IllegalStateException("cannot add rows to a batch with a selection");
+        }
+        rows[numRows++] = t;
+    }
+
+    /**
+     * Narrows the batch to the given rows. positions holds, in ascending
+     * order, indexes into the current selection (as used by get()) of the
+     * rows to keep.
+     *
+     * @param positions ascending indexes of the rows to keep
+     * @param count     number of valid entries in positions
+     */
+    public void select(int[] positions, int count) {
+        if (count > size()) {
+            throw new IllegalArgumentException("cannot select more rows than the batch holds");
+        }
+        for (int i = 0; i < count; i++) {
+            // positions are ascending, so selection[positions[i]] is read
+            // before it can be overwritten
+            selection[i] = selecting ? selection[positions[i]] : positions[i];
+        }
+        numSelected = count;
+        selecting = true;
+    }
+
+    /**
+     * Removes all rows and any selection from this batch.
+     */
+    public void clear() {
+        for (int i = 0; i < numRows; i++) {
+            rows[i] = null;
+        }
+        numRows = 0;
+        numSelected = 0;
+        selecting = false;
+    }
+}
@@ -0,0 +1,365 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ZoneMap keeps, for each page of a HeapFile, the smallest and largest value
+ * of every column on that page: whole values for integer columns, and the
+ * first PREFIX_LEN characters for string columns. A scan with a range
+ * predicate asks {@link #mayMatch} before reading a page, and skips the page
+ * without loading it into the BufferPool if no value in its range passes.
+ * <p/>
+ * The ranges only ever widen. Inserts widen them, but deletes leave them
+ * alone, since a transaction that rolls back may put the deleted tuples
+ * back. A range may therefore be wider than the page needs; it is never
+ * narrower.
+ * <p/>
+ * The map is saved in a file next to the heap file, named by adding
+ * {@link #SUFFIX}, one fixed size record per page. Each record is written
+ * before its page, and the map's header, which records the length and
+ * modification time of the heap file, after it. If the header does not
+ * match the heap file when the map is loaded (the file was written without
+ * the map, or the writes were interrupted) the map is rebuilt from the
+ * pages. See {@link #load}.
+ */
+public class ZoneMap {
+
+    /**
+     * Added to the name of a heap file to name its zone map file
+     */
+    public static final String SUFFIX = ".zones";
+
+    /**
+     * Number of leading characters of string values the map keeps
+     */
+    public static final int PREFIX_LEN = 8;
+
+    private static final int MAGIC = 0x5A4F4E45;
+    private static final int HEADER_SIZE = 24;
+
+    private final HeapFile file;
+    private final TupleDesc td;
+    private final File zoneFile;
+    private final int recordSize;
+    // the range of each column on each page; null for pages with no tuples
+    private final List<Field[]> lo = new ArrayList<Field[]>();
+    private final List<Field[]> hi = new ArrayList<Field[]>();
+
+    private ZoneMap(HeapFile file) {
+        this.file = file;
+        this.td = file.getTupleDesc();
+        this.zoneFile = new File(file.getFile().getPath() + SUFFIX);
+        int size = 1;
+        for (int i = 0; i < td.numFields(); i++) {
+            size += td.getFieldType(i) == Type.INT_TYPE ? 8 : 2 * (1 + 2 * PREFIX_LEN);
+        }
+        this.recordSize = size;
+    }
+
+    /**
+     * @return the value a zone keeps for v: v itself, or the prefix of a
+     * string
+     */
+    private static Field summary(Field v) {
+        if (v instanceof StringField) {
+            String s = ((StringField) v).getValue();
+            if (s.length() > PREFIX_LEN) {
+                return new StringField(s.substring(0, PREFIX_LEN), PREFIX_LEN);
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Widens the ranges of a page to cover a tuple added to it.
+     */
+    public synchronized void add(int pageNo, Tuple t) {
+        while (lo.size() <= pageNo) {
+            lo.add(null);
+            hi.add(null);
+        }
+        Field[] l = lo.get(pageNo), h = hi.get(pageNo);
+        if (l == null) {
+            l = new Field[td.numFields()];
+            h = new Field[td.numFields()];
+            lo.set(pageNo, l);
+            hi.set(pageNo, h);
+        }
+        for (int i = 0; i < l.length; i++) {
+            Field v = summary(t.getField(i));
+            if (l[i] == null || v.compare(Predicate.Op.LESS_THAN, l[i])) {
+                l[i] = v;
+            }
+            if (h[i] == null || v.compare(Predicate.Op.GREATER_THAN, h[i])) {
+                h[i] = v;
+            }
+        }
+    }
+
+    /**
+     * Widens the ranges of a page to cover every tuple on it.
+     */
+    public synchronized void addPage(HeapPage page) {
+        int pageNo = page.getId().pageNumber();
+        // read the tuples without leaving them decoded in the page
+        int[] fields = new int[td.numFields()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = i;
+        }
+        int[] offsets = HeapPage.fieldOffsets(td);
+        for (int slot = page.nextSlot(0, null); slot >= 0; slot = page.nextSlot(slot + 1, null)) {
+            add(pageNo, page.getTuple(slot, fields, offsets, td));
+        }
+        while (lo.size() <= pageNo) {
+            lo.add(null);
+            hi.add(null);
+        }
+    }
+
+    /**
+     * @return false if no tuple on a page can pass a predicate, going by the
+     * page's ranges; true if some might
+     */
+    public synchronized boolean mayMatch(int pageNo, Predicate p) {
+        if (pageNo >= lo.size()) {
+            return true;
+        }
+        if (lo.get(pageNo) == null) {
+            return false;
+        }
+        return mayMatch(lo.get(pageNo), hi.get(pageNo), p);
+    }
+
+    private static boolean mayMatch(Field[] l, Field[] h, Predicate p) {
+        if (p instanceof CompositePredicate) {
+            CompositePredicate c = (CompositePredicate) p;
+            switch (c.getKind()) {
+                case AND:
+                    for (Predicate child : c.getChildren()) {
+                        if (!mayMatch(l, h, child)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case OR:
+                    for (Predicate child : c.getChildren()) {
+                        if (mayMatch(l, h, child)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    return true;
+            }
+        }
+        if (p.getClass() != Predicate.class) {
+            return true;
+        }
+        Field operand = p.getOperand();
+        if (operand == null) {
+            // Predicate.filter never passes a tuple without an operand
+            return false;
+        }
+        int field = p.getField();
+        if (field < 0 || field >= l.length || l[field].getType() != operand.getType()) {
+            return true;
+        }
+        Field min = l[field], max = h[field];
+        boolean prefix = operand instanceof StringField;
+        Field v = summary(operand);
+        switch (p.getOp()) {
+            case LIKE:
+            case EQUALS:
+                if (prefix && p.getOp() == Predicate.Op.LIKE) {
+                    return true;
+                }
+                // for integers, LIKE is equality
+                return min.compare(Predicate.Op.LESS_THAN_OR_EQ, v) && max.compare(Predicate.Op.GREATER_THAN_OR_EQ, v);
+            case NOT_EQUALS:
+                return prefix || !(min.equals(v) && max.equals(v));
+            case LESS_THAN:
+                // a value whose prefix equals v's may still be smaller than v
+                return min.compare(prefix ? Predicate.Op.LESS_THAN_OR_EQ : Predicate.Op.LESS_THAN, v);
+            case LESS_THAN_OR_EQ:
+                return min.compare(Predicate.Op.LESS_THAN_OR_EQ, v);
+            case GREATER_THAN:
+                return max.compare(prefix ? Predicate.Op.GREATER_THAN_OR_EQ : Predicate.Op.GREATER_THAN, v);
+            case GREATER_THAN_OR_EQ:
+                return max.compare(Predicate.Op.GREATER_THAN_OR_EQ, v);
+        }
+        return true;
+    }
+
+    /**
+     * Loads the zone map of a heap file from its zone map file, or rebuilds
+     * it from the pages on disk if that file is missing or does not match
+     * the heap file, and saves it. Pages held by the BufferPool are then
+     * added, since their cached copy may have tuples the disk copy lacks.
+     *
+     * @param f the file to load the map for
+     * @return the zone map of f
+     */
+    public static ZoneMap load(HeapFile f) throws IOException {
+        ZoneMap map = new ZoneMap(f);
+        if (!map.read()) {
+            map.lo.clear();
+            map.hi.clear();
+            map.build();
+            map.writeAll();
+        }
+        for (int pageNo = 0; pageNo < f.numPages(); pageNo++) {
+            Page cached = Database.getBufferPool().peekPage(new HeapPageId(f.getId(), pageNo));
+            if (cached != null) {
+                map.addPage((HeapPage) cached);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return true if the zone map file exists and matches the heap file
+     */
+    private boolean read() throws IOException {
+        File data = file.getFile();
+        if (!zoneFile.exists() || zoneFile.length() < HEADER_SIZE) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(zoneFile)));
+        try {
+            int numPages = file.numPages();
+            if (in.readInt() != MAGIC || in.readInt() != numPages || in.readLong() != data.length()
+                    || in.readLong() != data.lastModified()
+                    || zoneFile.length() < HEADER_SIZE + (long) numPages * recordSize) {
+                return false;
+            }
+            for (int pageNo = 0; pageNo < numPages; pageNo++) {
+                if (in.readByte() == 0) {
+                    in.skipBytes(recordSize - 1);
+                    lo.add(null);
+                    hi.add(null);
+                    continue;
+                }
+                Field[] l = new Field[td.numFields()], h = new Field[td.numFields()];
+                for (int i = 0; i < l.length; i++) {
+                    l[i] = readField(in, td.getFieldType(i));
+                    h[i] = readField(in, td.getFieldType(i));
+                }
+                lo.add(l);
+                hi.add(h);
+            }
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Builds the ranges of every page from the heap file on disk.
+     */
+    private void build() throws IOException {
+        if (file.numPages() == 0) {
+            return;
+        }
+        int pageSize = BufferPool.getPageSize();
+        byte[] data = new byte[pageSize];
+        RandomAccessFile raf = new RandomAccessFile(file.getFile(), "r");
+        try {
+            for (int pageNo = 0; pageNo < file.numPages(); pageNo++) {
+                raf.seek((long) pageNo * pageSize);
+                raf.readFully(data);
+                addPage(new HeapPage(new HeapPageId(file.getId(), pageNo), data.clone()));
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static Field readField(DataInputStream in, Type type) throws IOException {
+        if (type == Type.INT_TYPE) {
+            return new IntField(in.readInt());
+        }
+        int len = in.readByte();
+        char[] chars = new char[PREFIX_LEN];
+        for (int i = 0; i < PREFIX_LEN; i++) {
+            chars[i] = in.readChar();
+        }
+        return new StringField(new String(chars, 0, len), PREFIX_LEN);
+    }
+
+    private static void writeField(DataOutput out, Field v) throws IOException {
+        if (v instanceof IntField) {
+            out.writeInt(((IntField) v).getValue());
+            return;
+        }
+        String s = ((StringField) v).getValue();
+        out.writeByte(s.length());
+        for (int i = 0; i < PREFIX_LEN; i++) {
+            out.writeChar(i < s.length() ? s.charAt(i) : 0);
+        }
+    }
+
+    private byte[] record(int pageNo) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(recordSize);
+        DataOutputStream out = new DataOutputStream(bytes);
+        Field[] l = pageNo < lo.size() ? lo.get(pageNo) : null;
+        if (l == null) {
+            out.write(new byte[recordSize]);
+        } else {
+            out.writeByte(1);
+            for (int i = 0; i < l.length; i++) {
+                writeField(out, l[i]);
+                writeField(out, hi.get(pageNo)[i]);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Saves the ranges of some pages, to be called before the pages
+     * themselves are written. The zone map file is left open for
+     * {@link #writeHeader}; the caller closes it.
+     *
+     * @param firstPage the first page to save
+     * @param count     the number of pages to save
+     * @return the open zone map file
+     */
+    public synchronized RandomAccessFile writeRecords(int firstPage, int count) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(zoneFile, "rw");
+        try {
+            raf.seek(HEADER_SIZE + (long) firstPage * recordSize);
+            for (int pageNo = firstPage; pageNo < firstPage + count; pageNo++) {
+                raf.write(record(pageNo));
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        return raf;
+    }
+
+    /**
+     * Records the current length and modification time of the heap file, to
+     * be called after pages are written.
+     *
+     * @param raf the zone map file, as returned by {@link #writeRecords}
+     */
+    public synchronized void writeHeader(RandomAccessFile raf) throws IOException {
+        File data = file.getFile();
+        raf.seek(0);
+        raf.writeInt(MAGIC);
+        raf.writeInt(file.numPages());
+        raf.writeLong(data.length());
+        raf.writeLong(data.lastModified());
+    }
+
+    private void writeAll() throws IOException {
+        RandomAccessFile raf = writeRecords(0, file.numPages());
+        try {
+            writeHeader(raf);
+        } finally {
+            raf.close();
+        }
+    }
+}
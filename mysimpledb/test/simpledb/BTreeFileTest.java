@@ -0,0 +1,385 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+
+    BTreeFile file;
+    TupleDesc td;
+    TransactionId tid;
+
+    /**
+     * An empty tree of (int key, int value) rows on small pages, so that a
+     * few thousand rows make a tree three levels deep
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        BufferPool.setPageSize(256);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE}, new String[]{"key", "value"});
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        file = new BTreeFile(f, td, 0);
+        Database.getCatalog().addTable(file, "tree");
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() {
+        BufferPool.setPageSize(BufferPool.PAGE_SIZE);
+    }
+
+    private Tuple row(int key, int value) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(key));
+        t.setField(1, new IntField(value));
+        return t;
+    }
+
+    /**
+     * Rows with keys 0 to n - 1, in random order
+     */
+    private List<Tuple> rows(int n) {
+        List<Tuple> rows = new ArrayList<Tuple>();
+        for (int i = 0; i < n; i++) {
+            rows.add(row(i, i * 10));
+        }
+        Collections.shuffle(rows, new Random(460));
+        return rows;
+    }
+
+    private void insert(List<Tuple> rows) throws Exception {
+        for (Tuple t : rows) {
+            Database.getBufferPool().insertTuple(tid, file.getId(), t);
+        }
+        flush();
+    }
+
+    private void flush() throws Exception {
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * Deletes the tuple with t's fields, as read from the tree
+     */
+    private void delete(Tuple t) throws Exception {
+        for (Tuple found : scan(new Predicate(0, Predicate.Op.EQUALS, t.getField(0)))) {
+            if (found.getField(1).equals(t.getField(1))) {
+                Database.getBufferPool().deleteTuple(tid, found);
+                return;
+            }
+        }
+        fail("no tuple " + t);
+    }
+
+    private List<Tuple> scan(Predicate p) throws Exception {
+        IndexScan scan = new IndexScan(tid, file.getId(), "t", p);
+        scan.open();
+        List<Tuple> out = new ArrayList<Tuple>();
+        while (scan.hasNext()) {
+            out.add(scan.next());
+        }
+        scan.close();
+        return out;
+    }
+
+    private List<Integer> keys(List<Tuple> tuples) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (Tuple t : tuples) {
+            keys.add(((IntField) t.getField(0)).getValue());
+        }
+        return keys;
+    }
+
+    private List<Integer> range(int from, int to) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = from; i < to; i++) {
+            keys.add(i);
+        }
+        return keys;
+    }
+
+    /**
+     * Checks the parent pointers, key order and fill of every page, and
+     * that the leaves are linked in order.
+     *
+     * @return the depth of the tree
+     */
+    private int checkTree() throws Exception {
+        BTreeRootPtrPage ptr = (BTreeRootPtrPage) Database.getBufferPool().getPage(tid,
+                new BTreePageId(file.getId(), 0, BTreePageId.ROOT_PTR), Permissions.READ_ONLY);
+        if (ptr.getRootId() == null) {
+            return 0;
+        }
+        List<BTreeLeafPage> leaves = new ArrayList<BTreeLeafPage>();
+        int depth = checkPage(ptr.getRootId(), 0, null, null, leaves);
+        for (int i = 0; i < leaves.size(); i++) {
+            BTreeLeafPage leaf = leaves.get(i);
+            assertEquals(i == 0 ? 0 : leaves.get(i - 1).getId().pageNumber(), leaf.left);
+            assertEquals(i == leaves.size() - 1 ? 0 : leaves.get(i + 1).getId().pageNumber(), leaf.right);
+        }
+        return depth;
+    }
+
+    private int checkPage(BTreePageId pid, int parent, Field lo, Field hi, List<BTreeLeafPage> leaves)
+            throws Exception {
+        BTreePage page = (BTreePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(parent, page.parent);
+        if (page instanceof BTreeLeafPage) {
+            BTreeLeafPage leaf = (BTreeLeafPage) page;
+            if (parent != 0) {
+                assertTrue(leaf.getNumTuples() >= leaf.getMaxTuples() / 2);
+            }
+            for (int i = 0; i < leaf.getNumTuples(); i++) {
+                checkBounds(leaf.key(i), lo, hi);
+                if (i > 0) {
+                    assertTrue(leaf.key(i - 1).compare(Predicate.Op.LESS_THAN_OR_EQ, leaf.key(i)));
+                }
+            }
+            leaves.add(leaf);
+            return 1;
+        }
+        BTreeInternalPage internal = (BTreeInternalPage) page;
+        assertTrue(internal.getNumKeys() >= (parent == 0 ? 1 : internal.getMaxKeys() / 2 - 1));
+        int depth = -1;
+        for (int i = 0; i <= internal.getNumKeys(); i++) {
+            Field childLo = i == 0 ? lo : internal.getKey(i - 1);
+            Field childHi = i == internal.getNumKeys() ? hi : internal.getKey(i);
+            checkBounds(childLo, lo, hi);
+            int d = checkPage(internal.getChildId(i), pid.pageNumber(), childLo, childHi, leaves);
+            assertTrue(depth == -1 || depth == d);
+            depth = d;
+        }
+        return depth + 1;
+    }
+
+    private void checkBounds(Field key, Field lo, Field hi) {
+        if (key == null) {
+            return;
+        }
+        assertTrue(lo == null || key.compare(Predicate.Op.GREATER_THAN_OR_EQ, lo));
+        assertTrue(hi == null || key.compare(Predicate.Op.LESS_THAN_OR_EQ, hi));
+    }
+
+    @Test
+    public void emptyTree() throws Exception {
+        assertEquals(0, scan(null).size());
+        assertEquals(0, scan(new Predicate(0, Predicate.Op.EQUALS, new IntField(3))).size());
+    }
+
+    @Test
+    public void insertsSplit() throws Exception {
+        insert(rows(3000));
+        assertEquals(3, checkTree());
+        assertEquals(range(0, 3000), keys(scan(null)));
+    }
+
+    @Test
+    public void pointLookup() throws Exception {
+        insert(rows(3000));
+        int depth = checkTree();
+        flush();
+        List<Tuple> found = scan(new Predicate(0, Predicate.Op.EQUALS, new IntField(1234)));
+        assertEquals(1, found.size());
+        assertEquals(new IntField(12340), found.get(0).getField(1));
+        // the root pointer page and one page per level
+        assertEquals(depth + 1, Database.getBufferPool().buffer.size());
+        assertEquals(0, scan(new Predicate(0, Predicate.Op.EQUALS, new IntField(3000))).size());
+    }
+
+    @Test
+    public void rangeLookup() throws Exception {
+        insert(rows(3000));
+        assertEquals(range(2990, 3000), keys(scan(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(2989)))));
+        assertEquals(range(2990, 3000), keys(scan(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(2990)))));
+        assertEquals(range(0, 5), keys(scan(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(5)))));
+        assertEquals(range(0, 6), keys(scan(new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(5)))));
+        List<Integer> notEqual = range(0, 3000);
+        notEqual.remove(Integer.valueOf(7));
+        assertEquals(notEqual, keys(scan(new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(7)))));
+        // a predicate on another field is checked against every tuple
+        assertEquals(range(10, 11), keys(scan(new Predicate(1, Predicate.Op.EQUALS, new IntField(100)))));
+
+        // a range near the end reads only the leaves holding it
+        flush();
+        scan(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(2989)));
+        assertTrue(Database.getBufferPool().buffer.size() <= checkTree() + 2);
+    }
+
+    @Test
+    public void duplicateKeys() throws Exception {
+        List<Tuple> rows = new ArrayList<Tuple>();
+        for (int i = 0; i < 500; i++) {
+            rows.add(row(i % 5, i));
+        }
+        Collections.shuffle(rows, new Random(460));
+        insert(rows);
+        checkTree();
+        for (int k = 0; k < 5; k++) {
+            List<Tuple> found = scan(new Predicate(0, Predicate.Op.EQUALS, new IntField(k)));
+            assertEquals(100, found.size());
+            for (Tuple t : found) {
+                assertEquals(k, ((IntField) t.getField(1)).getValue() % 5);
+            }
+        }
+        delete(row(3, 253));
+        assertEquals(99, scan(new Predicate(0, Predicate.Op.EQUALS, new IntField(3))).size());
+        checkTree();
+    }
+
+    @Test
+    public void deletesMerge() throws Exception {
+        List<Tuple> rows = rows(3000);
+        insert(rows);
+        // delete all but every tenth key, in random order
+        List<Integer> kept = new ArrayList<Integer>();
+        for (Tuple t : rows) {
+            int key = ((IntField) t.getField(0)).getValue();
+            if (key % 10 == 0) {
+                kept.add(key);
+            } else {
+                delete(t);
+            }
+        }
+        flush();
+        Collections.sort(kept);
+        assertEquals(kept, keys(scan(null)));
+        checkTree();
+        BTreeRootPtrPage ptr = (BTreeRootPtrPage) Database.getBufferPool().getPage(tid,
+                new BTreePageId(file.getId(), 0, BTreePageId.ROOT_PTR), Permissions.READ_ONLY);
+        assertTrue(ptr.free.size() > 0);
+
+        // freed pages are reused before the file grows
+        int pages = file.numPages();
+        List<Tuple> again = new ArrayList<Tuple>();
+        for (Tuple t : rows) {
+            if (((IntField) t.getField(0)).getValue() % 10 == 1) {
+                again.add(t);
+            }
+        }
+        insert(again);
+        assertEquals(pages, file.numPages());
+        checkTree();
+        assertEquals(600, scan(null).size());
+    }
+
+    @Test
+    public void deleteAll() throws Exception {
+        List<Tuple> rows = rows(1000);
+        insert(rows);
+        for (Tuple t : rows) {
+            delete(t);
+        }
+        assertEquals(1, checkTree());
+        assertEquals(0, scan(null).size());
+        try {
+            file.deleteTuple(tid, rows.get(0));
+            fail("deleted a tuple that is not there");
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    /**
+     * @return an open iterator over rows with keys 0 to n - 1, in order
+     */
+    private TupleIterator sorted(int n) {
+        List<Tuple> rows = rows(n);
+        Collections.sort(rows, new java.util.Comparator<Tuple>() {
+            public int compare(Tuple a, Tuple b) {
+                return ((IntField) a.getField(0)).getValue() - ((IntField) b.getField(0)).getValue();
+            }
+        });
+        TupleIterator it = new TupleIterator(td, rows);
+        it.open();
+        return it;
+    }
+
+    @Test
+    public void bulkLoad() throws Exception {
+        TupleIterator it = sorted(5000);
+        assertEquals(5000, file.bulkLoad(tid, it));
+        assertEquals(3, checkTree());
+        assertEquals(range(0, 5000), keys(scan(null)));
+        assertEquals(range(4321, 4322), keys(scan(new Predicate(0, Predicate.Op.EQUALS, new IntField(4321)))));
+
+        // the loaded tree takes inserts and deletes
+        Database.getBufferPool().insertTuple(tid, file.getId(), row(5000, 0));
+        delete(row(0, 0));
+        assertEquals(range(1, 5001), keys(scan(null)));
+        checkTree();
+
+        it.rewind();
+        try {
+            file.bulkLoad(tid, it);
+            fail("bulk loaded into a tree with tuples");
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void bulkLoadRollsBack() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        assertEquals(5000, file.bulkLoad(t.getId(), sorted(5000)));
+        t.abort();
+        assertEquals(range(0, 0), keys(scan(null)));
+
+        // and survives a crash before it commits
+        t = new Transaction();
+        t.start();
+        assertEquals(5000, file.bulkLoad(t.getId(), sorted(5000)));
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Database.getLogFile().recover();
+        assertEquals(range(0, 0), keys(scan(null)));
+
+        // the tree is empty again, and takes another load
+        assertEquals(5000, file.bulkLoad(tid, sorted(5000)));
+        assertEquals(3, checkTree());
+        assertEquals(range(0, 5000), keys(scan(null)));
+    }
+
+    @Test
+    public void bulkLoadUnsorted() throws Exception {
+        TupleIterator it = new TupleIterator(td, rows(100));
+        it.open();
+        try {
+            file.bulkLoad(tid, it);
+            fail("bulk loaded unsorted tuples");
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void indexScanNeedsTree() throws Exception {
+        HeapFile heap = Utility.createEmptyHeapFile(File.createTempFile("heap", ".dat").getAbsolutePath(), 2);
+        new IndexScan(tid, heap.getId(), "h", null);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
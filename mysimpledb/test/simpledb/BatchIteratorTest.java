@@ -0,0 +1,179 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BatchIteratorTest extends SimpleDbTestBase {
+
+    int width = 2;
+    DbIterator scan;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        // enough rows to need more than one batch
+        this.scan = new TestUtil.MockScan(0, 3000, width);
+    }
+
+    /**
+     * Drains an open BatchIterator into a list
+     */
+    private static ArrayList<Tuple> drainBatches(BatchIterator it) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        TupleBatch batch;
+        while ((batch = it.nextBatch()) != null) {
+            assertTrue(batch.size() > 0);
+            for (int i = 0; i < batch.size(); i++) {
+                tuples.add(batch.get(i));
+            }
+        }
+        return tuples;
+    }
+
+    /**
+     * Drains an open DbIterator into a list
+     */
+    private static ArrayList<Tuple> drainTuples(DbIterator it) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        return tuples;
+    }
+
+    /**
+     * Checks that both lists hold the same tuples, ignoring order
+     */
+    private static void assertSameTuples(ArrayList<Tuple> expected, ArrayList<Tuple> actual)
+            throws Exception {
+        assertEquals(expected.size(), actual.size());
+        TupleDesc td = expected.get(0).getTupleDesc();
+        TupleIterator actualIt = new TupleIterator(td, actual);
+        actualIt.open();
+        TupleIterator expectedIt = new TupleIterator(td, expected);
+        expectedIt.open();
+        TestUtil.matchAllTuples(expectedIt, actualIt);
+    }
+
+    /**
+     * Unit test for TupleBatch.select() applied twice
+     */
+    @Test
+    public void selectionVector() {
+        TupleBatch batch = new TupleBatch(8);
+        for (int i = 0; i < 8; i++) {
+            batch.add(Utility.getHeapTuple(i, width));
+        }
+        batch.select(new int[]{1, 3, 5, 7}, 4);
+        assertEquals(4, batch.size());
+        batch.select(new int[]{0, 2}, 2);
+        assertEquals(2, batch.size());
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(1, width), batch.get(0)));
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(5, width), batch.get(1)));
+
+        batch.clear();
+        assertEquals(0, batch.size());
+    }
+
+    /**
+     * Unit test for BatchAdapter over a plain DbIterator
+     */
+    @Test
+    public void adapter() throws Exception {
+        BatchIterator it = BatchAdapter.of(scan);
+        it.open();
+        assertEquals(3000, drainBatches(it).size());
+        assertNull(it.nextBatch());
+        it.close();
+    }
+
+    /**
+     * Unit test for Filter.nextBatch()
+     */
+    @Test
+    public void filter() throws Exception {
+        Predicate pred = new Predicate(0, Predicate.Op.LESS_THAN, TestUtil.getField(1500));
+        Filter op = new Filter(pred, scan);
+        op.open();
+        ArrayList<Tuple> batched = drainBatches(op);
+        op.rewind();
+        assertSameTuples(drainTuples(op), batched);
+        assertEquals(1500, batched.size());
+        op.close();
+    }
+
+    /**
+     * Unit test for Project.nextBatch()
+     */
+    @Test
+    public void project() throws Exception {
+        ArrayList<Integer> fields = new ArrayList<Integer>();
+        fields.add(1);
+        Project op = new Project(fields, new Type[]{Type.INT_TYPE}, scan);
+        op.open();
+        ArrayList<Tuple> batched = drainBatches(op);
+        op.rewind();
+        assertSameTuples(drainTuples(op), batched);
+        op.close();
+    }
+
+    /**
+     * Unit test for Join.nextBatch() over children that each span several
+     * batches
+     */
+    @Test
+    public void join() throws Exception {
+        JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        Join op = new Join(pred, scan, new TestUtil.MockScan(1000, 4000, width));
+        op.open();
+        ArrayList<Tuple> batched = drainBatches(op);
+        assertEquals(2000, batched.size());
+        op.rewind();
+        assertSameTuples(drainTuples(op), batched);
+        op.close();
+    }
+
+    /**
+     * Unit test for Aggregate.nextBatch()
+     */
+    @Test
+    public void aggregate() throws Exception {
+        Aggregate op = new Aggregate(scan, 1, Aggregator.NO_GROUPING, Aggregator.Op.COUNT);
+        op.open();
+        ArrayList<Tuple> batched = drainBatches(op);
+        assertEquals(1, batched.size());
+        assertEquals(new IntField(3000), batched.get(0).getField(0));
+        op.close();
+    }
+
+    /**
+     * A tuple looked at by hasNext() must not be lost by a following
+     * nextBatch()
+     */
+    @Test
+    public void lookaheadThenBatch() throws Exception {
+        Predicate pred = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, TestUtil.getField(0));
+        Filter op = new Filter(pred, scan);
+        op.open();
+        assertTrue(op.hasNext());
+        assertEquals(3000, drainBatches(op).size());
+        op.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BatchIteratorTest.class);
+    }
+}
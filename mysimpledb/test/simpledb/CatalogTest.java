@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import java.util.NoSuchElementException;
 
@@ -73,6 +74,57 @@ public class CatalogTest extends SimpleDbTestBase {
         assertEquals(-1, f.getId());
     }
 
+    /**
+     * Unit test for Catalog.clear()
+     */
+    @Test
+    public void clear() {
+        Database.getCatalog().clear();
+        assertFalse(Database.getCatalog().tableIdIterator().hasNext());
+        try {
+            Database.getCatalog().getDatabaseFile(-1);
+            Assert.fail("Should not find table after clear");
+        } catch (NoSuchElementException e) {
+            // Expected to get here
+        }
+    }
+
+    /**
+     * Tables added concurrently are all visible, and lookups of existing
+     * tables keep working while they are added
+     */
+    @Test
+    public void concurrentAddTable() throws Exception {
+        final int perThread = 200;
+        Thread[] threads = new Thread[4];
+        final boolean[] failed = new boolean[1];
+        for (int i = 0; i < threads.length; i++) {
+            final int base = 1000 * (i + 1);
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        Database.getCatalog().addTable(
+                                new SkeletonFile(base + j, Utility.getTupleDesc(2)), "t" + (base + j));
+                        if (Database.getCatalog().getTableId(name) != -2) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertFalse(failed[0]);
+        for (int i = 0; i < threads.length; i++) {
+            for (int j = 0; j < perThread; j++) {
+                int id = 1000 * (i + 1) + j;
+                assertEquals(id, Database.getCatalog().getTableId("t" + id));
+            }
+        }
+    }
+
     /**
      * JUnit suite target
      */
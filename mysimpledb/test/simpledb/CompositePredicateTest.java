@@ -0,0 +1,99 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class CompositePredicateTest extends SimpleDbTestBase {
+
+    private static Predicate intPred(int field, Predicate.Op op, int value) {
+        return new Predicate(field, op, TestUtil.getField(value));
+    }
+
+    /**
+     * Unit test for CompositePredicate.filter()
+     */
+    @Test
+    public void filter() {
+        Predicate gt2 = intPred(0, Predicate.Op.GREATER_THAN, 2);
+        Predicate lt5 = intPred(0, Predicate.Op.LESS_THAN, 5);
+
+        Predicate and = CompositePredicate.and(gt2, lt5);
+        assertFalse(and.filter(Utility.getHeapTuple(2)));
+        assertTrue(and.filter(Utility.getHeapTuple(3)));
+        assertFalse(and.filter(Utility.getHeapTuple(5)));
+
+        Predicate or = CompositePredicate.or(CompositePredicate.not(gt2), intPred(0, Predicate.Op.EQUALS, 7));
+        assertTrue(or.filter(Utility.getHeapTuple(1)));
+        assertFalse(or.filter(Utility.getHeapTuple(3)));
+        assertTrue(or.filter(Utility.getHeapTuple(7)));
+    }
+
+    /**
+     * The compiled form of a predicate tree agrees with filter()
+     */
+    @Test
+    public void compiledAgrees() {
+        Predicate p = CompositePredicate.or(
+                CompositePredicate.and(intPred(0, Predicate.Op.GREATER_THAN_OR_EQ, 10),
+                        intPred(1, Predicate.Op.NOT_EQUALS, 12)),
+                CompositePredicate.not(intPred(1, Predicate.Op.LESS_THAN, 3)));
+        CompiledPredicate c = PredicateCompiler.compile(p);
+        for (int i = 0; i < 5000; i++) {
+            Tuple t = Utility.getHeapTuple(new int[]{i % 20, (i * 7) % 15});
+            assertEquals(p.filter(t), c.filter(t));
+        }
+    }
+
+    /**
+     * A conjunction moves its most selective term to the front once it has
+     * seen enough tuples
+     */
+    @Test
+    public void reordersBySelectivity() {
+        Predicate rarelyFails = intPred(0, Predicate.Op.GREATER_THAN_OR_EQ, 1);
+        Predicate oftenFails = intPred(0, Predicate.Op.EQUALS, 0);
+        PredicateCompiler.Junction and = (PredicateCompiler.Junction)
+                PredicateCompiler.compile(CompositePredicate.and(rarelyFails, oftenFails));
+        CompiledPredicate first = and.getTerms()[0];
+
+        for (int i = 0; i < 3 * PredicateCompiler.REORDER_INTERVAL; i++) {
+            and.filter(Utility.getHeapTuple(i % 100 + 1));
+        }
+        CompiledPredicate[] terms = and.getTerms();
+        assertSame(first, terms[1]);
+    }
+
+    /**
+     * Unit test for Filter over a CompositePredicate
+     */
+    @Test
+    public void filterOperator() throws Exception {
+        Predicate p = CompositePredicate.or(intPred(0, Predicate.Op.LESS_THAN, -3),
+                intPred(0, Predicate.Op.GREATER_THAN, 2));
+        Filter op = new Filter(p, new TestUtil.MockScan(-5, 5, 2));
+        op.open();
+        int count = 0;
+        while (op.hasNext()) {
+            int v = ((IntField) op.next().getField(0)).getValue();
+            assertTrue(v < -3 || v > 2);
+            count++;
+        }
+        assertEquals(4, count);
+        op.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompositePredicateTest.class);
+    }
+}
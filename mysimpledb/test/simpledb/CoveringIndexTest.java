@@ -0,0 +1,201 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CoveringIndexTest extends SimpleDbTestBase {
+
+    ArrayList<ArrayList<Integer>> rows;
+    HeapFile file;
+    HashIndex index;
+    TransactionId tid;
+
+    /**
+     * A table of 5000 rows of ten columns, with an index on c0 that
+     * covers c1; the index entries are much narrower than the rows
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        rows = new ArrayList<ArrayList<Integer>>();
+        file = SystemTestUtil.createRandomHeapFile(10, 5000, 1000, null, rows, "c");
+        tid = new TransactionId();
+        File f = File.createTempFile("covering", ".dat");
+        f.deleteOnExit();
+        index = new HashIndex(f, file.getId(), 0, new int[]{1});
+        Database.getCatalog().addIndex(index);
+        assertEquals(5000, index.build(tid));
+    }
+
+    private static List<List<Integer>> rows(DbIterator it) throws Exception {
+        List<List<Integer>> out = new ArrayList<List<Integer>>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            List<Integer> row = new ArrayList<Integer>();
+            for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+                row.add(((IntField) t.getField(i)).getValue());
+            }
+            out.add(row);
+        }
+        it.close();
+        Collections.sort(out, new java.util.Comparator<List<Integer>>() {
+            public int compare(List<Integer> a, List<Integer> b) {
+                for (int i = 0; i < a.size(); i++) {
+                    int c = a.get(i).compareTo(b.get(i));
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return 0;
+            }
+        });
+        return out;
+    }
+
+    private void checkSameAsScan(Predicate pred, int[] fields) throws Exception {
+        List<List<Integer>> expected = rows(new SeqScan(tid, file.getId(), "t", pred, fields));
+        List<List<Integer>> actual = rows(new IndexOnlyScan(tid, index, "t", pred, fields));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void sameTuplesAsScan() throws Exception {
+        int key = rows.get(0).get(0);
+        checkSameAsScan(null, new int[]{0, 1});
+        checkSameAsScan(null, new int[]{1});
+        checkSameAsScan(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(300)), new int[]{0});
+        checkSameAsScan(new Predicate(0, Predicate.Op.EQUALS, new IntField(key)), new int[]{1, 0});
+        checkSameAsScan(CompositePredicate.and(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(500)),
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(key))), new int[]{1});
+        assertEquals(new TupleDesc(new Type[]{Type.INT_TYPE}, new String[]{"t.c1"}),
+                new IndexOnlyScan(tid, index, "t", null, new int[]{1}).getTupleDesc());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void uncoveredField() {
+        new IndexOnlyScan(tid, index, "t", new Predicate(2, Predicate.Op.EQUALS, new IntField(1)), new int[]{0});
+    }
+
+    @Test
+    public void readsNoHeapPages() throws Exception {
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(5000, rows(new IndexOnlyScan(tid, index, "t", null, new int[]{0, 1})).size());
+        for (PageId pid : Database.getBufferPool().buffer.keySet()) {
+            assertTrue(pid instanceof HashPageId);
+        }
+
+        // a key probe reads one bucket
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Predicate eq = new Predicate(0, Predicate.Op.EQUALS, new IntField(rows.get(0).get(0)));
+        assertTrue(rows(new IndexOnlyScan(tid, index, "t", eq, new int[]{1})).size() > 0);
+        assertTrue(Database.getBufferPool().buffer.size() <= 3);
+    }
+
+    @Test
+    public void maintainedByInsertAndDelete() throws Exception {
+        List<Tuple> added = new ArrayList<Tuple>();
+        for (int i = 0; i < 300; i++) {
+            Tuple t = new Tuple(file.getTupleDesc());
+            t.setField(0, new IntField(1000 + i % 3));
+            t.setField(1, new IntField(i));
+            for (int j = 2; j < 10; j++) {
+                t.setField(j, new IntField(-i));
+            }
+            added.add(t);
+        }
+        Insert ins = new Insert(tid, new TupleIterator(file.getTupleDesc(), added), file.getId());
+        ins.open();
+        assertEquals(300, ((IntField) ins.next().getField(0)).getValue());
+        checkSameAsScan(null, new int[]{0, 1});
+        checkSameAsScan(new Predicate(0, Predicate.Op.EQUALS, new IntField(1001)), new int[]{0, 1});
+
+        Predicate doomed = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(250));
+        Delete del = new Delete(tid, new Filter(doomed, new SeqScan(tid, file.getId(), "t")));
+        del.open();
+        del.next();
+        assertEquals(0, rows(new IndexOnlyScan(tid, index, "t", doomed, new int[]{1})).size());
+        checkSameAsScan(null, new int[]{0, 1});
+    }
+
+    @Test
+    public void optimizerUsesCoveringIndex() throws Exception {
+        Predicate pred = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(750));
+        JoinOptimizer jo = new JoinOptimizer(tid);
+        jo.addTable("t", file.getId());
+        jo.addFilter("t", pred);
+        jo.setColumns("t", Arrays.asList("c0"));
+        DbIterator plan = jo.optimize();
+        assertTrue(TestUtil.contains(plan, IndexOnlyScan.class));
+        assertEquals(rows(new SeqScan(tid, file.getId(), "t", pred, new int[]{0})), rows(plan));
+
+        // an aggregate over covered columns
+        Aggregate agg = new Aggregate(plan, 0, Aggregator.NO_GROUPING, Aggregator.Op.COUNT);
+        agg.open();
+        assertEquals(rows(plan).size(), ((IntField) agg.next().getField(0)).getValue());
+        agg.close();
+
+        // c2 is not covered, so the table is scanned
+        jo = new JoinOptimizer(tid);
+        jo.addTable("t", file.getId());
+        jo.addFilter("t", new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(750)));
+        jo.setColumns("t", Arrays.asList("c0"));
+        assertFalse(TestUtil.contains(jo.optimize(), IndexOnlyScan.class));
+
+        // with all columns needed, the table is scanned
+        jo = new JoinOptimizer(tid);
+        jo.addTable("t", file.getId());
+        assertFalse(TestUtil.contains(jo.optimize(), IndexOnlyScan.class));
+    }
+
+    @Test
+    public void preparedKeyProbe() throws Exception {
+        JoinOptimizer jo = new JoinOptimizer(tid);
+        jo.addTable("t", file.getId());
+        jo.addFilter("t", new Predicate(0, Predicate.Op.EQUALS, 0));
+        jo.setColumns("t", Arrays.asList("c1"));
+        PreparedStatement ps = new PreparedStatement(tid, jo.optimize());
+        for (int i = 0; i < 5; i++) {
+            int key = rows.get(i).get(0);
+            ps.setInt(0, key);
+            DbIterator it = ps.execute();
+            assertTrue(it instanceof IndexOnlyScan);
+            int n = 0;
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            int expected = 0;
+            for (ArrayList<Integer> row : rows) {
+                if (row.get(0) == key) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, n);
+        }
+        ps.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CoveringIndexTest.class);
+    }
+}
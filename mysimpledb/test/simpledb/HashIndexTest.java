@@ -0,0 +1,179 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashIndexTest extends SimpleDbTestBase {
+
+    ArrayList<ArrayList<Integer>> rows, small;
+    HeapFile file, smallFile;
+    HashIndex index;
+    TransactionId tid;
+
+    /**
+     * A table of 20000 rows with keys below 20000 in c0, indexed, and a
+     * table of 20 rows to join with it
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        rows = new ArrayList<ArrayList<Integer>>();
+        small = new ArrayList<ArrayList<Integer>>();
+        file = SystemTestUtil.createRandomHeapFile(2, 20000, 20000, null, rows, "c");
+        smallFile = SystemTestUtil.createRandomHeapFile(2, 20, 20000, null, small, "c");
+        tid = new TransactionId();
+        File f = File.createTempFile("hashindex", ".dat");
+        f.deleteOnExit();
+        index = new HashIndex(f, file.getId(), 0);
+        Database.getCatalog().addIndex(index);
+        assertEquals(20000, index.build(tid));
+    }
+
+    private int expected(int key) {
+        int n = 0;
+        for (ArrayList<Integer> row : rows) {
+            if (row.get(0) == key) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void checkLookup(int key, int count) throws Exception {
+        List<RecordId> rids = index.lookup(tid, new IntField(key));
+        assertEquals(count, rids.size());
+        for (RecordId rid : rids) {
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_ONLY);
+            assertEquals(new IntField(key), page.getTuple(rid.tupleno()).getField(0));
+        }
+    }
+
+    @Test
+    public void lookups() throws Exception {
+        for (int key = 0; key < 20000; key += 97) {
+            checkLookup(key, expected(key));
+        }
+        checkLookup(20000, 0);
+        assertEquals(20000, TestUtil.count(new SeqScan(tid, index.getId(), "i")));
+    }
+
+    @Test
+    public void probeReadsOneBucket() throws Exception {
+        // the index has split into many buckets
+        assertTrue(index.numPages() > 10);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        index.lookup(tid, new IntField(rows.get(0).get(0)));
+        // the header and the bucket, and rarely an overflow page
+        assertTrue(Database.getBufferPool().buffer.size() <= 3);
+    }
+
+    @Test
+    public void maintainedByInsertAndDelete() throws Exception {
+        List<Tuple> added = new ArrayList<Tuple>();
+        for (int i = 0; i < 500; i++) {
+            Tuple t = new Tuple(file.getTupleDesc());
+            t.setField(0, new IntField(20000 + i % 5));
+            t.setField(1, new IntField(i));
+            added.add(t);
+        }
+        int pages = index.numPages();
+        Insert ins = new Insert(tid, new TupleIterator(file.getTupleDesc(), added), file.getId());
+        ins.open();
+        assertEquals(500, ((IntField) ins.next().getField(0)).getValue());
+        for (int key = 20000; key < 20005; key++) {
+            checkLookup(key, 100);
+        }
+        // the inserts split buckets, moving entries that are still found
+        assertTrue(index.numPages() > pages);
+        for (int key = 0; key < 20000; key += 97) {
+            checkLookup(key, expected(key));
+        }
+
+        Predicate doomed = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(20003));
+        Delete del = new Delete(tid, new Filter(doomed, new SeqScan(tid, file.getId(), "t")));
+        del.open();
+        assertEquals(200, ((IntField) del.next().getField(0)).getValue());
+        checkLookup(20002, 100);
+        checkLookup(20003, 0);
+        checkLookup(20004, 0);
+
+        int key = rows.get(0).get(0);
+        del = new Delete(tid, new Filter(new Predicate(0, Predicate.Op.EQUALS, new IntField(key)),
+                new SeqScan(tid, file.getId(), "t")));
+        del.open();
+        assertEquals(expected(key), ((IntField) del.next().getField(0)).getValue());
+        checkLookup(key, 0);
+        assertEquals(20300 - expected(key), TestUtil.count(new SeqScan(tid, index.getId(), "i")));
+    }
+
+    @Test
+    public void indexJoin() throws Exception {
+        int expected = 0;
+        for (ArrayList<Integer> s : small) {
+            expected += expected(s.get(0));
+        }
+        JoinPredicate jp = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(jp, new SeqScan(tid, smallFile.getId(), "s"),
+                new SeqScan(tid, file.getId(), "t"));
+        assertEquals(expected, TestUtil.count(join));
+        assertEquals(expected, TestUtil.count(new HashEquiJoin(jp, new SeqScan(tid, smallFile.getId(), "s"),
+                new SeqScan(tid, file.getId(), "t"))));
+
+        // the inner scan's predicate and projection apply to fetched tuples
+        Predicate odd = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(10000));
+        SeqScan inner = new SeqScan(tid, file.getId(), "t", odd, new int[]{0});
+        join = new IndexNestedLoopJoin(jp, new SeqScan(tid, smallFile.getId(), "s"), inner);
+        assertEquals(3, join.getTupleDesc().numFields());
+        int filtered = 0;
+        for (ArrayList<Integer> s : small) {
+            for (ArrayList<Integer> r : rows) {
+                if (r.get(0).equals(s.get(0)) && r.get(1) > 10000) {
+                    filtered++;
+                }
+            }
+        }
+        assertEquals(filtered, TestUtil.count(join));
+    }
+
+    @Test
+    public void optimizerProbesIndex() throws Exception {
+        JoinOptimizer jo = new JoinOptimizer(tid);
+        jo.addTable("s", smallFile.getId());
+        jo.addTable("t", file.getId());
+        jo.addJoin("s", "c0", Predicate.Op.EQUALS, "t", "c0");
+        DbIterator plan = jo.optimize();
+        assertTrue(TestUtil.contains(plan, IndexNestedLoopJoin.class));
+        int expected = 0;
+        for (ArrayList<Integer> s : small) {
+            expected += expected(s.get(0));
+        }
+        assertEquals(expected, TestUtil.count(plan));
+
+        // without an index on the join field the table is scanned
+        jo = new JoinOptimizer(tid);
+        jo.addTable("s", smallFile.getId());
+        jo.addTable("t", file.getId());
+        jo.addJoin("s", "c1", Predicate.Op.EQUALS, "t", "c1");
+        assertTrue(!TestUtil.contains(jo.optimize(), IndexNestedLoopJoin.class));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashIndexTest.class);
+    }
+}
@@ -1,5 +1,8 @@
 package simpledb;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,6 +50,117 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Space freed by deleteTuple is reused before the file grows
+     */
+    @Test
+    public void reuseFreedSlot() throws Exception {
+        Tuple first = Utility.getHeapTuple(0, 2);
+        empty.insertTuple(tid, first);
+        for (int i = 1; i < 1008; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(2, empty.numPages());
+
+        empty.deleteTuple(tid, first);
+        Tuple again = Utility.getHeapTuple(1, 2);
+        empty.insertTuple(tid, again);
+        assertEquals(2, empty.numPages());
+        assertEquals(0, again.getRecordId().getPageId().pageNumber());
+        assertEquals(0, again.getRecordId().tupleno());
+    }
+
+    /**
+     * A scan skips pages whose tuples have all been deleted
+     */
+    @Test
+    public void scanSkipsEmptyPage() throws Exception {
+        for (int i = 0; i < 1009; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(3, empty.numPages());
+
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        ArrayList<Tuple> doomed = new ArrayList<Tuple>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getRecordId().getPageId().pageNumber() == 1) {
+                doomed.add(t);
+            }
+        }
+        for (Tuple t : doomed) {
+            empty.deleteTuple(tid, t);
+        }
+
+        it.rewind();
+        int count = 0;
+        while (it.hasNext()) {
+            assertTrue(it.next().getRecordId().getPageId().pageNumber() != 1);
+            count++;
+        }
+        assertEquals(505, count);
+        it.close();
+    }
+
+    /**
+     * Concurrent inserts and a bulk load into one file neither lose tuples
+     * nor share slots
+     */
+    @Test
+    public void concurrentInserts() throws Exception {
+        final int threads = 4;
+        final int each = 1500;
+        final Exception[] failure = new Exception[1];
+        Thread[] inserters = new Thread[threads + 1];
+        for (int i = 0; i < threads; i++) {
+            inserters[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < each; j++) {
+                            empty.insertTuple(tid, Utility.getHeapTuple(j, 2));
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+        }
+        final ArrayList<Tuple> loaded = new ArrayList<Tuple>();
+        for (int j = 0; j < 5 * each; j++) {
+            loaded.add(Utility.getHeapTuple(j, 2));
+        }
+        inserters[threads] = new Thread() {
+            public void run() {
+                try {
+                    TupleIterator tuples = new TupleIterator(Utility.getTupleDesc(2), loaded);
+                    tuples.open();
+                    empty.bulkInsert(tid, tuples);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        for (Thread t : inserters) {
+            t.start();
+        }
+        for (Thread t : inserters) {
+            t.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        HashSet<RecordId> rids = new HashSet<RecordId>();
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            assertTrue(rids.add(it.next().getRecordId()));
+        }
+        it.close();
+        assertEquals(threads * each + loaded.size(), rids.size());
+    }
+
     /**
      * JUnit suite target
      */
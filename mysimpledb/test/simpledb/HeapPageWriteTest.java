@@ -1,9 +1,11 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -130,6 +132,36 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.deleteTuples()
+     */
+    @Test
+    public void deleteTuples() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+
+        ArrayList<RecordId> rids = new ArrayList<RecordId>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            rids.add(it.next().getRecordId());
+
+        page.deleteTuples(rids.subList(0, 1));
+        assertEquals(free + 1, page.getNumEmptySlots());
+
+        // one bad record leaves the page untouched
+        try {
+            page.deleteTuples(rids);
+            throw new Exception("slot already empty; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+        assertEquals(free + 1, page.getNumEmptySlots());
+
+        page.deleteTuples(rids.subList(1, rids.size()));
+        assertEquals(free + rids.size(), page.getNumEmptySlots());
+        assertFalse(page.iterator().hasNext());
+    }
+
     /**
      * JUnit suite target
      */
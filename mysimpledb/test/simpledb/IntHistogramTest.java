@@ -0,0 +1,70 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class IntHistogramTest extends SimpleDbTestBase {
+
+    /**
+     * Equi-width estimates on a uniform column
+     */
+    @Test
+    public void uniform() {
+        IntHistogram h = new IntHistogram(10, 1, 100);
+        for (int v = 1; v <= 100; v++) {
+            h.addValue(v);
+        }
+        assertEquals(0.01, h.estimateSelectivity(Predicate.Op.EQUALS, 42), 1e-9);
+        assertEquals(0.5, h.estimateSelectivity(Predicate.Op.GREATER_THAN, 50), 1e-9);
+        assertEquals(0.49, h.estimateSelectivity(Predicate.Op.LESS_THAN, 50), 1e-9);
+        assertEquals(0.5, h.estimateSelectivity(Predicate.Op.LESS_THAN_OR_EQ, 50), 1e-9);
+        assertEquals(0.0, h.estimateSelectivity(Predicate.Op.EQUALS, 101), 1e-9);
+        assertEquals(1.0, h.estimateSelectivity(Predicate.Op.GREATER_THAN, 0), 1e-9);
+        assertEquals(0.99, h.estimateSelectivity(Predicate.Op.NOT_EQUALS, 3), 1e-9);
+    }
+
+    /**
+     * Equi-depth buckets follow a skewed column
+     */
+    @Test
+    public void fromSample() {
+        // 900 zeros, then 1..100
+        int[] sample = new int[1000];
+        for (int i = 900; i < 1000; i++) {
+            sample[i] = i - 899;
+        }
+        IntHistogram h = IntHistogram.fromSample(10, sample, 0, 100, 1000);
+        assertEquals(0.9, h.estimateSelectivity(Predicate.Op.EQUALS, 0), 0.01);
+        assertEquals(0.005, h.estimateSelectivity(Predicate.Op.GREATER_THAN, 95), 0.002);
+    }
+
+    /**
+     * Values added and removed after construction are reflected, including
+     * values outside the original range
+     */
+    @Test
+    public void incremental() {
+        IntHistogram h = new IntHistogram(4, 0, 3);
+        h.addValue(0);
+        h.addValue(1);
+        h.addValue(10);
+        assertEquals(3, h.count(), 1e-9);
+        assertTrue(h.estimateSelectivity(Predicate.Op.GREATER_THAN, 5) > 0);
+        h.removeValue(10);
+        assertEquals(2, h.count(), 1e-9);
+        assertEquals(0.5, h.estimateSelectivity(Predicate.Op.EQUALS, 0), 1e-9);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IntHistogramTest.class);
+    }
+}
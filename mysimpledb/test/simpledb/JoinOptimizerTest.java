@@ -0,0 +1,151 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class JoinOptimizerTest extends SimpleDbTestBase {
+
+    ArrayList<ArrayList<Integer>> big, mid, small;
+    HeapFile bigFile, midFile, smallFile;
+
+    @Before
+    public void setUp() throws Exception {
+        big = new ArrayList<ArrayList<Integer>>();
+        mid = new ArrayList<ArrayList<Integer>>();
+        small = new ArrayList<ArrayList<Integer>>();
+        bigFile = SystemTestUtil.createRandomHeapFile(2, 2000, 200, null, big, "c");
+        midFile = SystemTestUtil.createRandomHeapFile(2, 200, 200, null, mid, "c");
+        smallFile = SystemTestUtil.createRandomHeapFile(2, 20, 200, null, small, "c");
+    }
+
+    private JoinOptimizer chain(boolean reversed) {
+        JoinOptimizer jo = new JoinOptimizer(new TransactionId());
+        jo.addTable("b", bigFile.getId());
+        jo.addTable("m", midFile.getId());
+        jo.addTable("s", smallFile.getId());
+        if (reversed) {
+            jo.addJoin("s", "c1", Predicate.Op.EQUALS, "m", "c1");
+            jo.addJoin("m", "c0", Predicate.Op.EQUALS, "b", "c0");
+        } else {
+            jo.addJoin("b", "c0", Predicate.Op.EQUALS, "m", "c0");
+            jo.addJoin("m", "c1", Predicate.Op.EQUALS, "s", "c1");
+        }
+        return jo;
+    }
+
+    private int expectedChain() {
+        int count = 0;
+        for (ArrayList<Integer> b : big) {
+            for (ArrayList<Integer> m : mid) {
+                if (!b.get(0).equals(m.get(0))) {
+                    continue;
+                }
+                for (ArrayList<Integer> s : small) {
+                    if (m.get(1).equals(s.get(1))) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The chosen plan returns the same tuples as the query as written, and
+     * the order joins were added in does not change its cost
+     */
+    @Test
+    public void chainJoin() throws Exception {
+        JoinOptimizer jo = chain(false);
+        DbIterator plan = jo.optimize();
+        assertEquals(6, plan.getTupleDesc().numFields());
+        assertEquals(expectedChain(), TestUtil.count(plan));
+        assertTrue(((Operator) plan).getEstimatedCardinality() > 0);
+
+        JoinOptimizer reversed = chain(true);
+        assertEquals(expectedChain(), TestUtil.count(reversed.optimize()));
+        assertEquals(jo.getPlanCost(), reversed.getPlanCost(), 1e-6);
+    }
+
+    /**
+     * A second condition between already joined tables becomes a filter
+     * above the join, and single-table filters are applied before joining
+     */
+    @Test
+    public void filtersAndCycles() throws Exception {
+        JoinOptimizer jo = new JoinOptimizer(new TransactionId());
+        jo.addTable("m", midFile.getId());
+        jo.addTable("s", smallFile.getId());
+        jo.addFilter("m", new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100)));
+        jo.addJoin("m", "c0", Predicate.Op.EQUALS, "s", "c0");
+        jo.addJoin("m", "c1", Predicate.Op.GREATER_THAN, "s", "c1");
+
+        int expected = 0;
+        for (ArrayList<Integer> m : mid) {
+            for (ArrayList<Integer> s : small) {
+                if (m.get(1) < 100 && m.get(0).equals(s.get(0)) && m.get(1) > s.get(1)) {
+                    expected++;
+                }
+            }
+        }
+        DbIterator plan = jo.optimize();
+        assertTrue(plan instanceof Filter);
+        assertEquals(expected, TestUtil.count(plan));
+    }
+
+    /**
+     * Tables with no join condition between them are rejected
+     */
+    @Test(expected = DbException.class)
+    public void disconnected() throws Exception {
+        JoinOptimizer jo = new JoinOptimizer(new TransactionId());
+        jo.addTable("m", midFile.getId());
+        jo.addTable("s", smallFile.getId());
+        jo.optimize();
+    }
+
+    /**
+     * HashEquiJoin returns the same tuples as a nested loops Join
+     */
+    @Test
+    public void hashJoin() throws Exception {
+        TransactionId tid = new TransactionId();
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        int expected = TestUtil.count(new Join(p, new SeqScan(tid, bigFile.getId(), "b"),
+                new SeqScan(tid, midFile.getId(), "m")));
+        HashEquiJoin hj = new HashEquiJoin(p, new SeqScan(tid, bigFile.getId(), "b"),
+                new SeqScan(tid, midFile.getId(), "m"));
+        assertEquals(expected, TestUtil.count(hj));
+
+        hj.open();
+        int n = 0;
+        while (hj.hasNext()) {
+            hj.next();
+            n++;
+        }
+        hj.rewind();
+        while (hj.hasNext()) {
+            hj.next();
+            n--;
+        }
+        hj.close();
+        assertEquals(0, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(JoinOptimizerTest.class);
+    }
+}
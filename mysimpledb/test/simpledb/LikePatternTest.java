@@ -0,0 +1,99 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LikePatternTest extends SimpleDbTestBase {
+
+    private static final String[] VALUES = {
+            "", "a", "ab", "abc", "abcabc", "xabcx", "bca", "aXc", "aaab", "cab", "abab"
+    };
+
+    private static final String[] PATTERNS = {
+            "abc", "abc%", "%abc", "%abc%", "a_c", "a%c", "%", "_", "%b%b%", "a%b", "%%", "", "%a_"
+    };
+
+    /**
+     * Patterns are classified into the cheapest matcher that handles them
+     */
+    @Test
+    public void kinds() {
+        assertEquals(LikePattern.Kind.EXACT, LikePattern.compile("abc").getKind());
+        assertEquals(LikePattern.Kind.PREFIX, LikePattern.compile("abc%").getKind());
+        assertEquals(LikePattern.Kind.SUFFIX, LikePattern.compile("%abc").getKind());
+        assertEquals(LikePattern.Kind.CONTAINS, LikePattern.compile("%abc%").getKind());
+        assertEquals(LikePattern.Kind.GENERAL, LikePattern.compile("a_c").getKind());
+        assertEquals(LikePattern.Kind.GENERAL, LikePattern.compile("a%c").getKind());
+    }
+
+    /**
+     * Unit test for LikePattern.matches(String)
+     */
+    @Test
+    public void matches() {
+        assertTrue(LikePattern.compile("abc").matches("abc"));
+        assertFalse(LikePattern.compile("abc").matches("xabcx"));
+        assertTrue(LikePattern.compile("abc%").matches("abcabc"));
+        assertFalse(LikePattern.compile("abc%").matches("cab"));
+        assertTrue(LikePattern.compile("%abc").matches("xxabc"));
+        assertTrue(LikePattern.compile("%abc%").matches("xabcx"));
+        assertFalse(LikePattern.compile("%abc%").matches("abxbc"));
+        assertTrue(LikePattern.compile("a_c").matches("aXc"));
+        assertFalse(LikePattern.compile("a_c").matches("ac"));
+        assertTrue(LikePattern.compile("a%b").matches("aaab"));
+        assertFalse(LikePattern.compile("a%b").matches("abc"));
+        assertTrue(LikePattern.compile("%").matches(""));
+        assertFalse(LikePattern.compile("_").matches(""));
+    }
+
+    /**
+     * Matching on serialized bytes agrees with matching on Strings
+     */
+    @Test
+    public void bytesAgree() throws IOException {
+        for (String v : VALUES) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new StringField(v, Type.STRING_LEN).serialize(new DataOutputStream(bytes));
+            byte[] data = bytes.toByteArray();
+            for (String p : PATTERNS) {
+                LikePattern pattern = LikePattern.compile(p);
+                assertEquals(p + " on " + v, pattern.matches(v), pattern.matches(data, 4, v.length()));
+            }
+        }
+    }
+
+    /**
+     * Predicate and its compiled form use LIKE semantics
+     */
+    @Test
+    public void predicate() {
+        Predicate p = new Predicate(0, Predicate.Op.LIKE, new StringField("a%c", Type.STRING_LEN));
+        CompiledPredicate c = PredicateCompiler.compile(p);
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE});
+        for (String v : VALUES) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField(v, Type.STRING_LEN));
+            boolean expected = v.startsWith("a") && v.endsWith("c");
+            assertEquals(expected, p.filter(t));
+            assertEquals(expected, c.filter(t));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LikePatternTest.class);
+    }
+}
@@ -0,0 +1,351 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LogFileTest extends SimpleDbTestBase {
+
+    File f;
+    LogFile log;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        f = File.createTempFile("log", ".dat");
+        f.deleteOnExit();
+        log = new LogFile(f);
+    }
+
+    private void commit() throws IOException {
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        log.logCommit(tid);
+    }
+
+    /**
+     * Commits from several threads at once
+     */
+    private void commitConcurrently(int threads, final int each) throws Exception {
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        List<Thread> running = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < each; j++) {
+                            commit();
+                        }
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            t.start();
+            running.add(t);
+        }
+        for (Thread t : running) {
+            t.join();
+        }
+        assertEquals(Collections.<Exception>emptyList(), failures);
+    }
+
+    @Test
+    public void commitAloneForcesOnce() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            commit();
+        }
+        assertEquals(10, log.forceCount);
+        assertEquals(20, log.getTotalRecords());
+    }
+
+    @Test
+    public void concurrentCommitsShareForces() throws Exception {
+        log.setGroupCommitWait(2);
+        commitConcurrently(8, 25);
+        assertEquals(400, log.getTotalRecords());
+        // every commit returned, and most shared a force with others
+        assertTrue(log.forceCount > 0);
+        assertTrue(log.forceCount <= 100);
+        assertTrue(log.tidToFirstLogRecord.isEmpty());
+    }
+
+    @Test
+    public void commitsWithoutWaiting() throws Exception {
+        commitConcurrently(8, 25);
+        assertEquals(400, log.getTotalRecords());
+        assertTrue(log.forceCount > 0);
+        assertTrue(log.tidToFirstLogRecord.isEmpty());
+    }
+
+    /**
+     * Transactions that commit updates force the log for their pages as
+     * well as for their COMMIT records; both forces are shared
+     */
+    @Test
+    public void concurrentTransactionsShareForces() throws Exception {
+        final int threads = 8, each = 25;
+        final LogFile log = Database.getLogFile();
+        log.setGroupCommitWait(2);
+        int before = log.forceCount;
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        List<Thread> running = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            // a table each, so that no two threads change the same page
+            final HeapFile table = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < each; j++) {
+                            Transaction xact = new Transaction();
+                            xact.start();
+                            Tuple tuple = new Tuple(table.getTupleDesc());
+                            tuple.setField(0, new IntField(j));
+                            tuple.setField(1, new IntField(-j));
+                            Database.getBufferPool().insertTuple(xact.getId(), table.getId(), tuple);
+                            xact.commit();
+                        }
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            t.start();
+            running.add(t);
+        }
+        for (Thread t : running) {
+            t.join();
+        }
+        assertEquals(Collections.<Exception>emptyList(), failures);
+        // alone, each transaction would force the log at least once
+        assertTrue(log.forceCount - before < threads * each);
+        assertTrue(log.tidToFirstLogRecord.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeWait() {
+        log.setGroupCommitWait(-1);
+    }
+
+    /**
+     * Reads the log file back, checking that every record ends with its
+     * start offset.
+     *
+     * @return the start offsets of the records
+     */
+    private List<Long> recordOffsets() throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            in.readLong();
+            long offset = LogFile.LONG_SIZE;
+            while (true) {
+                int type;
+                try {
+                    type = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                in.readLong();
+                int size = LogFile.INT_SIZE + LogFile.LONG_SIZE;
+                if (type == LogFile.UPDATE_RECORD) {
+                    PageDelta delta = PageDelta.read(in);
+                    // the delta's size, from its serialization
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    delta.write(new DataOutputStream(bytes));
+                    size += bytes.size();
+                } else if (type == LogFile.CHECKPOINT_RECORD) {
+                    int n = in.readInt();
+                    for (int i = 0; i < 2 * n; i++) {
+                        in.readLong();
+                    }
+                    size += LogFile.INT_SIZE + 2 * n * LogFile.LONG_SIZE;
+                    // and the dirty page table
+                    int m = in.readInt();
+                    for (int i = 0; i < m; i++) {
+                        PageId pid = PageRegistry.readPageId(in);
+                        in.readLong();
+                        size += 2 + pid.serialize().length * LogFile.INT_SIZE + LogFile.LONG_SIZE;
+                    }
+                    size += LogFile.INT_SIZE;
+                }
+                assertEquals(offset, in.readLong());
+                offsets.add(offset);
+                offset += size + LogFile.LONG_SIZE;
+            }
+        } finally {
+            in.close();
+        }
+        return offsets;
+    }
+
+    @Test
+    public void recordsAreBuffered() throws Exception {
+        TransactionId tid = new TransactionId();
+        assertEquals(LogFile.LONG_SIZE, log.logXactionBegin(tid));
+        // only the header is written
+        assertEquals(LogFile.LONG_SIZE, f.length());
+        long lsn = log.logCommit(tid);
+        assertTrue(lsn > LogFile.LONG_SIZE);
+        assertEquals(Arrays.asList((long) LogFile.LONG_SIZE, lsn), recordOffsets());
+    }
+
+    /**
+     * @return the data of a heap page of two-int tuples with every slot
+     * used and all other bytes b
+     */
+    private static byte[] fullPage(byte b) {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        Arrays.fill(data, b);
+        int headerSize = (int) Math.ceil(BufferPool.getPageSize() * 8.0 / (Utility.getTupleDesc(2).getSize() * 8 + 1) / 8);
+        Arrays.fill(data, 0, headerSize, (byte) 0xFF);
+        return data;
+    }
+
+    @Test
+    public void lsnsAreRecordOffsets() throws Exception {
+        HeapPageId pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        HeapPage ones = new HeapPage(pid, fullPage((byte) 1));
+        HeapPage twos = new HeapPage(pid, fullPage((byte) 2));
+
+        // updates of most of a page each, more than the buffer holds
+        List<Long> lsns = new ArrayList<Long>();
+        TransactionId tid = new TransactionId();
+        lsns.add(log.logXactionBegin(tid));
+        int writes = 2 * LogFile.BUFFER_SIZE / BufferPool.getPageSize() + 1;
+        for (int i = 0; i < writes; i++) {
+            lsns.add(i % 2 == 0 ? log.logWrite(tid, ones, twos) : log.logWrite(tid, twos, ones));
+        }
+        // written as the buffer filled
+        assertTrue(f.length() > LogFile.BUFFER_SIZE);
+        lsns.add(log.logCommit(tid));
+        for (int i = 1; i < lsns.size(); i++) {
+            assertTrue(lsns.get(i) > lsns.get(i - 1));
+        }
+        assertEquals(lsns, recordOffsets());
+    }
+
+    @Test
+    public void lsnsAfterTruncation() throws Exception {
+        commit();
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        log.logCheckpoint();
+        // the log now starts with the live transaction's BEGIN
+        List<Long> offsets = recordOffsets();
+        assertEquals(LogFile.LONG_SIZE, (long) offsets.get(0));
+        long end = f.length();
+        assertEquals(end, log.logCommit(tid));
+        offsets.add(end);
+        assertEquals(offsets, recordOffsets());
+    }
+
+    @Test
+    public void checkpointWithoutBufferPool() throws Exception {
+        commit();
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread checkpoint = new Thread() {
+            public void run() {
+                try {
+                    log.logCheckpoint();
+                } catch (Exception e) {
+                    failures.add(e);
+                }
+            }
+        };
+        // a checkpoint does not wait for the buffer pool
+        synchronized (Database.getBufferPool()) {
+            checkpoint.start();
+            checkpoint.join(10000);
+            assertFalse(checkpoint.isAlive());
+        }
+        assertEquals(Collections.<Exception>emptyList(), failures);
+        assertEquals(1, log.checkpointCount);
+    }
+
+    @Test
+    public void checkpointKeepsDirtyPageUpdates() throws Exception {
+        HeapPageId pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        commit();
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        log.logWrite(tid, new HeapPage(pid, fullPage((byte) 1)), new HeapPage(pid, fullPage((byte) 2)));
+        log.logCommit(tid);
+        commit();
+
+        // the page is not written, so the log keeps its update
+        log.logCheckpoint();
+        assertEquals(LogFile.LONG_SIZE, (long) log.dirtyPages.get(pid));
+        assertEquals(5, recordOffsets().size());
+
+        log.pageWritten(pid);
+        log.logCheckpoint();
+        assertEquals(1, recordOffsets().size());
+    }
+
+    @Test
+    public void checkpointerTruncates() throws Exception {
+        log.startCheckpointer(1);
+        try {
+            commitConcurrently(4, 100);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (log.checkpointCount < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            log.stopCheckpointer();
+        }
+        int checkpoints = log.checkpointCount;
+        assertTrue(checkpoints >= 3);
+        Thread.sleep(20);
+        assertEquals(checkpoints, log.checkpointCount);
+
+        // well short of the 800 records committed, which are all intact
+        List<Long> offsets = recordOffsets();
+        assertTrue(offsets.size() < log.getTotalRecords());
+        assertTrue(log.tidToFirstLogRecord.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void checkpointerStartedTwice() throws Exception {
+        log.startCheckpointer(1000);
+        try {
+            log.startCheckpointer(1000);
+        } finally {
+            log.stopCheckpointer();
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LogFileTest.class);
+    }
+}
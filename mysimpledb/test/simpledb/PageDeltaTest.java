@@ -0,0 +1,118 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageDeltaTest extends SimpleDbTestBase {
+
+    private HeapPageId pid;
+    private HeapPage before;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        before = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+    }
+
+    private static byte[] serialize(PageDelta delta) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        delta.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void deleteIsSmall() throws Exception {
+        HeapPage after = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        after.deleteTuple(after.iterator().next());
+        PageDelta delta = PageDelta.diff(before, after);
+        // a header bit and the slot, if the page zeroes it
+        assertTrue(delta.numRanges() <= 2);
+        assertTrue(delta.changedBytes() <= 9);
+        assertTrue(serialize(delta).length < 100);
+    }
+
+    @Test
+    public void redoAndUndo() throws Exception {
+        HeapPage after = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        after.deleteTuple(after.iterator().next());
+        Tuple t = new Tuple(Utility.getTupleDesc(2));
+        t.setField(0, new IntField(1234));
+        t.setField(1, new IntField(-5678));
+        after.insertTuple(t);
+        after.insertTuple(t);
+
+        PageDelta delta = PageDelta.diff(before, after);
+        assertArrayEquals(after.getPageData(), delta.redo(before).getPageData());
+        assertArrayEquals(before.getPageData(), delta.undo(after).getPageData());
+        assertEquals(pid, delta.redo(before).getId());
+
+        // the same after being written and read back
+        PageDelta copy = PageDelta.read(new DataInputStream(new ByteArrayInputStream(serialize(delta))));
+        assertEquals(pid, copy.getPageId());
+        assertEquals(delta.numRanges(), copy.numRanges());
+        byte[] data = before.getPageData();
+        copy.redo(data);
+        assertArrayEquals(after.getPageData(), data);
+        copy.undo(data);
+        assertArrayEquals(before.getPageData(), data);
+    }
+
+    @Test
+    public void noChange() throws Exception {
+        PageDelta delta = PageDelta.diff(before, new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA));
+        assertEquals(0, delta.numRanges());
+        assertArrayEquals(before.getPageData(), delta.redo(before).getPageData());
+    }
+
+    @Test
+    public void nearbyChangesMerge() throws Exception {
+        // bytes of the page's first tuples
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA.clone();
+        data[100]++;
+        data[100 + PageDelta.MERGE_GAP]++;
+        data[200]++;
+        PageDelta delta = PageDelta.diff(before, new HeapPage(pid, data));
+        assertEquals(2, delta.numRanges());
+        assertEquals(PageDelta.MERGE_GAP + 2, delta.changedBytes());
+    }
+
+    @Test
+    public void logRecordIsSmall() throws Exception {
+        File f = File.createTempFile("log", ".dat");
+        f.deleteOnExit();
+        LogFile log = new LogFile(f);
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        HeapPage after = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        after.deleteTuple(after.iterator().next());
+        long start = log.logWrite(tid, before, after);
+        log.force();
+        // rather than two images of BufferPool.getPageSize() bytes each
+        assertTrue(f.length() - start < 150);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageDeltaTest.class);
+    }
+}
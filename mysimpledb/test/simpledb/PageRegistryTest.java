@@ -0,0 +1,86 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageRegistryTest extends SimpleDbTestBase {
+
+    private LogFile log;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        File f = File.createTempFile("log", ".dat");
+        f.deleteOnExit();
+        log = new LogFile(f);
+    }
+
+    private Page roundTrip(Page page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        log.writePageData(new DataOutputStream(bytes), page);
+        return log.readPageData(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void pageDataRoundTrip() throws Exception {
+        HeapPage heap = new HeapPage(new HeapPageId(-1, -1), HeapPageReadTest.EXAMPLE_DATA);
+        Page copy = roundTrip(heap);
+        assertEquals(HeapPage.class, copy.getClass());
+        assertEquals(heap.getId(), copy.getId());
+        assertArrayEquals(heap.getPageData(), copy.getPageData());
+
+
+        // page ids of other types
+        BTreePageId leafId = new BTreePageId(-1, 3, BTreePageId.LEAF);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PageRegistry.writePageId(new DataOutputStream(bytes), leafId);
+        assertEquals(leafId, PageRegistry.readPageId(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownPageType() throws Exception {
+        PageRegistry.newPage(255, new HeapPageId(-1, -1), HeapPageReadTest.EXAMPLE_DATA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void codeInUse() {
+        PageRegistry.registerPageId(1, PageId.class, new PageRegistry.PageIdFactory() {
+            public PageId newPageId(int[] data) {
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void codeOutOfRange() {
+        PageRegistry.registerPageId(256, PageId.class, new PageRegistry.PageIdFactory() {
+            public PageId newPageId(int[] data) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageRegistryTest.class);
+    }
+}
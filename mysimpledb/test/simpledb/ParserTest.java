@@ -0,0 +1,165 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParserTest extends SimpleDbTestBase {
+
+    ArrayList<ArrayList<Integer>> left, right;
+    HeapFile leftFile, rightFile;
+    Parser parser;
+    TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        left = new ArrayList<ArrayList<Integer>>();
+        right = new ArrayList<ArrayList<Integer>>();
+        leftFile = SystemTestUtil.createRandomHeapFile(2, 300, 20, null, left, "c");
+        rightFile = SystemTestUtil.createRandomHeapFile(2, 50, 20, null, right, "c");
+        Database.getCatalog().addTable(leftFile, "l");
+        Database.getCatalog().addTable(rightFile, "r");
+        parser = new Parser();
+        tid = new TransactionId();
+    }
+
+    private ArrayList<Tuple> run(String sql) throws Exception {
+        ArrayList<Tuple> out = new ArrayList<Tuple>();
+        DbIterator it = parser.prepare(sql).getPlan(tid);
+        it.open();
+        while (it.hasNext()) {
+            out.add(it.next());
+        }
+        it.close();
+        return out;
+    }
+
+    private int intValue(Tuple t, int i) {
+        return ((IntField) t.getField(i)).getValue();
+    }
+
+    /**
+     * Filters, joins and projection
+     */
+    @Test
+    public void selectJoin() throws Exception {
+        int expected = 0;
+        for (ArrayList<Integer> l : left) {
+            for (ArrayList<Integer> r : right) {
+                if (l.get(0).equals(r.get(0)) && l.get(1) < 10) {
+                    expected++;
+                }
+            }
+        }
+        ArrayList<Tuple> result = run("SELECT l.c1, x.c0 FROM l, r x WHERE l.c0 = x.c0 AND 10 > l.c1;");
+        assertEquals(expected, result.size());
+        for (Tuple t : result) {
+            assertEquals(2, t.getTupleDesc().numFields());
+            assertEquals("l.c1", t.getTupleDesc().getFieldName(0));
+            assertEquals(true, intValue(t, 0) < 10);
+        }
+        assertEquals(right.size(), run("select * from r").size());
+    }
+
+    /**
+     * GROUP BY with an aggregate, ordered by the group
+     */
+    @Test
+    public void groupBy() throws Exception {
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (ArrayList<Integer> l : left) {
+            Integer c = counts.get(l.get(0));
+            counts.put(l.get(0), c == null ? 1 : c + 1);
+        }
+        ArrayList<Tuple> result = run("SELECT c0, COUNT(c1) FROM l GROUP BY c0 ORDER BY c0 DESC");
+        assertEquals(counts.size(), result.size());
+        int last = Integer.MAX_VALUE;
+        for (Tuple t : result) {
+            assertEquals(true, intValue(t, 0) < last);
+            last = intValue(t, 0);
+            assertEquals((int) counts.get(last), intValue(t, 1));
+        }
+        assertEquals(left.size(), intValue(run("SELECT COUNT(*) FROM l").get(0), 0));
+    }
+
+    /**
+     * INSERT and DELETE return the number of tuples changed
+     */
+    @Test
+    public void insertDelete() throws Exception {
+        assertEquals(1, intValue(run("INSERT INTO r VALUES (-5, 7)").get(0), 0));
+        assertEquals(1, intValue(run("INSERT INTO r (c1, c0) VALUES (8, -5)").get(0), 0));
+        ArrayList<Tuple> inserted = run("SELECT c1 FROM r WHERE c0 = -5");
+        assertEquals(2, inserted.size());
+
+        assertEquals(left.size(), intValue(run("INSERT INTO r SELECT * FROM l").get(0), 0));
+        assertEquals(right.size() + 2 + left.size(), intValue(run("SELECT COUNT(*) FROM r").get(0), 0));
+
+        assertEquals(2, intValue(run("DELETE FROM r WHERE c0 < 0").get(0), 0));
+        assertEquals(right.size() + left.size(), run("SELECT * FROM r").size());
+    }
+
+    /**
+     * The same statement is planned once, until the catalog changes
+     */
+    @Test
+    public void planCache() throws Exception {
+        Query q = parser.prepare("SELECT * FROM l WHERE c0 = 3;");
+        assertSame(q, parser.prepare("  SELECT *\n FROM   l WHERE c0 = 3 "));
+        assertEquals("SELECT * FROM l WHERE c0 = 3", q.getSql());
+        assertEquals(1, parser.cacheSize());
+        assertNotSame(q, parser.prepare("SELECT * FROM l WHERE c0 = 4"));
+
+        assertEquals("select 'a  b' from t", Parser.normalize("select  'a  b'\tfrom t ;;"));
+
+        Database.getCatalog().addTable(rightFile, "r2");
+        assertNotSame(q, parser.prepare("SELECT * FROM l WHERE c0 = 3"));
+    }
+
+    /**
+     * Running a cached INSERT ... VALUES again inserts new tuples
+     */
+    @Test
+    public void cachedInsertTwice() throws Exception {
+        assertEquals(1, intValue(run("INSERT INTO r VALUES (-5, 7)").get(0), 0));
+        assertEquals(1, intValue(run("INSERT INTO r VALUES (-5, 7)").get(0), 0));
+        assertEquals(2, run("SELECT * FROM r WHERE c0 = -5").size());
+
+        assertEquals(2, intValue(run("DELETE FROM r WHERE c0 = -5").get(0), 0));
+        assertEquals(0, run("SELECT * FROM r WHERE c0 = -5").size());
+    }
+
+    @Test(expected = ParsingException.class)
+    public void unknownColumn() throws Exception {
+        parser.prepare("SELECT nope FROM l");
+    }
+
+    @Test(expected = ParsingException.class)
+    public void ambiguousColumn() throws Exception {
+        parser.prepare("SELECT c0 FROM l, r WHERE l.c0 = r.c0");
+    }
+
+    @Test(expected = ParsingException.class)
+    public void syntaxError() throws Exception {
+        parser.prepare("SELECT FROM WHERE");
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParserTest.class);
+    }
+}
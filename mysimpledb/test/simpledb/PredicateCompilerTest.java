@@ -0,0 +1,98 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PredicateCompilerTest extends SimpleDbTestBase {
+
+    /**
+     * Compiled predicates on ints agree with Predicate.filter() for every
+     * operator
+     */
+    @Test
+    public void intOps() {
+        int[] vals = new int[]{-1, 0, 1};
+        for (Predicate.Op op : Predicate.Op.values()) {
+            for (int i : vals) {
+                Predicate p = new Predicate(0, op, TestUtil.getField(i));
+                CompiledPredicate c = PredicateCompiler.compile(p);
+                for (int j = i - 1; j <= i + 1; j++) {
+                    Tuple t = Utility.getHeapTuple(j);
+                    assertEquals(op + " " + j, p.filter(t), c.filter(t));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiled predicates on strings agree with Predicate.filter() for every
+     * operator
+     */
+    @Test
+    public void stringOps() {
+        String[] vals = new String[]{"alice", "bob", "bobby", "carol"};
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE});
+        for (Predicate.Op op : Predicate.Op.values()) {
+            Predicate p = new Predicate(0, op, new StringField("bob", Type.STRING_LEN));
+            CompiledPredicate c = PredicateCompiler.compile(p);
+            for (String v : vals) {
+                Tuple t = new Tuple(td);
+                t.setField(0, new StringField(v, Type.STRING_LEN));
+                assertEquals(op + " " + v, p.filter(t), c.filter(t));
+            }
+        }
+    }
+
+    /**
+     * A conjunction passes only tuples every predicate passes
+     */
+    @Test
+    public void conjunction() {
+        ArrayList<Predicate> preds = new ArrayList<Predicate>();
+        preds.add(new Predicate(0, Predicate.Op.GREATER_THAN, TestUtil.getField(2)));
+        preds.add(new Predicate(1, Predicate.Op.LESS_THAN_OR_EQ, TestUtil.getField(5)));
+        CompiledPredicate c = PredicateCompiler.compile(preds);
+        assertFalse(c.filter(Utility.getHeapTuple(2, 2)));
+        assertTrue(c.filter(Utility.getHeapTuple(3, 2)));
+        assertTrue(c.filter(Utility.getHeapTuple(5, 2)));
+        assertFalse(c.filter(Utility.getHeapTuple(6, 2)));
+
+        assertTrue(PredicateCompiler.compile(new ArrayList<Predicate>())
+                .filter(Utility.getHeapTuple(0, 2)));
+    }
+
+    /**
+     * Compiled join predicates agree with JoinPredicate.filter()
+     */
+    @Test
+    public void joinOps() {
+        int[] vals = new int[]{-1, 0, 1};
+        for (Predicate.Op op : Predicate.Op.values()) {
+            JoinPredicate p = new JoinPredicate(0, op, 0);
+            CompiledJoinPredicate c = PredicateCompiler.compile(p, Type.INT_TYPE);
+            for (int i : vals) {
+                for (int j : vals) {
+                    Tuple t1 = Utility.getHeapTuple(i);
+                    Tuple t2 = Utility.getHeapTuple(j);
+                    assertEquals(op + " " + i + " " + j, p.filter(t1, t2), c.filter(t1, t2));
+                }
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PredicateCompilerTest.class);
+    }
+}
@@ -0,0 +1,102 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PreparedStatementTest extends SimpleDbTestBase {
+
+    ArrayList<ArrayList<Integer>> tuples;
+    HeapFile file;
+    TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        file = SystemTestUtil.createRandomHeapFile(2, 500, 50, null, tuples, "c");
+        Database.getCatalog().addTable(file, "t");
+        tid = new TransactionId();
+    }
+
+    private int expected(int low, int high) {
+        int n = 0;
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) >= low && t.get(1) < high) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Binding new values reruns the same operators with the new operands
+     */
+    @Test
+    public void bindAndRerun() throws Exception {
+        Predicate p = CompositePredicate.and(
+                new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, 0),
+                new Predicate(1, Predicate.Op.LESS_THAN, 1));
+        Filter plan = new Filter(p, new SeqScan(tid, file.getId(), "t"));
+        PreparedStatement ps = new PreparedStatement(tid, plan);
+        assertEquals(2, ps.getParameterCount());
+
+        for (int i = 0; i < 5; i++) {
+            ps.setInt(0, i * 10);
+            ps.setInt(1, 50 - i * 7);
+            assertSame(plan, ps.execute());
+            assertEquals(expected(i * 10, 50 - i * 7), TestUtil.countRemaining(plan));
+        }
+        // unchanged parameters rewind the open plan
+        assertEquals(expected(40, 22), TestUtil.countRemaining(ps.execute()));
+
+        // the caller's predicate is left alone
+        assertEquals(null, ((CompositePredicate) p).getChildren().get(0).getOperand());
+
+        ps.setInt(0, 0);
+        assertEquals(expected(0, 22), TestUtil.countRemaining(ps.execute(new TransactionId())));
+        ps.close();
+    }
+
+    /**
+     * Statements prepared by the Parser number ? placeholders in order
+     */
+    @Test
+    public void parser() throws Exception {
+        Parser parser = new Parser();
+        String sql = "SELECT * FROM t WHERE c0 >= ? AND c1 < ?";
+        PreparedStatement ps1 = parser.prepareStatement(sql, tid);
+        PreparedStatement ps2 = parser.prepareStatement(sql, tid);
+        assertEquals(2, ps1.getParameterCount());
+
+        ps1.setInt(0, 25);
+        ps1.setInt(1, 30);
+        ps2.setInt(0, 5);
+        ps2.setInt(1, 45);
+        assertEquals(expected(25, 30), TestUtil.countRemaining(ps1.execute()));
+        assertEquals(expected(5, 45), TestUtil.countRemaining(ps2.execute()));
+        ps1.close();
+        ps2.close();
+    }
+
+    @Test(expected = DbException.class)
+    public void unbound() throws Exception {
+        Filter plan = new Filter(new Predicate(0, Predicate.Op.EQUALS, 0), new SeqScan(tid, file.getId(), "t"));
+        new PreparedStatement(tid, plan).execute();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PreparedStatementTest.class);
+    }
+}
@@ -0,0 +1,128 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ProjectTest extends SimpleDbTestBase {
+
+    ArrayList<ArrayList<Integer>> tuples;
+    HeapFile file;
+    TransactionId tid;
+
+    /**
+     * A four column table, flushed and dropped from the BufferPool so scans
+     * decode its pages afresh
+     */
+    @Before
+    public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        file = SystemTestUtil.createRandomHeapFile(4, 400, 100, null, tuples, "c");
+        Database.getCatalog().addTable(file, "t");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+    }
+
+    /**
+     * @return the given fields of the tuples whose field 0 is below bound
+     */
+    private List<ArrayList<Integer>> expected(int bound, int... fields) {
+        List<ArrayList<Integer>> out = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) < bound) {
+                ArrayList<Integer> row = new ArrayList<Integer>();
+                for (int f : fields) {
+                    row.add(t.get(f));
+                }
+                out.add(row);
+            }
+        }
+        return out;
+    }
+
+    private int decodedTuples() {
+        int decoded = 0;
+        for (int pageNo = 0; pageNo < file.numPages(); pageNo++) {
+            HeapPage page = (HeapPage) Database.getBufferPool().peekPage(new HeapPageId(file.getId(), pageNo));
+            for (Tuple t : page.tuples) {
+                if (t != null) {
+                    decoded++;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * A projected scan returns narrow tuples without decoding whole ones
+     */
+    @Test
+    public void projectedScan() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(50));
+        SeqScan scan = new SeqScan(tid, file.getId(), "t", p, new int[]{3, 1});
+        TupleDesc td = scan.getTupleDesc();
+        assertEquals(2, td.numFields());
+        assertEquals("t.c3", td.getFieldName(0));
+        assertEquals("t.c1", td.getFieldName(1));
+
+        SystemTestUtil.matchTuples(scan, expected(50, 3, 1));
+        assertEquals(0, decodedTuples());
+    }
+
+    /**
+     * A Project over a SeqScan pushes its fields into a copy of the scan,
+     * whose tuples have the Project's TupleDesc
+     */
+    @Test
+    public void pushesIntoScan() throws Exception {
+        SeqScan scan = new SeqScan(tid, file.getId(), "t");
+        ArrayList<Integer> fields = new ArrayList<Integer>();
+        fields.add(2);
+        fields.add(0);
+        Project project = new Project(fields, new Type[]{Type.INT_TYPE, Type.INT_TYPE}, scan);
+        SystemTestUtil.matchTuples(project, expected(Integer.MAX_VALUE, 2, 0));
+        assertEquals(0, decodedTuples());
+        assertNull(scan.getFields());
+        assertEquals(4, scan.getTupleDesc().numFields());
+
+        project.open();
+        Tuple t = project.next();
+        assertSame(project.getTupleDesc(), t.getTupleDesc());
+        assertEquals("t.c2", t.getTupleDesc().getFieldName(0));
+        project.close();
+    }
+
+    /**
+     * The Parser scans only the columns a query uses
+     */
+    @Test
+    public void parserPrunesColumns() throws Exception {
+        DbIterator plan = new Parser().prepare("SELECT c2 FROM t WHERE c0 < 30").getPlan(tid);
+        SystemTestUtil.matchTuples(plan, expected(30, 2));
+        SeqScan scan = (SeqScan) ((Project) plan).getChildren()[0];
+        assertArrayEquals(new int[]{2}, scan.getFields());
+
+        plan = new Parser().prepare("SELECT * FROM t WHERE c0 < 30").getPlan(tid);
+        SystemTestUtil.matchTuples(plan, expected(30, 0, 1, 2, 3));
+        assertNull(((SeqScan) ((Filter) plan).getChildren()[0]).getFields());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ProjectTest.class);
+    }
+}
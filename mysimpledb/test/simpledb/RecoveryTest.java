@@ -0,0 +1,272 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class RecoveryTest extends SimpleDbTestBase {
+
+    HeapFile file;
+    ArrayList<ArrayList<Integer>> rows;
+
+    /**
+     * A table of 5000 rows, about ten pages
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        rows = new ArrayList<ArrayList<Integer>>();
+        file = SystemTestUtil.createRandomHeapFile(2, 5000, null, rows);
+    }
+
+    private byte[] contents() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file.getFile(), "r");
+        try {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Puts back earlier contents of the table's file, as if the pages
+     * written since had not reached the disk
+     */
+    private void overwrite(byte[] data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file.getFile(), "rw");
+        try {
+            raf.write(data);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Loses everything in memory: the buffer pool, and the log records not
+     * yet written
+     */
+    private void crash() {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * Deletes every step'th row in the table, then inserts rows of
+     * (base + i, -i) into the space freed.
+     *
+     * @param expected the rows of the table, changed to match
+     */
+    private void update(Transaction t, int step, int base, ArrayList<ArrayList<Integer>> expected)
+            throws Exception {
+        SeqScan scan = new SeqScan(t.getId(), file.getId(), "");
+        ArrayList<Tuple> doomed = new ArrayList<Tuple>();
+        scan.open();
+        for (int i = 0; scan.hasNext(); i++) {
+            Tuple tuple = scan.next();
+            if (i % step == 0) {
+                doomed.add(tuple);
+            }
+        }
+        scan.close();
+        for (Tuple tuple : doomed) {
+            Database.getBufferPool().deleteTuple(t.getId(), tuple);
+            expected.remove(SystemTestUtil.tupleToList(tuple));
+        }
+        for (int i = 0; i < doomed.size() / 2; i++) {
+            Tuple tuple = new Tuple(file.getTupleDesc());
+            tuple.setField(0, new IntField(base + i));
+            tuple.setField(1, new IntField(-i));
+            Database.getBufferPool().insertTuple(t.getId(), file.getId(), tuple);
+            expected.add(SystemTestUtil.tupleToList(tuple));
+        }
+    }
+
+    private Transaction begin() {
+        Transaction t = new Transaction();
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void redoCommitted() throws Exception {
+        byte[] before = contents();
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>(rows);
+        Transaction t = begin();
+        update(t, 5, 100000, expected);
+        t.commit();
+        overwrite(before);
+        crash();
+        SystemTestUtil.matchTuples(file, rows);
+
+        Database.getLogFile().recover(4);
+        SystemTestUtil.matchTuples(file, expected);
+    }
+
+    @Test
+    public void parallelRedoMatchesSerial() throws Exception {
+        byte[] before = contents();
+        Transaction t = begin();
+        update(t, 3, 100000, new ArrayList<ArrayList<Integer>>(rows));
+        t.commit();
+        byte[] committed = contents();
+
+        overwrite(before);
+        crash();
+        Database.getLogFile().recover(1);
+        assertArrayEquals(committed, contents());
+
+        overwrite(before);
+        crash();
+        Database.getLogFile().recover(8);
+        assertArrayEquals(committed, contents());
+    }
+
+    @Test
+    public void undoUncommitted() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>(rows);
+        Transaction t1 = begin();
+        update(t1, 7, 100000, expected);
+        t1.commit();
+
+        Transaction t2 = begin();
+        update(t2, 4, 200000, new ArrayList<ArrayList<Integer>>(expected));
+        // the loser's pages reach the disk
+        Database.getBufferPool().flushAllPages();
+        crash();
+        Database.getLogFile().recover();
+        SystemTestUtil.matchTuples(file, expected);
+
+        // recovering again changes nothing
+        crash();
+        Database.getLogFile().recover();
+        SystemTestUtil.matchTuples(file, expected);
+    }
+
+    @Test
+    public void abortRollsBack() throws Exception {
+        Transaction t = begin();
+        update(t, 6, 100000, new ArrayList<ArrayList<Integer>>(rows));
+        Database.getBufferPool().flushAllPages();
+        // and more that is only in the buffer pool
+        update(t, 2, 200000, new ArrayList<ArrayList<Integer>>(rows));
+        t.abort();
+        for (Page page : Database.getBufferPool().buffer.values()) {
+            assertNull(page.isDirty());
+        }
+        SystemTestUtil.matchTuples(file, rows);
+
+        // the abort survives a crash
+        crash();
+        Database.getLogFile().recover();
+        SystemTestUtil.matchTuples(file, rows);
+    }
+
+    @Test
+    public void compensatedUpdatesAreNotUndoneAgain() throws Exception {
+        Transaction t1 = begin();
+        update(t1, 6, 100000, new ArrayList<ArrayList<Integer>>(rows));
+        Database.getBufferPool().flushAllPages();
+        // rolled back, but the crash comes before its ABORT record
+        Database.getLogFile().rollback(t1.getId());
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>(rows);
+        Transaction t2 = begin();
+        update(t2, 6, 200000, expected);
+        t2.commit();
+
+        crash();
+        Database.getLogFile().recover();
+        SystemTestUtil.matchTuples(file, expected);
+    }
+
+    @Test
+    public void redoFromDirtyPageTable() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>(rows);
+        Transaction t = begin();
+        update(t, 5, 100000, expected);
+        // logged, then a checkpoint, then a crash before the pages are written
+        LogFile log = Database.getLogFile();
+        for (Page page : Database.getBufferPool().buffer.values()) {
+            if (page.isDirty() != null) {
+                log.logWrite(t.getId(), page.getBeforeImage(), page);
+            }
+        }
+        log.logCommit(t.getId());
+        log.logCheckpoint();
+        crash();
+        SystemTestUtil.matchTuples(file, rows);
+
+        Database.getLogFile().recover();
+        SystemTestUtil.matchTuples(file, expected);
+    }
+
+    @Test
+    public void abortRollsBackAppendedPage() throws Exception {
+        // one full page, so that the insert appends another
+        int perPage = BufferPool.getPageSize() * 8 / (file.getTupleDesc().getSize() * 8 + 1);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        HeapFile full = SystemTestUtil.createRandomHeapFile(2, perPage, null, expected);
+        assertEquals(1, full.numPages());
+
+        Transaction t = begin();
+        Tuple tuple = new Tuple(full.getTupleDesc());
+        tuple.setField(0, new IntField(1));
+        tuple.setField(1, new IntField(2));
+        Database.getBufferPool().insertTuple(t.getId(), full.getId(), tuple);
+        assertEquals(2, full.numPages());
+        t.abort();
+        SystemTestUtil.matchTuples(full, expected);
+
+        crash();
+        Database.getLogFile().recover();
+        SystemTestUtil.matchTuples(full, expected);
+    }
+
+    /**
+     * Bulk loads a table of 5000 random rows into the table
+     */
+    private void bulkLoad(Transaction t) throws Exception {
+        HeapFile source = SystemTestUtil.createRandomHeapFile(2, 5000, null, null);
+        SeqScan scan = new SeqScan(t.getId(), source.getId(), "");
+        scan.open();
+        Database.getBufferPool().bulkInsertTuples(t.getId(), file.getId(), scan);
+        scan.close();
+    }
+
+    @Test
+    public void abortRollsBackBulkInsert() throws Exception {
+        Transaction t = begin();
+        bulkLoad(t);
+        t.abort();
+        SystemTestUtil.matchTuples(file, rows);
+    }
+
+    @Test
+    public void undoUncommittedBulkInsert() throws Exception {
+        Transaction t = begin();
+        bulkLoad(t);
+        crash();
+        Database.getLogFile().recover();
+        SystemTestUtil.matchTuples(file, rows);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(RecoveryTest.class);
+    }
+}
@@ -0,0 +1,153 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ScanFilterTest extends SimpleDbTestBase {
+
+    static final String[] NAMES = {"alice", "bob", "carol", "dave", "erin", "frank"};
+
+    HeapFile file;
+    TupleDesc td;
+    List<Tuple> rows;
+
+    /**
+     * A table of (int, string) rows, written to disk and dropped from the
+     * BufferPool so scans decode its pages afresh
+     */
+    @Before
+    public void setUp() throws Exception {
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+        File f = File.createTempFile("scanfilter", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ZoneMap.SUFFIX).deleteOnExit();
+        file = new HeapFile(f, td);
+        Database.getCatalog().addTable(file, "people");
+
+        rows = new ArrayList<Tuple>();
+        for (int i = 0; i < 200; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(NAMES[i % NAMES.length] + (i % 7), Type.STRING_LEN));
+            rows.add(t);
+        }
+        TransactionId tid = new TransactionId();
+        Insert ins = new Insert(tid, new TupleIterator(td, rows), file.getId());
+        ins.open();
+        ins.next();
+        ins.close();
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    private int scan(Predicate p) throws Exception {
+        SeqScan scan = new SeqScan(new TransactionId(), file.getId(), "p", p);
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(true, p.filter(t));
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    private int expected(Predicate p) {
+        int n = 0;
+        for (Tuple t : rows) {
+            if (p.filter(t)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Pushed down predicates return what a Filter would
+     */
+    @Test
+    public void sameResults() throws Exception {
+        Predicate[] preds = {
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(37)),
+                new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(5)),
+                new Predicate(1, Predicate.Op.EQUALS, new StringField("carol2", Type.STRING_LEN)),
+                new Predicate(1, Predicate.Op.NOT_EQUALS, new StringField("carol2", Type.STRING_LEN)),
+                new Predicate(1, Predicate.Op.LIKE, new StringField("%o_", Type.STRING_LEN)),
+                new Predicate(1, Predicate.Op.GREATER_THAN, new StringField("d", Type.STRING_LEN)),
+                CompositePredicate.or(
+                        new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(190)),
+                        CompositePredicate.not(new Predicate(1, Predicate.Op.LIKE,
+                                new StringField("a%", Type.STRING_LEN)))),
+                new FieldPredicate(0, Predicate.Op.EQUALS, 0),
+        };
+        for (Predicate p : preds) {
+            assertEquals(p.toString(), expected(p), scan(p));
+        }
+    }
+
+    /**
+     * Tuples rejected on the page bytes are never decoded
+     */
+    @Test
+    public void rejectedTuplesNotDecoded() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.EQUALS, new IntField(3));
+        assertEquals(1, scan(p));
+        int decoded = 0;
+        for (int pageNo = 0; pageNo < file.numPages(); pageNo++) {
+            HeapPage page = (HeapPage) Database.getBufferPool().peekPage(new HeapPageId(file.getId(), pageNo));
+            if (page == null) {
+                // ruled out by the zone map, so never read
+                continue;
+            }
+            for (Tuple t : page.tuples) {
+                if (t != null) {
+                    decoded++;
+                }
+            }
+        }
+        assertEquals(1, decoded);
+    }
+
+    /**
+     * A Filter over a SeqScan pushes its predicate into the scan
+     */
+    @Test
+    public void filterPushesDown() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(150));
+        SeqScan scan = new SeqScan(new TransactionId(), file.getId(), "p");
+        Filter f = new Filter(p, scan);
+        f.open();
+        assertEquals(p, scan.getFilter());
+        int n = 0;
+        while (f.hasNext()) {
+            f.next();
+            n++;
+        }
+        assertEquals(expected(p), n);
+        f.rewind();
+        while (f.hasNext()) {
+            f.next();
+            n--;
+        }
+        f.close();
+        assertEquals(0, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ScanFilterTest.class);
+    }
+}
@@ -0,0 +1,104 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SystemCatalogTest extends SimpleDbTestBase {
+
+    private File dir;
+
+    @Before
+    public void makeDir() throws Exception {
+        dir = File.createTempFile("catalog", "");
+        dir.delete();
+    }
+
+    @After
+    public void removeDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Tables, their ids, schemas, keys, statistics and contents survive a
+     * restart
+     */
+    @Test
+    public void reopen() throws Exception {
+        SystemCatalog sc = Database.getCatalog().openSystemCatalog(dir);
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE},
+                new String[]{"id", "name"});
+        HeapFile people = sc.createTable("people", td, "id");
+        HeapFile empty = sc.createTable("empty", Utility.getTupleDesc(3), "");
+        assertTrue(people.getId() != empty.getId());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 10; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("p" + i, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, people.getId(), t);
+        }
+        Database.getBufferPool().flushAllPages();
+        sc.setStats(people.getId(), 5, 1);
+        sc.setStats(people.getId(), 10, 1);
+
+        int peopleId = people.getId();
+        Database.reset();
+        sc = Database.getCatalog().openSystemCatalog(dir);
+
+        assertEquals(peopleId, Database.getCatalog().getTableId("people"));
+        assertEquals(td, Database.getCatalog().getTupleDesc(peopleId));
+        assertEquals("id", Database.getCatalog().getPrimaryKey(peopleId));
+        assertEquals(Utility.getTupleDesc(3),
+                Database.getCatalog().getTupleDesc(Database.getCatalog().getTableId("empty")));
+        assertEquals(10, sc.getTupleCount(peopleId));
+        assertEquals(1, sc.getPageCount(peopleId));
+
+        DbFileIterator it = Database.getCatalog().getDatabaseFile(peopleId).iterator(new TransactionId());
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(10, count);
+
+        // new ids do not reuse old ones
+        HeapFile more = sc.createTable("more", Utility.getTupleDesc(1), "");
+        assertTrue(more.getId() > peopleId);
+    }
+
+    /**
+     * Creating a table with a name in use fails
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateName() throws Exception {
+        SystemCatalog sc = Database.getCatalog().openSystemCatalog(dir);
+        sc.createTable("t", Utility.getTupleDesc(1), "");
+        sc.createTable("t", Utility.getTupleDesc(1), "");
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SystemCatalogTest.class);
+    }
+}
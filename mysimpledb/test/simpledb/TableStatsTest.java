@@ -0,0 +1,72 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TableStatsTest extends SimpleDbTestBase {
+
+    /**
+     * Counts, distinct values and histogram estimates from one parallel scan
+     */
+    @Test
+    public void compute() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10000, 1000, null, tuples);
+
+        TableStats stats = TableStats.compute(f.getId(), 4);
+        assertEquals(10000, stats.totalTuples());
+        assertEquals(f.numPages(), stats.numPages());
+        assertEquals(f.numPages() * TableStats.IO_COST_PER_PAGE, stats.estimateScanCost(), 1e-9);
+
+        int below = 0;
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) < 250) {
+                below++;
+            }
+        }
+        double sel = stats.estimateSelectivity(0, Predicate.Op.LESS_THAN, new IntField(250));
+        assertEquals(below / 10000.0, sel, 0.05);
+        assertEquals(1000, stats.numDistinct(0), 100);
+    }
+
+    /**
+     * Statistics kept in the Catalog follow inserts and deletes
+     */
+    @Test
+    public void incremental() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100, null, new ArrayList<ArrayList<Integer>>());
+        Database.getCatalog().computeStatistics();
+        TableStats stats = Database.getCatalog().getTableStats(f.getId());
+        assertEquals(100, stats.totalTuples());
+
+        TransactionId tid = new TransactionId();
+        Insert ins = new Insert(tid, new TestUtil.MockScan(0, 50, 2), f.getId());
+        ins.open();
+        ins.next();
+        ins.close();
+        assertSame(stats, Database.getCatalog().getTableStats(f.getId()));
+        assertEquals(150, stats.totalTuples());
+
+        Delete del = new Delete(tid, new SeqScan(tid, f.getId(), ""));
+        del.open();
+        del.next();
+        del.close();
+        assertEquals(0, stats.totalTuples());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TableStatsTest.class);
+    }
+}
@@ -166,6 +166,48 @@ public class TestUtil {
         }
     }
 
+    /**
+     * Opens an iterator, counts the tuples it returns and closes it.
+     */
+    public static int count(DbIterator it)
+            throws TransactionAbortedException, DbException {
+        it.open();
+        int n = countRemaining(it);
+        it.close();
+        return n;
+    }
+
+    /**
+     * Counts the tuples left in an open iterator.
+     */
+    public static int countRemaining(DbIterator it)
+            throws TransactionAbortedException, DbException {
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return true if plan or one of the operators below it is an instance
+     * of op
+     */
+    public static boolean contains(DbIterator plan, Class<?> op) {
+        if (op.isInstance(plan)) {
+            return true;
+        }
+        if (plan instanceof Operator) {
+            for (DbIterator child : ((Operator) plan).getChildren()) {
+                if (contains(child, op)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * @return a byte array containing the contents of the file 'path'
      */
@@ -408,6 +450,7 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            new File(emptyFile.getPath() + ZoneMap.SUFFIX).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
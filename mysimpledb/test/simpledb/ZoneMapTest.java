@@ -0,0 +1,172 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    static final int ROWS = 1000;
+
+    HeapFile file;
+    TupleDesc td;
+    List<Tuple> rows;
+
+    /**
+     * An append ordered table of (int id, string name) rows, flushed and
+     * dropped from the BufferPool
+     */
+    @Before
+    public void setUp() throws Exception {
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+        File f = File.createTempFile("zonemap", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ZoneMap.SUFFIX).deleteOnExit();
+        file = new HeapFile(f, td);
+        Database.getCatalog().addTable(file, "events");
+        rows = new ArrayList<Tuple>();
+        insert(file, 0, ROWS);
+    }
+
+    private void insert(HeapFile into, int from, int to) throws Exception {
+        List<Tuple> added = new ArrayList<Tuple>();
+        for (int i = from; i < to; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("event-" + (char) ('a' + i % 26) + i, Type.STRING_LEN));
+            added.add(t);
+        }
+        Insert ins = new Insert(new TransactionId(), new TupleIterator(td, added), into.getId());
+        ins.open();
+        ins.next();
+        ins.close();
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        rows.addAll(added);
+    }
+
+    private int scan(Predicate p) throws Exception {
+        DbFileIterator it = file.iterator(new TransactionId(), p);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            assertTrue(p.filter(it.next()));
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    private int expected(Predicate p) {
+        int n = 0;
+        for (Tuple t : rows) {
+            if (p.filter(t)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private int cachedPages() {
+        int n = 0;
+        for (int pageNo = 0; pageNo < file.numPages(); pageNo++) {
+            if (Database.getBufferPool().peekPage(new HeapPageId(file.getId(), pageNo)) != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * A range scan over an append ordered table reads only the pages holding
+     * the range
+     */
+    @Test
+    public void skipsPages() throws Exception {
+        assertTrue(file.numPages() > 10);
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(ROWS - 10));
+        assertEquals(10, scan(p));
+        assertEquals(1, cachedPages());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        p = CompositePredicate.or(
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(5)),
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(ROWS / 2)));
+        assertEquals(6, scan(p));
+        assertEquals(2, cachedPages());
+    }
+
+    /**
+     * Skipping never loses tuples
+     */
+    @Test
+    public void sameResults() throws Exception {
+        Predicate[] preds = {
+                new Predicate(0, Predicate.Op.LESS_THAN_OR_EQ, new IntField(300)),
+                new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(7)),
+                new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(ROWS)),
+                new Predicate(1, Predicate.Op.EQUALS, new StringField("event-c2", Type.STRING_LEN)),
+                new Predicate(1, Predicate.Op.GREATER_THAN, new StringField("event-y", Type.STRING_LEN)),
+                new Predicate(1, Predicate.Op.LESS_THAN, new StringField("event-b53", Type.STRING_LEN)),
+                new Predicate(1, Predicate.Op.LIKE, new StringField("%-z%", Type.STRING_LEN)),
+                CompositePredicate.not(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(900))),
+        };
+        for (Predicate p : preds) {
+            assertEquals(p.toString(), expected(p), scan(p));
+        }
+    }
+
+    /**
+     * Inserts widen the ranges of their pages, in memory and on disk
+     */
+    @Test
+    public void insertsWiden() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(5 * ROWS));
+        assertEquals(0, scan(p));
+        insert(file, 5 * ROWS, 5 * ROWS + 3);
+        assertEquals(3, scan(p));
+
+        // the saved map matches the file
+        ZoneMap saved = ZoneMap.load(file);
+        assertTrue(saved.mayMatch(file.numPages() - 1, p));
+        assertFalse(saved.mayMatch(0, p));
+    }
+
+    /**
+     * A map saved before the file was written to without it is rebuilt
+     */
+    @Test
+    public void staleMapRebuilt() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0));
+        assertEquals(0, scan(p));
+        // a second HeapFile over the same file knows nothing of the map
+        HeapFile other = new HeapFile(file.getFile(), td, file.getId() + 1);
+        Database.getCatalog().addTable(other, "events2");
+        insert(other, -3, 0);
+
+        ZoneMap map = ZoneMap.load(file);
+        boolean found = false;
+        for (int pageNo = 0; pageNo < other.numPages(); pageNo++) {
+            found |= map.mayMatch(pageNo, p);
+        }
+        assertTrue(found);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
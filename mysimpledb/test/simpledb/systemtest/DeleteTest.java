@@ -5,6 +5,8 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import org.junit.Test;
+
 import simpledb.*;
 
 public class DeleteTest extends FilterBase {
@@ -52,6 +54,22 @@ public class DeleteTest extends FilterBase {
         SystemTestUtil.matchTuples(table, expectedTuples);
     }
 
+    @Test
+    public void deleteLargerThanBufferPool() throws Exception {
+        // 40 pages through a pool of 10
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 20000, null, null);
+        Database.resetBufferPool(10);
+        TransactionId tid = new TransactionId();
+        Delete deleteOperator = new Delete(tid, new SeqScan(tid, table.getId(), ""));
+        deleteOperator.open();
+        assertEquals(20000, ((IntField) deleteOperator.next().getField(0)).getValue());
+        deleteOperator.close();
+
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(table, new ArrayList<ArrayList<Integer>>());
+    }
+
     /**
      * Make test compatible with older version of ant.
      */
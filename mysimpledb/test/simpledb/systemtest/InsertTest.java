@@ -12,6 +12,11 @@ import org.junit.Test;
 public class InsertTest extends SimpleDbTestBase {
     private void validateInsert(int columns, int sourceRows, int destinationRows)
             throws DbException, IOException, TransactionAbortedException {
+        validateInsert(columns, sourceRows, destinationRows, false);
+    }
+
+    private void validateInsert(int columns, int sourceRows, int destinationRows, boolean bulk)
+            throws DbException, IOException, TransactionAbortedException {
         // Create the two tables
         ArrayList<ArrayList<Integer>> sourceTuples = new ArrayList<ArrayList<Integer>>();
         HeapFile source = SystemTestUtil.createRandomHeapFile(
@@ -25,7 +30,7 @@ public class InsertTest extends SimpleDbTestBase {
         // Insert source into destination
         TransactionId tid = new TransactionId();
         SeqScan ss = new SeqScan(tid, source.getId(), "");
-        Insert insOp = new Insert(tid, ss, destination.getId());
+        Insert insOp = new Insert(tid, ss, destination.getId(), bulk);
 
 //        Query q = new Query(insOp, tid);
         insOp.open();
@@ -74,6 +79,24 @@ public class InsertTest extends SimpleDbTestBase {
         validateInsert(1, 1, 1);
     }
 
+    @Test
+    public void testBulkEmptyToEmpty()
+            throws IOException, DbException, TransactionAbortedException {
+        validateInsert(3, 0, 0, true);
+    }
+
+    @Test
+    public void testBulkOneToOne()
+            throws IOException, DbException, TransactionAbortedException {
+        validateInsert(1, 1, 1, true);
+    }
+
+    @Test
+    public void testBulkManyPages()
+            throws IOException, DbException, TransactionAbortedException {
+        validateInsert(2, 50000, 10, true);
+    }
+
     /**
      * Make test compatible with older version of ant.
      */